@@ -0,0 +1,133 @@
+package net.mmarss.grease.core;
+
+import java.util.concurrent.TimeUnit;
+
+import org.joml.Matrix4f;
+import org.joml.Vector4f;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.mmarss.grease.exception.GreaseShaderUniformException;
+
+/**
+ * Benchmarks setting each type of uniform used by the 2D renderer. The OpenGL
+ * calls go to a recording backend, so the benchmark needs no window or GPU, and
+ * measures the engine's side of each call. Must be run with the working
+ * directory set to the project directory, as by the <code>jmh</code> Gradle
+ * task.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ShaderBenchmark {
+	
+	/** The number of uniform calls recorded between clearing the recording. */
+	private static final int CLEAR_INTERVAL = 1024;
+	
+	/** The uniform type to set. */
+	@Param({ "vec4", "mat4", "bool", "int" })
+	public String type;
+	
+	/** The backend installed before the benchmark. */
+	private GlBackend			previous;
+	/** The backend recording the uniform calls. */
+	private RecordingBackend	recording;
+	/** The engine's 2D shader. */
+	private Shader				shader;
+	
+	/** The name of the uniform set by the benchmark. */
+	private String	uniformName;
+	/** The values alternately assigned to the uniform. */
+	private Object[]	values;
+	/** The index of the next value. */
+	private int			next;
+	/** The number of calls recorded since the recording was last cleared. */
+	private int			recorded;
+	
+	/**
+	 * Installs the recording backend and loads the shader.
+	 * 
+	 * @throws Exception
+	 *             if the shader cannot be loaded.
+	 */
+	@Setup
+	public void setup() throws Exception {
+		
+		previous = Gl.getBackend();
+		recording = new RecordingBackend();
+		Gl.setBackend(recording);
+		
+		shader = new Shader();
+		shader.create();
+		shader.loadShaders("vertex2d.vsh", "fragment2d.fsh");
+		shader.link();
+		shader.bind();
+		
+		switch (type) {
+		case "vec4":
+			uniformName = "color";
+			shader.createUniform(uniformName, Vector4f.class);
+			values = new Object[] { new Vector4f(1f, 0f, 0f, 1f), new Vector4f(0f, 1f, 0f, 0.5f) };
+			break;
+		case "mat4":
+			uniformName = "model";
+			shader.createUniform(uniformName, Matrix4f.class);
+			values = new Object[] { new Matrix4f().scaling(32f, 32f, 1f),
+					new Matrix4f().translation(10f, 20f, 0f).rotateZ(0.5f) };
+			break;
+		case "bool":
+			uniformName = "useTexture";
+			shader.createUniform(uniformName, boolean.class);
+			values = new Object[] { true, false };
+			break;
+		case "int":
+			uniformName = "texImage";
+			shader.createUniform(uniformName, int.class);
+			values = new Object[] { 0, 1 };
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown uniform type " + type);
+		}
+	}
+	
+	/**
+	 * Sets the uniform to its next value. The recording is cleared every so often,
+	 * so that it does not grow for the whole measurement.
+	 * 
+	 * @throws GreaseShaderUniformException
+	 *             if the value has the wrong type.
+	 */
+	@Benchmark
+	public void setUniform() throws GreaseShaderUniformException {
+		
+		shader.setUniform(uniformName, values[next]);
+		next ^= 1;
+		
+		if (++recorded == CLEAR_INTERVAL) {
+			recording.clear();
+			recorded = 0;
+		}
+	}
+	
+	/** Releases the shader and restores the previous backend. */
+	@TearDown
+	public void tearDown() {
+		
+		shader.unbind();
+		shader.cleanup();
+		Gl.setBackend(previous);
+	}
+}
@@ -0,0 +1,112 @@
+package net.mmarss.grease.core;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks reading timers against the system clock and a virtual clock, and
+ * reading a timer shared between threads.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimerBenchmark {
+	
+	/** Timers owned by a single benchmark thread. */
+	@State(Scope.Thread)
+	public static class Timers {
+		
+		/** A running timer on the system clock. */
+		private Timer	systemTimer;
+		/** A running timer on a virtual clock. */
+		private Timer	virtualTimer;
+		/** A paused timer on the system clock. */
+		private Timer	pausedTimer;
+		
+		/** Creates the timers. */
+		@Setup
+		public void setup() {
+			
+			VirtualClock clock = new VirtualClock();
+			clock.advanceSeconds(1.0);
+			
+			systemTimer = new Timer(SystemClock.getInstance());
+			virtualTimer = new Timer(clock);
+			pausedTimer = new Timer(SystemClock.getInstance());
+			pausedTimer.pause();
+		}
+	}
+	
+	/** A timer read concurrently by every benchmark thread. */
+	@State(Scope.Benchmark)
+	public static class SharedTimer {
+		
+		/** The shared running timer. */
+		private Timer timer;
+		
+		/** Creates the timer. */
+		@Setup
+		public void setup() {
+			
+			timer = new Timer(SystemClock.getInstance());
+		}
+	}
+	
+	/**
+	 * @param timers
+	 *            the benchmark thread's timers.
+	 * @return the system timer's value.
+	 */
+	@Benchmark
+	public double getSystem(Timers timers) {
+		
+		return timers.systemTimer.get();
+	}
+	
+	/**
+	 * @param timers
+	 *            the benchmark thread's timers.
+	 * @return the virtual timer's value.
+	 */
+	@Benchmark
+	public double getVirtual(Timers timers) {
+		
+		return timers.virtualTimer.get();
+	}
+	
+	/**
+	 * @param timers
+	 *            the benchmark thread's timers.
+	 * @return the paused timer's value.
+	 */
+	@Benchmark
+	public double getPaused(Timers timers) {
+		
+		return timers.pausedTimer.get();
+	}
+	
+	/**
+	 * @param shared
+	 *            the timer shared between threads.
+	 * @return the shared timer's value.
+	 */
+	@Benchmark
+	@Threads(4)
+	public double getShared(SharedTimer shared) {
+		
+		return shared.timer.get();
+	}
+}
@@ -0,0 +1,53 @@
+package net.mmarss.grease.graphics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.joml.Matrix4f;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks building the model matrix of a rotated image, as done by
+ * <code>Graphics2d.drawImageRotated</code> for every sprite.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class Graphics2dBenchmark {
+	
+	/** The matrix reused by the allocation-free benchmark. */
+	private final Matrix4f matrix = new Matrix4f();
+	
+	/** The rotation angle, advanced by every call. */
+	private float angle = 0f;
+	
+	/**
+	 * @return a newly allocated rotated model matrix, as drawn.
+	 */
+	@Benchmark
+	public Matrix4f rotatedModel() {
+		
+		angle += 0.01f;
+		return Graphics2d.rotatedModel(new Matrix4f(), 320f, 240f, 64f, 48f, angle);
+	}
+	
+	/**
+	 * @return a rotated model matrix built into a reused matrix.
+	 */
+	@Benchmark
+	public Matrix4f rotatedModelReused() {
+		
+		angle += 0.01f;
+		return Graphics2d.rotatedModel(matrix, 320f, 240f, 64f, 48f, angle);
+	}
+}
@@ -0,0 +1,199 @@
+package net.mmarss.grease.graphics;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.mmarss.grease.exception.GreaseFileException;
+
+/**
+ * Benchmarks decoding image files into pooled pixel buffers, and the CPU image
+ * operations on a 4096x4096 RGBA sprite sheet. Must be run with the working
+ * directory set to the project directory, as by the <code>jmh</code> Gradle
+ * task.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImageBenchmark {
+	
+	/** The width and height of the sprite sheet, in pixels. */
+	private static final int	SHEET_SIZE	= 4096;
+	/** The width and height of the sprite composited onto the sheet, in pixels. */
+	private static final int	SPRITE_SIZE	= 256;
+	
+	/** An image file, and an image loaded into by every call. */
+	@State(Scope.Thread)
+	public static class ImageFile {
+		
+		/** The image file to load. */
+		@Param({ "../res/plane.png", "../res/plane_hires.png" })
+		public String filename;
+		
+		/** The image loaded into by every call, reusing its pixel buffer. */
+		private Image image;
+		
+		/** Creates the image. */
+		@Setup
+		public void setup() {
+			
+			image = new Image();
+		}
+		
+		/** Returns the pixel buffer to the pool. */
+		@TearDown
+		public void tearDown() {
+			
+			image.free();
+		}
+	}
+	
+	/** A sprite sheet filled with a gradient, and a translucent sprite. */
+	@State(Scope.Thread)
+	public static class SpriteSheet {
+		
+		/** The sprite sheet. */
+		private Image	sheet;
+		/** The sprite composited onto the sheet. */
+		private Image	sprite;
+		
+		/** Creates and fills the images. */
+		@Setup
+		public void setup() {
+			
+			sheet = new Image(SHEET_SIZE, SHEET_SIZE);
+			sprite = new Image(SPRITE_SIZE, SPRITE_SIZE);
+			fill(sheet);
+			fill(sprite);
+		}
+		
+		/**
+		 * Fills an RGBA image with a gradient of colors and alpha values.
+		 * 
+		 * @param image
+		 *            the image to fill.
+		 */
+		private static void fill(Image image) {
+			
+			ByteBuffer data = image.getData();
+			for (int y = 0, i = 0; y < image.getHeight(); y++) {
+				for (int x = 0; x < image.getWidth(); x++, i += 4) {
+					data.put(i, (byte) x).put(i + 1, (byte) y).put(i + 2, (byte) (x ^ y)).put(i + 3, (byte) (x + y));
+				}
+			}
+		}
+		
+		/** Returns the pixel buffers to the pool. */
+		@TearDown
+		public void tearDown() {
+			
+			sheet.free();
+			sprite.free();
+		}
+	}
+	
+	/**
+	 * Loads the image file into a new image, returning its pixel buffer to the
+	 * pool afterwards.
+	 * 
+	 * @param file
+	 *            the image file to load.
+	 * @return the loaded image's width.
+	 * @throws GreaseFileException
+	 *             if the file cannot be read.
+	 */
+	@Benchmark
+	public int loadNew(ImageFile file) throws GreaseFileException {
+		
+		Image loaded = new Image(file.filename);
+		int width = loaded.getWidth();
+		loaded.free();
+		return width;
+	}
+	
+	/**
+	 * Loads the image file into the same image, reusing its pixel buffer.
+	 * 
+	 * @param file
+	 *            the image file to load.
+	 * @return the loaded image's width.
+	 * @throws GreaseFileException
+	 *             if the file cannot be read.
+	 */
+	@Benchmark
+	public int loadReused(ImageFile file) throws GreaseFileException {
+		
+		file.image.load(file.filename);
+		return file.image.getWidth();
+	}
+	
+	/**
+	 * Flips the sprite sheet upside down.
+	 * 
+	 * @param sheet
+	 *            the sprite sheet.
+	 */
+	@Benchmark
+	public void flipVertical(SpriteSheet sheet) {
+		
+		ImageOps.flipVertical(sheet.sheet);
+	}
+	
+	/**
+	 * Mirrors the sprite sheet from left to right.
+	 * 
+	 * @param sheet
+	 *            the sprite sheet.
+	 */
+	@Benchmark
+	public void flipHorizontal(SpriteSheet sheet) {
+		
+		ImageOps.flipHorizontal(sheet.sheet);
+	}
+	
+	/**
+	 * Scales the sprite sheet to half its size.
+	 * 
+	 * @param sheet
+	 *            the sprite sheet.
+	 * @return the scaled image's width.
+	 */
+	@Benchmark
+	public int scaleHalf(SpriteSheet sheet) {
+		
+		Image scaled = ImageOps.scale(sheet.sheet, SHEET_SIZE / 2, SHEET_SIZE / 2);
+		int width = scaled.getWidth();
+		scaled.free();
+		return width;
+	}
+	
+	/**
+	 * Composites the translucent sprite over every cell of the sprite sheet.
+	 * 
+	 * @param sheet
+	 *            the sprite sheet.
+	 */
+	@Benchmark
+	public void compositeCells(SpriteSheet sheet) {
+		
+		for (int y = 0; y < SHEET_SIZE; y += SPRITE_SIZE) {
+			for (int x = 0; x < SHEET_SIZE; x += SPRITE_SIZE) {
+				ImageOps.composite(sheet.sprite, sheet.sheet, x, y);
+			}
+		}
+	}
+}
@@ -0,0 +1,158 @@
+package net.mmarss.grease.input;
+
+import static org.lwjgl.glfw.GLFW.GLFW_MOD_SHIFT;
+import static org.lwjgl.glfw.GLFW.GLFW_PRESS;
+import static org.lwjgl.glfw.GLFW.GLFW_RELEASE;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks the key callback path, from the GLFW key and modifier codes to the
+ * input manager's key state.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class InputBenchmark {
+	
+	/** The GLFW key codes cycled through, covering the whole key table. */
+	private int[]	keyIds;
+	/** The index of the next key code. */
+	private int		next;
+	
+	/** The input manager receiving the key events. */
+	private InputManager	input;
+	/** The GLFW bit field of the modifiers passed with each key event. */
+	private int				modifiers;
+	/** The input map evaluated against the input manager. */
+	private InputMap		map;
+	
+	/** Sets up the key codes and input manager. */
+	@Setup
+	public void setup() {
+		
+		Key[] keys = Key.values();
+		keyIds = new int[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			keyIds[i] = keys[i].getId();
+		}
+		
+		input = new InputManager();
+		modifiers = KeyModifier.SHIFT.getBit();
+		
+		// A typical control scheme, with a chord and an axis
+		map = new InputMap();
+		map.bindKey("jump", Key.KEY_SPACE);
+		map.bindGamepadButton("jump", GamepadButton.BUTTON_A);
+		map.bindKey("fire", Key.KEY_LEFT_CONTROL);
+		map.bindButton("fire", MouseButton.BUTTON_LEFT);
+		map.bindKey("save", Key.KEY_S, KeyModifier.CONTROL);
+		map.bindKey("pause", Key.KEY_ESCAPE);
+		map.bindAxisKeys("move", Key.KEY_A, Key.KEY_D);
+		map.bindGamepadAxis("move", GamepadAxis.LEFT_X, 1);
+		input.keyCallback(Key.KEY_LEFT_CONTROL, KeyAction.KEY_PRESSED, modifiers);
+		input.keyCallback(Key.KEY_S, KeyAction.KEY_PRESSED, modifiers);
+		input.processEvents();
+	}
+	
+	/**
+	 * @return the next GLFW key code.
+	 */
+	private int nextKeyId() {
+		
+		int keyId = keyIds[next];
+		next = (next + 1) % keyIds.length;
+		return keyId;
+	}
+	
+	/**
+	 * @return the key for the next GLFW key code.
+	 */
+	@Benchmark
+	public Key fromId() {
+		
+		return Key.fromId(nextKeyId());
+	}
+	
+	/**
+	 * @return the modifiers for the next modifier bit field.
+	 */
+	@Benchmark
+	public Set< KeyModifier > fromBitField() {
+		
+		return KeyModifier.fromBitField(next++ & 0xF);
+	}
+	
+	/**
+	 * @return whether shift is set in the next modifier bit field.
+	 */
+	@Benchmark
+	public boolean isSet() {
+		
+		return KeyModifier.SHIFT.isSet(next++ & 0xF);
+	}
+	
+	/**
+	 * Presses and releases the next key, processing the events between them as an
+	 * update would.
+	 * 
+	 * @param blackhole
+	 *            consumes the key state.
+	 */
+	@Benchmark
+	public void keyCallback(Blackhole blackhole) {
+		
+		Key key = Key.fromId(nextKeyId());
+		input.keyCallback(key, KeyAction.KEY_PRESSED, modifiers);
+		input.processEvents();
+		blackhole.consume(input.isKeyDown(key));
+		input.keyCallback(key, KeyAction.KEY_RELEASED, modifiers);
+		input.processEvents();
+	}
+	
+	/**
+	 * Evaluates every action and axis of a typical control scheme, as each update
+	 * would.
+	 * 
+	 * @return whether the chorded action is active.
+	 */
+	@Benchmark
+	public boolean inputMap() {
+		
+		map.update(input);
+		return map.isActive(2);
+	}
+	
+	/**
+	 * Decodes and queues a key tap as the window's key callback does, then
+	 * processes it as an update would.
+	 * 
+	 * @param blackhole
+	 *            consumes the key state.
+	 */
+	@Benchmark
+	public void windowKeyCallback(Blackhole blackhole) {
+		
+		int keyId = nextKeyId();
+		input.keyCallback(Key.fromId(keyId), KeyAction.fromCode(GLFW_PRESS), GLFW_MOD_SHIFT);
+		input.keyCallback(Key.fromId(keyId), KeyAction.fromCode(GLFW_RELEASE), GLFW_MOD_SHIFT);
+		input.processEvents();
+		blackhole.consume(input.wasPressed(Key.fromId(keyId)));
+	}
+}
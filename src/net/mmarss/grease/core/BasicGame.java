@@ -45,6 +45,28 @@ public abstract class BasicGame {
 	 */
 	public abstract void render(Graphics2d g);
 	
+	/**
+	 * Renders the game state, interpolated between the last two updates. When the
+	 * engine runs with a fixed timestep, a frame may fall between two simulation
+	 * ticks, or follow several of them; games can blend their previous and current
+	 * states by <code>alpha</code> to move smoothly at any display rate. With a
+	 * variable timestep, <code>alpha</code> is always 1.
+	 * 
+	 * By default, this method ignores <code>alpha</code> and calls
+	 * <code>render(g)</code>.
+	 * 
+	 * @param g
+	 *            the graphics object. This can be used to render 2-dimensional
+	 *            objects to the window.
+	 * @param alpha
+	 *            the fraction of a timestep elapsed since the last update, from 0
+	 *            to 1.
+	 */
+	public void render(Graphics2d g, double alpha) {
+		
+		render(g);
+	}
+	
 	/**
 	 * Cleans up any created or locked resources. This will be called after the
 	 * window is closed. It is called from the window thread, and once it is called,
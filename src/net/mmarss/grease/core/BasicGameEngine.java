@@ -1,12 +1,35 @@
 package net.mmarss.grease.core;
 
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import net.mmarss.grease.exception.GreaseFileException;
 import net.mmarss.grease.exception.GreaseInvalidArgumentException;
+import net.mmarss.grease.exception.GreaseInvalidMethodCallException;
+import net.mmarss.grease.exception.GreaseSystemException;
 import net.mmarss.grease.graphics.Graphics2d;
+import net.mmarss.grease.graphics.HeadlessGraphics2d;
+import net.mmarss.grease.graphics.PixelBufferPool;
+import net.mmarss.grease.graphics.SoftwareGraphics2d;
+import net.mmarss.grease.input.CursorMode;
+import net.mmarss.grease.input.InputManager;
+import net.mmarss.grease.input.ProgrammableInput;
 
 /**
  * A game engine sitting behind a {@link BasicGame}. This class manages the
  * execution thread, the operating system window, user input and the game
  * renderer.
+ * 
+ * An engine created with <code>createHeadless</code> runs the same game without
+ * a window, for dedicated servers and batch simulations. It never initializes
+ * GLFW or OpenGL; the game renders to a graphics object which draws nothing,
+ * or rasterizes on the processor, and reads input fed to a
+ * {@link ProgrammableInput}.
+ * 
+ * A session can be recorded with <code>record</code> and replayed exactly by an
+ * engine created with <code>createReplay</code>, provided the game draws its
+ * randomness from <code>getRandom</code>. Replays run on virtual time, as fast as
+ * the processor allows, so that a slow frame can be reproduced and profiled.
  */
 public class BasicGameEngine {
 	
@@ -22,6 +45,63 @@ public class BasicGameEngine {
 	 * specified.
 	 */
 	private static final int	GAME_DEFAULT_WINDOW_HEIGHT	= 600;
+	/**
+	 * The default maximum number of fixed timestep updates run in one frame,
+	 * after which the remaining simulation time is dropped.
+	 */
+	private static final int	DEFAULT_MAX_UPDATES_PER_FRAME	= 5;
+	/** The default number of ticks per second in headless mode. */
+	private static final int	DEFAULT_HEADLESS_TICK_RATE		= 60;
+	
+	/** The game run by this engine. */
+	private final BasicGame		game;
+	/** Whether this engine runs without a window. */
+	private final boolean		headless;
+	/** The input manager passed to the game's updates. */
+	private InputManager		input;
+	/** The frame pacer used to wait between frames, or ticks when headless. */
+	private final FramePacer	framePacer;
+	/** The profiler timing the phases of each frame. */
+	private final FrameProfiler	profiler;
+	/** Whether the profiler's frame time graph is drawn over the game. */
+	private volatile boolean	profilerGraph	= false;
+	/** The metrics exposed to JMX while the engine runs. */
+	private final EngineMetrics	metrics;
+	/** Whether a headless engine has been asked to stop. */
+	private volatile boolean	stopRequested	= false;
+	
+	/** The random number generator shared by the game. */
+	private final GreaseRandom random = new GreaseRandom();
+	
+	/** The recorder writing the session's input log, or <code>null</code>. */
+	private InputRecorder	recorder	= null;
+	/** The input log being replayed, or <code>null</code>. */
+	private InputReplay		replay		= null;
+	
+	/** The resource cache shared by the game. */
+	private final ResourceManager resourceManager = new ResourceManager();
+	
+	/** The watcher reloading changed resources, or <code>null</code> if disabled. */
+	private ResourceWatcher	resourceWatcher	= null;
+	/** Whether the engine has been started. */
+	private boolean			running			= false;
+	
+	/** The graphics object through which the game is rendered. */
+	private Graphics2d graphics2d;
+	
+	/** The clock driving the main loop and the game's update deltas. */
+	private Clock	clock		= SystemClock.getInstance();
+	/** The timer measuring the time between frames. */
+	private Timer	frameTimer;
+	
+	/** The simulation timestep in seconds, or 0 for a variable timestep. */
+	private double	fixedTimestep		= 0;
+	/** The maximum number of fixed timestep updates run in one frame. */
+	private int		maxUpdatesPerFrame	= DEFAULT_MAX_UPDATES_PER_FRAME;
+	/** The simulation time not yet consumed by fixed timestep updates, in seconds. */
+	private double	accumulator			= 0;
+	/** The fraction of a timestep to interpolate the next frame by. */
+	private double	interpolation		= 1;
 	
 	/**
 	 * Constructs a new <code>BasicGameEngine</code>, running a
@@ -81,16 +161,182 @@ public class BasicGameEngine {
 			throw new GreaseInvalidArgumentException("height", height, "Window dimensions must be positive.");
 		}
 		
-		createWindow(game, title, width, height);
+		this.game = game;
+		headless = false;
+		createWindow(title, width, height);
+		input = Window.getInstance().getInputManager();
+		framePacer = Window.getInstance().getFramePacer();
+		profiler = Window.getInstance().getProfiler();
+		metrics = new EngineMetrics(framePacer, resourceManager, graphics2d);
+	}
+	
+	/**
+	 * Constructs a new headless <code>BasicGameEngine</code>.
+	 * 
+	 * @param game
+	 *            the game to be executed by this <code>BasicGameEngine</code>.
+	 * @param input
+	 *            the input passed to the game's updates.
+	 * @param graphics
+	 *            the graphics object the game renders to.
+	 */
+	private BasicGameEngine(BasicGame game, ProgrammableInput input, Graphics2d graphics) {
+		
+		if (game == null) {
+			throw new GreaseInvalidArgumentException("game", null);
+		}
+		
+		if (input == null) {
+			throw new GreaseInvalidArgumentException("input", null);
+		}
+		
+		if (graphics == null) {
+			throw new GreaseInvalidArgumentException("graphics", null);
+		}
+		
+		this.game = game;
+		headless = true;
+		this.input = input;
+		framePacer = new FramePacer(DEFAULT_HEADLESS_TICK_RATE);
+		profiler = new FrameProfiler();
+		graphics2d = graphics;
+		metrics = new EngineMetrics(framePacer, resourceManager, graphics2d);
+	}
+	
+	/**
+	 * Creates an engine which runs the game without a window. The game is ticked
+	 * at 60 ticks per second by default, which can be changed with
+	 * <code>setTargetFrameRate</code>. No keys are ever pressed.
+	 * 
+	 * @param game
+	 *            the game to be executed.
+	 * @return the headless engine.
+	 */
+	public static BasicGameEngine createHeadless(BasicGame game) {
+		
+		return new BasicGameEngine(game, new ProgrammableInput(), new HeadlessGraphics2d());
+	}
+	
+	/**
+	 * Creates an engine which runs the game without a window, reading its input
+	 * from the specified programmable input. The game is ticked at 60 ticks per
+	 * second by default, which can be changed with <code>setTargetFrameRate</code>.
+	 * 
+	 * @param game
+	 *            the game to be executed.
+	 * @param input
+	 *            the input passed to the game's updates.
+	 * @return the headless engine.
+	 */
+	public static BasicGameEngine createHeadless(BasicGame game, ProgrammableInput input) {
+		
+		return new BasicGameEngine(game, input, new HeadlessGraphics2d());
+	}
+	
+	/**
+	 * Creates an engine which runs the game without a window, rendering to the
+	 * specified graphics object; typically a {@link SoftwareGraphics2d}, so that
+	 * frames can be rendered without a GPU. The graphics object is taken through
+	 * its whole render cycle each frame, from the engine's thread. The game is
+	 * ticked at 60 ticks per second by default, which can be changed with
+	 * <code>setTargetFrameRate</code>.
+	 * 
+	 * @param game
+	 *            the game to be executed.
+	 * @param input
+	 *            the input passed to the game's updates.
+	 * @param graphics
+	 *            the graphics object the game renders to.
+	 * @return the headless engine.
+	 */
+	public static BasicGameEngine createHeadless(BasicGame game, ProgrammableInput input, Graphics2d graphics) {
+		
+		return new BasicGameEngine(game, input, graphics);
+	}
+	
+	/**
+	 * Creates an engine which replays a recorded input log. The game receives the
+	 * recorded key events and update deltas, and the engine's random number
+	 * generator is seeded as it was in the recorded session. Frames are not paced,
+	 * so the replay runs as fast as possible, and the engine stops once the log
+	 * has ended.
+	 * 
+	 * @param game
+	 *            the game to be executed.
+	 * @param in
+	 *            the stream to read the input log from. It is closed when the
+	 *            engine stops.
+	 * @param render
+	 *            <code>true</code> to render the replay in a window, or
+	 *            <code>false</code> to replay it headless.
+	 * @return the replaying engine.
+	 * @throws GreaseFileException
+	 *             if the input log header could not be read.
+	 */
+	public static BasicGameEngine createReplay(BasicGame game, InputStream in, boolean render)
+			throws GreaseFileException {
+		
+		InputReplay replay = new InputReplay(in);
+		
+		BasicGameEngine engine;
+		if (render) {
+			engine = new BasicGameEngine(game);
+			engine.input = new ProgrammableInput(); // Ignore the window's input
+			engine.setVsyncMode(VsyncMode.OFF);
+		} else {
+			engine = createHeadless(game);
+		}
+		
+		engine.replay = replay;
+		engine.random.setSeed(replay.getSeed());
+		engine.setClock(new VirtualClock());
+		engine.setTargetFrameRate(0);
+		return engine;
+	}
+	
+	/**
+	 * Records the session to a compact binary input log, from which it can be
+	 * replayed with <code>createReplay</code>. The log holds the random seed, every
+	 * key event and every frame delta. Key events are replayed before the update
+	 * that processed them, including each fixed timestep update of a frame, so
+	 * input fed to a programmable input from within an update reaches the replayed
+	 * game one update later. Must be called before <code>run</code>.
+	 * 
+	 * @param out
+	 *            the stream to write the input log to. It is closed when the
+	 *            engine stops.
+	 */
+	public void record(OutputStream out) {
+		
+		if (running) {
+			throw new GreaseInvalidMethodCallException("Recording must be started before the engine is run.");
+		}
+		
+		if (replay != null) {
+			throw new GreaseInvalidMethodCallException("Replays cannot be recorded.");
+		}
+		
+		if (out == null) {
+			throw new GreaseInvalidArgumentException("out", null);
+		}
+		
+		recorder = new InputRecorder(out);
+		input.setInputListener(recorder);
 	}
 	
 	/**
 	 * Starts this game engine. This method will not return until the game is
-	 * closed.
+	 * closed, or until a headless engine is stopped.
 	 */
 	public void run() {
 		
-		Window.getInstance().run();
+		running = true;
+		metrics.register();
+		if (headless) {
+			runHeadless();
+		} else {
+			Window.getInstance().run();
+		}
 	}
 	
 	/**
@@ -99,14 +345,339 @@ public class BasicGameEngine {
 	 */
 	public void stop() {
 		
-		Window.getInstance().close();
+		if (headless) {
+			stopRequested = true;
+		} else {
+			Window.getInstance().close();
+		}
+	}
+	
+	/**
+	 * @return the profiler timing the phases of each frame. Games can time their
+	 *         own work in scopes nested within the engine's, once the profiler is
+	 *         enabled.
+	 */
+	public FrameProfiler getProfiler() {
+		
+		return profiler;
+	}
+	
+	/**
+	 * Shows or hides a graph of recent frame times in the bottom-left corner of
+	 * the window, broken down by phase. Showing the graph enables the profiler.
+	 * 
+	 * @param visible
+	 *            <code>true</code> to show the graph.
+	 */
+	public void setProfilerGraphVisible(boolean visible) {
+		
+		if (visible) {
+			profiler.setEnabled(true);
+		}
+		profilerGraph = visible;
+	}
+	
+	/**
+	 * @return the random number generator shared by the game. Games should draw
+	 *         all of their randomness from it, so that recorded sessions replay
+	 *         exactly.
+	 */
+	public GreaseRandom getRandom() {
+		
+		return random;
+	}
+	
+	/**
+	 * Seeds the random number generator shared by the game. By default, it is
+	 * seeded from the system time. Replays always use the recorded seed.
+	 * 
+	 * @param seed
+	 *            the new seed.
+	 */
+	public void setSeed(long seed) {
+		
+		if (replay == null) {
+			random.setSeed(seed);
+		}
+	}
+	
+	/**
+	 * @return <code>true</code> if this engine runs without a window.
+	 */
+	public boolean isHeadless() {
+		
+		return headless;
+	}
+	
+	/**
+	 * @return the input passed to the game's updates. For headless engines, this
+	 *         is a {@link ProgrammableInput}.
+	 */
+	public InputManager getInput() {
+		
+		return input;
+	}
+	
+	/**
+	 * Enables hot reloading, a development mode in which shaders and images are
+	 * reloaded while the game is running whenever their files change. This applies
+	 * to the built-in 2d shader, and to resources acquired from the resource
+	 * manager. Reloaded resources are swapped in before each update. Must be called
+	 * before <code>run</code>.
+	 */
+	public void enableHotReload() {
+		
+		if (running) {
+			throw new GreaseInvalidMethodCallException("Hot reloading must be enabled before the engine is run.");
+		}
+		
+		if (resourceWatcher == null) {
+			resourceWatcher = new ResourceWatcher();
+			resourceManager.setResourceWatcher(resourceWatcher);
+		}
+	}
+	
+	/**
+	 * Sets whether the game is rendered with premultiplied alpha blending. When
+	 * enabled, images acquired from the resource manager are premultiplied as they
+	 * are loaded, and additive drawing becomes available through
+	 * {@link Graphics2d#setAdditive(boolean)}.
+	 * 
+	 * @param premultipliedAlpha
+	 *            <code>true</code> to use premultiplied alpha blending.
+	 */
+	public void setPremultipliedAlpha(boolean premultipliedAlpha) {
+		
+		resourceManager.setPremultiplyImages(premultipliedAlpha);
+		graphics2d.setPremultipliedAlpha(premultipliedAlpha);
+	}
+	
+	/**
+	 * Runs the game simulation at a fixed rate, independent of the frame rate.
+	 * Each frame, the game is updated as many times as needed to catch up with the
+	 * elapsed time, always with the same delta, and is then rendered with the
+	 * fraction of a timestep left over as its interpolation alpha. After a long
+	 * hitch, at most <code>setMaxUpdatesPerFrame</code> updates are run and the
+	 * rest of the backlog is dropped, so that a slow update cannot cause an ever
+	 * growing number of catch-up updates.
+	 * 
+	 * @param updatesPerSecond
+	 *            the simulation rate, or 0 to update once per frame with the
+	 *            elapsed time, which is the default.
+	 */
+	public void setFixedTimestep(double updatesPerSecond) {
+		
+		if (updatesPerSecond < 0) {
+			throw new GreaseInvalidArgumentException("updatesPerSecond", updatesPerSecond,
+					"Update rates must be non-negative.");
+		}
+		
+		fixedTimestep = updatesPerSecond == 0 ? 0 : 1 / updatesPerSecond;
+		accumulator = 0;
+	}
+	
+	/**
+	 * Sets the clock driving the main loop, which by default follows the system
+	 * time. With a {@link VirtualClock}, the engine never waits between frames,
+	 * but advances the clock by exactly one frame instead, so the game runs as fast
+	 * as possible while seeing the same deltas on every run. Input events are
+	 * stamped by the same clock. Must be called before <code>run</code>.
+	 * 
+	 * @param clock
+	 *            the clock to use.
+	 */
+	public void setClock(Clock clock) {
+		
+		if (running) {
+			throw new GreaseInvalidMethodCallException("The clock must be set before the engine is run.");
+		}
+		
+		if (clock == null) {
+			throw new GreaseInvalidArgumentException("clock", clock, "Clocks must be non-null.");
+		}
+		
+		this.clock = clock;
+		framePacer.setClock(clock);
+		input.setClock(clock);
+	}
+	
+	/**
+	 * @return the clock driving the main loop.
+	 */
+	public Clock getClock() {
+		
+		return clock;
+	}
+	
+	/**
+	 * Sets the target frame rate. The default is 60 frames per second. In headless
+	 * mode, this is the tick rate.
+	 * 
+	 * @param framesPerSecond
+	 *            the target frame rate, or 0 to render frames as fast as possible,
+	 *            limited only by vsync.
+	 */
+	public void setTargetFrameRate(double framesPerSecond) {
+		
+		framePacer.setTargetFrameRate(framesPerSecond);
+	}
+	
+	/**
+	 * Enables or disables adaptive frame rate. While enabled, the frame rate is
+	 * lowered to a whole fraction of the target frame rate when frames keep taking
+	 * longer than their budget, and raised again once there is enough headroom.
+	 * This trades a lower, steady frame rate for stutter on slow hardware.
+	 * 
+	 * @param adaptive
+	 *            <code>true</code> to enable adaptive frame rate.
+	 * @param minFramesPerSecond
+	 *            the lowest frame rate to drop to.
+	 */
+	public void setAdaptiveFrameRate(boolean adaptive, double minFramesPerSecond) {
+		
+		framePacer.setAdaptive(adaptive, minFramesPerSecond);
+	}
+	
+	/**
+	 * Saves the next frame as a PNG file. The frame is read back asynchronously
+	 * and encoded on a background thread, so the frame rate is not affected.
+	 * Screenshots requested while the engine stops are still written. Can be
+	 * called from any thread.
+	 * 
+	 * @param filename
+	 *            the file to write.
+	 */
+	public void takeScreenshot(String filename) {
+		
+		if (headless) {
+			throw new GreaseInvalidMethodCallException("Cannot take a screenshot without a window.");
+		}
+		
+		Window.getInstance().takeScreenshot(filename);
+	}
+	
+	/**
+	 * Starts recording frames to disk, for example to review a session's
+	 * performance. Frames are read back and written in the background; frames
+	 * which cannot be read or written in time are dropped and counted rather
+	 * than holding up the loop, so the capture does not distort frame times.
+	 * 
+	 * @param path
+	 *            the path of the raw file, or the prefix of the PNG files.
+	 * @param format
+	 *            the format to write the frames in.
+	 * @param interval
+	 *            the number of frames between captured frames; 1 captures every
+	 *            frame.
+	 * @param seconds
+	 *            the length of the capture window in seconds, or 0 to capture
+	 *            until stopped.
+	 * @return the capture, which can be stopped and queried for dropped frames.
+	 * @throws GreaseFileException
+	 *             if the raw file could not be opened.
+	 * @throws GreaseInvalidMethodCallException
+	 *             if the engine is headless, or a capture is already in
+	 *             progress.
+	 */
+	public FrameCapture startCapture(String path, CaptureFormat format, int interval, double seconds)
+			throws GreaseFileException {
+		
+		if (headless) {
+			throw new GreaseInvalidMethodCallException("Cannot capture frames without a window.");
+		}
+		
+		return Window.getInstance().startCapture(path, format, interval, seconds);
+	}
+	
+	/**
+	 * Sets the vertical synchronization mode. The default is <code>ON</code>. Has
+	 * no effect in headless mode.
+	 * 
+	 * @param vsyncMode
+	 *            the new vsync mode.
+	 */
+	public void setVsyncMode(VsyncMode vsyncMode) {
+		
+		if (!headless) {
+			Window.getInstance().setVsyncMode(vsyncMode);
+		}
+	}
+	
+	/**
+	 * Sets how the window treats the cursor. The default is <code>NORMAL</code>;
+	 * use <code>DISABLED</code> for mouse look. Has no effect in headless mode.
+	 * 
+	 * @param cursorMode
+	 *            the new cursor mode.
+	 */
+	public void setCursorMode(CursorMode cursorMode) {
+		
+		if (!headless) {
+			Window.getInstance().setCursorMode(cursorMode);
+		}
+	}
+	
+	/**
+	 * Enables or disables threaded rendering. With threaded rendering, the thread
+	 * calling <code>run</code> only handles window events, and the game is updated
+	 * and rendered on a separate thread; input is received as it arrives, and
+	 * drained just before each update. Must be set before the engine runs, and
+	 * <code>run</code> must then be called from the main thread. Has no effect in
+	 * headless mode.
+	 * 
+	 * @param threadedRendering
+	 *            <code>true</code> to render on a separate thread.
+	 */
+	public void setThreadedRendering(boolean threadedRendering) {
+		
+		if (!headless) {
+			Window.getInstance().setThreadedRendering(threadedRendering);
+		}
+	}
+	
+	/**
+	 * Sets the maximum time between input polls while waiting for the next frame.
+	 * The default is 10 milliseconds. Has no effect in headless mode.
+	 * 
+	 * @param milliseconds
+	 *            the maximum time between polls, in milliseconds.
+	 */
+	public void setInputPollRate(int milliseconds) {
+		
+		if (!headless) {
+			Window.getInstance().setInputPollRate(milliseconds);
+		}
+	}
+	
+	/**
+	 * Sets the maximum number of fixed timestep updates run in a single frame.
+	 * Only used when a fixed timestep is set.
+	 * 
+	 * @param updates
+	 *            the maximum number of updates per frame, at least 1.
+	 */
+	public void setMaxUpdatesPerFrame(int updates) {
+		
+		if (updates < 1) {
+			throw new GreaseInvalidArgumentException("updates", updates, "At least one update must be allowed.");
+		}
+		
+		maxUpdatesPerFrame = updates;
+	}
+	
+	/**
+	 * @return the resource manager used to share loaded images and shaders. Any
+	 *         resources still held when the game is closed are cleaned up after
+	 *         the game's <code>cleanup</code> method is called.
+	 */
+	public ResourceManager getResourceManager() {
+		
+		return resourceManager;
 	}
 	
 	/**
 	 * Creates the game window.
 	 * 
-	 * @param game
-	 *            the game to be executed by this <code>BasicGameEngine</code>.
 	 * @param title
 	 *            the title of the window, shown by the operating system in the
 	 *            window title bar.
@@ -115,31 +686,231 @@ public class BasicGameEngine {
 	 * @param height
 	 *            the height of the window, in pixels.
 	 */
-	private void createWindow(BasicGame game, String title, int width, int height) {
+	private void createWindow(String title, int width, int height) {
 		
-		Graphics2d graphics2d = new Graphics2d() {
+		graphics2d = new Graphics2d() {
+			
+			@Override
+			public void init() {
+				
+				super.init();
+				if (resourceWatcher != null && getShader() != null) {
+					resourceWatcher.watchShader(getShader(), VERTEX_SHADER_FILE, FRAGMENT_SHADER_FILE);
+				}
+			}
 			
 			@Override
 			public void render() {
 				
-				game.render(this);
+				game.render(this, interpolation);
+				if (profilerGraph) {
+					double frameRate = framePacer.getCurrentFrameRate();
+					profiler.drawGraph(this, 10, getHeight() - 10, 240, 80, 1 / (frameRate == 0 ? 60 : frameRate));
+				}
 				super.render();
 			}
 		};
 		
-		Timer frameTimer = new Timer();
-		
 		// Create the window
-		Window.createInstance(width, height, title, graphics2d, () -> {
-			// Initialize any resources
-			game.init();
-			frameTimer.start();
-		}, () -> {
-			// Update the game state
-			game.update(frameTimer.restart() * 1000, Window.getInstance().getInputManager());
-		}, () -> {
-			// Clean up any resources
-			game.cleanup();
-		});
+		Window.createInstance(width, height, title, graphics2d, this::initGame, this::updateGame, this::cleanupGame);
+	}
+	
+	/**
+	 * Runs the game without a window, ticking it until the engine is stopped.
+	 */
+	private void runHeadless() {
+		
+		try {
+			graphics2d.init();
+			initGame();
+			framePacer.start();
+			
+			long frameCount = 0;
+			while (!stopRequested) {
+				framePacer.waitForNextFrame();
+				Object frameEvent = EngineEvent.FRAME.begin();
+				profiler.beginFrame();
+				
+				profiler.begin(FrameProfiler.PHASE_UPDATE);
+				updateGame();
+				profiler.end();
+				
+				profiler.begin(FrameProfiler.PHASE_PRE_RENDER);
+				graphics2d.preRender();
+				profiler.end();
+				
+				profiler.begin(FrameProfiler.PHASE_RENDER);
+				game.render(graphics2d, interpolation);
+				graphics2d.render();
+				profiler.end();
+				
+				profiler.begin(FrameProfiler.PHASE_POST_RENDER);
+				graphics2d.postRender();
+				graphics2d.finalizeFrame();
+				profiler.end();
+				
+				profiler.endFrame();
+				EngineEvent.FRAME.commit(frameEvent, ++frameCount);
+			}
+			
+		} catch (Exception e) {
+			
+			e.printStackTrace();
+			
+		} finally {
+			
+			cleanupGame();
+			graphics2d.cleanup();
+		}
+	}
+	
+	/**
+	 * Initializes the game. Called once before the first update.
+	 */
+	private void initGame() {
+		
+		// Initialize any resources
+		if (resourceWatcher != null) {
+			try {
+				resourceWatcher.start();
+			} catch (GreaseSystemException e) {
+				e.printStackTrace();
+			}
+		}
+		if (replay != null) {
+			random.setSeed(replay.getSeed());
+			fixedTimestep = replay.getFixedTimestep();
+			maxUpdatesPerFrame = replay.getMaxUpdatesPerFrame();
+		}
+		if (recorder != null) {
+			recorder.start(random.getSeed(), fixedTimestep, maxUpdatesPerFrame);
+		}
+		game.init();
+		frameTimer = new Timer(clock).start();
+	}
+	
+	/**
+	 * Prepares and updates the game for a new frame.
+	 */
+	private void updateGame() {
+		
+		// Swap in any reloaded resources
+		if (resourceWatcher != null) {
+			resourceWatcher.applyChanges();
+		}
+		
+		double elapsed = frameTimer.restart();
+		
+		// Take the input and delta from the log when replaying
+		if (replay != null) {
+			elapsed = replay.nextFrame((ProgrammableInput) input);
+			if (elapsed < 0) {
+				stop();
+				return;
+			}
+			
+			// An uncapped virtual clock only moves when advanced, so move it by the
+			// recorded frame time to give the pacer's metrics the recorded frames
+			if (clock instanceof VirtualClock) {
+				((VirtualClock) clock).advanceSeconds(elapsed);
+			}
+		}
+		
+		// Record the frame ahead of the events its updates process
+		if (recorder != null) {
+			recorder.recordFrame(elapsed);
+		}
+		
+		// Update the game state, reporting updates which overrun the frame budget
+		Object updateEvent = EngineEvent.LONG_UPDATE.begin();
+		long start = System.nanoTime();
+		update(elapsed);
+		
+		// Uncapped replays are measured against the recorded frame times
+		double frameRate = framePacer.getCurrentFrameRate();
+		long budget = (long) (1e9 / (frameRate == 0 ? DEFAULT_HEADLESS_TICK_RATE : frameRate));
+		if (frameRate == 0 && replay != null && elapsed > 0) {
+			budget = (long) (elapsed * 1e9);
+		}
+		if (updateEvent != null && System.nanoTime() - start > budget) {
+			EngineEvent.LONG_UPDATE.commit(updateEvent, elapsed * 1000, budget);
+		}
+	}
+	
+	/**
+	 * Cleans up the game and the engine's resources. Called once after the last
+	 * frame.
+	 */
+	private void cleanupGame() {
+		
+		// Clean up any resources
+		game.cleanup();
+		if (resourceWatcher != null) {
+			resourceWatcher.stop();
+		}
+		resourceManager.cleanup();
+		PixelBufferPool.getInstance().trim();
+		
+		if (recorder != null) {
+			recorder.close();
+		}
+		metrics.unregister();
+		if (replay != null) {
+			replay.close();
+		}
+	}
+	
+	/**
+	 * Updates the game for the time elapsed since the last frame, either once with
+	 * that time as its delta, or as many fixed timesteps as have elapsed. Queued
+	 * input events are processed before each update, so events arriving in a
+	 * frame with no fixed timestep update wait for the next one.
+	 * 
+	 * @param elapsed
+	 *            the time since the last frame, in seconds.
+	 */
+	private void update(double elapsed) {
+		
+		if (fixedTimestep == 0) {
+			processInput();
+			game.update(elapsed * 1000, input);
+			interpolation = 1;
+			return;
+		}
+		
+		accumulator += elapsed;
+		
+		int updates = 0;
+		while (accumulator >= fixedTimestep && updates < maxUpdatesPerFrame) {
+			processInput();
+			game.update(fixedTimestep * 1000, input);
+			accumulator -= fixedTimestep;
+			updates++;
+		}
+		
+		// Drop whole timesteps that could not be caught up on
+		if (accumulator >= fixedTimestep) {
+			accumulator %= fixedTimestep;
+		}
+		
+		interpolation = accumulator / fixedTimestep;
+	}
+	
+	/**
+	 * Processes the queued input events before an update. When replaying, the
+	 * events recorded for the update are queued first; when recording, the end of
+	 * the update's events is recorded after them.
+	 */
+	private void processInput() {
+		
+		if (replay != null) {
+			replay.nextUpdate((ProgrammableInput) input);
+		}
+		
+		input.processEvents();
+		
+		if (recorder != null) {
+			recorder.recordUpdate();
+		}
 	}
 }
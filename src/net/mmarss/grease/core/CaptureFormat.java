@@ -0,0 +1,26 @@
+package net.mmarss.grease.core;
+
+/**
+ * An enumeration of the file formats frame captures can be written in.
+ */
+public enum CaptureFormat {
+	
+	/**
+	 * A single uncompressed stream. The file starts with the magic number and
+	 * format version as big-endian integers. Each frame is then its frame number
+	 * as a long, its width and height as integers, and its RGBA pixels with the
+	 * top row first. Cheap enough to keep up with capture at full frame rate.
+	 */
+	RAW,
+	/**
+	 * One PNG file per frame, named by appending the six digit frame number and
+	 * <code>.png</code> to the capture path. Much smaller, but encoding is slow,
+	 * so frames are likely to be dropped at high capture rates.
+	 */
+	PNG_SEQUENCE;
+	
+	/** The magic number at the start of every raw capture. */
+	/* package */ static final int	RAW_MAGIC	= 0x47524643;	// "GRFC"
+	/** The raw capture format version. */
+	/* package */ static final int	RAW_VERSION	= 1;
+}
@@ -0,0 +1,40 @@
+package net.mmarss.grease.core;
+
+/**
+ * A source of monotonic time, driving timers and the main loop. Real clocks
+ * follow the system time, while virtual clocks only move when told to, which
+ * lets simulations run faster than real time and deterministically.
+ */
+public interface Clock {
+	
+	/**
+	 * @return the current time in nanoseconds, measured from an arbitrary origin.
+	 */
+	public long nanoTime();
+	
+	/**
+	 * @return the current time in seconds, measured from an arbitrary origin.
+	 */
+	public default double seconds() {
+		
+		return nanoTime() / 1e9d;
+	}
+	
+	/**
+	 * Waits until this clock reaches the specified time. Real clocks block the
+	 * calling thread, while virtual clocks jump forward to the time immediately.
+	 * 
+	 * @param nanoTime
+	 *            the time to wait for, in nanoseconds.
+	 */
+	public void waitUntil(long nanoTime);
+	
+	/**
+	 * @return <code>true</code> if this clock only moves when explicitly advanced,
+	 *         in which case waiting on it never blocks.
+	 */
+	public default boolean isVirtual() {
+		
+		return false;
+	}
+}
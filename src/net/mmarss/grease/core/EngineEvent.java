@@ -0,0 +1,420 @@
+package net.mmarss.grease.core;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An enumeration of the events the engine emits to Java Flight Recorder. The
+ * event types are defined at runtime through <code>jdk.jfr.EventFactory</code>,
+ * since the library is built against the Java 8 API, which does not include
+ * the Flight Recorder API. On runtimes without Flight Recorder, or while no
+ * recording is running, emitting an event does nothing: a listener registered
+ * with Flight Recorder tracks whether any recording is running, so that
+ * <code>begin</code> costs a single field read, and events with one numeric
+ * field can be committed without boxing.
+ * 
+ * Events are timed between <code>begin</code> and <code>commit</code>:
+ * 
+ * <pre>
+ * Object event = EngineEvent.RESOURCE_LOAD.begin();
+ * // ... load the resource
+ * EngineEvent.RESOURCE_LOAD.commit(event, key, type, memory, videoMemory);
+ * </pre>
+ */
+public enum EngineEvent {
+	
+	/** A frame of the main loop. */
+	FRAME("Frame", "A frame of the main loop.", new Field(long.class, "frame", "Frame Number", null)),
+	/** A game update which took longer than the frame budget. */
+	LONG_UPDATE("Long Update", "A game update which took longer than the frame budget.",
+			new Field(double.class, "delta", "Delta (ms)", null),
+			new Field(long.class, "budget", "Frame Budget", Field.TIMESPAN)),
+	/** Pixel data uploaded to a texture. */
+	TEXTURE_UPLOAD("Texture Upload", "Pixel data uploaded to a texture.",
+			new Field(int.class, "width", "Width", null), new Field(int.class, "height", "Height", null),
+			new Field(long.class, "bytes", "Bytes", Field.BYTES)),
+	/** A vertex or fragment shader compiled. */
+	SHADER_COMPILE("Shader Compile", "A vertex or fragment shader compiled.",
+			new Field(String.class, "shaderType", "Shader Type", null),
+			new Field(boolean.class, "success", "Success", null)),
+	/** A resource loaded into the resource manager. */
+	RESOURCE_LOAD("Resource Load", "A resource loaded into the resource manager.",
+			new Field(String.class, "key", "Key", null), new Field(String.class, "type", "Type", null),
+			new Field(long.class, "memory", "Memory", Field.BYTES),
+			new Field(long.class, "videoMemory", "Video Memory", Field.BYTES)),
+	/** A frame selected for capture which could not be read or written in time. */
+	CAPTURE_DROP("Capture Drop", "A frame selected for capture which could not be read or written in time.",
+			new Field(long.class, "frame", "Frame Number", null));
+	
+	/** The label of the event type. */
+	private final String	label;
+	/** The description of the event type. */
+	private final String	description;
+	/** The fields of the event type, in order. */
+	private final Field[]	fields;
+	
+	/** The event factory, or <code>null</code> if Flight Recorder is unavailable. */
+	private volatile Object	factory;
+	/** The event type created by the factory, or <code>null</code>. */
+	private volatile Object	eventType;
+	/** Whether creating the event factory has been attempted. */
+	private volatile boolean	created	= false;
+	
+	/** Describes a field of an event type. */
+	private static final class Field {
+		
+		/** Marks a field holding a time span in nanoseconds. */
+		private static final String	TIMESPAN	= "jdk.jfr.Timespan";
+		/** Marks a field holding a number of bytes. */
+		private static final String	BYTES		= "jdk.jfr.DataAmount";
+		
+		/** The field type. */
+		private final Class< ? >	type;
+		/** The field name. */
+		private final String		name;
+		/** The field label. */
+		private final String		label;
+		/** The name of the field's content type annotation, or <code>null</code>. */
+		private final String		contentType;
+		
+		/**
+		 * Constructs a new field description.
+		 * 
+		 * @param type
+		 *            the field type.
+		 * @param name
+		 *            the field name.
+		 * @param label
+		 *            the field label.
+		 * @param contentType
+		 *            the name of the field's content type annotation, or
+		 *            <code>null</code>.
+		 */
+		private Field(Class< ? > type, String name, String label, String contentType) {
+			
+			this.type = type;
+			this.name = name;
+			this.label = label;
+			this.contentType = contentType;
+		}
+	}
+	
+	/** Holds the reflected Flight Recorder API, if available. */
+	private static final class Jfr {
+		
+		/** Whether the Flight Recorder API is available. */
+		private static final boolean available;
+		
+		/**
+		 * Whether any recording may be running. Kept up to date by a recorder
+		 * listener; stays <code>true</code> if the listener could not be registered.
+		 */
+		private static volatile boolean recording = true;
+		
+		/** The <code>AnnotationElement(Class, Object)</code> constructor. */
+		private static Constructor< ? >	newAnnotation;
+		/** The <code>ValueDescriptor(Class, String, List)</code> constructor. */
+		private static Constructor< ? >	newValue;
+		/** The <code>EventFactory.create(List, List)</code> method. */
+		private static Method			create;
+		/** The <code>EventFactory.newEvent()</code> method. */
+		private static Method			newEvent;
+		/** The <code>EventFactory.getEventType()</code> method. */
+		private static Method			getEventType;
+		/** The <code>EventType.isEnabled()</code> method. */
+		private static Method			isEnabled;
+		/** The <code>Event.begin()</code> method. */
+		private static Method			begin;
+		/** The <code>Event.end()</code> method. */
+		private static Method			end;
+		/** The <code>Event.shouldCommit()</code> method. */
+		private static Method			shouldCommit;
+		/** The <code>Event.set(int, Object)</code> method. */
+		private static Method			set;
+		/** The <code>Event.commit()</code> method. */
+		private static Method			commit;
+		/** The <code>FlightRecorder.getFlightRecorder()</code> method. */
+		private static Method			getFlightRecorder;
+		/** The <code>FlightRecorder.getRecordings()</code> method. */
+		private static Method			getRecordings;
+		/** The <code>Recording.getState()</code> method. */
+		private static Method			getState;
+		
+		static {
+			boolean found;
+			try {
+				Class< ? > annotationElement = Class.forName("jdk.jfr.AnnotationElement");
+				Class< ? > valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor");
+				Class< ? > eventFactory = Class.forName("jdk.jfr.EventFactory");
+				Class< ? > eventType = Class.forName("jdk.jfr.EventType");
+				Class< ? > event = Class.forName("jdk.jfr.Event");
+				
+				newAnnotation = annotationElement.getConstructor(Class.class, Object.class);
+				newValue = valueDescriptor.getConstructor(Class.class, String.class, List.class);
+				create = eventFactory.getMethod("create", List.class, List.class);
+				newEvent = eventFactory.getMethod("newEvent");
+				getEventType = eventFactory.getMethod("getEventType");
+				isEnabled = eventType.getMethod("isEnabled");
+				begin = event.getMethod("begin");
+				end = event.getMethod("end");
+				shouldCommit = event.getMethod("shouldCommit");
+				set = event.getMethod("set", int.class, Object.class);
+				commit = event.getMethod("commit");
+				found = true;
+			} catch (ReflectiveOperationException e) {
+				found = false;
+			}
+			available = found;
+			
+			if (available) {
+				listenForRecordings();
+			}
+		}
+		
+		/**
+		 * Registers a recorder listener which updates <code>recording</code>
+		 * whenever a recording changes state. The listener is told straight away if
+		 * Flight Recorder is already initialized.
+		 */
+		private static void listenForRecordings() {
+			
+			try {
+				Class< ? > flightRecorder = Class.forName("jdk.jfr.FlightRecorder");
+				Class< ? > listener = Class.forName("jdk.jfr.FlightRecorderListener");
+				getFlightRecorder = flightRecorder.getMethod("getFlightRecorder");
+				getRecordings = flightRecorder.getMethod("getRecordings");
+				getState = Class.forName("jdk.jfr.Recording").getMethod("getState");
+				
+				recording = false;
+				Object proxy = Proxy.newProxyInstance(listener.getClassLoader(), new Class< ? >[] { listener },
+						(instance, method, args) -> {
+							switch (method.getName()) {
+							case "recorderInitialized":
+							case "recordingStateChanged":
+								updateRecording();
+								return null;
+							case "equals":
+								return instance == args[0];
+							case "hashCode":
+								return System.identityHashCode(instance);
+							default:
+								return "Grease recording listener";
+							}
+						});
+				flightRecorder.getMethod("addListener", listener).invoke(null, proxy);
+			} catch (ReflectiveOperationException | RuntimeException e) {
+				recording = true; // Check each event type instead
+			}
+		}
+		
+		/**
+		 * Checks whether any recording is running. Called by the recorder listener.
+		 */
+		private static void updateRecording() {
+			
+			try {
+				boolean running = false;
+				for (Object r : (List< ? >) getRecordings.invoke(getFlightRecorder.invoke(null))) {
+					running |= getState.invoke(r).toString().equals("RUNNING");
+				}
+				recording = running;
+			} catch (ReflectiveOperationException | RuntimeException e) {
+				recording = true;
+			}
+		}
+	}
+	
+	/**
+	 * Constructs an event type constant.
+	 * 
+	 * @param label
+	 *            the label of the event type.
+	 * @param description
+	 *            the description of the event type.
+	 * @param fields
+	 *            the fields of the event type, in order.
+	 */
+	private EngineEvent(String label, String description, Field... fields) {
+		
+		this.label = label;
+		this.description = description;
+		this.fields = fields;
+	}
+	
+	/**
+	 * Starts timing an event.
+	 * 
+	 * @return the event, to be passed to <code>commit</code>, or <code>null</code>
+	 *         if the event is not being recorded.
+	 */
+	public Object begin() {
+		
+		if (!Jfr.available || !Jfr.recording) {
+			return null;
+		}
+		
+		Object eventFactory = getFactory();
+		Object type = eventType;
+		if (eventFactory == null || type == null) {
+			return null;
+		}
+		
+		try {
+			if (!(Boolean) Jfr.isEnabled.invoke(type)) {
+				return null;
+			}
+			
+			Object event = Jfr.newEvent.invoke(eventFactory);
+			Jfr.begin.invoke(event);
+			return event;
+		} catch (IllegalAccessException | InvocationTargetException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Finishes timing an event with a single numeric field, and commits it. Does
+	 * nothing, and does not allocate, if the event is <code>null</code>.
+	 * 
+	 * @param event
+	 *            the event returned by <code>begin</code>.
+	 * @param value
+	 *            the value of the event type's field.
+	 */
+	public void commit(Object event, long value) {
+		
+		if (event != null) {
+			commit(event, new Object[] { value });
+		}
+	}
+	
+	/**
+	 * Finishes timing an event and commits it with the specified field values.
+	 * Does nothing if the event is <code>null</code>; callers passing primitive
+	 * values on hot paths should check for <code>null</code> first, to avoid
+	 * boxing them.
+	 * 
+	 * @param event
+	 *            the event returned by <code>begin</code>.
+	 * @param values
+	 *            the values of the event type's fields, in order.
+	 */
+	public void commit(Object event, Object... values) {
+		
+		if (event == null) {
+			return;
+		}
+		
+		try {
+			Jfr.end.invoke(event);
+			if ((Boolean) Jfr.shouldCommit.invoke(event)) {
+				for (int i = 0; i < values.length; i++) {
+					Jfr.set.invoke(event, i, values[i]);
+				}
+				Jfr.commit.invoke(event);
+			}
+		} catch (IllegalAccessException | InvocationTargetException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Gets the event factory, creating and registering the event type the first
+	 * time it is used.
+	 * 
+	 * @return the event factory, or <code>null</code> if Flight Recorder is
+	 *         unavailable.
+	 */
+	private Object getFactory() {
+		
+		if (!created) {
+			synchronized (this) {
+				if (!created) {
+					factory = Jfr.available ? createFactory() : null;
+					eventType = getEventType(factory);
+					created = true;
+				}
+			}
+		}
+		
+		return factory;
+	}
+	
+	/**
+	 * Gets the event type created by an event factory.
+	 * 
+	 * @param eventFactory
+	 *            the event factory, or <code>null</code>.
+	 * @return the event type, or <code>null</code> if there is no factory.
+	 */
+	private static Object getEventType(Object eventFactory) {
+		
+		if (eventFactory == null) {
+			return null;
+		}
+		
+		try {
+			return Jfr.getEventType.invoke(eventFactory);
+		} catch (IllegalAccessException | InvocationTargetException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+	
+	/**
+	 * Creates the event factory for this event type.
+	 * 
+	 * @return the event factory, or <code>null</code> if it could not be created.
+	 */
+	private Object createFactory() {
+		
+		try {
+			List< Object > annotations = new ArrayList<>();
+			annotations.add(annotation("jdk.jfr.Name", "net.mmarss.grease." + name()));
+			annotations.add(annotation("jdk.jfr.Label", label));
+			annotations.add(annotation("jdk.jfr.Description", description));
+			annotations.add(annotation("jdk.jfr.Category", new String[] { "Grease" }));
+			
+			List< Object > values = new ArrayList<>();
+			for (Field field : fields) {
+				List< Object > fieldAnnotations = new ArrayList<>();
+				fieldAnnotations.add(annotation("jdk.jfr.Label", field.label));
+				if (field.contentType == Field.TIMESPAN) {
+					fieldAnnotations.add(annotation(field.contentType, "NANOSECONDS"));
+				} else if (field.contentType == Field.BYTES) {
+					fieldAnnotations.add(annotation(field.contentType, "BYTES"));
+				}
+				values.add(Jfr.newValue.newInstance(field.type, field.name, Collections.unmodifiableList(fieldAnnotations)));
+			}
+			
+			return Jfr.create.invoke(null, annotations, values);
+			
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+	
+	/**
+	 * Creates a Flight Recorder annotation element.
+	 * 
+	 * @param type
+	 *            the name of the annotation type.
+	 * @param value
+	 *            the annotation value.
+	 * @return the annotation element.
+	 * @throws ReflectiveOperationException
+	 *             if the annotation element could not be created.
+	 */
+	private static Object annotation(String type, Object value) throws ReflectiveOperationException {
+		
+		Class< ? extends Annotation > annotationType = Class.forName(type).asSubclass(Annotation.class);
+		return Jfr.newAnnotation.newInstance(annotationType, value);
+	}
+}
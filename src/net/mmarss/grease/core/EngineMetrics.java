@@ -0,0 +1,152 @@
+package net.mmarss.grease.core;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import net.mmarss.grease.graphics.Graphics2d;
+import net.mmarss.grease.graphics.PixelBufferPool;
+
+/**
+ * Exposes live engine metrics as a JMX MBean, so that existing monitoring tools
+ * can watch a running game. The engine registers its metrics under
+ * <code>net.mmarss.grease:type=EngineMetrics</code> while it runs.
+ */
+public class EngineMetrics implements EngineMetricsMBean {
+	
+	/** The object name under which the metrics are registered. */
+	private static final String OBJECT_NAME = "net.mmarss.grease:type=EngineMetrics";
+	
+	/** The frame pacer measuring frame times. */
+	private final FramePacer		framePacer;
+	/** The resource manager holding loaded resources. */
+	private final ResourceManager	resourceManager;
+	/** The graphics object counting draw calls. */
+	private final Graphics2d		graphics;
+	
+	/** The name under which the metrics are registered, or <code>null</code>. */
+	private ObjectName registeredName = null;
+	
+	/**
+	 * Constructs a new metrics object.
+	 * 
+	 * @param framePacer
+	 *            the frame pacer measuring frame times.
+	 * @param resourceManager
+	 *            the resource manager holding loaded resources.
+	 * @param graphics
+	 *            the graphics object counting draw calls.
+	 */
+	/* package */ EngineMetrics(FramePacer framePacer, ResourceManager resourceManager, Graphics2d graphics) {
+		
+		this.framePacer = framePacer;
+		this.resourceManager = resourceManager;
+		this.graphics = graphics;
+	}
+	
+	/**
+	 * Registers these metrics with the platform MBean server. Failures are
+	 * reported, but do not stop the engine.
+	 */
+	/* package */ synchronized void register() {
+		
+		if (registeredName != null) {
+			return;
+		}
+		
+		try {
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+			registeredName = name;
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Unregisters these metrics from the platform MBean server.
+	 */
+	/* package */ synchronized void unregister() {
+		
+		if (registeredName == null) {
+			return;
+		}
+		
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			server.unregisterMBean(registeredName);
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+		registeredName = null;
+	}
+	
+	@Override
+	public double getFramesPerSecond() {
+		
+		double mean = framePacer.getMeanFrameTime();
+		return mean == 0 ? 0 : 1 / mean;
+	}
+	
+	@Override
+	public double getFrameTimeMean() {
+		
+		return framePacer.getMeanFrameTime() * 1000;
+	}
+	
+	@Override
+	public double getFrameTimeP50() {
+		
+		return framePacer.getFrameTimePercentile(50) * 1000;
+	}
+	
+	@Override
+	public double getFrameTimeP95() {
+		
+		return framePacer.getFrameTimePercentile(95) * 1000;
+	}
+	
+	@Override
+	public double getFrameTimeP99() {
+		
+		return framePacer.getFrameTimePercentile(99) * 1000;
+	}
+	
+	@Override
+	public double getFrameTimeJitter() {
+		
+		return framePacer.getJitter() * 1000;
+	}
+	
+	@Override
+	public int getDrawCalls() {
+		
+		return graphics.getRenderStats().getDrawCalls();
+	}
+	
+	@Override
+	public long getVideoMemoryUsage() {
+		
+		return resourceManager.getVideoMemoryUsage();
+	}
+	
+	@Override
+	public long getMemoryUsage() {
+		
+		return resourceManager.getMemoryUsage();
+	}
+	
+	@Override
+	public long getPixelBufferBytes() {
+		
+		return PixelBufferPool.getInstance().getAllocatedBytes();
+	}
+	
+	@Override
+	public int getLoadedResources() {
+		
+		return resourceManager.getResourceCount();
+	}
+}
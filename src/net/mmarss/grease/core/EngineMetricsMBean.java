@@ -0,0 +1,65 @@
+package net.mmarss.grease.core;
+
+/**
+ * The management interface of {@link EngineMetrics}, through which JMX tools
+ * read live engine metrics.
+ */
+public interface EngineMetricsMBean {
+	
+	/**
+	 * @return the mean frame rate over recent frames, in frames per second.
+	 */
+	public double getFramesPerSecond();
+	
+	/**
+	 * @return the mean time between recent frames, in milliseconds.
+	 */
+	public double getFrameTimeMean();
+	
+	/**
+	 * @return the median time between recent frames, in milliseconds.
+	 */
+	public double getFrameTimeP50();
+	
+	/**
+	 * @return the 95th percentile time between recent frames, in milliseconds.
+	 */
+	public double getFrameTimeP95();
+	
+	/**
+	 * @return the 99th percentile time between recent frames, in milliseconds.
+	 */
+	public double getFrameTimeP99();
+	
+	/**
+	 * @return the standard deviation of the time between recent frames, in
+	 *         milliseconds.
+	 */
+	public double getFrameTimeJitter();
+	
+	/**
+	 * @return the number of draw calls made in the last frame.
+	 */
+	public int getDrawCalls();
+	
+	/**
+	 * @return the estimated number of bytes of video memory held by loaded
+	 *         resources.
+	 */
+	public long getVideoMemoryUsage();
+	
+	/**
+	 * @return the number of bytes of main memory held by loaded resources.
+	 */
+	public long getMemoryUsage();
+	
+	/**
+	 * @return the number of native bytes held by the pixel buffer pool.
+	 */
+	public long getPixelBufferBytes();
+	
+	/**
+	 * @return the number of resources loaded in the resource manager.
+	 */
+	public int getLoadedResources();
+}
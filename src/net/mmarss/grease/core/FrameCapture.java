@@ -0,0 +1,402 @@
+package net.mmarss.grease.core;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import net.mmarss.grease.exception.GreaseFileException;
+import net.mmarss.grease.exception.GreaseInvalidArgumentException;
+import net.mmarss.grease.graphics.PixelBufferPool;
+
+/**
+ * Records frames to disk while the game runs. Frames are read back
+ * asynchronously by the window and queued for a background writer; the queue
+ * is bounded, and when the writer falls behind, or no pixel buffer is free for
+ * a read, the frame is dropped rather than held up. Dropped frames are counted,
+ * emitted as Flight Recorder events, and reported when the capture ends, so a
+ * capture never distorts the frame times it records.
+ * 
+ * A capture records every <i>n</i>th frame, optionally for a limited time
+ * window, until it is stopped or the window closes.
+ */
+public class FrameCapture {
+	
+	/** The maximum number of frames waiting for the writer. */
+	private static final int	QUEUE_CAPACITY	= 8;
+	/** The number of milliseconds the writer waits for each frame. */
+	private static final long	POLL_TIMEOUT	= 10;
+	/** The number of milliseconds to wait for the writer to finish when closing. */
+	private static final long	CLOSE_TIMEOUT	= 10_000;
+	
+	/** A frame waiting for the writer. */
+	private static final class Frame {
+		
+		/** The RGBA pixels, with the bottom row first. */
+		private final ByteBuffer	pixels;
+		/** The width of the frame, in pixels. */
+		private final int			width;
+		/** The height of the frame, in pixels. */
+		private final int			height;
+		/** The frame number. */
+		private final long			frame;
+		
+		/**
+		 * Constructs a new queued frame.
+		 * 
+		 * @param pixels
+		 *            the RGBA pixels, with the bottom row first.
+		 * @param width
+		 *            the width of the frame, in pixels.
+		 * @param height
+		 *            the height of the frame, in pixels.
+		 * @param frame
+		 *            the frame number.
+		 */
+		private Frame(ByteBuffer pixels, int width, int height, long frame) {
+			
+			this.pixels = pixels;
+			this.width = width;
+			this.height = height;
+			this.frame = frame;
+		}
+	}
+	
+	/** The path of the raw file, or the prefix of the PNG files. */
+	private final String		path;
+	/** The format the frames are written in. */
+	private final CaptureFormat	format;
+	/** The number of frames between captured frames. */
+	private final int			interval;
+	/** The length of the capture window in nanoseconds, or 0 for no limit. */
+	private final long			duration;
+	
+	/** The frames waiting for the writer. */
+	private final BlockingQueue< Frame >		queue	= new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+	/** Receives the completed reads of this capture; created once, not per frame. */
+	private final FramebufferReadback.Handler	handler	= this::submit;
+	/** The thread writing the frames. */
+	private final Thread						writer;
+	/** The raw file, or <code>null</code> for PNG sequences or once closed. */
+	private FileChannel							channel;
+	
+	/** Whether frames are still being selected for capture. */
+	private volatile boolean	active	= true;
+	/** Whether the last frame has been queued for the writer. */
+	private volatile boolean	closing	= false;
+	/** Whether a write has failed. Only used by the writer thread. */
+	private boolean				failed	= false;
+	
+	/** The time the first frame was considered, or -1 before then. */
+	private long	startTime	= -1;
+	/** The number of frames considered since the capture started. */
+	private long	frameIndex	= 0;
+	
+	/** The number of frames selected for capture. */
+	private volatile long	selectedFrames	= 0;
+	/** The number of frames dropped. */
+	private volatile long	droppedFrames	= 0;
+	/** The number of frames written. */
+	private volatile long	writtenFrames	= 0;
+	
+	/**
+	 * Constructs a new capture, opening the raw file if needed and starting the
+	 * writer. Frames are only read once the window picks the capture up.
+	 * 
+	 * @param path
+	 *            the path of the raw file, or the prefix of the PNG files.
+	 * @param format
+	 *            the format to write the frames in.
+	 * @param interval
+	 *            the number of frames between captured frames; 1 captures every
+	 *            frame.
+	 * @param seconds
+	 *            the length of the capture window in seconds, or 0 to capture
+	 *            until stopped.
+	 * @throws GreaseFileException
+	 *             if the raw file could not be opened.
+	 */
+	/* package */ FrameCapture(String path, CaptureFormat format, int interval, double seconds)
+			throws GreaseFileException {
+		
+		if (path == null) {
+			throw new GreaseInvalidArgumentException("path", null);
+		}
+		
+		if (format == null) {
+			throw new GreaseInvalidArgumentException("format", null);
+		}
+		
+		if (interval < 1) {
+			throw new GreaseInvalidArgumentException("interval", interval, "The capture interval must be positive.");
+		}
+		
+		if (!(seconds >= 0)) {
+			throw new GreaseInvalidArgumentException("seconds", seconds,
+					"The capture window must be non-negative.");
+		}
+		
+		this.path = path;
+		this.format = format;
+		this.interval = interval;
+		this.duration = (long) (seconds * 1e9);
+		
+		if (format == CaptureFormat.RAW) {
+			try {
+				channel = new FileOutputStream(path).getChannel();
+				ByteBuffer header = ByteBuffer.allocate(8);
+				header.putInt(CaptureFormat.RAW_MAGIC).putInt(CaptureFormat.RAW_VERSION).flip();
+				writeFully(header);
+			} catch (IOException e) {
+				closeChannel();
+				throw new GreaseFileException("Could not open capture file " + path + ": " + e.getMessage());
+			}
+		}
+		
+		writer = new Thread(this::writeFrames, "Grease frame capture writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+	
+	/**
+	 * Stops selecting frames for capture. Frames already read are still written.
+	 * Can be called from any thread.
+	 */
+	public void stop() {
+		
+		active = false;
+	}
+	
+	/**
+	 * @return <code>true</code> if frames are still being selected for capture.
+	 */
+	public boolean isActive() {
+		
+		return active;
+	}
+	
+	/**
+	 * @return the number of frames selected for capture so far, whether written or
+	 *         dropped.
+	 */
+	public long getSelectedFrames() {
+		
+		return selectedFrames;
+	}
+	
+	/**
+	 * @return the number of frames dropped so far, because no pixel buffer was
+	 *         free or the writer had fallen behind.
+	 */
+	public long getDroppedFrames() {
+		
+		return droppedFrames;
+	}
+	
+	/**
+	 * @return the number of frames written so far.
+	 */
+	public long getWrittenFrames() {
+		
+		return writtenFrames;
+	}
+	
+	/**
+	 * @return the handler passing the completed reads of this capture to
+	 *         <code>submit</code>.
+	 */
+	/* package */ FramebufferReadback.Handler getHandler() {
+		
+		return handler;
+	}
+	
+	/**
+	 * Decides whether to capture the current frame. Called from the window thread
+	 * once per frame; ends the capture once its time window has passed.
+	 * 
+	 * @param now
+	 *            the current time of the engine's clock, in nanoseconds.
+	 * @return <code>true</code> if the frame should be read.
+	 */
+	/* package */ boolean selectFrame(long now) {
+		
+		if (!active) {
+			return false;
+		}
+		
+		if (startTime < 0) {
+			startTime = now;
+		}
+		
+		if (duration > 0 && now - startTime >= duration) {
+			active = false;
+			return false;
+		}
+		
+		if (frameIndex++ % interval != 0) {
+			return false;
+		}
+		
+		selectedFrames++;
+		return true;
+	}
+	
+	/**
+	 * Queues the pixels of a completed read for the writer, or drops them if the
+	 * queue is full. Called from the window thread; never waits.
+	 * 
+	 * @param pixels
+	 *            the RGBA pixels, with the bottom row first.
+	 * @param width
+	 *            the width of the frame, in pixels.
+	 * @param height
+	 *            the height of the frame, in pixels.
+	 * @param frame
+	 *            the frame number.
+	 */
+	/* package */ void submit(ByteBuffer pixels, int width, int height, long frame) {
+		
+		if (closing || !queue.offer(new Frame(pixels, width, height, frame))) {
+			PixelBufferPool.getInstance().free(pixels);
+			drop(frame);
+		}
+	}
+	
+	/**
+	 * Counts a frame selected for capture which could not be read or written.
+	 * 
+	 * @param frame
+	 *            the frame number.
+	 */
+	/* package */ void drop(long frame) {
+		
+		droppedFrames++;
+		EngineEvent.CAPTURE_DROP.commit(EngineEvent.CAPTURE_DROP.begin(), frame);
+	}
+	
+	/**
+	 * Ends the capture. The writer writes the frames already queued, closes the
+	 * file, and reports the number of frames dropped, if any. Called from the
+	 * window thread once no reads for the capture are in flight; never waits.
+	 */
+	/* package */ void finish() {
+		
+		active = false;
+		closing = true;
+	}
+	
+	/**
+	 * Ends the capture, and waits for the writer to finish.
+	 */
+	/* package */ void close() {
+		
+		finish();
+		try {
+			writer.join(CLOSE_TIMEOUT);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Writes queued frames until the capture is finished and the queue is empty,
+	 * then closes the file. Runs on the writer thread.
+	 */
+	private void writeFrames() {
+		
+		try {
+			while (true) {
+				Frame frame = queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+				if (frame != null) {
+					write(frame);
+				} else if (closing) {
+					// Anything queued before closing was set is visible now
+					while ((frame = queue.poll()) != null) {
+						write(frame);
+					}
+					break;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			closeChannel();
+		}
+		
+		if (droppedFrames > 0) {
+			System.err.println("Frame capture " + path + " dropped " + droppedFrames + " of " + selectedFrames
+					+ " frames.");
+		}
+	}
+	
+	/**
+	 * Writes a frame and returns its pixels to the pool. After a write error,
+	 * reports it once, stops the capture, and discards the remaining frames.
+	 * 
+	 * @param frame
+	 *            the frame to write.
+	 */
+	private void write(Frame frame) {
+		
+		try {
+			if (failed) {
+				return;
+			}
+			
+			if (format == CaptureFormat.RAW) {
+				ScreenshotWriter.flipRows(frame.pixels, frame.width * 4, frame.height);
+				ByteBuffer header = ByteBuffer.allocate(16);
+				header.putLong(frame.frame).putInt(frame.width).putInt(frame.height).flip();
+				writeFully(header);
+				writeFully(frame.pixels);
+			} else {
+				ScreenshotWriter.writePng(String.format("%s%06d.png", path, frame.frame), frame.pixels, frame.width,
+						frame.height);
+			}
+			writtenFrames++;
+		} catch (IOException | GreaseFileException e) {
+			System.err.println("Frame capture " + path + " stopped.");
+			e.printStackTrace();
+			failed = true;
+			active = false;
+			closeChannel();
+		} finally {
+			PixelBufferPool.getInstance().free(frame.pixels);
+		}
+	}
+	
+	/**
+	 * Writes the whole of a buffer to the raw file.
+	 * 
+	 * @param buffer
+	 *            the buffer to write.
+	 * @throws IOException
+	 *             if the buffer could not be written.
+	 */
+	private void writeFully(ByteBuffer buffer) throws IOException {
+		
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+	
+	/**
+	 * Closes the raw file, if open.
+	 */
+	private void closeChannel() {
+		
+		if (channel == null) {
+			return;
+		}
+		
+		try {
+			channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		channel = null;
+	}
+}
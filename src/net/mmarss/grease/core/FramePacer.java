@@ -0,0 +1,441 @@
+package net.mmarss.grease.core;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+import net.mmarss.grease.exception.GreaseInvalidArgumentException;
+
+/**
+ * Paces frames to a target frame rate with low CPU usage. Most of the time
+ * between frames is spent in a coarse wait, which by default parks the thread
+ * and which the window replaces with waiting for window events. Only the last
+ * fraction of a millisecond before each frame is spent spinning, where the
+ * coarse wait is too imprecise to be trusted.
+ * 
+ * Frame deadlines are scheduled from the previous deadline rather than from
+ * the time the previous frame started, so that pacing errors do not accumulate.
+ * The pacer records recent frame times, from which the frame time jitter can
+ * be measured.
+ * 
+ * In adaptive mode, the pacer lowers its frame rate when frames keep taking
+ * longer than their budget, rather than stuttering between rates. The frame
+ * rate is divided by a whole number, so that frames stay evenly spaced against
+ * the display refresh, and is raised again once frames are comfortably within
+ * the budget of the higher rate.
+ * 
+ * Time is read from a {@link Clock}. When paced by a virtual clock, the pacer
+ * never waits, but advances the clock to each deadline instead. Without a
+ * target frame rate, a virtual clock only moves when advanced by its owner, so
+ * the frame time metrics read zero unless it is; replaying engines advance it
+ * by each recorded frame time.
+ */
+public class FramePacer {
+	
+	/** The number of nanoseconds in one second. */
+	private static final long	NANOS_PER_SECOND		= 1_000_000_000L;
+	/** The default time before a deadline from which to spin, in nanoseconds. */
+	private static final long	DEFAULT_SPIN_THRESHOLD	= 500_000L;
+	/** The number of recent frame times kept for measurement. */
+	private static final int	HISTORY_SIZE			= 128;
+	/** The number of frames over which adaptive mode judges the frame rate. */
+	private static final int	ADAPT_WINDOW			= 30;
+	/** The fraction of frames in a window which may miss their budget. */
+	private static final double	ADAPT_MAX_MISSES		= 0.25;
+	/** The fraction of the higher rate's budget under which the rate is raised. */
+	private static final double	ADAPT_HEADROOM			= 0.75;
+	
+	/** The clock used to measure and wait for frame deadlines. */
+	private Clock clock = SystemClock.getInstance();
+	
+	/** The target time between frames in nanoseconds, or 0 when uncapped. */
+	private long	period;
+	/** The time between frames at the full target frame rate, in nanoseconds. */
+	private long	basePeriod;
+	/** The number by which adaptive mode currently divides the frame rate. */
+	private int		divisor			= 1;
+	/** The largest divisor adaptive mode may use, or 1 if not adaptive. */
+	private int		maxDivisor		= 1;
+	/** Whether adaptive mode is enabled. */
+	private boolean	adaptive		= false;
+	/** The lowest frame rate adaptive mode may drop to. */
+	private double	minFrameRate	= 1;
+	/** The time before a deadline from which to spin, in nanoseconds. */
+	private long	spinThreshold	= DEFAULT_SPIN_THRESHOLD;
+	/** The time at which the next frame should start, in nanoseconds. */
+	private long	deadline;
+	/** The time at which the last frame started, in nanoseconds. */
+	private long	lastFrame;
+	/** Whether the pacer has been started. */
+	private boolean	started			= false;
+	
+	/** The most recent frame times, in nanoseconds, as a ring buffer. */
+	private final long[]	history	= new long[HISTORY_SIZE];
+	/** The number of frame times recorded, up to the history size. */
+	private int				count	= 0;
+	/** The index at which the next frame time is recorded. */
+	private int				next	= 0;
+	
+	/** The number of frames measured in the current adaptive window. */
+	private int		windowFrames	= 0;
+	/** The number of frames which missed their budget in the current window. */
+	private int		windowMisses	= 0;
+	/** The longest frame work time in the current window, in nanoseconds. */
+	private long	windowMaxWork	= 0;
+	
+	/** Represents a method used to wait for most of the time until a frame. */
+	@FunctionalInterface
+	public interface CoarseWait {
+		
+		/**
+		 * Waits for up to the specified time. Returning early is allowed.
+		 * 
+		 * @param nanos
+		 *            the maximum time to wait, in nanoseconds.
+		 */
+		public void waitFor(long nanos);
+	}
+	
+	/**
+	 * Constructs a new frame pacer.
+	 * 
+	 * @param framesPerSecond
+	 *            the target frame rate, or 0 for no limit.
+	 */
+	public FramePacer(double framesPerSecond) {
+		
+		setTargetFrameRate(framesPerSecond);
+	}
+	
+	/**
+	 * Sets the clock used to pace frames, and starts pacing again from its current
+	 * time.
+	 * 
+	 * @param clock
+	 *            the clock to use.
+	 */
+	public synchronized void setClock(Clock clock) {
+		
+		if (clock == null) {
+			throw new GreaseInvalidArgumentException("clock", clock, "Clocks must be non-null.");
+		}
+		
+		this.clock = clock;
+		if (started) {
+			start();
+		}
+	}
+	
+	/**
+	 * @return the clock used to pace frames.
+	 */
+	public synchronized Clock getClock() {
+		
+		return clock;
+	}
+	
+	/**
+	 * Sets the target frame rate.
+	 * 
+	 * @param framesPerSecond
+	 *            the target frame rate, or 0 for no limit.
+	 */
+	public synchronized void setTargetFrameRate(double framesPerSecond) {
+		
+		if (framesPerSecond < 0) {
+			throw new GreaseInvalidArgumentException("framesPerSecond", framesPerSecond,
+					"Frame rates must be non-negative.");
+		}
+		
+		basePeriod = framesPerSecond == 0 ? 0 : (long) (NANOS_PER_SECOND / framesPerSecond);
+		divisor = 1;
+		updateMaxDivisor();
+		period = basePeriod;
+		deadline = lastFrame + period;
+		resetWindow();
+	}
+	
+	/**
+	 * @return the target frame rate, or 0 if there is no limit.
+	 */
+	public synchronized double getTargetFrameRate() {
+		
+		return basePeriod == 0 ? 0 : (double) NANOS_PER_SECOND / basePeriod;
+	}
+	
+	/**
+	 * @return the frame rate currently being paced to, which is lower than the
+	 *         target frame rate while adaptive mode has lowered it, or 0 if there
+	 *         is no limit.
+	 */
+	public synchronized double getCurrentFrameRate() {
+		
+		return period == 0 ? 0 : (double) NANOS_PER_SECOND / period;
+	}
+	
+	/**
+	 * Enables or disables adaptive mode, in which the frame rate is lowered while
+	 * frames keep missing their budget. Has no effect without a target frame rate;
+	 * the lowest frame rate is kept when the target frame rate changes.
+	 * 
+	 * @param adaptive
+	 *            <code>true</code> to enable adaptive mode.
+	 * @param minFramesPerSecond
+	 *            the lowest frame rate adaptive mode may drop to.
+	 */
+	public synchronized void setAdaptive(boolean adaptive, double minFramesPerSecond) {
+		
+		if (minFramesPerSecond <= 0) {
+			throw new GreaseInvalidArgumentException("minFramesPerSecond", minFramesPerSecond,
+					"Frame rates must be positive.");
+		}
+		
+		this.adaptive = adaptive;
+		minFrameRate = minFramesPerSecond;
+		updateMaxDivisor();
+		
+		divisor = Math.min(divisor, maxDivisor);
+		period = basePeriod * divisor;
+		resetWindow();
+	}
+	
+	/**
+	 * Computes the largest divisor adaptive mode may use from the lowest frame rate
+	 * and the current target frame rate.
+	 */
+	private void updateMaxDivisor() {
+		
+		maxDivisor = 1;
+		if (adaptive && basePeriod != 0) {
+			maxDivisor = Math.max(1, (int) (NANOS_PER_SECOND / minFrameRate / basePeriod));
+		}
+	}
+	
+	/**
+	 * Sets how long before each frame the pacer stops waiting coarsely and starts
+	 * spinning. Larger values cost more CPU time, but absorb coarse waits which
+	 * overshoot by more.
+	 * 
+	 * @param nanos
+	 *            the spin threshold, in nanoseconds.
+	 */
+	public synchronized void setSpinThreshold(long nanos) {
+		
+		if (nanos < 0) {
+			throw new GreaseInvalidArgumentException("nanos", nanos, "Spin thresholds must be non-negative.");
+		}
+		
+		spinThreshold = nanos;
+	}
+	
+	/**
+	 * Starts pacing from the current time. The first frame may start immediately.
+	 */
+	public synchronized void start() {
+		
+		lastFrame = clock.nanoTime();
+		deadline = lastFrame;
+		count = 0;
+		next = 0;
+		started = true;
+	}
+	
+	/**
+	 * Waits until the next frame should start, parking the thread during the
+	 * coarse wait.
+	 */
+	public void waitForNextFrame() {
+		
+		waitForNextFrame(LockSupport::parkNanos);
+	}
+	
+	/**
+	 * Waits until the next frame should start.
+	 * 
+	 * @param coarseWait
+	 *            the method used to wait for most of the time until the frame.
+	 */
+	public void waitForNextFrame(CoarseWait coarseWait) {
+		
+		Clock clock;
+		long target;
+		long threshold;
+		synchronized (this) {
+			if (!started) {
+				start();
+			}
+			clock = this.clock;
+			adapt(clock.nanoTime() - lastFrame);
+			target = deadline;
+			threshold = spinThreshold;
+		}
+		
+		if (clock.isVirtual()) {
+			clock.waitUntil(target); // Virtual time jumps straight to the deadline
+		} else {
+			// Wait coarsely until close to the deadline
+			long remaining = target - clock.nanoTime();
+			while (remaining > threshold) {
+				coarseWait.waitFor(remaining - threshold);
+				remaining = target - clock.nanoTime();
+			}
+			
+			// Spin for the rest of the time
+			while (target - clock.nanoTime() > 0) {
+				Thread.yield();
+			}
+		}
+		
+		long now = clock.nanoTime();
+		
+		synchronized (this) {
+			history[next] = now - lastFrame;
+			next = (next + 1) % HISTORY_SIZE;
+			count = Math.min(count + 1, HISTORY_SIZE);
+			lastFrame = now;
+			
+			// Schedule from the deadline, unless a whole frame has been missed
+			deadline = target + period;
+			if (deadline - now < 0) {
+				deadline = now + period;
+			}
+		}
+	}
+	
+	/**
+	 * Judges whether to change the frame rate in adaptive mode, given how long the
+	 * last frame spent working before waiting for the next one.
+	 * 
+	 * @param work
+	 *            the work time of the last frame, in nanoseconds.
+	 */
+	private void adapt(long work) {
+		
+		if (maxDivisor == 1) {
+			return;
+		}
+		
+		windowFrames++;
+		if (work > period) {
+			windowMisses++;
+		}
+		windowMaxWork = Math.max(windowMaxWork, work);
+		
+		if (windowFrames < ADAPT_WINDOW) {
+			return;
+		}
+		
+		if (windowMisses > ADAPT_WINDOW * ADAPT_MAX_MISSES && divisor < maxDivisor) {
+			divisor++; // Lower the frame rate
+		} else if (windowMisses == 0 && divisor > 1 && windowMaxWork < basePeriod * (divisor - 1) * ADAPT_HEADROOM) {
+			divisor--; // Raise the frame rate
+		}
+		
+		long newPeriod = basePeriod * divisor;
+		deadline += newPeriod - period;
+		period = newPeriod;
+		resetWindow();
+	}
+	
+	/**
+	 * Starts a new adaptive mode measurement window.
+	 */
+	private void resetWindow() {
+		
+		windowFrames = 0;
+		windowMisses = 0;
+		windowMaxWork = 0;
+	}
+	
+	/**
+	 * @return the time between the last two frames, in seconds.
+	 */
+	public synchronized double getLastFrameTime() {
+		
+		if (count == 0) {
+			return 0;
+		}
+		
+		return history[(next + HISTORY_SIZE - 1) % HISTORY_SIZE] / (double) NANOS_PER_SECOND;
+	}
+	
+	/**
+	 * @return the mean time between recent frames, in seconds.
+	 */
+	public synchronized double getMeanFrameTime() {
+		
+		if (count == 0) {
+			return 0;
+		}
+		
+		long total = 0;
+		for (int i = 0; i < count; i++) {
+			total += history[i];
+		}
+		
+		return total / (double) count / NANOS_PER_SECOND;
+	}
+	
+	/**
+	 * Gets a percentile of the time between recent frames, by the nearest rank.
+	 * 
+	 * @param percentile
+	 *            the percentile, from 0 to 100.
+	 * @return the frame time, in seconds.
+	 */
+	public synchronized double getFrameTimePercentile(double percentile) {
+		
+		if (percentile < 0 || percentile > 100) {
+			throw new GreaseInvalidArgumentException("percentile", percentile, "Percentiles must be from 0 to 100.");
+		}
+		
+		if (count == 0) {
+			return 0;
+		}
+		
+		long[] sorted = Arrays.copyOf(history, count);
+		Arrays.sort(sorted);
+		int rank = (int) Math.ceil(percentile / 100 * count);
+		return sorted[Math.max(0, rank - 1)] / (double) NANOS_PER_SECOND;
+	}
+	
+	/**
+	 * Measures the frame time jitter; the standard deviation of the time between
+	 * recent frames. Well paced frames have a jitter of a small fraction of a
+	 * millisecond.
+	 * 
+	 * @return the frame time jitter, in seconds.
+	 */
+	public synchronized double getJitter() {
+		
+		if (count < 2) {
+			return 0;
+		}
+		
+		double mean = getMeanFrameTime() * NANOS_PER_SECOND;
+		double sumSquares = 0;
+		for (int i = 0; i < count; i++) {
+			double deviation = history[i] - mean;
+			sumSquares += deviation * deviation;
+		}
+		
+		return Math.sqrt(sumSquares / (count - 1)) / NANOS_PER_SECOND;
+	}
+	
+	/**
+	 * @return the largest difference between a recent frame time and the target
+	 *         frame time, in seconds, or 0 if there is no target frame rate.
+	 */
+	public synchronized double getMaxDeviation() {
+		
+		if (period == 0) {
+			return 0;
+		}
+		
+		long max = 0;
+		for (int i = 0; i < count; i++) {
+			max = Math.max(max, Math.abs(history[i] - period));
+		}
+		
+		return max / (double) NANOS_PER_SECOND;
+	}
+}
@@ -0,0 +1,602 @@
+package net.mmarss.grease.core;
+
+import static org.lwjgl.opengl.GL11.GL_TRUE;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL33.GL_TIME_ELAPSED;
+import static org.lwjgl.opengl.GL33.glGetQueryObjectui64;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+
+import net.mmarss.grease.exception.GreaseInvalidArgumentException;
+import net.mmarss.grease.exception.GreaseInvalidMethodCallException;
+import net.mmarss.grease.graphics.Graphics2d;
+
+/**
+ * Measures where each frame's time goes. The main loop times each of its
+ * phases in a scope, and game code can time its own work in further scopes,
+ * nested within them. Scopes form a tree by name; a scope entered several times
+ * in a frame accumulates its time. The time spent in every scope is kept for
+ * the most recent frames in a ring buffer, from which rolling percentiles are
+ * computed.
+ * 
+ * Scopes can also measure GPU time with <code>GL_TIME_ELAPSED</code> queries.
+ * Query results are only read back a few frames later, once they are
+ * available, so that the profiler never stalls the pipeline. Only one GPU scope
+ * can be active at once.
+ * 
+ * The profiler is disabled by default, in which case scopes cost next to
+ * nothing. Scopes must be entered and exited from the loop thread, while
+ * results can be read from any thread.
+ */
+public class FrameProfiler {
+	
+	/** The name of the scope timing event polling. */
+	public static final String	PHASE_POLL			= "poll";
+	/** The name of the scope timing the game update. */
+	public static final String	PHASE_UPDATE		= "update";
+	/** The name of the scope timing the renderer's <code>preRender</code>. */
+	public static final String	PHASE_PRE_RENDER	= "preRender";
+	/** The name of the scope timing the renderer's <code>render</code>. */
+	public static final String	PHASE_RENDER		= "render";
+	/** The name of the scope timing the renderer's <code>postRender</code>. */
+	public static final String	PHASE_POST_RENDER	= "postRender";
+	/** The name of the scope timing the frame readback for captures. */
+	public static final String	PHASE_CAPTURE		= "capture";
+	/** The name of the scope timing the buffer swap. */
+	public static final String	PHASE_SWAP			= "swap";
+	
+	/** The number of frames kept in each scope's history. */
+	private static final int	HISTORY_SIZE	= 240;
+	/** The number of frames after which GPU query results are read back. */
+	private static final int	QUERY_LATENCY	= 4;
+	/** The maximum number of GPU scopes per frame. */
+	private static final int	MAX_GPU_SCOPES	= 16;
+	/** The colors of the top-level scopes in the on-screen graph. */
+	private static final float[][] GRAPH_COLORS = { { 0.3f, 0.6f, 1.0f }, { 1.0f, 0.7f, 0.2f },
+			{ 0.5f, 0.9f, 0.4f }, { 0.9f, 0.3f, 0.3f }, { 0.7f, 0.4f, 0.9f }, { 0.9f, 0.9f, 0.9f } };
+	
+	/** The scope timing each whole frame, from which all other scopes descend. */
+	private final Scope root = new Scope("frame", null);
+	
+	/** The innermost active scope. */
+	private Scope	current	= root;
+	/** Whether the profiler is enabled. */
+	private boolean	enabled	= false;
+	/** Whether a frame is being profiled. */
+	private boolean	inFrame	= false;
+	
+	/** Whether timer queries are available in the current context. */
+	private boolean		gpuSupported	= false;
+	/** The timer query objects, by frame slot and query index. */
+	private int[][]		queries;
+	/** The scope measured by each timer query, by frame slot and query index. */
+	private Scope[][]	queryScopes;
+	/** The number of queries issued in each frame slot. */
+	private int[]		queryCounts;
+	/** The frame slot used by the current frame. */
+	private int			slot			= 0;
+	/** The scope whose timer query is active, or <code>null</code>. */
+	private Scope		gpuScope		= null;
+	
+	/**
+	 * A named profiling scope, holding the time spent in it during recent frames.
+	 */
+	public static final class Scope {
+		
+		/** The scope name. */
+		private final String	name;
+		/** The enclosing scope, or <code>null</code> for the frame scope. */
+		private final Scope		parent;
+		
+		/** The nested scopes, by name. */
+		private final Map< String, Scope >	children	= new HashMap<>();
+		/** The nested scopes, in the order they were first entered. */
+		private final List< Scope >			childList	= new ArrayList<>();
+		
+		/** The time at which the scope was last entered, in nanoseconds. */
+		private long	start;
+		/** The CPU time spent in the scope this frame, in nanoseconds. */
+		private long	cpuTime;
+		/** Whether the scope measures GPU time while active. */
+		private boolean	gpu;
+		/** The GPU time read back for a frame but not yet recorded, or -1. */
+		private long	pendingGpuTime	= -1;
+		
+		/** The CPU time spent in the scope in recent frames, as a ring buffer. */
+		private final long[]	cpuHistory	= new long[HISTORY_SIZE];
+		/** The GPU time spent in the scope in recent frames, as a ring buffer. */
+		private final long[]	gpuHistory	= new long[HISTORY_SIZE];
+		/** The number of CPU times recorded, up to the history size. */
+		private int				cpuCount	= 0;
+		/** The number of GPU times recorded, up to the history size. */
+		private int				gpuCount	= 0;
+		/** The index at which the next CPU time is recorded. */
+		private int				cpuNext		= 0;
+		/** The index at which the next GPU time is recorded. */
+		private int				gpuNext		= 0;
+		
+		/**
+		 * Constructs a new scope.
+		 * 
+		 * @param name
+		 *            the scope name.
+		 * @param parent
+		 *            the enclosing scope.
+		 */
+		private Scope(String name, Scope parent) {
+			
+			this.name = name;
+			this.parent = parent;
+		}
+		
+		/**
+		 * @return the scope name.
+		 */
+		public String getName() {
+			
+			return name;
+		}
+		
+		/**
+		 * @return the path of the scope from the frame scope, with names separated
+		 *         by slashes, such as <code>update/physics</code>.
+		 */
+		public String getPath() {
+			
+			if (parent == null) {
+				return "";
+			}
+			
+			String parentPath = parent.getPath();
+			return parentPath.isEmpty() ? name : parentPath + "/" + name;
+		}
+		
+		/**
+		 * @return the scopes nested directly within this scope, in the order they
+		 *         were first entered.
+		 */
+		public List< Scope > getChildren() {
+			
+			synchronized (this) {
+				return Collections.unmodifiableList(new ArrayList<>(childList));
+			}
+		}
+		
+		/**
+		 * Gets the CPU time spent in this scope in a recent frame.
+		 * 
+		 * @param framesAgo
+		 *            the number of frames before the last profiled frame, from 0.
+		 * @return the time spent in the scope, in seconds, or 0 if the frame is no
+		 *         longer in the history.
+		 */
+		public synchronized double getCpuTime(int framesAgo) {
+			
+			if (framesAgo < 0 || framesAgo >= cpuCount) {
+				return 0;
+			}
+			
+			return cpuHistory[(cpuNext - 1 - framesAgo + HISTORY_SIZE) % HISTORY_SIZE] / 1e9;
+		}
+		
+		/**
+		 * @return the mean CPU time spent in this scope per frame, in seconds.
+		 */
+		public synchronized double getCpuMean() {
+			
+			return mean(cpuHistory, cpuCount);
+		}
+		
+		/**
+		 * Gets a percentile of the CPU time spent in this scope per frame.
+		 * 
+		 * @param percentile
+		 *            the percentile, from 0 to 100.
+		 * @return the time, in seconds.
+		 */
+		public synchronized double getCpuPercentile(double percentile) {
+			
+			return percentile(cpuHistory, cpuCount, percentile);
+		}
+		
+		/**
+		 * @return the mean GPU time spent in this scope per frame, in seconds, or 0
+		 *         if it has not been measured.
+		 */
+		public synchronized double getGpuMean() {
+			
+			return mean(gpuHistory, gpuCount);
+		}
+		
+		/**
+		 * Gets a percentile of the GPU time spent in this scope per frame. GPU times
+		 * lag a few frames behind CPU times.
+		 * 
+		 * @param percentile
+		 *            the percentile, from 0 to 100.
+		 * @return the time in seconds, or 0 if it has not been measured.
+		 */
+		public synchronized double getGpuPercentile(double percentile) {
+			
+			return percentile(gpuHistory, gpuCount, percentile);
+		}
+		
+		/**
+		 * Finds or creates a nested scope.
+		 * 
+		 * @param name
+		 *            the name of the nested scope.
+		 * @return the nested scope.
+		 */
+		private Scope child(String name) {
+			
+			Scope child = children.get(name);
+			if (child == null) {
+				child = new Scope(name, this);
+				synchronized (this) {
+					children.put(name, child);
+					childList.add(child);
+				}
+			}
+			return child;
+		}
+		
+		/**
+		 * Records this frame's CPU time into the history, for this scope and all
+		 * nested scopes, and resets it for the next frame.
+		 */
+		private void recordFrame() {
+			
+			synchronized (this) {
+				cpuHistory[cpuNext] = cpuTime;
+				cpuNext = (cpuNext + 1) % HISTORY_SIZE;
+				cpuCount = Math.min(cpuCount + 1, HISTORY_SIZE);
+			}
+			cpuTime = 0;
+			
+			for (int i = 0; i < childList.size(); i++) {
+				childList.get(i).recordFrame();
+			}
+		}
+		
+		/**
+		 * Records a GPU time read back from a timer query.
+		 * 
+		 * @param nanos
+		 *            the GPU time, in nanoseconds.
+		 */
+		private synchronized void recordGpuTime(long nanos) {
+			
+			gpuHistory[gpuNext] = nanos;
+			gpuNext = (gpuNext + 1) % HISTORY_SIZE;
+			gpuCount = Math.min(gpuCount + 1, HISTORY_SIZE);
+		}
+	}
+	
+	/**
+	 * Constructs a new, disabled frame profiler.
+	 */
+	public FrameProfiler() {}
+	
+	/**
+	 * Enables or disables the profiler. Takes effect from the next frame.
+	 * 
+	 * @param enabled
+	 *            <code>true</code> to enable the profiler.
+	 */
+	public void setEnabled(boolean enabled) {
+		
+		this.enabled = enabled;
+	}
+	
+	/**
+	 * @return <code>true</code> if the profiler is enabled.
+	 */
+	public boolean isEnabled() {
+		
+		return enabled;
+	}
+	
+	/**
+	 * @return the scope timing each whole frame, from which all other scopes
+	 *         descend.
+	 */
+	public Scope getFrameScope() {
+		
+		return root;
+	}
+	
+	/**
+	 * Finds a scope by its path.
+	 * 
+	 * @param path
+	 *            the path of the scope, with names separated by slashes, such as
+	 *            <code>update/physics</code>.
+	 * @return the scope, or <code>null</code> if it has never been entered.
+	 */
+	public Scope getScope(String path) {
+		
+		Scope scope = root;
+		for (String name : path.split("/")) {
+			if (name.isEmpty()) {
+				continue;
+			}
+			synchronized (scope) {
+				scope = scope.children.get(name);
+			}
+			if (scope == null) {
+				return null;
+			}
+		}
+		return scope;
+	}
+	
+	/**
+	 * Starts profiling a frame. Called by the main loop.
+	 */
+	public void beginFrame() {
+		
+		inFrame = enabled;
+		if (!inFrame) {
+			return;
+		}
+		
+		if (gpuSupported) {
+			slot = (slot + 1) % QUERY_LATENCY;
+			readQueries(slot); // Issued QUERY_LATENCY frames ago
+		}
+		
+		current = root;
+		root.start = System.nanoTime();
+	}
+	
+	/**
+	 * Finishes profiling a frame, recording the time spent in every scope. Any
+	 * scopes left active are exited. Called by the main loop.
+	 */
+	public void endFrame() {
+		
+		if (!inFrame) {
+			return;
+		}
+		
+		while (current != root) {
+			end();
+		}
+		
+		root.cpuTime = System.nanoTime() - root.start;
+		root.recordFrame();
+		inFrame = false;
+	}
+	
+	/**
+	 * Enters a scope, nested within the currently active scope.
+	 * 
+	 * @param name
+	 *            the scope name, which must not contain slashes.
+	 */
+	public void begin(String name) {
+		
+		begin(name, false);
+	}
+	
+	/**
+	 * Enters a scope, nested within the currently active scope, optionally also
+	 * measuring its GPU time. GPU time is only measured if timer queries are
+	 * supported and no other GPU scope is active.
+	 * 
+	 * @param name
+	 *            the scope name, which must not contain slashes.
+	 * @param gpu
+	 *            <code>true</code> to measure GPU time.
+	 */
+	public void begin(String name, boolean gpu) {
+		
+		if (!inFrame) {
+			return;
+		}
+		
+		Scope scope = current.child(name);
+		scope.gpu = gpu && gpuSupported && gpuScope == null && queryCounts[slot] < MAX_GPU_SCOPES;
+		if (scope.gpu) {
+			int index = queryCounts[slot]++;
+			queryScopes[slot][index] = scope;
+			glBeginQuery(GL_TIME_ELAPSED, queries[slot][index]);
+			gpuScope = scope;
+		}
+		
+		current = scope;
+		scope.start = System.nanoTime();
+	}
+	
+	/**
+	 * Exits the currently active scope.
+	 */
+	public void end() {
+		
+		if (!inFrame) {
+			return;
+		}
+		
+		if (current == root) {
+			throw new GreaseInvalidMethodCallException("No profiler scope is active.");
+		}
+		
+		current.cpuTime += System.nanoTime() - current.start;
+		if (current.gpu) {
+			glEndQuery(GL_TIME_ELAPSED);
+			gpuScope = null;
+		}
+		current = current.parent;
+	}
+	
+	/**
+	 * Creates the timer queries, if the current OpenGL context supports them. Must
+	 * be called from the window thread once the context is current.
+	 */
+	/* package */ void initGpu() {
+		
+		GLCapabilities caps = GL.getCapabilities();
+		gpuSupported = caps.OpenGL33 || caps.GL_ARB_timer_query;
+		if (!gpuSupported) {
+			return;
+		}
+		
+		queries = new int[QUERY_LATENCY][MAX_GPU_SCOPES];
+		queryScopes = new Scope[QUERY_LATENCY][MAX_GPU_SCOPES];
+		queryCounts = new int[QUERY_LATENCY];
+		for (int[] frameQueries : queries) {
+			glGenQueries(frameQueries);
+		}
+	}
+	
+	/**
+	 * Deletes the timer queries. Must be called from the window thread while the
+	 * context is still current.
+	 */
+	/* package */ void cleanupGpu() {
+		
+		if (!gpuSupported) {
+			return;
+		}
+		
+		for (int[] frameQueries : queries) {
+			glDeleteQueries(frameQueries);
+		}
+		gpuSupported = false;
+	}
+	
+	/**
+	 * Reads back the timer queries issued in a frame slot, recording the results
+	 * which are available and dropping the rest.
+	 * 
+	 * @param frameSlot
+	 *            the frame slot to read.
+	 */
+	private void readQueries(int frameSlot) {
+		
+		// Sum the results of scopes entered several times in the frame
+		for (int i = 0; i < queryCounts[frameSlot]; i++) {
+			int query = queries[frameSlot][i];
+			if (glGetQueryObjecti(query, GL_QUERY_RESULT_AVAILABLE) == GL_TRUE) {
+				Scope scope = queryScopes[frameSlot][i];
+				scope.pendingGpuTime = Math.max(0, scope.pendingGpuTime) + glGetQueryObjectui64(query, GL_QUERY_RESULT);
+			}
+		}
+		
+		for (int i = 0; i < queryCounts[frameSlot]; i++) {
+			Scope scope = queryScopes[frameSlot][i];
+			if (scope.pendingGpuTime >= 0) {
+				scope.recordGpuTime(scope.pendingGpuTime);
+				scope.pendingGpuTime = -1;
+			}
+			queryScopes[frameSlot][i] = null;
+		}
+		queryCounts[frameSlot] = 0;
+	}
+	
+	/**
+	 * Draws a graph of recent frame times, with one bar per frame stacked from the
+	 * times of the top-level scopes. Should be called while rendering.
+	 * 
+	 * @param g
+	 *            the graphics object to draw with.
+	 * @param x
+	 *            the x-coordinate of the left edge of the graph.
+	 * @param y
+	 *            the y-coordinate of the bottom edge of the graph.
+	 * @param width
+	 *            the width of the graph, in pixels.
+	 * @param height
+	 *            the height of the graph, in pixels.
+	 * @param budget
+	 *            the frame time shown at half the graph's height, in seconds.
+	 */
+	public void drawGraph(Graphics2d g, float x, float y, float width, float height, double budget) {
+		
+		if (budget <= 0) {
+			throw new GreaseInvalidArgumentException("budget", budget, "Frame budgets must be positive.");
+		}
+		
+		List< Scope > phases = root.getChildren();
+		int bars = Math.min(HISTORY_SIZE, (int) (width / 2));
+		float barWidth = width / bars;
+		double scale = height / 2 / budget;
+		
+		g.setColor(0f, 0f, 0f, 0.5f);
+		g.drawRect(x, y - height, x + width, y);
+		
+		for (int i = 0; i < bars; i++) {
+			float barX = x + width - (i + 1) * barWidth;
+			float top = y;
+			for (int p = 0; p < phases.size(); p++) {
+				float[] color = GRAPH_COLORS[p % GRAPH_COLORS.length];
+				float bottom = top;
+				top = (float) Math.max(y - height, bottom - phases.get(p).getCpuTime(i) * scale);
+				g.setColor(color[0], color[1], color[2]);
+				g.drawRect(barX, top, barX + barWidth, bottom);
+			}
+		}
+		
+		// Mark the frame budget
+		g.setColor(1f, 1f, 1f, 0.8f);
+		g.drawRect(x, y - height / 2 - 1, x + width, y - height / 2);
+	}
+	
+	/**
+	 * Computes the mean of the values in a history.
+	 * 
+	 * @param history
+	 *            the history ring buffer, in nanoseconds.
+	 * @param count
+	 *            the number of values recorded.
+	 * @return the mean, in seconds.
+	 */
+	private static double mean(long[] history, int count) {
+		
+		if (count == 0) {
+			return 0;
+		}
+		
+		long total = 0;
+		for (int i = 0; i < count; i++) {
+			total += history[i];
+		}
+		return total / (double) count / 1e9;
+	}
+	
+	/**
+	 * Computes a percentile of the values in a history, by the nearest rank.
+	 * 
+	 * @param history
+	 *            the history ring buffer, in nanoseconds.
+	 * @param count
+	 *            the number of values recorded.
+	 * @param percentile
+	 *            the percentile, from 0 to 100.
+	 * @return the percentile, in seconds.
+	 */
+	private static double percentile(long[] history, int count, double percentile) {
+		
+		if (percentile < 0 || percentile > 100) {
+			throw new GreaseInvalidArgumentException("percentile", percentile, "Percentiles must be from 0 to 100.");
+		}
+		
+		if (count == 0) {
+			return 0;
+		}
+		
+		long[] sorted = Arrays.copyOf(history, count);
+		Arrays.sort(sorted);
+		int rank = (int) Math.ceil(percentile / 100 * count);
+		return sorted[Math.max(0, rank - 1)] / 1e9;
+	}
+}
@@ -0,0 +1,249 @@
+package net.mmarss.grease.core;
+
+import static org.lwjgl.opengl.GL11.GL_BACK;
+import static org.lwjgl.opengl.GL11.GL_RGBA;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_BYTE;
+import static org.lwjgl.opengl.GL11.glReadBuffer;
+import static org.lwjgl.opengl.GL11.glReadPixels;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL21.GL_PIXEL_PACK_BUFFER;
+import static org.lwjgl.opengl.GL30.GL_MAP_READ_BIT;
+import static org.lwjgl.opengl.GL30.glMapBufferRange;
+import static org.lwjgl.opengl.GL32.*;
+
+import java.nio.ByteBuffer;
+
+import org.lwjgl.system.MemoryUtil;
+
+import net.mmarss.grease.graphics.PixelBufferPool;
+
+/**
+ * Reads the back buffer without stalling the render loop. Each read is issued
+ * into one of a ring of pixel buffer objects, followed by a fence. The pixels
+ * are only mapped once the fence has signaled, typically a frame or two later,
+ * and are then copied into a buffer from the {@link PixelBufferPool} and
+ * passed to the read's handler. If every pixel buffer object is still in
+ * flight, the read is refused rather than waited for.
+ * 
+ * Must be used from the window thread while the context is current.
+ */
+/* package */ final class FramebufferReadback {
+	
+	/** The number of pixel buffer objects in the ring. */
+	private static final int RING_SIZE = 3;
+	
+	/** The number of nanoseconds to wait for each pending read when finishing. */
+	private static final long FINISH_TIMEOUT = 1_000_000_000L;
+	
+	/** Receives the pixels of a completed read. */
+	@FunctionalInterface
+	/* package */ interface Handler {
+		
+		/**
+		 * Receives the pixels of a completed read, from the window thread. The pixels
+		 * are RGBA, with the bottom row first, as read by OpenGL. The handler owns
+		 * the buffer, and must return it to the pixel buffer pool once done.
+		 * 
+		 * @param pixels
+		 *            the pixels read.
+		 * @param width
+		 *            the width of the read, in pixels.
+		 * @param height
+		 *            the height of the read, in pixels.
+		 * @param frame
+		 *            the number of the frame that was read.
+		 */
+		public void handle(ByteBuffer pixels, int width, int height, long frame);
+	}
+	
+	/** The pixel buffer objects of the ring. */
+	private final int[]		buffers		= new int[RING_SIZE];
+	/** The capacity of each pixel buffer object, in bytes. */
+	private final int[]		capacities	= new int[RING_SIZE];
+	/** The fence following each read in flight, or 0 if the slot is free. */
+	private final long[]	fences		= new long[RING_SIZE];
+	/** The width of each read in flight. */
+	private final int[]		widths		= new int[RING_SIZE];
+	/** The height of each read in flight. */
+	private final int[]		heights		= new int[RING_SIZE];
+	/** The frame number of each read in flight. */
+	private final long[]	frames		= new long[RING_SIZE];
+	/** The handler of each read in flight. */
+	private final Handler[]	handlers	= new Handler[RING_SIZE];
+	
+	/** The slot of the oldest read in flight. */
+	private int	head	= 0;
+	/** The number of reads in flight. */
+	private int	pending	= 0;
+	
+	/** Whether the pixel buffer objects have been generated. */
+	private boolean initialized = false;
+	
+	/**
+	 * Issues a read of the back buffer, if a pixel buffer object is free.
+	 * 
+	 * @param width
+	 *            the width of the back buffer, in pixels.
+	 * @param height
+	 *            the height of the back buffer, in pixels.
+	 * @param frame
+	 *            the number of the frame being read.
+	 * @param handler
+	 *            the handler to pass the pixels to.
+	 * @return <code>true</code> if the read was issued, or <code>false</code> if
+	 *         every pixel buffer object is in flight.
+	 */
+	/* package */ boolean read(int width, int height, long frame, Handler handler) {
+		
+		if (pending == RING_SIZE || width <= 0 || height <= 0) {
+			return false;
+		}
+		
+		if (!initialized) {
+			glGenBuffers(buffers);
+			initialized = true;
+		}
+		
+		int slot = (head + pending) % RING_SIZE;
+		int size = width * height * 4;
+		
+		glBindBuffer(GL_PIXEL_PACK_BUFFER, buffers[slot]);
+		if (capacities[slot] < size) {
+			glBufferData(GL_PIXEL_PACK_BUFFER, size, GL_STREAM_READ);
+			capacities[slot] = size;
+		}
+		glReadBuffer(GL_BACK);
+		glReadPixels(0, 0, width, height, GL_RGBA, GL_UNSIGNED_BYTE, 0);
+		glBindBuffer(GL_PIXEL_PACK_BUFFER, 0);
+		
+		fences[slot] = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+		widths[slot] = width;
+		heights[slot] = height;
+		frames[slot] = frame;
+		handlers[slot] = handler;
+		pending++;
+		return true;
+	}
+	
+	/**
+	 * Passes the pixels of every completed read to its handler, in the order the
+	 * reads were issued. Never waits for a read still in flight.
+	 */
+	/* package */ void poll() {
+		
+		while (pending > 0 && complete(head, 0L, 0)) {
+			deliver(head);
+		}
+	}
+	
+	/**
+	 * Waits for every read in flight and passes its pixels to its handler, giving
+	 * up on any read which takes longer than a second. Called before the context
+	 * is destroyed.
+	 */
+	/* package */ void finish() {
+		
+		while (pending > 0) {
+			if (complete(head, FINISH_TIMEOUT, GL_SYNC_FLUSH_COMMANDS_BIT)) {
+				deliver(head);
+			} else {
+				glDeleteSync(fences[head]);
+				release(head);
+			}
+		}
+	}
+	
+	/**
+	 * Finishes any reads in flight, and deletes the pixel buffer objects. Must be
+	 * called from the window thread while the context is still current.
+	 */
+	/* package */ void cleanup() {
+		
+		finish();
+		if (initialized) {
+			glDeleteBuffers(buffers);
+			initialized = false;
+		}
+	}
+	
+	/**
+	 * @return <code>true</code> if a pixel buffer object is free for a read.
+	 */
+	/* package */ boolean isAvailable() {
+		
+		return pending < RING_SIZE;
+	}
+	
+	/**
+	 * @return <code>true</code> if no reads are in flight.
+	 */
+	/* package */ boolean isIdle() {
+		
+		return pending == 0;
+	}
+	
+	/**
+	 * Checks whether the read in a slot has completed.
+	 * 
+	 * @param slot
+	 *            the slot of the read.
+	 * @param timeout
+	 *            the number of nanoseconds to wait for the read.
+	 * @param flags
+	 *            the flags to wait with.
+	 * @return <code>true</code> if the read has completed.
+	 */
+	private boolean complete(int slot, long timeout, int flags) {
+		
+		int status = glClientWaitSync(fences[slot], flags, timeout);
+		return status == GL_ALREADY_SIGNALED || status == GL_CONDITION_SATISFIED;
+	}
+	
+	/**
+	 * Copies the pixels of a completed read out of its pixel buffer object, and
+	 * passes them to the read's handler.
+	 * 
+	 * @param slot
+	 *            the slot of the read.
+	 */
+	private void deliver(int slot) {
+		
+		glDeleteSync(fences[slot]);
+		
+		int size = widths[slot] * heights[slot] * 4;
+		glBindBuffer(GL_PIXEL_PACK_BUFFER, buffers[slot]);
+		ByteBuffer mapped = glMapBufferRange(GL_PIXEL_PACK_BUFFER, 0, size, GL_MAP_READ_BIT);
+		
+		ByteBuffer pixels = null;
+		if (mapped != null) {
+			pixels = PixelBufferPool.getInstance().allocate(size);
+			MemoryUtil.memCopy(mapped, pixels);
+			glUnmapBuffer(GL_PIXEL_PACK_BUFFER);
+		}
+		glBindBuffer(GL_PIXEL_PACK_BUFFER, 0);
+		
+		Handler handler = handlers[slot];
+		int width = widths[slot];
+		int height = heights[slot];
+		long frame = frames[slot];
+		release(slot);
+		
+		if (pixels != null) {
+			handler.handle(pixels, width, height, frame);
+		}
+	}
+	
+	/**
+	 * Frees the oldest slot for a new read.
+	 * 
+	 * @param slot
+	 *            the slot of the oldest read.
+	 */
+	private void release(int slot) {
+		
+		fences[slot] = 0;
+		handlers[slot] = null;
+		head = (slot + 1) % RING_SIZE;
+		pending--;
+	}
+}
@@ -0,0 +1,309 @@
+package net.mmarss.grease.core;
+
+import java.nio.ByteBuffer;
+
+import net.mmarss.grease.exception.GreaseInvalidArgumentException;
+
+/**
+ * The OpenGL facade used by the engine's rendering classes. Each function
+ * forwards to the current {@link GlBackend}, which is the {@link LwjglBackend}
+ * unless replaced, for example by a {@link RecordingBackend} when running
+ * without a GPU. The functions mirror those of LWJGL, so the rendering classes
+ * read as if calling OpenGL directly, and take their constants from LWJGL.
+ * 
+ * The backend is shared by every thread, and should be replaced only while
+ * nothing is rendering; typically once, before the engine is started.
+ */
+public final class Gl {
+	
+	/** The backend receiving the OpenGL calls. */
+	private static volatile GlBackend backend = LwjglBackend.getInstance();
+	
+	/**
+	 * This class only has static members, and should not be instantiated.
+	 */
+	private Gl() {}
+	
+	/**
+	 * Sets the backend receiving the OpenGL calls made by the engine.
+	 * 
+	 * @param backend
+	 *            the new backend.
+	 */
+	public static void setBackend(GlBackend backend) {
+		
+		if (backend == null) {
+			throw new GreaseInvalidArgumentException("backend", backend, "The OpenGL backend must be non-null.");
+		}
+		
+		Gl.backend = backend;
+	}
+	
+	/**
+	 * @return the backend receiving the OpenGL calls made by the engine.
+	 */
+	public static GlBackend getBackend() {
+		
+		return backend;
+	}
+	
+	/** Calls <code>glBindTexture</code> on the current backend. */
+	public static void glBindTexture(int target, int texture) {
+		
+		backend.glBindTexture(target, texture);
+	}
+	
+	/** Calls <code>glBlendFunc</code> on the current backend. */
+	public static void glBlendFunc(int sfactor, int dfactor) {
+		
+		backend.glBlendFunc(sfactor, dfactor);
+	}
+	
+	/** Calls <code>glClear</code> on the current backend. */
+	public static void glClear(int mask) {
+		
+		backend.glClear(mask);
+	}
+	
+	/** Calls <code>glDeleteTextures</code> on the current backend. */
+	public static void glDeleteTextures(int texture) {
+		
+		backend.glDeleteTextures(texture);
+	}
+	
+	/** Calls <code>glDisable</code> on the current backend. */
+	public static void glDisable(int cap) {
+		
+		backend.glDisable(cap);
+	}
+	
+	/** Calls <code>glDrawElements</code> on the current backend. */
+	public static void glDrawElements(int mode, int count, int type, long indices) {
+		
+		backend.glDrawElements(mode, count, type, indices);
+	}
+	
+	/** Calls <code>glEnable</code> on the current backend. */
+	public static void glEnable(int cap) {
+		
+		backend.glEnable(cap);
+	}
+	
+	/** Calls <code>glGenTextures</code> on the current backend. */
+	public static int glGenTextures() {
+		
+		return backend.glGenTextures();
+	}
+	
+	/** Calls <code>glTexImage2D</code> on the current backend. */
+	public static void glTexImage2D(int target, int level, int internalformat, int width, int height, int border,
+			int format, int type, ByteBuffer pixels) {
+		
+		backend.glTexImage2D(target, level, internalformat, width, height, border, format, type, pixels);
+	}
+	
+	/** Calls <code>glTexParameteri</code> on the current backend. */
+	public static void glTexParameteri(int target, int pname, int param) {
+		
+		backend.glTexParameteri(target, pname, param);
+	}
+	
+	/** Calls <code>glViewport</code> on the current backend. */
+	public static void glViewport(int x, int y, int width, int height) {
+		
+		backend.glViewport(x, y, width, height);
+	}
+	
+	/** Calls <code>glBindBuffer</code> on the current backend. */
+	public static void glBindBuffer(int target, int buffer) {
+		
+		backend.glBindBuffer(target, buffer);
+	}
+	
+	/** Calls <code>glBufferData</code> on the current backend. */
+	public static void glBufferData(int target, float[] data, int usage) {
+		
+		backend.glBufferData(target, data, usage);
+	}
+	
+	/** Calls <code>glBufferData</code> on the current backend. */
+	public static void glBufferData(int target, short[] data, int usage) {
+		
+		backend.glBufferData(target, data, usage);
+	}
+	
+	/** Calls <code>glDeleteBuffers</code> on the current backend. */
+	public static void glDeleteBuffers(int buffer) {
+		
+		backend.glDeleteBuffers(buffer);
+	}
+	
+	/** Calls <code>glGenBuffers</code> on the current backend. */
+	public static int glGenBuffers() {
+		
+		return backend.glGenBuffers();
+	}
+	
+	/** Calls <code>glAttachShader</code> on the current backend. */
+	public static void glAttachShader(int program, int shader) {
+		
+		backend.glAttachShader(program, shader);
+	}
+	
+	/** Calls <code>glCompileShader</code> on the current backend. */
+	public static void glCompileShader(int shader) {
+		
+		backend.glCompileShader(shader);
+	}
+	
+	/** Calls <code>glCreateProgram</code> on the current backend. */
+	public static int glCreateProgram() {
+		
+		return backend.glCreateProgram();
+	}
+	
+	/** Calls <code>glCreateShader</code> on the current backend. */
+	public static int glCreateShader(int type) {
+		
+		return backend.glCreateShader(type);
+	}
+	
+	/** Calls <code>glDeleteProgram</code> on the current backend. */
+	public static void glDeleteProgram(int program) {
+		
+		backend.glDeleteProgram(program);
+	}
+	
+	/** Calls <code>glDeleteShader</code> on the current backend. */
+	public static void glDeleteShader(int shader) {
+		
+		backend.glDeleteShader(shader);
+	}
+	
+	/** Calls <code>glDetachShader</code> on the current backend. */
+	public static void glDetachShader(int program, int shader) {
+		
+		backend.glDetachShader(program, shader);
+	}
+	
+	/** Calls <code>glEnableVertexAttribArray</code> on the current backend. */
+	public static void glEnableVertexAttribArray(int index) {
+		
+		backend.glEnableVertexAttribArray(index);
+	}
+	
+	/** Calls <code>glGetProgramInfoLog</code> on the current backend. */
+	public static String glGetProgramInfoLog(int program, int maxLength) {
+		
+		return backend.glGetProgramInfoLog(program, maxLength);
+	}
+	
+	/** Calls <code>glGetProgrami</code> on the current backend. */
+	public static int glGetProgrami(int program, int pname) {
+		
+		return backend.glGetProgrami(program, pname);
+	}
+	
+	/** Calls <code>glGetShaderInfoLog</code> on the current backend. */
+	public static String glGetShaderInfoLog(int shader, int maxLength) {
+		
+		return backend.glGetShaderInfoLog(shader, maxLength);
+	}
+	
+	/** Calls <code>glGetShaderi</code> on the current backend. */
+	public static int glGetShaderi(int shader, int pname) {
+		
+		return backend.glGetShaderi(shader, pname);
+	}
+	
+	/** Calls <code>glGetUniformLocation</code> on the current backend. */
+	public static int glGetUniformLocation(int program, CharSequence name) {
+		
+		return backend.glGetUniformLocation(program, name);
+	}
+	
+	/** Calls <code>glLinkProgram</code> on the current backend. */
+	public static void glLinkProgram(int program) {
+		
+		backend.glLinkProgram(program);
+	}
+	
+	/** Calls <code>glShaderSource</code> on the current backend. */
+	public static void glShaderSource(int shader, CharSequence string) {
+		
+		backend.glShaderSource(shader, string);
+	}
+	
+	/** Calls <code>glUniform1f</code> on the current backend. */
+	public static void glUniform1f(int location, float v0) {
+		
+		backend.glUniform1f(location, v0);
+	}
+	
+	/** Calls <code>glUniform1i</code> on the current backend. */
+	public static void glUniform1i(int location, int v0) {
+		
+		backend.glUniform1i(location, v0);
+	}
+	
+	/** Calls <code>glUniform2f</code> on the current backend. */
+	public static void glUniform2f(int location, float v0, float v1) {
+		
+		backend.glUniform2f(location, v0, v1);
+	}
+	
+	/** Calls <code>glUniform3f</code> on the current backend. */
+	public static void glUniform3f(int location, float v0, float v1, float v2) {
+		
+		backend.glUniform3f(location, v0, v1, v2);
+	}
+	
+	/** Calls <code>glUniform4f</code> on the current backend. */
+	public static void glUniform4f(int location, float v0, float v1, float v2, float v3) {
+		
+		backend.glUniform4f(location, v0, v1, v2, v3);
+	}
+	
+	/** Calls <code>glUniformMatrix4fv</code> on the current backend. */
+	public static void glUniformMatrix4fv(int location, boolean transpose, float[] value) {
+		
+		backend.glUniformMatrix4fv(location, transpose, value);
+	}
+	
+	/** Calls <code>glUseProgram</code> on the current backend. */
+	public static void glUseProgram(int program) {
+		
+		backend.glUseProgram(program);
+	}
+	
+	/** Calls <code>glValidateProgram</code> on the current backend. */
+	public static void glValidateProgram(int program) {
+		
+		backend.glValidateProgram(program);
+	}
+	
+	/** Calls <code>glVertexAttribPointer</code> on the current backend. */
+	public static void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride,
+			long pointer) {
+		
+		backend.glVertexAttribPointer(index, size, type, normalized, stride, pointer);
+	}
+	
+	/** Calls <code>glBindVertexArray</code> on the current backend. */
+	public static void glBindVertexArray(int array) {
+		
+		backend.glBindVertexArray(array);
+	}
+	
+	/** Calls <code>glDeleteVertexArrays</code> on the current backend. */
+	public static void glDeleteVertexArrays(int array) {
+		
+		backend.glDeleteVertexArrays(array);
+	}
+	
+	/** Calls <code>glGenVertexArrays</code> on the current backend. */
+	public static int glGenVertexArrays() {
+		
+		return backend.glGenVertexArrays();
+	}
+}
@@ -0,0 +1,146 @@
+package net.mmarss.grease.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The OpenGL functions used by the engine's rendering classes. The rendering
+ * classes call these functions through {@link Gl}, which forwards them to the
+ * current backend; normally the {@link LwjglBackend}, which calls OpenGL, or a
+ * {@link RecordingBackend}, which logs the calls so that the rendering path can
+ * be exercised without a GPU.
+ * 
+ * This interface is internal to the engine, and only covers the functions the
+ * engine uses. It gains functions as the engine does.
+ */
+public interface GlBackend {
+	
+	/** Binds a texture to a texture target. See <code>GL11.glBindTexture</code>. */
+	public void glBindTexture(int target, int texture);
+	
+	/** Sets the blending factors. See <code>GL11.glBlendFunc</code>. */
+	public void glBlendFunc(int sfactor, int dfactor);
+	
+	/** Clears the specified buffers. See <code>GL11.glClear</code>. */
+	public void glClear(int mask);
+	
+	/** Deletes a texture. See <code>GL11.glDeleteTextures</code>. */
+	public void glDeleteTextures(int texture);
+	
+	/** Disables a capability. See <code>GL11.glDisable</code>. */
+	public void glDisable(int cap);
+	
+	/** Draws primitives from the bound element array buffer. See <code>GL11.glDrawElements</code>. */
+	public void glDrawElements(int mode, int count, int type, long indices);
+	
+	/** Enables a capability. See <code>GL11.glEnable</code>. */
+	public void glEnable(int cap);
+	
+	/** Generates a texture name. See <code>GL11.glGenTextures</code>. */
+	public int glGenTextures();
+	
+	/** Uploads a two-dimensional texture image. See <code>GL11.glTexImage2D</code>. */
+	public void glTexImage2D(int target, int level, int internalformat, int width, int height, int border, int format,
+			int type, ByteBuffer pixels);
+	
+	/** Sets an integer texture parameter. See <code>GL11.glTexParameteri</code>. */
+	public void glTexParameteri(int target, int pname, int param);
+	
+	/** Sets the viewport. See <code>GL11.glViewport</code>. */
+	public void glViewport(int x, int y, int width, int height);
+	
+	/** Binds a buffer object to a buffer target. See <code>GL15.glBindBuffer</code>. */
+	public void glBindBuffer(int target, int buffer);
+	
+	/** Uploads float data to the bound buffer object. See <code>GL15.glBufferData</code>. */
+	public void glBufferData(int target, float[] data, int usage);
+	
+	/** Uploads short data to the bound buffer object. See <code>GL15.glBufferData</code>. */
+	public void glBufferData(int target, short[] data, int usage);
+	
+	/** Deletes a buffer object. See <code>GL15.glDeleteBuffers</code>. */
+	public void glDeleteBuffers(int buffer);
+	
+	/** Generates a buffer object name. See <code>GL15.glGenBuffers</code>. */
+	public int glGenBuffers();
+	
+	/** Attaches a shader to a program. See <code>GL20.glAttachShader</code>. */
+	public void glAttachShader(int program, int shader);
+	
+	/** Compiles a shader. See <code>GL20.glCompileShader</code>. */
+	public void glCompileShader(int shader);
+	
+	/** Creates a program object. See <code>GL20.glCreateProgram</code>. */
+	public int glCreateProgram();
+	
+	/** Creates a shader object. See <code>GL20.glCreateShader</code>. */
+	public int glCreateShader(int type);
+	
+	/** Deletes a program object. See <code>GL20.glDeleteProgram</code>. */
+	public void glDeleteProgram(int program);
+	
+	/** Deletes a shader object. See <code>GL20.glDeleteShader</code>. */
+	public void glDeleteShader(int shader);
+	
+	/** Detaches a shader from a program. See <code>GL20.glDetachShader</code>. */
+	public void glDetachShader(int program, int shader);
+	
+	/** Enables a vertex attribute array. See <code>GL20.glEnableVertexAttribArray</code>. */
+	public void glEnableVertexAttribArray(int index);
+	
+	/** Gets the information log of a program. See <code>GL20.glGetProgramInfoLog</code>. */
+	public String glGetProgramInfoLog(int program, int maxLength);
+	
+	/** Gets an integer parameter of a program. See <code>GL20.glGetProgrami</code>. */
+	public int glGetProgrami(int program, int pname);
+	
+	/** Gets the information log of a shader. See <code>GL20.glGetShaderInfoLog</code>. */
+	public String glGetShaderInfoLog(int shader, int maxLength);
+	
+	/** Gets an integer parameter of a shader. See <code>GL20.glGetShaderi</code>. */
+	public int glGetShaderi(int shader, int pname);
+	
+	/** Gets the location of a uniform variable. See <code>GL20.glGetUniformLocation</code>. */
+	public int glGetUniformLocation(int program, CharSequence name);
+	
+	/** Links a program. See <code>GL20.glLinkProgram</code>. */
+	public void glLinkProgram(int program);
+	
+	/** Sets the source code of a shader. See <code>GL20.glShaderSource</code>. */
+	public void glShaderSource(int shader, CharSequence string);
+	
+	/** Sets a float uniform. See <code>GL20.glUniform1f</code>. */
+	public void glUniform1f(int location, float v0);
+	
+	/** Sets an integer uniform. See <code>GL20.glUniform1i</code>. */
+	public void glUniform1i(int location, int v0);
+	
+	/** Sets a vec2 uniform. See <code>GL20.glUniform2f</code>. */
+	public void glUniform2f(int location, float v0, float v1);
+	
+	/** Sets a vec3 uniform. See <code>GL20.glUniform3f</code>. */
+	public void glUniform3f(int location, float v0, float v1, float v2);
+	
+	/** Sets a vec4 uniform. See <code>GL20.glUniform4f</code>. */
+	public void glUniform4f(int location, float v0, float v1, float v2, float v3);
+	
+	/** Sets a mat4 uniform. See <code>GL20.glUniformMatrix4fv</code>. */
+	public void glUniformMatrix4fv(int location, boolean transpose, float[] value);
+	
+	/** Installs a program as part of the current rendering state. See <code>GL20.glUseProgram</code>. */
+	public void glUseProgram(int program);
+	
+	/** Validates a program. See <code>GL20.glValidateProgram</code>. */
+	public void glValidateProgram(int program);
+	
+	/** Defines the layout of a vertex attribute array. See <code>GL20.glVertexAttribPointer</code>. */
+	public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, long pointer);
+	
+	/** Binds a vertex array object. See <code>GL30.glBindVertexArray</code>. */
+	public void glBindVertexArray(int array);
+	
+	/** Deletes a vertex array object. See <code>GL30.glDeleteVertexArrays</code>. */
+	public void glDeleteVertexArrays(int array);
+	
+	/** Generates a vertex array object name. See <code>GL30.glGenVertexArrays</code>. */
+	public int glGenVertexArrays();
+}
@@ -0,0 +1,143 @@
+package net.mmarss.grease.core;
+
+import net.mmarss.grease.exception.GreaseInvalidArgumentException;
+
+/**
+ * A fast, seedable pseudorandom number generator, using the SplitMix64
+ * algorithm. Unlike <code>Math.random</code>, its sequence is fully determined
+ * by its seed, so games which draw their randomness from the engine's generator
+ * behave identically when a recorded session is replayed. Not thread-safe.
+ */
+public class GreaseRandom {
+	
+	/** The golden ratio increment used to advance the state. */
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+	
+	/** The seed the generator was last seeded with. */
+	private long	seed;
+	/** The current state of the generator. */
+	private long	state;
+	
+	/**
+	 * Constructs a new generator with a seed taken from the system time.
+	 */
+	public GreaseRandom() {
+		
+		this(System.nanoTime() * GOLDEN_GAMMA);
+	}
+	
+	/**
+	 * Constructs a new generator with the specified seed.
+	 * 
+	 * @param seed
+	 *            the seed.
+	 */
+	public GreaseRandom(long seed) {
+		
+		setSeed(seed);
+	}
+	
+	/**
+	 * Reseeds the generator, restarting its sequence.
+	 * 
+	 * @param seed
+	 *            the new seed.
+	 */
+	public void setSeed(long seed) {
+		
+		this.seed = seed;
+		state = seed;
+	}
+	
+	/**
+	 * @return the seed the generator was last seeded with.
+	 */
+	public long getSeed() {
+		
+		return seed;
+	}
+	
+	/**
+	 * @return a uniformly distributed <code>long</code>.
+	 */
+	public long nextLong() {
+		
+		long z = state += GOLDEN_GAMMA;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+	
+	/**
+	 * @return a uniformly distributed <code>int</code>.
+	 */
+	public int nextInt() {
+		
+		return (int) (nextLong() >>> 32);
+	}
+	
+	/**
+	 * Gets a uniformly distributed integer from 0, inclusive, to the specified
+	 * bound, exclusive.
+	 * 
+	 * @param bound
+	 *            the upper bound, which must be positive.
+	 * @return the random integer.
+	 */
+	public int nextInt(int bound) {
+		
+		if (bound <= 0) {
+			throw new GreaseInvalidArgumentException("bound", bound, "Bounds must be positive.");
+		}
+		
+		// Reject the top values which would bias the remainder
+		int bits;
+		int value;
+		do {
+			bits = (int) (nextLong() >>> 33);
+			value = bits % bound;
+		} while (bits - value + (bound - 1) < 0);
+		
+		return value;
+	}
+	
+	/**
+	 * @return a uniformly distributed <code>double</code> from 0, inclusive, to 1,
+	 *         exclusive.
+	 */
+	public double nextDouble() {
+		
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+	
+	/**
+	 * @return a uniformly distributed <code>float</code> from 0, inclusive, to 1,
+	 *         exclusive.
+	 */
+	public float nextFloat() {
+		
+		return (nextLong() >>> 40) * 0x1.0p-24f;
+	}
+	
+	/**
+	 * Gets a uniformly distributed <code>float</code> in the specified range.
+	 * 
+	 * @param min
+	 *            the lower bound, inclusive.
+	 * @param max
+	 *            the upper bound, exclusive.
+	 * @return the random value.
+	 */
+	public float nextFloat(float min, float max) {
+		
+		return min + nextFloat() * (max - min);
+	}
+	
+	/**
+	 * @return a random <code>boolean</code>.
+	 */
+	public boolean nextBoolean() {
+		
+		return nextLong() < 0;
+	}
+}
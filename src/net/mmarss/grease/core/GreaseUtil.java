@@ -3,6 +3,8 @@ package net.mmarss.grease.core;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 import net.mmarss.grease.exception.GreaseFileException;
 
@@ -42,4 +44,17 @@ public class GreaseUtil {
 			throw new GreaseFileException("Could not read file " + RESOURCE_DIR + filename + ": " + e.getMessage());
 		}
 	}
+	
+	/**
+	 * Gets the path of the specified resource file, as read by
+	 * <code>loadResource</code>.
+	 * 
+	 * @param filename
+	 *            the resource file.
+	 * @return the path of the file.
+	 */
+	/* package */ static Path getResourcePath(String filename) {
+		
+		return Paths.get(RESOURCE_DIR, filename);
+	}
 }
@@ -0,0 +1,288 @@
+package net.mmarss.grease.core;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import net.mmarss.grease.input.GamepadAxis;
+import net.mmarss.grease.input.GamepadButton;
+import net.mmarss.grease.input.GamepadState;
+import net.mmarss.grease.input.InputListener;
+import net.mmarss.grease.input.Key;
+import net.mmarss.grease.input.KeyAction;
+import net.mmarss.grease.input.MouseButton;
+
+/**
+ * Records a game session to a compact binary input log, from which it can be
+ * replayed exactly by {@link InputReplay}. The log holds the random seed and
+ * timestep settings of the session, followed by every key and mouse event and
+ * every frame delta in the order they reached the game. Each frame's delta is
+ * written before its updates, and the events processed by each update are
+ * followed by an update record, so that a replay feeds every fixed timestep
+ * update of a frame the same events it saw when recorded.
+ * 
+ * The log starts with a header; the magic number, format version, random seed,
+ * fixed timestep as a <code>double</code>, and maximum updates per frame. Each
+ * record is then a tag byte followed by its data. Frame records hold the frame
+ * delta in nanoseconds, update records hold no data, and key records hold the GLFW key code, the action and
+ * the GLFW modifier bits. Button records are laid out like key records; cursor
+ * records hold each sampled position and scroll records each update's summed
+ * offsets, as pairs of <code>double</code>s. Gamepad records hold the gamepad
+ * index and whether it is connected, followed for connected gamepads by the
+ * button bits and each axis as a <code>float</code>. Integers are written as variable-length quantities, so
+ * most records take two or three bytes.
+ * 
+ * Write errors are reported once, after which recording stops; they never
+ * interrupt the game.
+ */
+/* package */ class InputRecorder implements InputListener {
+	
+	/** The magic number at the start of every input log. */
+	/* package */ static final int	MAGIC			= 0x4752494C;	// "GRIL"
+	/** The input log format version. */
+	/* package */ static final int	VERSION			= 4;
+	/**
+	 * The first format version with update records, in which frame records come
+	 * before the frame's updates instead of after them.
+	 */
+	/* package */ static final int	VERSION_UPDATES	= 4;
+	/** The tag of a record holding a frame delta. */
+	/* package */ static final int	TAG_FRAME		= 0;
+	/** The tag of a record holding a key event. */
+	/* package */ static final int	TAG_KEY			= 1;
+	/** The tag of a record holding a mouse button event. Added in version 2. */
+	/* package */ static final int	TAG_BUTTON		= 2;
+	/** The tag of a record holding a cursor position. Added in version 2. */
+	/* package */ static final int	TAG_CURSOR		= 3;
+	/** The tag of a record holding a scroll offset. Added in version 2. */
+	/* package */ static final int	TAG_SCROLL		= 4;
+	/** The tag of a record holding a gamepad state. Added in version 3. */
+	/* package */ static final int	TAG_GAMEPAD		= 5;
+	/** The tag of a record ending the events of an update. Added in version 4. */
+	/* package */ static final int	TAG_UPDATE		= 6;
+	
+	/** The stream the log is written to, or <code>null</code> once closed. */
+	private DataOutputStream out;
+	
+	/**
+	 * Constructs a new recorder writing to the specified stream. Nothing is written
+	 * until <code>start</code> is called.
+	 * 
+	 * @param out
+	 *            the stream to write the log to. It is closed with the recorder.
+	 */
+	/* package */ InputRecorder(OutputStream out) {
+		
+		this.out = new DataOutputStream(new BufferedOutputStream(out));
+	}
+	
+	/**
+	 * Writes the log header.
+	 * 
+	 * @param seed
+	 *            the seed of the engine's random number generator.
+	 * @param fixedTimestep
+	 *            the simulation timestep in seconds, or 0 for a variable timestep.
+	 * @param maxUpdatesPerFrame
+	 *            the maximum number of fixed timestep updates run in one frame.
+	 */
+	/* package */ synchronized void start(long seed, double fixedTimestep, int maxUpdatesPerFrame) {
+		
+		if (out == null) {
+			return;
+		}
+		
+		try {
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			out.writeLong(seed);
+			out.writeDouble(fixedTimestep);
+			writeVarLong(out, maxUpdatesPerFrame);
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+	
+	/**
+	 * Records the time elapsed since the last frame, before the frame's updates
+	 * are run.
+	 * 
+	 * @param elapsed
+	 *            the time since the last frame, in seconds.
+	 */
+	/* package */ synchronized void recordFrame(double elapsed) {
+		
+		if (out == null) {
+			return;
+		}
+		
+		try {
+			out.writeByte(TAG_FRAME);
+			writeVarLong(out, Math.round(elapsed * 1e9));
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+	
+	/**
+	 * Records the end of the events processed before an update. Called once per
+	 * update, after the input events have been processed.
+	 */
+	/* package */ synchronized void recordUpdate() {
+		
+		if (out == null) {
+			return;
+		}
+		
+		try {
+			out.writeByte(TAG_UPDATE);
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+	
+	@Override
+	public synchronized void keyEvent(Key key, KeyAction keyAction, int modifiers) {
+		
+		if (out == null || keyAction == null) {
+			return;
+		}
+		
+		try {
+			out.writeByte(TAG_KEY);
+			writeVarLong(out, key.getId() + 1); // Unknown keys have an ID of -1
+			out.writeByte(keyAction.ordinal());
+			out.writeByte(modifiers);
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+	
+	@Override
+	public synchronized void mouseButtonEvent(MouseButton button, KeyAction action, int modifiers) {
+		
+		if (out == null || action == null) {
+			return;
+		}
+		
+		try {
+			out.writeByte(TAG_BUTTON);
+			writeVarLong(out, button.getId() + 1); // Unknown buttons have an ID of -1
+			out.writeByte(action.ordinal());
+			out.writeByte(modifiers);
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+	
+	@Override
+	public synchronized void cursorEvent(double x, double y) {
+		
+		if (out == null) {
+			return;
+		}
+		
+		try {
+			out.writeByte(TAG_CURSOR);
+			out.writeDouble(x);
+			out.writeDouble(y);
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+	
+	@Override
+	public synchronized void gamepadEvent(int gamepad, GamepadState state) {
+		
+		if (out == null) {
+			return;
+		}
+		
+		try {
+			out.writeByte(TAG_GAMEPAD);
+			out.writeByte(gamepad);
+			out.writeBoolean(state.isConnected());
+			if (state.isConnected()) {
+				int buttons = 0;
+				for (GamepadButton button : GamepadButton.values()) {
+					if (state.isButtonDown(button)) {
+						buttons |= 1 << button.ordinal();
+					}
+				}
+				writeVarLong(out, buttons);
+				for (GamepadAxis axis : GamepadAxis.values()) {
+					out.writeFloat(state.getAxis(axis));
+				}
+			}
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+	
+	@Override
+	public synchronized void scrollEvent(double x, double y) {
+		
+		if (out == null) {
+			return;
+		}
+		
+		try {
+			out.writeByte(TAG_SCROLL);
+			out.writeDouble(x);
+			out.writeDouble(y);
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+	
+	/**
+	 * Flushes and closes the log.
+	 */
+	/* package */ synchronized void close() {
+		
+		if (out == null) {
+			return;
+		}
+		
+		try {
+			out.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		out = null;
+	}
+	
+	/**
+	 * Reports a write error and stops recording.
+	 * 
+	 * @param e
+	 *            the write error.
+	 */
+	private void fail(IOException e) {
+		
+		System.err.println("Input recording stopped.");
+		e.printStackTrace();
+		close();
+	}
+	
+	/**
+	 * Writes a non-negative integer as a variable-length quantity, seven bits per
+	 * byte, least significant first.
+	 * 
+	 * @param out
+	 *            the stream to write to.
+	 * @param value
+	 *            the value to write.
+	 * @throws IOException
+	 *             if the value could not be written.
+	 */
+	private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+		
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+}
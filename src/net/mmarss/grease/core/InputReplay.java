@@ -0,0 +1,260 @@
+package net.mmarss.grease.core;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import net.mmarss.grease.exception.GreaseFileException;
+import net.mmarss.grease.exception.GreaseInvalidArgumentException;
+import net.mmarss.grease.input.GamepadAxis;
+import net.mmarss.grease.input.GamepadButton;
+import net.mmarss.grease.input.Key;
+import net.mmarss.grease.input.KeyAction;
+import net.mmarss.grease.input.MouseButton;
+import net.mmarss.grease.input.ProgrammableInput;
+
+/**
+ * Replays an input log written by {@link InputRecorder}, feeding its frame
+ * deltas to the engine frame by frame, and its key and mouse events to a
+ * programmable input update by update. Logs written before update records were
+ * added are replayed frame by frame, with all of a frame's events fed before its
+ * first update.
+ */
+/* package */ class InputReplay {
+	
+	/** The stream the log is read from, or <code>null</code> once closed. */
+	private DataInputStream in;
+	
+	/** The format version of the log. */
+	private final int		version;
+	/** The seed of the recorded session's random number generator. */
+	private final long		seed;
+	/** The recorded session's fixed timestep, or 0 for a variable timestep. */
+	private final double	fixedTimestep;
+	/** The recorded session's maximum updates per frame. */
+	private final int		maxUpdatesPerFrame;
+	
+	/**
+	 * Constructs a new replay, reading the log header from the specified stream.
+	 * 
+	 * @param in
+	 *            the stream to read the log from. It is closed with the replay.
+	 * @throws GreaseFileException
+	 *             if the header could not be read, or is not an input log header.
+	 */
+	/* package */ InputReplay(InputStream in) throws GreaseFileException {
+		
+		this.in = new DataInputStream(new BufferedInputStream(in));
+		
+		try {
+			if (this.in.readInt() != InputRecorder.MAGIC) {
+				throw new GreaseFileException("The stream is not an input log.");
+			}
+			
+			version = this.in.readUnsignedByte();
+			if (version < 1 || version > InputRecorder.VERSION) {
+				throw new GreaseFileException("Unsupported input log version " + version + ".");
+			}
+			
+			seed = this.in.readLong();
+			fixedTimestep = this.in.readDouble();
+			maxUpdatesPerFrame = (int) readVarLong(this.in);
+			
+		} catch (IOException e) {
+			throw new GreaseFileException("Could not read the input log header. " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * @return the seed of the recorded session's random number generator.
+	 */
+	/* package */ long getSeed() {
+		
+		return seed;
+	}
+	
+	/**
+	 * @return the recorded session's fixed timestep in seconds, or 0 for a
+	 *         variable timestep.
+	 */
+	/* package */ double getFixedTimestep() {
+		
+		return fixedTimestep;
+	}
+	
+	/**
+	 * @return the recorded session's maximum number of updates per frame.
+	 */
+	/* package */ int getMaxUpdatesPerFrame() {
+		
+		return maxUpdatesPerFrame;
+	}
+	
+	/**
+	 * Reads the next frame's delta, applying any input events recorded before it
+	 * to the specified input.
+	 * 
+	 * @param input
+	 *            the input to apply the events to.
+	 * @return the recorded time since the last frame in seconds, or a negative
+	 *         value once the log has ended.
+	 */
+	/* package */ double nextFrame(ProgrammableInput input) {
+		
+		if (in == null) {
+			return -1;
+		}
+		
+		try {
+			readEvents(input, InputRecorder.TAG_FRAME);
+			return readVarLong(in) / 1e9;
+			
+		} catch (EOFException e) {
+			close();
+			return -1;
+		} catch (IOException | ArrayIndexOutOfBoundsException | GreaseInvalidArgumentException e) {
+			e.printStackTrace();
+			close();
+			return -1;
+		}
+	}
+	
+	/**
+	 * Applies the input events recorded for the next update to the specified
+	 * input. Called before each update, before the input processes its events.
+	 * Does nothing for logs without update records, whose events are all applied
+	 * by <code>nextFrame</code>.
+	 * 
+	 * @param input
+	 *            the input to apply the events to.
+	 */
+	/* package */ void nextUpdate(ProgrammableInput input) {
+		
+		if (in == null || version < InputRecorder.VERSION_UPDATES) {
+			return;
+		}
+		
+		try {
+			readEvents(input, InputRecorder.TAG_UPDATE);
+			
+		} catch (EOFException e) {
+			close();
+		} catch (IOException | ArrayIndexOutOfBoundsException | GreaseInvalidArgumentException e) {
+			e.printStackTrace();
+			close();
+		}
+	}
+	
+	/**
+	 * Applies input event records to the specified input, until a record with the
+	 * specified tag is reached. The tag is consumed, and its data left unread.
+	 * 
+	 * @param input
+	 *            the input to apply the events to.
+	 * @param endTag
+	 *            the tag of the record ending the events.
+	 * @throws IOException
+	 *             if a record could not be read, or is not an event record.
+	 */
+	private void readEvents(ProgrammableInput input, int endTag) throws IOException {
+		
+		while (true) {
+			int tag = in.readUnsignedByte();
+			if (tag == endTag) {
+				return;
+			}
+			
+			switch (tag) {
+			case InputRecorder.TAG_KEY:
+				Key key = Key.fromId((int) readVarLong(in) - 1);
+				KeyAction keyAction = KeyAction.values()[in.readUnsignedByte()];
+				input.keyCallback(key, keyAction, in.readUnsignedByte());
+				break;
+			case InputRecorder.TAG_BUTTON:
+				MouseButton button = MouseButton.fromId((int) readVarLong(in) - 1);
+				KeyAction action = KeyAction.values()[in.readUnsignedByte()];
+				input.mouseButtonCallback(button, action, in.readUnsignedByte());
+				break;
+			case InputRecorder.TAG_CURSOR:
+				input.cursorCallback(in.readDouble(), in.readDouble());
+				break;
+			case InputRecorder.TAG_SCROLL:
+				input.scrollCallback(in.readDouble(), in.readDouble());
+				break;
+			case InputRecorder.TAG_GAMEPAD:
+				readGamepad(input);
+				break;
+			default:
+				throw new IOException("Corrupt input log record tag " + tag + ".");
+			}
+		}
+	}
+	
+	/**
+	 * Reads a gamepad record and applies it to the specified input.
+	 * 
+	 * @param input
+	 *            the input to apply the gamepad state to.
+	 * @throws IOException
+	 *             if the record could not be read.
+	 */
+	private void readGamepad(ProgrammableInput input) throws IOException {
+		
+		int gamepad = in.readUnsignedByte();
+		boolean connected = in.readBoolean();
+		input.setGamepadConnected(gamepad, connected);
+		if (!connected) {
+			return;
+		}
+		
+		int buttons = (int) readVarLong(in);
+		for (GamepadButton button : GamepadButton.values()) {
+			input.setGamepadButton(gamepad, button, (buttons & (1 << button.ordinal())) != 0);
+		}
+		for (GamepadAxis axis : GamepadAxis.values()) {
+			input.setGamepadAxis(gamepad, axis, in.readFloat());
+		}
+	}
+	
+	/**
+	 * Closes the log.
+	 */
+	/* package */ void close() {
+		
+		if (in == null) {
+			return;
+		}
+		
+		try {
+			in.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		in = null;
+	}
+	
+	/**
+	 * Reads a variable-length quantity written by <code>InputRecorder</code>.
+	 * 
+	 * @param in
+	 *            the stream to read from.
+	 * @return the value read.
+	 * @throws IOException
+	 *             if the value could not be read.
+	 */
+	private static long readVarLong(DataInputStream in) throws IOException {
+		
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		
+		throw new IOException("Corrupt input log variable-length quantity.");
+	}
+}
@@ -0,0 +1,291 @@
+package net.mmarss.grease.core;
+
+import java.nio.ByteBuffer;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+
+/**
+ * The default OpenGL backend, calling straight through to LWJGL. Like LWJGL, it
+ * requires an OpenGL context to be current on the calling thread.
+ */
+public final class LwjglBackend implements GlBackend {
+	
+	/** The singleton instance of the LWJGL backend. */
+	private static final LwjglBackend instance = new LwjglBackend();
+	
+	/**
+	 * Constructs the LWJGL backend. This constructor is private, following the
+	 * singleton design pattern.
+	 */
+	private LwjglBackend() {}
+	
+	/**
+	 * @return the singleton instance of the LWJGL backend.
+	 */
+	public static LwjglBackend getInstance() {
+		
+		return instance;
+	}
+	
+	@Override
+	public void glBindTexture(int target, int texture) {
+		
+		GL11.glBindTexture(target, texture);
+	}
+	
+	@Override
+	public void glBlendFunc(int sfactor, int dfactor) {
+		
+		GL11.glBlendFunc(sfactor, dfactor);
+	}
+	
+	@Override
+	public void glClear(int mask) {
+		
+		GL11.glClear(mask);
+	}
+	
+	@Override
+	public void glDeleteTextures(int texture) {
+		
+		GL11.glDeleteTextures(texture);
+	}
+	
+	@Override
+	public void glDisable(int cap) {
+		
+		GL11.glDisable(cap);
+	}
+	
+	@Override
+	public void glDrawElements(int mode, int count, int type, long indices) {
+		
+		GL11.glDrawElements(mode, count, type, indices);
+	}
+	
+	@Override
+	public void glEnable(int cap) {
+		
+		GL11.glEnable(cap);
+	}
+	
+	@Override
+	public int glGenTextures() {
+		
+		return GL11.glGenTextures();
+	}
+	
+	@Override
+	public void glTexImage2D(int target, int level, int internalformat, int width, int height, int border, int format,
+			int type, ByteBuffer pixels) {
+		
+		GL11.glTexImage2D(target, level, internalformat, width, height, border, format, type, pixels);
+	}
+	
+	@Override
+	public void glTexParameteri(int target, int pname, int param) {
+		
+		GL11.glTexParameteri(target, pname, param);
+	}
+	
+	@Override
+	public void glViewport(int x, int y, int width, int height) {
+		
+		GL11.glViewport(x, y, width, height);
+	}
+	
+	@Override
+	public void glBindBuffer(int target, int buffer) {
+		
+		GL15.glBindBuffer(target, buffer);
+	}
+	
+	@Override
+	public void glBufferData(int target, float[] data, int usage) {
+		
+		GL15.glBufferData(target, data, usage);
+	}
+	
+	@Override
+	public void glBufferData(int target, short[] data, int usage) {
+		
+		GL15.glBufferData(target, data, usage);
+	}
+	
+	@Override
+	public void glDeleteBuffers(int buffer) {
+		
+		GL15.glDeleteBuffers(buffer);
+	}
+	
+	@Override
+	public int glGenBuffers() {
+		
+		return GL15.glGenBuffers();
+	}
+	
+	@Override
+	public void glAttachShader(int program, int shader) {
+		
+		GL20.glAttachShader(program, shader);
+	}
+	
+	@Override
+	public void glCompileShader(int shader) {
+		
+		GL20.glCompileShader(shader);
+	}
+	
+	@Override
+	public int glCreateProgram() {
+		
+		return GL20.glCreateProgram();
+	}
+	
+	@Override
+	public int glCreateShader(int type) {
+		
+		return GL20.glCreateShader(type);
+	}
+	
+	@Override
+	public void glDeleteProgram(int program) {
+		
+		GL20.glDeleteProgram(program);
+	}
+	
+	@Override
+	public void glDeleteShader(int shader) {
+		
+		GL20.glDeleteShader(shader);
+	}
+	
+	@Override
+	public void glDetachShader(int program, int shader) {
+		
+		GL20.glDetachShader(program, shader);
+	}
+	
+	@Override
+	public void glEnableVertexAttribArray(int index) {
+		
+		GL20.glEnableVertexAttribArray(index);
+	}
+	
+	@Override
+	public String glGetProgramInfoLog(int program, int maxLength) {
+		
+		return GL20.glGetProgramInfoLog(program, maxLength);
+	}
+	
+	@Override
+	public int glGetProgrami(int program, int pname) {
+		
+		return GL20.glGetProgrami(program, pname);
+	}
+	
+	@Override
+	public String glGetShaderInfoLog(int shader, int maxLength) {
+		
+		return GL20.glGetShaderInfoLog(shader, maxLength);
+	}
+	
+	@Override
+	public int glGetShaderi(int shader, int pname) {
+		
+		return GL20.glGetShaderi(shader, pname);
+	}
+	
+	@Override
+	public int glGetUniformLocation(int program, CharSequence name) {
+		
+		return GL20.glGetUniformLocation(program, name);
+	}
+	
+	@Override
+	public void glLinkProgram(int program) {
+		
+		GL20.glLinkProgram(program);
+	}
+	
+	@Override
+	public void glShaderSource(int shader, CharSequence string) {
+		
+		GL20.glShaderSource(shader, string);
+	}
+	
+	@Override
+	public void glUniform1f(int location, float v0) {
+		
+		GL20.glUniform1f(location, v0);
+	}
+	
+	@Override
+	public void glUniform1i(int location, int v0) {
+		
+		GL20.glUniform1i(location, v0);
+	}
+	
+	@Override
+	public void glUniform2f(int location, float v0, float v1) {
+		
+		GL20.glUniform2f(location, v0, v1);
+	}
+	
+	@Override
+	public void glUniform3f(int location, float v0, float v1, float v2) {
+		
+		GL20.glUniform3f(location, v0, v1, v2);
+	}
+	
+	@Override
+	public void glUniform4f(int location, float v0, float v1, float v2, float v3) {
+		
+		GL20.glUniform4f(location, v0, v1, v2, v3);
+	}
+	
+	@Override
+	public void glUniformMatrix4fv(int location, boolean transpose, float[] value) {
+		
+		GL20.glUniformMatrix4fv(location, transpose, value);
+	}
+	
+	@Override
+	public void glUseProgram(int program) {
+		
+		GL20.glUseProgram(program);
+	}
+	
+	@Override
+	public void glValidateProgram(int program) {
+		
+		GL20.glValidateProgram(program);
+	}
+	
+	@Override
+	public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, long pointer) {
+		
+		GL20.glVertexAttribPointer(index, size, type, normalized, stride, pointer);
+	}
+	
+	@Override
+	public void glBindVertexArray(int array) {
+		
+		GL30.glBindVertexArray(array);
+	}
+	
+	@Override
+	public void glDeleteVertexArrays(int array) {
+		
+		GL30.glDeleteVertexArrays(array);
+	}
+	
+	@Override
+	public int glGenVertexArrays() {
+		
+		return GL30.glGenVertexArrays();
+	}
+}
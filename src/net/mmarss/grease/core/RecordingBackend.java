@@ -0,0 +1,983 @@
+package net.mmarss.grease.core;
+
+import static org.lwjgl.opengl.GL11.GL_TRUE;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.mmarss.grease.exception.GreaseInvalidArgumentException;
+
+/**
+ * An OpenGL backend which logs every call and its arguments, so that the
+ * rendering path can be checked for exact call sequences and counts, such as
+ * state changes per frame or uploads per texture.
+ * 
+ * Calls are stored in a compact integer buffer, one opcode followed by one
+ * slot per argument. Floats are stored as their raw bits, booleans as 0 or 1,
+ * and strings as indices into a table of the strings seen. Longs take two
+ * slots, high word first. Bulk data, such as buffer contents and texture
+ * pixels, is recorded as its size in bytes, while matrix uniforms are recorded
+ * in full. Functions returning an object name or location have the result
+ * recorded as a final slot.
+ * 
+ * Without a delegate, the backend needs no OpenGL context: object names are
+ * numbered from 1, uniforms are assigned locations in order, every status
+ * query reports success and every information log is empty. With a delegate,
+ * each call is also forwarded, and the delegate's results are recorded and
+ * returned.
+ * 
+ * To record the engine's calls, install the backend before starting the
+ * engine:
+ * 
+ * <pre>
+ * RecordingBackend recording = new RecordingBackend();
+ * Gl.setBackend(recording);
+ * </pre>
+ */
+public class RecordingBackend implements GlBackend {
+	
+	/** The recorded OpenGL functions, with the kinds of their argument slots. */
+	public enum Call {
+		
+		/** <code>glBindTexture</code>. */
+		BIND_TEXTURE("glBindTexture", "ii"),
+		/** <code>glBlendFunc</code>. */
+		BLEND_FUNC("glBlendFunc", "ii"),
+		/** <code>glClear</code>. */
+		CLEAR("glClear", "i"),
+		/** <code>glDeleteTextures</code>. */
+		DELETE_TEXTURES("glDeleteTextures", "i"),
+		/** <code>glDisable</code>. */
+		DISABLE("glDisable", "i"),
+		/** <code>glDrawElements</code>. */
+		DRAW_ELEMENTS("glDrawElements", "iiij"),
+		/** <code>glEnable</code>. */
+		ENABLE("glEnable", "i"),
+		/** <code>glGenTextures</code>. */
+		GEN_TEXTURES("glGenTextures", "i"),
+		/** <code>glTexImage2D</code>. */
+		TEX_IMAGE_2D("glTexImage2D", "iiiiiiiin"),
+		/** <code>glTexParameteri</code>. */
+		TEX_PARAMETERI("glTexParameteri", "iii"),
+		/** <code>glViewport</code>. */
+		VIEWPORT("glViewport", "iiii"),
+		/** <code>glBindBuffer</code>. */
+		BIND_BUFFER("glBindBuffer", "ii"),
+		/** <code>glBufferData</code>. */
+		BUFFER_DATA("glBufferData", "ini"),
+		/** <code>glDeleteBuffers</code>. */
+		DELETE_BUFFERS("glDeleteBuffers", "i"),
+		/** <code>glGenBuffers</code>. */
+		GEN_BUFFERS("glGenBuffers", "i"),
+		/** <code>glAttachShader</code>. */
+		ATTACH_SHADER("glAttachShader", "ii"),
+		/** <code>glCompileShader</code>. */
+		COMPILE_SHADER("glCompileShader", "i"),
+		/** <code>glCreateProgram</code>. */
+		CREATE_PROGRAM("glCreateProgram", "i"),
+		/** <code>glCreateShader</code>. */
+		CREATE_SHADER("glCreateShader", "ii"),
+		/** <code>glDeleteProgram</code>. */
+		DELETE_PROGRAM("glDeleteProgram", "i"),
+		/** <code>glDeleteShader</code>. */
+		DELETE_SHADER("glDeleteShader", "i"),
+		/** <code>glDetachShader</code>. */
+		DETACH_SHADER("glDetachShader", "ii"),
+		/** <code>glEnableVertexAttribArray</code>. */
+		ENABLE_VERTEX_ATTRIB_ARRAY("glEnableVertexAttribArray", "i"),
+		/** <code>glGetProgramInfoLog</code>. */
+		GET_PROGRAM_INFO_LOG("glGetProgramInfoLog", "ii"),
+		/** <code>glGetProgrami</code>. */
+		GET_PROGRAMI("glGetProgrami", "iii"),
+		/** <code>glGetShaderInfoLog</code>. */
+		GET_SHADER_INFO_LOG("glGetShaderInfoLog", "ii"),
+		/** <code>glGetShaderi</code>. */
+		GET_SHADERI("glGetShaderi", "iii"),
+		/** <code>glGetUniformLocation</code>. */
+		GET_UNIFORM_LOCATION("glGetUniformLocation", "isi"),
+		/** <code>glLinkProgram</code>. */
+		LINK_PROGRAM("glLinkProgram", "i"),
+		/** <code>glShaderSource</code>. */
+		SHADER_SOURCE("glShaderSource", "is"),
+		/** <code>glUniform1f</code>. */
+		UNIFORM_1F("glUniform1f", "if"),
+		/** <code>glUniform1i</code>. */
+		UNIFORM_1I("glUniform1i", "ii"),
+		/** <code>glUniform2f</code>. */
+		UNIFORM_2F("glUniform2f", "iff"),
+		/** <code>glUniform3f</code>. */
+		UNIFORM_3F("glUniform3f", "ifff"),
+		/** <code>glUniform4f</code>. */
+		UNIFORM_4F("glUniform4f", "iffff"),
+		/** <code>glUniformMatrix4fv</code>. */
+		UNIFORM_MATRIX_4FV("glUniformMatrix4fv", "izffffffffffffffff"),
+		/** <code>glUseProgram</code>. */
+		USE_PROGRAM("glUseProgram", "i"),
+		/** <code>glValidateProgram</code>. */
+		VALIDATE_PROGRAM("glValidateProgram", "i"),
+		/** <code>glVertexAttribPointer</code>. */
+		VERTEX_ATTRIB_POINTER("glVertexAttribPointer", "iiizij"),
+		/** <code>glBindVertexArray</code>. */
+		BIND_VERTEX_ARRAY("glBindVertexArray", "i"),
+		/** <code>glDeleteVertexArrays</code>. */
+		DELETE_VERTEX_ARRAYS("glDeleteVertexArrays", "i"),
+		/** <code>glGenVertexArrays</code>. */
+		GEN_VERTEX_ARRAYS("glGenVertexArrays", "i");
+		
+		/** The name of the OpenGL function. */
+		private final String	function;
+		/**
+		 * The kind of each argument slot: <code>i</code> for an integer,
+		 * <code>f</code> for a float, <code>z</code> for a boolean, <code>j</code>
+		 * for a long, spanning two slots, <code>s</code> for a string index and
+		 * <code>n</code> for a size in bytes.
+		 */
+		private final String	slots;
+		
+		/**
+		 * Constructs a call constant.
+		 * 
+		 * @param function
+		 *            the name of the OpenGL function.
+		 * @param kinds
+		 *            the kind of each argument, one character per argument.
+		 */
+		private Call(String function, String kinds) {
+			
+			this.function = function;
+			slots = kinds.replace("j", "jj");
+		}
+		
+		/**
+		 * @return the name of the OpenGL function.
+		 */
+		public String getFunction() {
+			
+			return function;
+		}
+		
+		/**
+		 * @return the number of slots taken by the arguments of this call.
+		 */
+		public int getSlotCount() {
+			
+			return slots.length();
+		}
+	}
+	
+	/** The initial capacity of the call buffer, in slots. */
+	private static final int INITIAL_CAPACITY = 4096;
+	
+	/** The backend receiving the calls, or <code>null</code> to only record them. */
+	private final GlBackend delegate;
+	
+	/** The recorded calls, as opcodes followed by argument slots. */
+	private int[]		buffer		= new int[INITIAL_CAPACITY];
+	/** The number of slots used in the call buffer. */
+	private int			size		= 0;
+	/** The offset in the call buffer of each recorded call. */
+	private int[]		offsets		= new int[INITIAL_CAPACITY / 4];
+	/** The number of recorded calls. */
+	private int			callCount	= 0;
+	/** The number of recorded calls of each function, by opcode. */
+	private final int[]	counts		= new int[Call.values().length];
+	
+	/** The strings passed as arguments, indexed by their slots. */
+	private final List< String >			strings			= new ArrayList<>();
+	/** The index of each string in the string table. */
+	private final Map< String, Integer >	stringIndices	= new HashMap<>();
+	
+	/** The next object name returned without a delegate. */
+	private int								nextName			= 1;
+	/** The uniform locations returned without a delegate, by program and name. */
+	private final Map< String, Integer >	uniformLocations	= new HashMap<>();
+	
+	/**
+	 * Constructs a recording backend which only records calls, needing no OpenGL
+	 * context.
+	 */
+	public RecordingBackend() {
+		
+		this(null);
+	}
+	
+	/**
+	 * Constructs a recording backend which records calls and forwards them to the
+	 * specified backend.
+	 * 
+	 * @param delegate
+	 *            the backend to forward calls to, or <code>null</code> to only
+	 *            record them.
+	 */
+	public RecordingBackend(GlBackend delegate) {
+		
+		this.delegate = delegate;
+	}
+	
+	/**
+	 * @return the number of calls recorded since construction or the last
+	 *         <code>clear</code>.
+	 */
+	public synchronized int getCallCount() {
+		
+		return callCount;
+	}
+	
+	/**
+	 * Counts the recorded calls of an OpenGL function.
+	 * 
+	 * @param call
+	 *            the function to count.
+	 * @return the number of calls of the function recorded since construction or
+	 *         the last <code>clear</code>.
+	 */
+	public synchronized int count(Call call) {
+		
+		return counts[call.ordinal()];
+	}
+	
+	/**
+	 * Gets the function of a recorded call.
+	 * 
+	 * @param index
+	 *            the index of the call, from 0 for the first recorded call.
+	 * @return the function called.
+	 */
+	public synchronized Call getCall(int index) {
+		
+		return Call.values()[buffer[offset(index)]];
+	}
+	
+	/**
+	 * Gets an argument slot of a recorded call, as an integer. Floats are
+	 * returned as their raw bits, booleans as 0 or 1, and strings as their index
+	 * in the string table.
+	 * 
+	 * @param index
+	 *            the index of the call.
+	 * @param slot
+	 *            the index of the argument slot.
+	 * @return the slot's value.
+	 */
+	public synchronized int getArgument(int index, int slot) {
+		
+		return buffer[slotOffset(index, slot)];
+	}
+	
+	/**
+	 * Gets a float argument of a recorded call.
+	 * 
+	 * @param index
+	 *            the index of the call.
+	 * @param slot
+	 *            the index of the argument slot.
+	 * @return the argument's value.
+	 */
+	public synchronized float getFloatArgument(int index, int slot) {
+		
+		return Float.intBitsToFloat(buffer[slotOffset(index, slot)]);
+	}
+	
+	/**
+	 * Gets a long argument of a recorded call.
+	 * 
+	 * @param index
+	 *            the index of the call.
+	 * @param slot
+	 *            the index of the argument's first slot.
+	 * @return the argument's value.
+	 */
+	public synchronized long getLongArgument(int index, int slot) {
+		
+		int offset = slotOffset(index, slot + 1);
+		return (long) buffer[offset - 1] << 32 | buffer[offset] & 0xFFFFFFFFL;
+	}
+	
+	/**
+	 * Gets a string argument of a recorded call.
+	 * 
+	 * @param index
+	 *            the index of the call.
+	 * @param slot
+	 *            the index of the argument slot.
+	 * @return the argument's value.
+	 */
+	public synchronized String getStringArgument(int index, int slot) {
+		
+		return strings.get(buffer[slotOffset(index, slot)]);
+	}
+	
+	/**
+	 * Discards the recorded calls. Object names and uniform locations keep being
+	 * numbered from where they were, since the objects they name still exist.
+	 */
+	public synchronized void clear() {
+		
+		size = 0;
+		callCount = 0;
+		Arrays.fill(counts, 0);
+		strings.clear();
+		stringIndices.clear();
+	}
+	
+	/**
+	 * @return the recorded calls, one per line, in the form
+	 *         <code>glFunction(arguments)</code>.
+	 */
+	@Override
+	public synchronized String toString() {
+		
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < callCount; i++) {
+			int offset = offsets[i];
+			Call call = Call.values()[buffer[offset]];
+			
+			builder.append(call.function).append('(');
+			for (int slot = 0; slot < call.slots.length(); slot++) {
+				int value = buffer[offset + 1 + slot];
+				if (slot > 0) {
+					builder.append(", ");
+				}
+				
+				switch (call.slots.charAt(slot)) {
+				case 'f':
+					builder.append(Float.intBitsToFloat(value));
+					break;
+				case 'z':
+					builder.append(value != 0);
+					break;
+				case 'j':
+					builder.append((long) value << 32 | buffer[offset + 2 + slot] & 0xFFFFFFFFL);
+					slot++;
+					break;
+				case 's':
+					builder.append('"').append(strings.get(value)).append('"');
+					break;
+				case 'n':
+					builder.append(value).append(" bytes");
+					break;
+				default:
+					builder.append(value);
+				}
+			}
+			builder.append(")\n");
+		}
+		
+		return builder.toString();
+	}
+	
+	@Override
+	public synchronized void glBindTexture(int target, int texture) {
+		
+		if (delegate != null) {
+			delegate.glBindTexture(target, texture);
+		}
+		begin(Call.BIND_TEXTURE);
+		put(target);
+		put(texture);
+	}
+	
+	@Override
+	public synchronized void glBlendFunc(int sfactor, int dfactor) {
+		
+		if (delegate != null) {
+			delegate.glBlendFunc(sfactor, dfactor);
+		}
+		begin(Call.BLEND_FUNC);
+		put(sfactor);
+		put(dfactor);
+	}
+	
+	@Override
+	public synchronized void glClear(int mask) {
+		
+		if (delegate != null) {
+			delegate.glClear(mask);
+		}
+		begin(Call.CLEAR);
+		put(mask);
+	}
+	
+	@Override
+	public synchronized void glDeleteTextures(int texture) {
+		
+		if (delegate != null) {
+			delegate.glDeleteTextures(texture);
+		}
+		begin(Call.DELETE_TEXTURES);
+		put(texture);
+	}
+	
+	@Override
+	public synchronized void glDisable(int cap) {
+		
+		if (delegate != null) {
+			delegate.glDisable(cap);
+		}
+		begin(Call.DISABLE);
+		put(cap);
+	}
+	
+	@Override
+	public synchronized void glDrawElements(int mode, int count, int type, long indices) {
+		
+		if (delegate != null) {
+			delegate.glDrawElements(mode, count, type, indices);
+		}
+		begin(Call.DRAW_ELEMENTS);
+		put(mode);
+		put(count);
+		put(type);
+		putLong(indices);
+	}
+	
+	@Override
+	public synchronized void glEnable(int cap) {
+		
+		if (delegate != null) {
+			delegate.glEnable(cap);
+		}
+		begin(Call.ENABLE);
+		put(cap);
+	}
+	
+	@Override
+	public synchronized int glGenTextures() {
+		
+		int result = delegate != null ? delegate.glGenTextures() : nextName++;
+		begin(Call.GEN_TEXTURES);
+		put(result);
+		return result;
+	}
+	
+	@Override
+	public synchronized void glTexImage2D(int target, int level, int internalformat, int width, int height, int border,
+			int format, int type, ByteBuffer pixels) {
+		
+		if (delegate != null) {
+			delegate.glTexImage2D(target, level, internalformat, width, height, border, format, type, pixels);
+		}
+		begin(Call.TEX_IMAGE_2D);
+		put(target);
+		put(level);
+		put(internalformat);
+		put(width);
+		put(height);
+		put(border);
+		put(format);
+		put(type);
+		put(pixels == null ? 0 : pixels.remaining());
+	}
+	
+	@Override
+	public synchronized void glTexParameteri(int target, int pname, int param) {
+		
+		if (delegate != null) {
+			delegate.glTexParameteri(target, pname, param);
+		}
+		begin(Call.TEX_PARAMETERI);
+		put(target);
+		put(pname);
+		put(param);
+	}
+	
+	@Override
+	public synchronized void glViewport(int x, int y, int width, int height) {
+		
+		if (delegate != null) {
+			delegate.glViewport(x, y, width, height);
+		}
+		begin(Call.VIEWPORT);
+		put(x);
+		put(y);
+		put(width);
+		put(height);
+	}
+	
+	@Override
+	public synchronized void glBindBuffer(int target, int buffer) {
+		
+		if (delegate != null) {
+			delegate.glBindBuffer(target, buffer);
+		}
+		begin(Call.BIND_BUFFER);
+		put(target);
+		put(buffer);
+	}
+	
+	@Override
+	public synchronized void glBufferData(int target, float[] data, int usage) {
+		
+		if (delegate != null) {
+			delegate.glBufferData(target, data, usage);
+		}
+		begin(Call.BUFFER_DATA);
+		put(target);
+		put(data.length * Float.BYTES);
+		put(usage);
+	}
+	
+	@Override
+	public synchronized void glBufferData(int target, short[] data, int usage) {
+		
+		if (delegate != null) {
+			delegate.glBufferData(target, data, usage);
+		}
+		begin(Call.BUFFER_DATA);
+		put(target);
+		put(data.length * Short.BYTES);
+		put(usage);
+	}
+	
+	@Override
+	public synchronized void glDeleteBuffers(int buffer) {
+		
+		if (delegate != null) {
+			delegate.glDeleteBuffers(buffer);
+		}
+		begin(Call.DELETE_BUFFERS);
+		put(buffer);
+	}
+	
+	@Override
+	public synchronized int glGenBuffers() {
+		
+		int result = delegate != null ? delegate.glGenBuffers() : nextName++;
+		begin(Call.GEN_BUFFERS);
+		put(result);
+		return result;
+	}
+	
+	@Override
+	public synchronized void glAttachShader(int program, int shader) {
+		
+		if (delegate != null) {
+			delegate.glAttachShader(program, shader);
+		}
+		begin(Call.ATTACH_SHADER);
+		put(program);
+		put(shader);
+	}
+	
+	@Override
+	public synchronized void glCompileShader(int shader) {
+		
+		if (delegate != null) {
+			delegate.glCompileShader(shader);
+		}
+		begin(Call.COMPILE_SHADER);
+		put(shader);
+	}
+	
+	@Override
+	public synchronized int glCreateProgram() {
+		
+		int result = delegate != null ? delegate.glCreateProgram() : nextName++;
+		begin(Call.CREATE_PROGRAM);
+		put(result);
+		return result;
+	}
+	
+	@Override
+	public synchronized int glCreateShader(int type) {
+		
+		int result = delegate != null ? delegate.glCreateShader(type) : nextName++;
+		begin(Call.CREATE_SHADER);
+		put(type);
+		put(result);
+		return result;
+	}
+	
+	@Override
+	public synchronized void glDeleteProgram(int program) {
+		
+		if (delegate != null) {
+			delegate.glDeleteProgram(program);
+		}
+		begin(Call.DELETE_PROGRAM);
+		put(program);
+	}
+	
+	@Override
+	public synchronized void glDeleteShader(int shader) {
+		
+		if (delegate != null) {
+			delegate.glDeleteShader(shader);
+		}
+		begin(Call.DELETE_SHADER);
+		put(shader);
+	}
+	
+	@Override
+	public synchronized void glDetachShader(int program, int shader) {
+		
+		if (delegate != null) {
+			delegate.glDetachShader(program, shader);
+		}
+		begin(Call.DETACH_SHADER);
+		put(program);
+		put(shader);
+	}
+	
+	@Override
+	public synchronized void glEnableVertexAttribArray(int index) {
+		
+		if (delegate != null) {
+			delegate.glEnableVertexAttribArray(index);
+		}
+		begin(Call.ENABLE_VERTEX_ATTRIB_ARRAY);
+		put(index);
+	}
+	
+	@Override
+	public synchronized String glGetProgramInfoLog(int program, int maxLength) {
+		
+		String result = delegate != null ? delegate.glGetProgramInfoLog(program, maxLength) : "";
+		begin(Call.GET_PROGRAM_INFO_LOG);
+		put(program);
+		put(maxLength);
+		return result;
+	}
+	
+	@Override
+	public synchronized int glGetProgrami(int program, int pname) {
+		
+		int result = delegate != null ? delegate.glGetProgrami(program, pname) : GL_TRUE;
+		begin(Call.GET_PROGRAMI);
+		put(program);
+		put(pname);
+		put(result);
+		return result;
+	}
+	
+	@Override
+	public synchronized String glGetShaderInfoLog(int shader, int maxLength) {
+		
+		String result = delegate != null ? delegate.glGetShaderInfoLog(shader, maxLength) : "";
+		begin(Call.GET_SHADER_INFO_LOG);
+		put(shader);
+		put(maxLength);
+		return result;
+	}
+	
+	@Override
+	public synchronized int glGetShaderi(int shader, int pname) {
+		
+		int result = delegate != null ? delegate.glGetShaderi(shader, pname) : GL_TRUE;
+		begin(Call.GET_SHADERI);
+		put(shader);
+		put(pname);
+		put(result);
+		return result;
+	}
+	
+	@Override
+	public synchronized int glGetUniformLocation(int program, CharSequence name) {
+		
+		int result = delegate != null ? delegate.glGetUniformLocation(program, name) : uniformLocation(program, name);
+		begin(Call.GET_UNIFORM_LOCATION);
+		put(program);
+		putString(name);
+		put(result);
+		return result;
+	}
+	
+	@Override
+	public synchronized void glLinkProgram(int program) {
+		
+		if (delegate != null) {
+			delegate.glLinkProgram(program);
+		}
+		begin(Call.LINK_PROGRAM);
+		put(program);
+	}
+	
+	@Override
+	public synchronized void glShaderSource(int shader, CharSequence string) {
+		
+		if (delegate != null) {
+			delegate.glShaderSource(shader, string);
+		}
+		begin(Call.SHADER_SOURCE);
+		put(shader);
+		putString(string);
+	}
+	
+	@Override
+	public synchronized void glUniform1f(int location, float v0) {
+		
+		if (delegate != null) {
+			delegate.glUniform1f(location, v0);
+		}
+		begin(Call.UNIFORM_1F);
+		put(location);
+		putFloat(v0);
+	}
+	
+	@Override
+	public synchronized void glUniform1i(int location, int v0) {
+		
+		if (delegate != null) {
+			delegate.glUniform1i(location, v0);
+		}
+		begin(Call.UNIFORM_1I);
+		put(location);
+		put(v0);
+	}
+	
+	@Override
+	public synchronized void glUniform2f(int location, float v0, float v1) {
+		
+		if (delegate != null) {
+			delegate.glUniform2f(location, v0, v1);
+		}
+		begin(Call.UNIFORM_2F);
+		put(location);
+		putFloat(v0);
+		putFloat(v1);
+	}
+	
+	@Override
+	public synchronized void glUniform3f(int location, float v0, float v1, float v2) {
+		
+		if (delegate != null) {
+			delegate.glUniform3f(location, v0, v1, v2);
+		}
+		begin(Call.UNIFORM_3F);
+		put(location);
+		putFloat(v0);
+		putFloat(v1);
+		putFloat(v2);
+	}
+	
+	@Override
+	public synchronized void glUniform4f(int location, float v0, float v1, float v2, float v3) {
+		
+		if (delegate != null) {
+			delegate.glUniform4f(location, v0, v1, v2, v3);
+		}
+		begin(Call.UNIFORM_4F);
+		put(location);
+		putFloat(v0);
+		putFloat(v1);
+		putFloat(v2);
+		putFloat(v3);
+	}
+	
+	@Override
+	public synchronized void glUniformMatrix4fv(int location, boolean transpose, float[] value) {
+		
+		if (delegate != null) {
+			delegate.glUniformMatrix4fv(location, transpose, value);
+		}
+		begin(Call.UNIFORM_MATRIX_4FV);
+		put(location);
+		put(transpose ? 1 : 0);
+		putFloats(value);
+	}
+	
+	@Override
+	public synchronized void glUseProgram(int program) {
+		
+		if (delegate != null) {
+			delegate.glUseProgram(program);
+		}
+		begin(Call.USE_PROGRAM);
+		put(program);
+	}
+	
+	@Override
+	public synchronized void glValidateProgram(int program) {
+		
+		if (delegate != null) {
+			delegate.glValidateProgram(program);
+		}
+		begin(Call.VALIDATE_PROGRAM);
+		put(program);
+	}
+	
+	@Override
+	public synchronized void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride,
+			long pointer) {
+		
+		if (delegate != null) {
+			delegate.glVertexAttribPointer(index, size, type, normalized, stride, pointer);
+		}
+		begin(Call.VERTEX_ATTRIB_POINTER);
+		put(index);
+		put(size);
+		put(type);
+		put(normalized ? 1 : 0);
+		put(stride);
+		putLong(pointer);
+	}
+	
+	@Override
+	public synchronized void glBindVertexArray(int array) {
+		
+		if (delegate != null) {
+			delegate.glBindVertexArray(array);
+		}
+		begin(Call.BIND_VERTEX_ARRAY);
+		put(array);
+	}
+	
+	@Override
+	public synchronized void glDeleteVertexArrays(int array) {
+		
+		if (delegate != null) {
+			delegate.glDeleteVertexArrays(array);
+		}
+		begin(Call.DELETE_VERTEX_ARRAYS);
+		put(array);
+	}
+	
+	@Override
+	public synchronized int glGenVertexArrays() {
+		
+		int result = delegate != null ? delegate.glGenVertexArrays() : nextName++;
+		begin(Call.GEN_VERTEX_ARRAYS);
+		put(result);
+		return result;
+	}
+	
+	/**
+	 * Gets the offset of a recorded call in the call buffer.
+	 * 
+	 * @param index
+	 *            the index of the call.
+	 * @return the offset of the call's opcode.
+	 */
+	private int offset(int index) {
+		
+		if (index < 0 || index >= callCount) {
+			throw new GreaseInvalidArgumentException("index", index,
+					"Call index must be less than the number of recorded calls, " + callCount + ".");
+		}
+		
+		return offsets[index];
+	}
+	
+	/**
+	 * Gets the offset of an argument slot of a recorded call in the call buffer.
+	 * 
+	 * @param index
+	 *            the index of the call.
+	 * @param slot
+	 *            the index of the argument slot.
+	 * @return the offset of the slot.
+	 */
+	private int slotOffset(int index, int slot) {
+		
+		int offset = offset(index);
+		if (slot < 0 || slot >= Call.values()[buffer[offset]].getSlotCount()) {
+			throw new GreaseInvalidArgumentException("slot", slot, "The call has no such argument slot.");
+		}
+		
+		return offset + 1 + slot;
+	}
+	
+	/**
+	 * Starts recording a call.
+	 * 
+	 * @param call
+	 *            the function called.
+	 */
+	private void begin(Call call) {
+		
+		if (callCount == offsets.length) {
+			offsets = Arrays.copyOf(offsets, offsets.length * 2);
+		}
+		offsets[callCount++] = size;
+		counts[call.ordinal()]++;
+		put(call.ordinal());
+	}
+	
+	/**
+	 * Appends a slot to the call being recorded.
+	 * 
+	 * @param value
+	 *            the slot's value.
+	 */
+	private void put(int value) {
+		
+		if (size == buffer.length) {
+			buffer = Arrays.copyOf(buffer, buffer.length * 2);
+		}
+		buffer[size++] = value;
+	}
+	
+	/**
+	 * Appends a float slot to the call being recorded.
+	 * 
+	 * @param value
+	 *            the argument's value.
+	 */
+	private void putFloat(float value) {
+		
+		put(Float.floatToRawIntBits(value));
+	}
+	
+	/**
+	 * Appends each element of a float array to the call being recorded.
+	 * 
+	 * @param values
+	 *            the argument's values.
+	 */
+	private void putFloats(float[] values) {
+		
+		for (float value : values) {
+			putFloat(value);
+		}
+	}
+	
+	/**
+	 * Appends the two slots of a long to the call being recorded.
+	 * 
+	 * @param value
+	 *            the argument's value.
+	 */
+	private void putLong(long value) {
+		
+		put((int) (value >>> 32));
+		put((int) value);
+	}
+	
+	/**
+	 * Appends a string slot to the call being recorded, adding the string to the
+	 * string table if it is new.
+	 * 
+	 * @param value
+	 *            the argument's value.
+	 */
+	private void putString(CharSequence value) {
+		
+		String string = value.toString();
+		Integer index = stringIndices.get(string);
+		if (index == null) {
+			index = strings.size();
+			strings.add(string);
+			stringIndices.put(string, index);
+		}
+		put(index);
+	}
+	
+	/**
+	 * Gets the location of a uniform without a delegate, assigning locations in
+	 * the order uniforms are first looked up.
+	 * 
+	 * @param program
+	 *            the program containing the uniform.
+	 * @param name
+	 *            the name of the uniform.
+	 * @return the uniform's location.
+	 */
+	private int uniformLocation(int program, CharSequence name) {
+		
+		return uniformLocations.computeIfAbsent(program + "/" + name, key -> uniformLocations.size());
+	}
+}
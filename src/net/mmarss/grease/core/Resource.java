@@ -0,0 +1,26 @@
+package net.mmarss.grease.core;
+
+/**
+ * A loaded asset which holds main memory or video memory, and can therefore be
+ * shared and evicted by a {@link ResourceManager}.
+ */
+public interface Resource {
+	
+	/**
+	 * @return the approximate number of bytes of main memory held by this
+	 *         resource.
+	 */
+	public long getMemorySize();
+	
+	/**
+	 * @return the approximate number of bytes of video memory held by this
+	 *         resource.
+	 */
+	public long getVideoMemorySize();
+	
+	/**
+	 * Releases any memory held by this resource. Resources holding OpenGL objects
+	 * must be cleaned up from the window thread.
+	 */
+	public void cleanup();
+}
@@ -0,0 +1,89 @@
+package net.mmarss.grease.core;
+
+import net.mmarss.grease.exception.GreaseInvalidMethodCallException;
+
+/**
+ * A counted reference to a resource owned by a {@link ResourceManager}. The
+ * resource stays loaded for as long as at least one handle to it has not been
+ * released.
+ * 
+ * @param <T>
+ *            the type of the referenced resource.
+ */
+public class ResourceHandle< T extends Resource > {
+	
+	/** The manager which owns the referenced resource. */
+	private final ResourceManager		manager;
+	/** The key under which the resource is registered with the manager. */
+	private final String				key;
+	/** The manager's entry for the resource. */
+	private final ResourceManager.Entry	entry;
+	/** The referenced resource, or <code>null</code> once released. */
+	private T							resource;
+	
+	/**
+	 * Constructs a new handle. Only called by the resource manager, which has
+	 * already counted the reference.
+	 * 
+	 * @param manager
+	 *            the manager which owns the resource.
+	 * @param key
+	 *            the key under which the resource is registered.
+	 * @param entry
+	 *            the manager's entry for the resource.
+	 * @param resource
+	 *            the referenced resource.
+	 */
+	/* package */ ResourceHandle(ResourceManager manager, String key, ResourceManager.Entry entry, T resource) {
+		
+		this.manager = manager;
+		this.key = key;
+		this.entry = entry;
+		this.resource = resource;
+	}
+	
+	/**
+	 * @return the referenced resource.
+	 */
+	public synchronized T get() {
+		
+		if (resource == null) {
+			throw new GreaseInvalidMethodCallException("Resource handle \"" + key + "\" has already been released.");
+		}
+		
+		return resource;
+	}
+	
+	/**
+	 * @return the key under which the referenced resource is registered.
+	 */
+	public String getKey() {
+		
+		return key;
+	}
+	
+	/**
+	 * @return <code>true</code> if this handle has been released.
+	 */
+	public synchronized boolean isReleased() {
+		
+		return resource == null;
+	}
+	
+	/**
+	 * Releases this reference to the resource. Once every handle to a resource has
+	 * been released, the resource may be evicted by its manager. Releasing a handle
+	 * twice has no effect.
+	 */
+	public void release() {
+		
+		synchronized (this) {
+			if (resource == null) {
+				return;
+			}
+			resource = null;
+		}
+		
+		manager.release(key, entry);
+	}
+}
@@ -0,0 +1,512 @@
+package net.mmarss.grease.core;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.mmarss.grease.exception.GreaseException;
+import net.mmarss.grease.exception.GreaseFileException;
+import net.mmarss.grease.exception.GreaseInvalidArgumentException;
+import net.mmarss.grease.exception.GreaseInvalidMethodCallException;
+import net.mmarss.grease.exception.GreaseShaderException;
+import net.mmarss.grease.graphics.Image;
+
+/**
+ * A cache of loaded resources. Resources are de-duplicated by key, and handed
+ * out as reference-counted {@link ResourceHandle handles}. Resources which are
+ * no longer referenced stay loaded, so that they can be handed out again
+ * without being reloaded, until the memory or video memory budget is exceeded.
+ * At that point, the least recently used unreferenced resources are cleaned up
+ * until the cache fits within its budget again.
+ * 
+ * Resources are loaded without holding the manager's lock, so that reading and
+ * decoding a file does not block other threads acquiring or releasing cached
+ * resources; threads acquiring a resource which is still being loaded wait for
+ * it. Resources holding OpenGL objects, such as shaders and images, must be
+ * acquired, released and evicted from the window thread.
+ */
+public class ResourceManager {
+	
+	/** The default main memory budget, in bytes. */
+	private static final long	DEFAULT_MEMORY_BUDGET		= 256L * 1024 * 1024;
+	/** The default video memory budget, in bytes. */
+	private static final long	DEFAULT_VIDEO_MEMORY_BUDGET	= 256L * 1024 * 1024;
+	
+	/** The key prefix used for images. */
+	private static final String	IMAGE_KEY_PREFIX	= "image:";
+	/** The key prefix used for shaders. */
+	private static final String	SHADER_KEY_PREFIX	= "shader:";
+	
+	/** The loaded resources by key, in order of least recent access. */
+	private final Map< String, Entry > entries = new LinkedHashMap<>(16, 0.75f, true);
+	
+	/** The main memory budget, in bytes. */
+	private long	memoryBudget		= DEFAULT_MEMORY_BUDGET;
+	/** The video memory budget, in bytes. */
+	private long	videoMemoryBudget	= DEFAULT_VIDEO_MEMORY_BUDGET;
+	
+	/** The watcher used to reload loaded images and shaders, if any. */
+	private volatile ResourceWatcher	watcher		= null;
+	/** Whether images are premultiplied by their alpha channel when loaded. */
+	private volatile boolean			premultiply	= false;
+	
+	/** Represents a method used to load a resource that is not yet cached. */
+	@FunctionalInterface
+	public interface Loader< T extends Resource > {
+		
+		/**
+		 * Loads the resource.
+		 * 
+		 * @return the loaded resource.
+		 * @throws GreaseException
+		 *             if the resource cannot be loaded.
+		 */
+		public T load() throws GreaseException;
+	}
+	
+	/**
+	 * Represents a loaded resource and its reference count. Guarded by the
+	 * manager's lock.
+	 */
+	/* package */ static class Entry {
+		
+		/** The loaded resource, or <code>null</code> while it is being loaded. */
+		private Resource	resource	= null;
+		/** The exception thrown by the loader, if loading failed. */
+		private Exception	failure		= null;
+		/** The number of unreleased handles to the resource. */
+		private int			references	= 0;
+		
+		/**
+		 * @return <code>true</code> while the resource is being loaded.
+		 */
+		private boolean isLoading() {
+			
+			return resource == null && failure == null;
+		}
+	}
+	
+	/**
+	 * Constructs a new resource manager with the default memory budgets.
+	 */
+	public ResourceManager() {}
+	
+	/**
+	 * Constructs a new resource manager with the specified memory budgets.
+	 * 
+	 * @param memoryBudget
+	 *            the main memory budget, in bytes.
+	 * @param videoMemoryBudget
+	 *            the video memory budget, in bytes.
+	 */
+	public ResourceManager(long memoryBudget, long videoMemoryBudget) {
+		
+		setMemoryBudget(memoryBudget);
+		setVideoMemoryBudget(videoMemoryBudget);
+	}
+	
+	/**
+	 * Acquires a handle to the resource registered under the specified key,
+	 * loading it with the given loader if it is not already loaded.
+	 * 
+	 * @param key
+	 *            the key which uniquely identifies the resource.
+	 * @param type
+	 *            the type of the resource.
+	 * @param loader
+	 *            the method used to load the resource if it is not cached.
+	 * @return a new handle to the resource.
+	 * @throws GreaseException
+	 *             if the resource is not cached and cannot be loaded.
+	 */
+	public < T extends Resource > ResourceHandle< T > acquire(String key, Class< T > type,
+			Loader< ? extends T > loader) throws GreaseException {
+		
+		if (key == null) {
+			throw new GreaseInvalidArgumentException("key", null);
+		}
+		
+		Entry entry;
+		synchronized (this) {
+			entry = entries.get(key);
+			if (entry != null) {
+				awaitLoad(entry);
+				return createHandle(key, type, entry);
+			}
+			
+			// Reserve the key, so that other threads wait for this load
+			entry = new Entry();
+			entries.put(key, entry);
+		}
+		
+		Object loadEvent = EngineEvent.RESOURCE_LOAD.begin();
+		Resource resource;
+		try {
+			resource = loader.load();
+		} catch (GreaseException | RuntimeException e) {
+			synchronized (this) {
+				entry.failure = e;
+				if (entries.get(key) == entry) {
+					entries.remove(key);
+				}
+				notifyAll();
+			}
+			throw e;
+		}
+		EngineEvent.RESOURCE_LOAD.commit(loadEvent, key, resource.getClass().getSimpleName(),
+				resource.getMemorySize(), resource.getVideoMemorySize());
+		
+		synchronized (this) {
+			notifyAll();
+			if (entries.get(key) != entry) { // The manager was cleaned up during the load
+				evict(resource);
+				GreaseInvalidMethodCallException e = new GreaseInvalidMethodCallException(
+						"Resource manager was cleaned up while loading \"" + key + "\".");
+				entry.failure = e;
+				throw e;
+			}
+			
+			entry.resource = resource;
+			return createHandle(key, type, entry);
+		}
+	}
+	
+	/**
+	 * Waits until an entry has finished loading, even if interrupted. Must be
+	 * called with the manager's lock held.
+	 * 
+	 * @param entry
+	 *            the entry to wait for.
+	 * @throws GreaseException
+	 *             if loading the entry's resource failed.
+	 */
+	private void awaitLoad(Entry entry) throws GreaseException {
+		
+		boolean interrupted = false;
+		while (entry.isLoading()) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		if (entry.failure instanceof GreaseException) {
+			throw (GreaseException) entry.failure;
+		} else if (entry.failure != null) {
+			throw (RuntimeException) entry.failure;
+		}
+	}
+	
+	/**
+	 * Counts a new reference to a loaded entry, and creates its handle. Must be
+	 * called with the manager's lock held.
+	 * 
+	 * @param key
+	 *            the key under which the entry is registered.
+	 * @param type
+	 *            the expected type of the resource.
+	 * @param entry
+	 *            the loaded entry.
+	 * @return a new handle to the entry's resource.
+	 */
+	private < T extends Resource > ResourceHandle< T > createHandle(String key, Class< T > type, Entry entry) {
+		
+		if (!type.isInstance(entry.resource)) {
+			throw new GreaseInvalidMethodCallException("Resource \"" + key + "\" has type "
+					+ entry.resource.getClass().getSimpleName() + ", not " + type.getSimpleName() + ".");
+		}
+		
+		entry.references++;
+		trim();
+		
+		return new ResourceHandle<>(this, key, entry, type.cast(entry.resource));
+	}
+	
+	/**
+	 * Acquires a handle to the specified image file, loading it if necessary.
+	 * 
+	 * @param filename
+	 *            the image file to load.
+	 * @return a new handle to the image.
+	 * @throws GreaseFileException
+	 *             if the image is not cached and cannot be read.
+	 */
+	public ResourceHandle< Image > acquireImage(String filename) throws GreaseFileException {
+		
+		try {
+			return acquire(IMAGE_KEY_PREFIX + filename, Image.class, () -> {
+				Image image = new Image(filename);
+				if (premultiply) {
+					image.premultiplyAlpha();
+				}
+				ResourceWatcher watcher = this.watcher;
+				if (watcher != null) {
+					watcher.watchImage(image, filename);
+				}
+				return image;
+			});
+		} catch (GreaseFileException e) {
+			throw e;
+		} catch (GreaseException e) { // Image loading only throws file exceptions.
+			throw new GreaseFileException(e.getMessage());
+		}
+	}
+	
+	/**
+	 * Acquires a handle to the shader program linked from the specified shader
+	 * resource files, loading, compiling and linking it if necessary. Must be
+	 * called from the window thread.
+	 * 
+	 * @param vertexShaderFile
+	 *            the file containing the code for the vertex shader.
+	 * @param fragmentShaderFile
+	 *            the file containing the code for the fragment shader.
+	 * @return a new handle to the shader.
+	 * @throws GreaseShaderException
+	 *             if the shader is not cached and cannot be built.
+	 * @throws GreaseFileException
+	 *             if the shader is not cached and its files cannot be read.
+	 */
+	public ResourceHandle< Shader > acquireShader(String vertexShaderFile, String fragmentShaderFile)
+			throws GreaseShaderException, GreaseFileException {
+		
+		try {
+			return acquire(SHADER_KEY_PREFIX + vertexShaderFile + "|" + fragmentShaderFile, Shader.class, () -> {
+				Shader shader = new Shader();
+				try {
+					shader.create();
+					shader.loadShaders(vertexShaderFile, fragmentShaderFile);
+					shader.link();
+				} catch (GreaseException e) {
+					shader.cleanup();
+					throw e;
+				}
+				ResourceWatcher watcher = this.watcher;
+				if (watcher != null) {
+					watcher.watchShader(shader, vertexShaderFile, fragmentShaderFile);
+				}
+				return shader;
+			});
+		} catch (GreaseShaderException | GreaseFileException e) {
+			throw e;
+		} catch (GreaseException e) { // Shader loading only throws shader and file exceptions.
+			throw new GreaseShaderException(e.getMessage());
+		}
+	}
+	
+	/**
+	 * Sets the watcher used to reload images and shaders when their files change.
+	 * Only resources loaded after this method is called are watched.
+	 * 
+	 * @param watcher
+	 *            the resource watcher, or <code>null</code> to stop watching newly
+	 *            loaded resources.
+	 */
+	public synchronized void setResourceWatcher(ResourceWatcher watcher) {
+		
+		this.watcher = watcher;
+	}
+	
+	/**
+	 * Sets whether images are premultiplied by their alpha channel when they are
+	 * loaded, as required when rendering with premultiplied alpha blending. Only
+	 * images loaded after this method is called are affected.
+	 * 
+	 * @param premultiply
+	 *            <code>true</code> to premultiply newly loaded images.
+	 */
+	public synchronized void setPremultiplyImages(boolean premultiply) {
+		
+		this.premultiply = premultiply;
+	}
+	
+	/**
+	 * Sets the main memory budget. Whenever the resources held by this manager use
+	 * more than this amount of memory, unreferenced resources are evicted.
+	 * 
+	 * @param bytes
+	 *            the new budget, in bytes.
+	 */
+	public synchronized void setMemoryBudget(long bytes) {
+		
+		if (bytes < 0) {
+			throw new GreaseInvalidArgumentException("bytes", bytes, "Memory budgets must be non-negative.");
+		}
+		
+		memoryBudget = bytes;
+		trim();
+	}
+	
+	/**
+	 * Sets the video memory budget. Whenever the resources held by this manager use
+	 * more than this amount of video memory, unreferenced resources are evicted.
+	 * 
+	 * @param bytes
+	 *            the new budget, in bytes.
+	 */
+	public synchronized void setVideoMemoryBudget(long bytes) {
+		
+		if (bytes < 0) {
+			throw new GreaseInvalidArgumentException("bytes", bytes, "Memory budgets must be non-negative.");
+		}
+		
+		videoMemoryBudget = bytes;
+		trim();
+	}
+	
+	/**
+	 * @return the main memory budget, in bytes.
+	 */
+	public synchronized long getMemoryBudget() {
+		
+		return memoryBudget;
+	}
+	
+	/**
+	 * @return the video memory budget, in bytes.
+	 */
+	public synchronized long getVideoMemoryBudget() {
+		
+		return videoMemoryBudget;
+	}
+	
+	/**
+	 * @return the approximate number of bytes of main memory held by loaded
+	 *         resources.
+	 */
+	public synchronized long getMemoryUsage() {
+		
+		long total = 0;
+		for (Entry entry : entries.values()) {
+			if (entry.resource != null) {
+				total += entry.resource.getMemorySize();
+			}
+		}
+		return total;
+	}
+	
+	/**
+	 * @return the approximate number of bytes of video memory held by loaded
+	 *         resources.
+	 */
+	public synchronized long getVideoMemoryUsage() {
+		
+		long total = 0;
+		for (Entry entry : entries.values()) {
+			if (entry.resource != null) {
+				total += entry.resource.getVideoMemorySize();
+			}
+		}
+		return total;
+	}
+	
+	/**
+	 * @return the number of loaded resources, including unreferenced ones.
+	 */
+	public synchronized int getResourceCount() {
+		
+		return entries.size();
+	}
+	
+	/**
+	 * Evicts unreferenced resources, least recently used first, until the loaded
+	 * resources fit within both memory budgets. Resources may gain video memory
+	 * after they are acquired, for example when an image is first drawn, so this
+	 * method can be called periodically, such as between levels.
+	 */
+	public synchronized void trim() {
+		
+		long memory = getMemoryUsage();
+		long videoMemory = getVideoMemoryUsage();
+		
+		Iterator< Entry > it = entries.values().iterator();
+		while ((memory > memoryBudget || videoMemory > videoMemoryBudget) && it.hasNext()) {
+			
+			Entry entry = it.next();
+			if (entry.references > 0 || entry.resource == null) {
+				continue;
+			}
+			
+			memory -= entry.resource.getMemorySize();
+			videoMemory -= entry.resource.getVideoMemorySize();
+			evict(entry.resource);
+			it.remove();
+		}
+	}
+	
+	/**
+	 * Evicts every unreferenced resource, regardless of the memory budgets.
+	 */
+	public synchronized void evictUnreferenced() {
+		
+		Iterator< Entry > it = entries.values().iterator();
+		while (it.hasNext()) {
+			
+			Entry entry = it.next();
+			if (entry.references == 0 && entry.resource != null) {
+				evict(entry.resource);
+				it.remove();
+			}
+		}
+	}
+	
+	/**
+	 * Cleans up every loaded resource, whether or not it is still referenced.
+	 * Outstanding handles must not be used after this method is called, and
+	 * resources still being loaded are cleaned up once they finish. Called by the
+	 * game engine from the window thread once the game has been cleaned up.
+	 */
+	public synchronized void cleanup() {
+		
+		List< Entry > loaded = new ArrayList<>(entries.values());
+		entries.clear();
+		
+		for (Entry entry : loaded) {
+			if (entry.resource != null) {
+				evict(entry.resource);
+			}
+		}
+	}
+	
+	/**
+	 * Cleans up a resource, and stops watching it for changes. Its entry must be
+	 * removed from the cache by the caller.
+	 * 
+	 * @param resource
+	 *            the evicted resource.
+	 */
+	private void evict(Resource resource) {
+		
+		if (watcher != null) {
+			watcher.unwatch(resource);
+		}
+		resource.cleanup();
+	}
+	
+	/**
+	 * Releases a reference to a cached entry. Called by a resource handle when it
+	 * is released.
+	 * 
+	 * @param key
+	 *            the key of the released resource.
+	 * @param entry
+	 *            the entry referenced by the handle.
+	 */
+	/* package */ synchronized void release(String key, Entry entry) {
+		
+		// Counts as the most recent use. The key may have been cleaned up and loaded
+		// again since the handle was acquired, in which case it is not this entry.
+		if (entries.get(key) != entry || entry.references == 0) {
+			return; // Already cleaned up
+		}
+		
+		entry.references--;
+		trim();
+	}
+}
@@ -0,0 +1,375 @@
+package net.mmarss.grease.core;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import net.mmarss.grease.exception.GreaseException;
+import net.mmarss.grease.exception.GreaseFileException;
+import net.mmarss.grease.exception.GreaseShaderException;
+import net.mmarss.grease.exception.GreaseSystemException;
+import net.mmarss.grease.graphics.Image;
+
+/**
+ * A development tool which reloads shaders and images while the game is
+ * running. A background thread watches the directories containing the watched
+ * files. When a file changes, the image is decoded or the shader source is read
+ * on that thread, and the result is swapped into the existing
+ * <code>Image</code> or <code>Shader</code> object the next time
+ * {@link #applyChanges()} is called from the window thread. If the new file
+ * cannot be loaded, or the new shader does not compile, the previous version
+ * stays in place.
+ */
+public class ResourceWatcher {
+	
+	/**
+	 * The number of milliseconds to wait for further events after a change, so
+	 * that a file being written in several steps is only reloaded once.
+	 */
+	private static final long SETTLE_TIME = 50;
+	
+	/** The watch service, or <code>null</code> if the watcher is not running. */
+	private WatchService	watchService;
+	/** The thread waiting for file system events. */
+	private Thread			watchThread;
+	
+	/** The watched directories. */
+	private final Set< Path >				directories	= new HashSet<>();
+	/** The reload actions to perform when each watched file changes. */
+	private final Map< Path, List< Target > >	targets		= new HashMap<>();
+	
+	/** Reloaded resources waiting to be swapped in from the window thread. */
+	private final Queue< Runnable > pendingChanges = new ConcurrentLinkedQueue<>();
+	
+	/** Represents a resource which is reloaded when a file changes. */
+	private interface Target {
+		
+		/**
+		 * @return the resource reloaded by this target.
+		 */
+		public Resource getResource();
+		
+		/**
+		 * Loads the changed files. Called from the watcher thread.
+		 * 
+		 * @return the loaded data, to be swapped in from the window thread.
+		 * @throws GreaseException
+		 *             if the changed files cannot be loaded.
+		 */
+		public Change prepare() throws GreaseException;
+	}
+	
+	/** Represents loaded data waiting to be swapped into a resource. */
+	@FunctionalInterface
+	private interface Change {
+		
+		/**
+		 * Swaps the loaded data into the resource. Called from the window thread.
+		 */
+		public void apply();
+		
+		/**
+		 * Releases the loaded data without swapping it in, once the resource is no
+		 * longer watched. Does nothing by default.
+		 */
+		public default void discard() {}
+	}
+	
+	/**
+	 * Constructs a new resource watcher, watching the resource directory.
+	 */
+	public ResourceWatcher() {
+		
+		directories.add(GreaseUtil.getResourcePath("").toAbsolutePath().normalize());
+	}
+	
+	/**
+	 * Starts watching for file changes on a new background thread.
+	 * 
+	 * @throws GreaseSystemException
+	 *             if the file system cannot be watched.
+	 */
+	public synchronized void start() throws GreaseSystemException {
+		
+		if (watchService != null) {
+			return;
+		}
+		
+		try {
+			watchService = FileSystems.getDefault().newWatchService();
+			for (Path directory : directories) {
+				directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+			}
+		} catch (IOException e) {
+			stop();
+			throw new GreaseSystemException("Could not watch resource directory: " + e.getMessage());
+		}
+		
+		WatchService service = watchService;
+		watchThread = new Thread(() -> watch(service), "Grease resource watcher");
+		watchThread.setDaemon(true);
+		watchThread.start();
+	}
+	
+	/**
+	 * Stops watching for file changes. Changes which have already been loaded can
+	 * still be applied.
+	 */
+	public synchronized void stop() {
+		
+		if (watchService == null) {
+			return;
+		}
+		
+		try {
+			watchService.close(); // Wakes the watcher thread, which then exits
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		
+		watchService = null;
+		watchThread = null;
+	}
+	
+	/**
+	 * Reloads the specified image whenever its file changes.
+	 * 
+	 * @param image
+	 *            the image to update.
+	 * @param filename
+	 *            the file from which the image was loaded.
+	 */
+	public void watchImage(Image image, String filename) {
+		
+		watch(Paths.get(filename), new Target() {
+			
+			@Override
+			public Resource getResource() {
+				
+				return image;
+			}
+			
+			@Override
+			public Change prepare() throws GreaseFileException {
+				
+				Image loaded = new Image(filename);
+				if (image.isPremultiplied()) {
+					loaded.premultiplyAlpha();
+				}
+				
+				return new Change() {
+					
+					@Override
+					public void apply() {
+						
+						image.replaceWith(loaded);
+					}
+					
+					@Override
+					public void discard() {
+						
+						loaded.cleanup();
+					}
+				};
+			}
+		});
+	}
+	
+	/**
+	 * Rebuilds the specified shader whenever either of its resource files changes.
+	 * 
+	 * @param shader
+	 *            the shader to rebuild.
+	 * @param vertexShaderFile
+	 *            the resource file containing the code for the vertex shader.
+	 * @param fragmentShaderFile
+	 *            the resource file containing the code for the fragment shader.
+	 */
+	public void watchShader(Shader shader, String vertexShaderFile, String fragmentShaderFile) {
+		
+		Target target = new Target() {
+			
+			@Override
+			public Resource getResource() {
+				
+				return shader;
+			}
+			
+			@Override
+			public Change prepare() throws GreaseFileException {
+				
+				String vertexCode = GreaseUtil.loadResource(vertexShaderFile);
+				String fragmentCode = GreaseUtil.loadResource(fragmentShaderFile);
+				
+				return () -> {
+					try {
+						shader.reload(vertexCode, fragmentCode);
+					} catch (GreaseShaderException e) {
+						System.err.println("Keeping previous version of shader " + vertexShaderFile + ", "
+								+ fragmentShaderFile + ": " + e.getMessage());
+					}
+				};
+			}
+		};
+		
+		watch(GreaseUtil.getResourcePath(vertexShaderFile), target);
+		watch(GreaseUtil.getResourcePath(fragmentShaderFile), target);
+	}
+	
+	/**
+	 * Stops reloading the specified resource.
+	 * 
+	 * @param resource
+	 *            the image or shader which should no longer be reloaded.
+	 */
+	public synchronized void unwatch(Resource resource) {
+		
+		for (List< Target > list : targets.values()) {
+			list.removeIf(target -> target.getResource() == resource);
+		}
+	}
+	
+	/**
+	 * Swaps any reloaded resources into place. Must be called from the window
+	 * thread, at a frame boundary. Resources which stopped being watched after
+	 * they were reloaded, for example because they were evicted and cleaned up,
+	 * are left alone.
+	 */
+	public void applyChanges() {
+		
+		Runnable change;
+		while ((change = pendingChanges.poll()) != null) {
+			change.run();
+		}
+	}
+	
+	/**
+	 * Swaps reloaded data into a target's resource, if the target is still
+	 * watched, or discards it otherwise. Holds the lock so that the resource
+	 * cannot be unwatched, and then cleaned up, while the data is swapped in.
+	 * 
+	 * @param target
+	 *            the target the data was loaded for.
+	 * @param change
+	 *            the loaded data.
+	 */
+	private synchronized void apply(Target target, Change change) {
+		
+		for (List< Target > list : targets.values()) {
+			if (list.contains(target)) {
+				change.apply();
+				return;
+			}
+		}
+		change.discard();
+	}
+	
+	/**
+	 * Registers a target to be reloaded when the specified file changes.
+	 * 
+	 * @param file
+	 *            the watched file.
+	 * @param target
+	 *            the target to reload.
+	 */
+	private synchronized void watch(Path file, Target target) {
+		
+		file = file.toAbsolutePath().normalize();
+		targets.computeIfAbsent(file, f -> new ArrayList<>()).add(target);
+		
+		Path directory = file.getParent();
+		if (directories.add(directory) && watchService != null) {
+			try {
+				directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+			} catch (IOException e) {
+				System.err.println("Could not watch directory " + directory + ": " + e.getMessage());
+			}
+		}
+	}
+	
+	/**
+	 * Waits for file system events until the watch service is closed. Runs on the
+	 * watcher thread.
+	 * 
+	 * @param service
+	 *            the watch service to take events from.
+	 */
+	private void watch(WatchService service) {
+		
+		try {
+			while (true) {
+				
+				Set< Path > changed = new HashSet<>();
+				
+				// Collect events until the files settle
+				WatchKey key = service.take();
+				while (key != null) {
+					Path directory = (Path) key.watchable();
+					for (WatchEvent< ? > event : key.pollEvents()) {
+						if (event.context() instanceof Path) {
+							changed.add(directory.resolve((Path) event.context()).normalize());
+						}
+					}
+					key.reset();
+					key = service.poll(SETTLE_TIME, TimeUnit.MILLISECONDS);
+				}
+				
+				reload(changed);
+			}
+		} catch (ClosedWatchServiceException | InterruptedException e) {
+			// The watcher was stopped
+		}
+	}
+	
+	/**
+	 * Loads any resources depending on the specified files, and queues them to be
+	 * swapped in. Each resource is loaded once, however many of its files changed.
+	 * Runs on the watcher thread.
+	 * 
+	 * @param files
+	 *            the files that changed.
+	 */
+	private void reload(Set< Path > files) {
+		
+		// The first changed file of each target, in order
+		Map< Target, Path > affected = new LinkedHashMap<>();
+		synchronized (this) {
+			for (Path file : files) {
+				List< Target > list = targets.get(file);
+				if (list != null) {
+					for (Target target : list) {
+						affected.putIfAbsent(target, file);
+					}
+				}
+			}
+		}
+		
+		for (Map.Entry< Target, Path > entry : affected.entrySet()) {
+			Target target = entry.getKey();
+			try {
+				Change change = target.prepare();
+				pendingChanges.add(() -> apply(target, change));
+			} catch (GreaseException e) {
+				System.err.println("Keeping previous version of " + entry.getValue() + ": " + e.getMessage());
+			}
+		}
+	}
+}
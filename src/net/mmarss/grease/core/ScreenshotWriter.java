@@ -0,0 +1,115 @@
+package net.mmarss.grease.core;
+
+import static org.lwjgl.stb.STBImageWrite.stbi_write_png;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.lwjgl.system.MemoryUtil;
+
+import net.mmarss.grease.exception.GreaseFileException;
+import net.mmarss.grease.graphics.PixelBufferPool;
+
+/**
+ * Encodes screenshots as PNG files on a background thread, so that encoding
+ * never holds up the render loop.
+ */
+/* package */ final class ScreenshotWriter {
+	
+	/** The number of seconds to wait for pending screenshots when shutting down. */
+	private static final long SHUTDOWN_TIMEOUT = 10;
+	
+	/** The thread encoding and writing the screenshots. */
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "Grease screenshot writer");
+		thread.setDaemon(true);
+		return thread;
+	});
+	
+	/**
+	 * Creates a readback handler which writes the pixels read to a PNG file.
+	 * 
+	 * @param filename
+	 *            the file to write.
+	 * @return the readback handler.
+	 */
+	/* package */ FramebufferReadback.Handler toFile(String filename) {
+		
+		return (pixels, width, height, frame) -> executor.execute(() -> {
+			try {
+				writePng(filename, pixels, width, height);
+			} catch (GreaseFileException e) {
+				e.printStackTrace();
+			} finally {
+				PixelBufferPool.getInstance().free(pixels);
+			}
+		});
+	}
+	
+	/**
+	 * Waits for the pending screenshots to be written, and stops the background
+	 * thread.
+	 */
+	/* package */ void shutdown() {
+		
+		executor.shutdown();
+		try {
+			executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Writes pixels read from the framebuffer to a PNG file, flipping them so that
+	 * the top row comes first.
+	 * 
+	 * @param filename
+	 *            the file to write.
+	 * @param pixels
+	 *            the RGBA pixels, with the bottom row first. Flipped in place.
+	 * @param width
+	 *            the width of the image, in pixels.
+	 * @param height
+	 *            the height of the image, in pixels.
+	 * @throws GreaseFileException
+	 *             if the file could not be written.
+	 */
+	/* package */ static void writePng(String filename, ByteBuffer pixels, int width, int height)
+			throws GreaseFileException {
+		
+		flipRows(pixels, width * 4, height);
+		if (!stbi_write_png(filename, width, height, 4, pixels, width * 4)) {
+			throw new GreaseFileException("Could not write image " + filename + ".");
+		}
+	}
+	
+	/**
+	 * Reverses the order of the rows of an image in place.
+	 * 
+	 * @param pixels
+	 *            the image data.
+	 * @param stride
+	 *            the number of bytes per row.
+	 * @param height
+	 *            the number of rows.
+	 */
+	/* package */ static void flipRows(ByteBuffer pixels, int stride, int height) {
+		
+		ByteBuffer row = PixelBufferPool.getInstance().allocate(stride);
+		long address = MemoryUtil.memAddress(pixels);
+		long rowAddress = MemoryUtil.memAddress(row);
+		
+		for (int top = 0, bottom = height - 1; top < bottom; top++, bottom--) {
+			long topAddress = address + (long) top * stride;
+			long bottomAddress = address + (long) bottom * stride;
+			MemoryUtil.memCopy(topAddress, rowAddress, stride);
+			MemoryUtil.memCopy(bottomAddress, topAddress, stride);
+			MemoryUtil.memCopy(rowAddress, bottomAddress, stride);
+		}
+		
+		PixelBufferPool.getInstance().free(row);
+	}
+}
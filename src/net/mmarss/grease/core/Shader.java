@@ -1,6 +1,11 @@
 package net.mmarss.grease.core;
 
-import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL20.GL_COMPILE_STATUS;
+import static org.lwjgl.opengl.GL20.GL_FRAGMENT_SHADER;
+import static org.lwjgl.opengl.GL20.GL_LINK_STATUS;
+import static org.lwjgl.opengl.GL20.GL_VALIDATE_STATUS;
+import static org.lwjgl.opengl.GL20.GL_VERTEX_SHADER;
+import static net.mmarss.grease.core.Gl.*;
 
 import java.nio.Buffer;
 import java.util.HashMap;
@@ -11,7 +16,6 @@ import org.joml.Vector2f;
 import org.joml.Vector3f;
 import org.joml.Vector4f;
 import org.lwjgl.system.MemoryStack;
-import org.lwjgl.system.MemoryUtil;
 
 import net.mmarss.grease.exception.*;
 
@@ -28,7 +32,7 @@ import net.mmarss.grease.exception.*;
  * <code>preRender</code> method, and <code>unbind</code> from a renderer's
  * <code>postRender</code> method.
  */
-public class Shader {
+public class Shader implements Resource {
 	
 	/** The maximum number of characters that may be written to an error string. */
 	private static final int ERROR_BUFFER_STRING_LENGTH = 1024;
@@ -202,6 +206,74 @@ public class Shader {
 		}
 	}
 	
+	/**
+	 * Rebuilds this shader program from new source code, keeping its registered
+	 * uniforms and their most recently set values. If either shader fails to
+	 * compile, or the program fails to link, the previous program is kept and
+	 * remains usable. Must be called from the window thread, while no other
+	 * shader is bound.
+	 * 
+	 * @param vertexCode
+	 *            the new vertex shader source code.
+	 * @param fragmentCode
+	 *            the new fragment shader source code.
+	 * 
+	 * @throws GreaseShaderOpenGLException
+	 *             if one or more programs cannot be created.
+	 * @throws GreaseShaderCompilationError
+	 *             if one or more shaders cannot be compiled.
+	 * @throws GreaseShaderLinkerError
+	 *             if the shader program cannot be linked.
+	 * @throws GreaseShaderUniformException
+	 *             if a registered uniform does not exist in the new program.
+	 */
+	public void reload(String vertexCode, String fragmentCode) throws GreaseShaderOpenGLException,
+			GreaseShaderCompilationError, GreaseShaderLinkerError, GreaseShaderUniformException {
+		
+		int oldProgramId = programId;
+		int oldVertexShaderId = vertexShaderId;
+		int oldFragmentShaderId = fragmentShaderId;
+		
+		programId = 0;
+		vertexShaderId = 0;
+		fragmentShaderId = 0;
+		
+		Map< Uniform, Integer > locations = new HashMap<>();
+		try {
+			
+			create();
+			addShaders(vertexCode, fragmentCode);
+			link();
+			
+			for (Uniform u : uniformMap.values()) {
+				int location = glGetUniformLocation(programId, u.name);
+				if (location < 0) {
+					throw new GreaseShaderUniformException("Could not find uniform: " + u.name);
+				}
+				locations.put(u, location);
+			}
+			
+		} catch (GreaseShaderException e) {
+			
+			// Discard the new program, and restore the old one
+			deletePrograms(programId, vertexShaderId, fragmentShaderId);
+			programId = oldProgramId;
+			vertexShaderId = oldVertexShaderId;
+			fragmentShaderId = oldFragmentShaderId;
+			throw e;
+		}
+		
+		deletePrograms(oldProgramId, oldVertexShaderId, oldFragmentShaderId);
+		
+		// Uniform values are per program, so restore them in the new one
+		glUseProgram(programId);
+		for (Map.Entry< Uniform, Integer > entry : locations.entrySet()) {
+			entry.getKey().location = entry.getValue();
+			entry.getKey().restore();
+		}
+		glUseProgram(0);
+	}
+	
 	/**
 	 * Registers the named uniform within this shader.
 	 * 
@@ -239,6 +311,21 @@ public class Shader {
 		uniform.setUniform(value);
 	}
 	
+	/**
+	 * Gets the most recently set value of the named uniform.
+	 * 
+	 * @param uniformName
+	 *            the name of the uniform.
+	 * @return the value of the uniform, or <code>null</code> if it has not been
+	 *         created or set. Vectors and matrices are copies owned by the shader,
+	 *         and must not be modified.
+	 */
+	public Object getUniform(String uniformName) {
+		
+		Uniform uniform = uniformMap.get(uniformName);
+		return uniform == null ? null : uniform.value;
+	}
+	
 	/**
 	 * Binds this shader to the current rendering context. Typically called in a
 	 * renderer's <code>preRender</code> method.
@@ -257,19 +344,67 @@ public class Shader {
 		glUseProgram(0);
 	}
 	
+	/**
+	 * Shader programs hold no significant main memory.
+	 * 
+	 * @return zero.
+	 */
+	@Override
+	public long getMemorySize() {
+		
+		return 0;
+	}
+	
+	/**
+	 * Shader programs hold no significant video memory.
+	 * 
+	 * @return zero.
+	 */
+	@Override
+	public long getVideoMemorySize() {
+		
+		return 0;
+	}
+	
 	/**
 	 * Deletes this shader program.
 	 */
+	@Override
 	public void cleanup() {
 		
 		glUseProgram(0);
 		if (programId != 0) {
 			glDeleteProgram(programId);
+			programId = 0;
 		}
 		
 		for (Uniform u : uniformMap.values()) {
 			u.cleanup();
 		}
+		uniformMap.clear();
+	}
+	
+	/**
+	 * Deletes a shader program and its shaders. Zero identifiers are ignored.
+	 * 
+	 * @param program
+	 *            the shader program to delete.
+	 * @param vertexShader
+	 *            the vertex shader to delete.
+	 * @param fragmentShader
+	 *            the fragment shader to delete.
+	 */
+	private static void deletePrograms(int program, int vertexShader, int fragmentShader) {
+		
+		if (program != 0) {
+			glDeleteProgram(program);
+		}
+		if (vertexShader != 0) {
+			glDeleteShader(vertexShader);
+		}
+		if (fragmentShader != 0) {
+			glDeleteShader(fragmentShader);
+		}
 	}
 	
 	/**
@@ -294,10 +429,15 @@ public class Shader {
 			throw new GreaseShaderOpenGLException("OpenGL shader creation failed");
 		}
 		
+		Object compileEvent = EngineEvent.SHADER_COMPILE.begin();
 		glShaderSource(shaderId, code);
 		glCompileShader(shaderId);
 		
-		if (glGetShaderi(shaderId, GL_COMPILE_STATUS) == 0) {
+		boolean compiled = glGetShaderi(shaderId, GL_COMPILE_STATUS) != 0;
+		EngineEvent.SHADER_COMPILE.commit(compileEvent, shaderType == GL_VERTEX_SHADER ? "vertex" : "fragment",
+				compiled);
+		
+		if (!compiled) {
 			throw new GreaseShaderCompilationError(
 					"OpenGL shader compilation failed: " + glGetShaderInfoLog(shaderId, ERROR_BUFFER_STRING_LENGTH));
 		}
@@ -318,6 +458,12 @@ public class Shader {
 		private Class< ? >	type;
 		/** The buffer storing the shared variable. */
 		private Buffer		buffer;
+		/**
+		 * The most recently set value, restored when the shader is reloaded. Vectors
+		 * and matrices are copied into an instance owned by the uniform, so that
+		 * later changes by the caller are not mistaken for the uploaded value.
+		 */
+		private Object		value;
 		
 		/**
 		 * Constructs a new uniform with a specified name and data type.
@@ -361,11 +507,12 @@ public class Shader {
 		}
 		
 		/**
-		 * Frees the allocated shared memory space for this uniform.
+		 * Releases the shared memory space for this uniform. The buffer was allocated
+		 * on the stack, and must not be passed to <code>memFree</code>.
 		 */
 		public void cleanup() {
 			
-			MemoryUtil.memFree(buffer);
+			buffer = null;
 		}
 		
 		/**
@@ -404,6 +551,23 @@ public class Shader {
 			return null;
 		}
 		
+		/**
+		 * Sets this uniform in the bound program to its most recently set value, if
+		 * any.
+		 */
+		public void restore() {
+			
+			if (value == null) {
+				return;
+			}
+			
+			try {
+				setUniform(value);
+			} catch (GreaseShaderUniformException e) { // Will not happen; the value was already accepted.
+				e.printStackTrace();
+			}
+		}
+		
 		/**
 		 * Sets the value of this uniform to the specified value.
 		 * 
@@ -420,6 +584,8 @@ public class Shader {
 						+ ", but the passed value has type " + value.getClass().getSimpleName() + ".");
 			}
 			
+			store(value);
+			
 			if (type.equals(Boolean.class)) {
 				glUniform1i(location, Boolean.class.cast(value) == true ? 1 : 0);
 			}
@@ -447,5 +613,40 @@ public class Shader {
 				glUniformMatrix4fv(location, false, Matrix4f.class.cast(value).get(new float[16]));
 			}
 		}
+		
+		/**
+		 * Stores a copy of the specified value as the most recently set value. Vectors
+		 * and matrices are copied into the instance owned by this uniform, which is
+		 * only allocated the first time.
+		 * 
+		 * @param value
+		 *            the value set, of this uniform's type.
+		 */
+		private void store(Object value) {
+			
+			if (value instanceof Matrix4f) {
+				if (this.value == null) {
+					this.value = new Matrix4f();
+				}
+				((Matrix4f) this.value).set((Matrix4f) value);
+			} else if (value instanceof Vector4f) {
+				if (this.value == null) {
+					this.value = new Vector4f();
+				}
+				((Vector4f) this.value).set((Vector4f) value);
+			} else if (value instanceof Vector3f) {
+				if (this.value == null) {
+					this.value = new Vector3f();
+				}
+				((Vector3f) this.value).set((Vector3f) value);
+			} else if (value instanceof Vector2f) {
+				if (this.value == null) {
+					this.value = new Vector2f();
+				}
+				((Vector2f) this.value).set((Vector2f) value);
+			} else {
+				this.value = value; // Boxed primitives are immutable
+			}
+		}
 	}
 }
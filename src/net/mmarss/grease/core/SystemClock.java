@@ -0,0 +1,46 @@
+package net.mmarss.grease.core;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A real clock following <code>System.nanoTime</code>. It is monotonic, needs
+ * no initialization, and is safe to use from any thread without locking.
+ */
+public final class SystemClock implements Clock {
+	
+	/** The singleton instance of the system clock. */
+	private static final SystemClock instance = new SystemClock();
+	
+	/**
+	 * Constructs the system clock. This constructor is private, following the
+	 * singleton design pattern.
+	 */
+	private SystemClock() {}
+	
+	/**
+	 * @return the singleton instance of the system clock.
+	 */
+	public static SystemClock getInstance() {
+		
+		return instance;
+	}
+	
+	@Override
+	public long nanoTime() {
+		
+		return System.nanoTime();
+	}
+	
+	@Override
+	public void waitUntil(long nanoTime) {
+		
+		long remaining;
+		while ((remaining = nanoTime - System.nanoTime()) > 0) {
+			LockSupport.parkNanos(remaining);
+			if (Thread.interrupted()) {
+				Thread.currentThread().interrupt(); // Preserve the interrupt for the caller
+				return;
+			}
+		}
+	}
+}
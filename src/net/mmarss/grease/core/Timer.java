@@ -1,17 +1,56 @@
 package net.mmarss.grease.core;
 
-import static org.lwjgl.glfw.GLFW.glfwGetTime;
+import java.util.concurrent.atomic.AtomicReference;
 
 import net.mmarss.grease.exception.GreaseInvalidArgumentException;
 
+/**
+ * Measures elapsed time, or counts down from a set time, against a
+ * {@link Clock}. Timers are lock-free; their state is swapped atomically, so a
+ * timer can be read and controlled from any thread.
+ */
 public class Timer {
 	
-	/** The time in seconds to count down for, or 0 for clock mode. */
-	private double	countdown;
-	/** The time at which the timer was started. */
-	private double	time;
-	/** Whether the timer is paused. */
-	private boolean	isPaused;
+	/** The clock used by timers created without one. */
+	private static volatile Clock defaultClock = SystemClock.getInstance();
+	
+	/** The clock this timer measures time against. */
+	private final Clock	clock;
+	/** The time in nanoseconds to count down for, or 0 for clock mode. */
+	private final long	countdown;
+	
+	/** The current state of the timer, replaced as a whole on every change. */
+	private final AtomicReference< State > state;
+	
+	/**
+	 * An immutable snapshot of a timer's state.
+	 */
+	private static final class State {
+		
+		/** The clock time at which the timer was started, while running. */
+		private final long		start;
+		/** The value of the timer in nanoseconds when it was paused. */
+		private final long		value;
+		/** Whether the timer is paused. */
+		private final boolean	isPaused;
+		
+		/**
+		 * Constructs a new timer state.
+		 * 
+		 * @param start
+		 *            the clock time at which the timer was started.
+		 * @param value
+		 *            the value of the timer when it was paused.
+		 * @param isPaused
+		 *            whether the timer is paused.
+		 */
+		private State(long start, long value, boolean isPaused) {
+			
+			this.start = start;
+			this.value = value;
+			this.isPaused = isPaused;
+		}
+	}
 	
 	/**
 	 * Creates a timer in clock mode. This mode tracks time elapsed.
@@ -30,12 +69,39 @@ public class Timer {
 	 */
 	public Timer(double time) {
 		
+		this(defaultClock, time);
+	}
+	
+	/**
+	 * Creates a timer in clock mode, measuring time against the specified clock.
+	 * 
+	 * @param clock
+	 *            the clock to measure time against.
+	 */
+	public Timer(Clock clock) {
+		
+		this(clock, 0);
+	}
+	
+	/**
+	 * Creates a timer measuring time against the specified clock. For positive
+	 * times, the timer is in countdown mode, and for a zero time, in clock mode.
+	 * 
+	 * @param clock
+	 *            the clock to measure time against.
+	 * @param time
+	 *            The time that this timer should run for.
+	 */
+	public Timer(Clock clock, double time) {
+		
+		if (clock == null)
+			throw new GreaseInvalidArgumentException("clock", clock, "Timer clock must be non-null.");
 		if (time < 0)
 			throw new GreaseInvalidArgumentException("time", time, "Timer time must be non-negative.");
 		
-		this.time = 0;
-		countdown = time;
-		isPaused = false;
+		this.clock = clock;
+		countdown = (long) (time * 1e9);
+		state = new AtomicReference<>(new State(clock.nanoTime(), 0, false));
 	}
 	
 	/**
@@ -43,27 +109,29 @@ public class Timer {
 	 * 
 	 * @return This timer.
 	 */
-	public synchronized Timer start() {
+	public Timer start() {
 		
-		time = now();
-		isPaused = false;
+		state.set(new State(clock.nanoTime(), 0, false));
 		return this;
 	}
 	
 	/**
 	 * Resumes the timer. If not paused, does nothing.
 	 */
-	public synchronized void resume() {
-		
-		if (!isPaused) {
-			return;
-		}
+	public void resume() {
 		
-		if (countdown != 0) {
-			time = now() - (countdown - time); // countdown - time = {time elapsed}
-		} else {
-			time = now() - time; // time = {time elapsed}
-		}
+		State current;
+		State resumed;
+		do {
+			current = state.get();
+			if (!current.isPaused) {
+				return;
+			}
+			
+			// In countdown mode, the paused value is the time remaining
+			long elapsed = countdown != 0 ? countdown - current.value : current.value;
+			resumed = new State(clock.nanoTime() - elapsed, 0, false);
+		} while (!state.compareAndSet(current, resumed));
 	}
 	
 	/**
@@ -71,11 +139,16 @@ public class Timer {
 	 * 
 	 * @return The time in seconds that the timer ran for.
 	 */
-	public synchronized double restart() {
+	public double restart() {
+		
+		State current;
+		long now;
+		do {
+			current = state.get();
+			now = clock.nanoTime();
+		} while (!state.compareAndSet(current, new State(now, 0, false)));
 		
-		double time = get();
-		start();
-		return time;
+		return toSeconds(valueAt(current, now));
 	}
 	
 	/**
@@ -84,11 +157,19 @@ public class Timer {
 	 * @return In clock mode: the time elapsed. In countdown mode: the time
 	 *         remaining.
 	 */
-	public synchronized double stop() {
+	public double stop() {
 		
-		time = get();
-		isPaused = true;
-		return time;
+		State current;
+		State stopped;
+		do {
+			current = state.get();
+			if (current.isPaused) {
+				return toSeconds(current.value);
+			}
+			stopped = new State(0, valueAt(current, clock.nanoTime()), true);
+		} while (!state.compareAndSet(current, stopped));
+		
+		return toSeconds(stopped.value);
 	}
 	
 	/**
@@ -97,7 +178,7 @@ public class Timer {
 	 * @return In clock mode: the time elapsed. In countdown mode: the time
 	 *         remaining.
 	 */
-	public synchronized double pause() {
+	public double pause() {
 		
 		return stop();
 	}
@@ -111,23 +192,7 @@ public class Timer {
 	 */
 	public double get() {
 		
-		if (isPaused) {
-			return time;
-		}
-		
-		if (countdown != 0) { // Countdown mode
-			double elapsed = now() - time;
-			
-			if (elapsed > countdown) {
-				// Timer has triggered
-				return 0;
-			}
-			
-			return countdown - elapsed; // Time remaining
-		}
-		
-		// Clock mode
-		return now() - time; // Running time since start
+		return toSeconds(valueAt(state.get(), clock.nanoTime()));
 	}
 	
 	/**
@@ -137,7 +202,7 @@ public class Timer {
 	 */
 	public boolean isRunning() {
 		
-		return !isPaused;
+		return !state.get().isPaused;
 	}
 	
 	/**
@@ -148,26 +213,18 @@ public class Timer {
 	 */
 	public boolean isTriggered() {
 		
-		if (countdown != 0) { // Countdown mode
-			return now() - time > countdown; // elapsed > countdown
-		} else { // Clock mode
-			return false;
-		}
+		return countdown != 0 && valueAt(state.get(), clock.nanoTime()) == 0;
 	}
 	
 	/**
-	 * Sleeps until the countdown timer elapses. In clock mode, returns immediately.
+	 * Sleeps until the countdown timer elapses. In clock mode, or while paused,
+	 * returns immediately.
 	 */
 	public void sleep() {
 		
-		if (countdown != 0) {
-			while (get() != 0) {
-				try {
-					Thread.sleep(1);
-				} catch (InterruptedException e) {
-					return;
-				}
-			}
+		State current = state.get();
+		if (countdown != 0 && !current.isPaused) {
+			clock.waitUntil(current.start + countdown);
 		}
 	}
 	
@@ -184,13 +241,81 @@ public class Timer {
 	}
 	
 	/**
-	 * Returns the value of the engine timer. This timer measures the time elapsed
-	 * since GLFW was initialized.
+	 * @return the clock this timer measures time against.
+	 */
+	public Clock getClock() {
+		
+		return clock;
+	}
+	
+	/**
+	 * Gets the value of a timer state at the specified time.
+	 * 
+	 * @param state
+	 *            the timer state.
+	 * @param now
+	 *            the current clock time, in nanoseconds.
+	 * @return the time elapsed in clock mode, or the time remaining in countdown
+	 *         mode, in nanoseconds.
+	 */
+	private long valueAt(State state, long now) {
+		
+		if (state.isPaused) {
+			return state.value;
+		}
+		
+		long elapsed = now - state.start;
+		if (countdown != 0) { // Countdown mode
+			return Math.max(0, countdown - elapsed); // Time remaining
+		}
+		
+		// Clock mode
+		return elapsed; // Running time since start
+	}
+	
+	/**
+	 * Converts a time in nanoseconds to seconds.
+	 * 
+	 * @param nanos
+	 *            the time, in nanoseconds.
+	 * @return the time, in seconds.
+	 */
+	private static double toSeconds(long nanos) {
+		
+		return nanos / 1e9;
+	}
+	
+	/**
+	 * Sets the clock used by timers created without one, and by {@link #now()}.
+	 * Existing timers keep their clock.
+	 * 
+	 * @param clock
+	 *            the new default clock.
+	 */
+	public static void setDefaultClock(Clock clock) {
+		
+		if (clock == null)
+			throw new GreaseInvalidArgumentException("clock", clock, "Timer clock must be non-null.");
+		
+		defaultClock = clock;
+	}
+	
+	/**
+	 * @return the clock used by timers created without one.
+	 */
+	public static Clock getDefaultClock() {
+		
+		return defaultClock;
+	}
+	
+	/**
+	 * Returns the value of the default clock. This is measured from an arbitrary
+	 * origin, so is only meaningful relative to other values.
 	 * 
-	 * @return The current timer value, in seconds, or zero if an error occurred.
+	 * @return The current clock value, in seconds.
 	 */
 	public static double now() {
 		
-		return glfwGetTime();
+		return defaultClock.seconds();
 	}
 }
@@ -0,0 +1,81 @@
+package net.mmarss.grease.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.mmarss.grease.exception.GreaseInvalidArgumentException;
+
+/**
+ * A clock which only moves when it is advanced, either explicitly or by waiting
+ * on it. Driving the engine with a virtual clock runs the game as fast as the
+ * processor allows while every frame sees exactly the intended time, so runs
+ * are repeatable in tests and benchmarks. Safe to use from any thread without
+ * locking.
+ */
+public class VirtualClock implements Clock {
+	
+	/** The current time, in nanoseconds. */
+	private final AtomicLong time = new AtomicLong();
+	
+	/**
+	 * Constructs a new virtual clock starting at time zero.
+	 */
+	public VirtualClock() {}
+	
+	/**
+	 * Constructs a new virtual clock starting at the specified time.
+	 * 
+	 * @param nanoTime
+	 *            the initial time, in nanoseconds.
+	 */
+	public VirtualClock(long nanoTime) {
+		
+		time.set(nanoTime);
+	}
+	
+	@Override
+	public long nanoTime() {
+		
+		return time.get();
+	}
+	
+	/**
+	 * Advances this clock by the specified amount.
+	 * 
+	 * @param nanos
+	 *            the time to advance by, in nanoseconds.
+	 */
+	public void advance(long nanos) {
+		
+		if (nanos < 0) {
+			throw new GreaseInvalidArgumentException("nanos", nanos, "Clocks cannot move backwards.");
+		}
+		
+		time.addAndGet(nanos);
+	}
+	
+	/**
+	 * Advances this clock by the specified amount.
+	 * 
+	 * @param seconds
+	 *            the time to advance by, in seconds.
+	 */
+	public void advanceSeconds(double seconds) {
+		
+		advance((long) (seconds * 1e9d));
+	}
+	
+	/**
+	 * Jumps forward to the specified time, if it has not already been reached.
+	 */
+	@Override
+	public void waitUntil(long nanoTime) {
+		
+		time.accumulateAndGet(nanoTime, Math::max);
+	}
+	
+	@Override
+	public boolean isVirtual() {
+		
+		return true;
+	}
+}
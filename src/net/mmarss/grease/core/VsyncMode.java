@@ -0,0 +1,40 @@
+package net.mmarss.grease.core;
+
+/**
+ * An enumeration of vertical synchronization modes.
+ */
+public enum VsyncMode {
+	
+	/** Buffers are swapped immediately, which may cause tearing. */
+	OFF(0),
+	/** Buffer swaps wait for the display's vertical blank. */
+	ON(1),
+	/**
+	 * Buffer swaps wait for the vertical blank, unless the frame is already late,
+	 * in which case it is swapped immediately instead of waiting a whole refresh.
+	 * Falls back to <code>ON</code> where swap tearing is not supported.
+	 */
+	ADAPTIVE(-1);
+	
+	/** The GLFW swap interval for this mode. */
+	private final int swapInterval;
+	
+	/**
+	 * Constructs a vsync mode constant.
+	 * 
+	 * @param swapInterval
+	 *            the GLFW swap interval for the mode.
+	 */
+	private VsyncMode(int swapInterval) {
+		
+		this.swapInterval = swapInterval;
+	}
+	
+	/**
+	 * @return the swap interval to pass to GLFW for this mode.
+	 */
+	public int getSwapInterval() {
+		
+		return swapInterval;
+	}
+}
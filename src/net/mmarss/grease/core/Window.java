@@ -4,6 +4,10 @@ import static org.lwjgl.glfw.Callbacks.glfwFreeCallbacks;
 import static org.lwjgl.glfw.GLFW.*;
 import static org.lwjgl.system.MemoryUtil.NULL;
 
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
 import org.lwjgl.glfw.GLFWErrorCallback;
 import org.lwjgl.glfw.GLFWVidMode;
 import org.lwjgl.opengl.GL;
@@ -11,14 +15,18 @@ import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GLUtil;
 import org.lwjgl.system.Callback;
 
+import net.mmarss.grease.exception.GreaseFileException;
+import net.mmarss.grease.exception.GreaseInvalidArgumentException;
+import net.mmarss.grease.exception.GreaseInvalidMethodCallException;
 import net.mmarss.grease.exception.GreaseRuntimeException;
 import net.mmarss.grease.exception.GreaseSystemException;
 import net.mmarss.grease.exception.GreaseWindowException;
 import net.mmarss.grease.graphics.Renderer;
+import net.mmarss.grease.input.CursorMode;
 import net.mmarss.grease.input.InputManager;
 import net.mmarss.grease.input.Key;
 import net.mmarss.grease.input.KeyAction;
-import net.mmarss.grease.input.KeyModifier;
+import net.mmarss.grease.input.MouseButton;
 
 /**
  * A class managing a single window. This library does not support creating
@@ -26,10 +34,13 @@ import net.mmarss.grease.input.KeyModifier;
  */
 public class Window {
 	
-	/** The number of milliseconds between input polls. */
-	private static final int	INPUT_POLL_RATE		= 10;
-	/** The target number of frames per second. */
-	private static final int	RENDER_FRAME_RATE	= 60;
+	/**
+	 * The default maximum number of milliseconds between input polls, while
+	 * waiting for the next frame.
+	 */
+	private static final int	DEFAULT_INPUT_POLL_RATE		= 10;
+	/** The default target number of frames per second. */
+	private static final int	DEFAULT_RENDER_FRAME_RATE	= 60;
 	
 	/** The singleton instance of the window class. */
 	private static Window instance = null;
@@ -38,9 +49,15 @@ public class Window {
 	private long windowHandle;
 	
 	/** The title of the window. */
-	private String		title;
-	/** The window dimensions. */
-	private WindowSize	windowSize;
+	private String				title;
+	/**
+	 * The window dimensions. Replaced as a whole whenever the window is resized,
+	 * so that a thread reading it always sees a width and height that belong
+	 * together.
+	 */
+	private volatile WindowSize	windowSize;
+	/** The window dimensions last passed to the renderer, on the render thread. */
+	private WindowSize			renderedSize;
 	
 	/** The main renderer called each render cycle. */
 	private Renderer		renderer;
@@ -54,26 +71,70 @@ public class Window {
 	/** The input manager for this window. */
 	private InputManager inputManager;
 	
-	/** A method used to programmatically change the window's visibility. */
-	private Runnable	setVisibility	= null;
-	/** A method used to programmatically change the window's size. */
-	private Runnable	setSize			= null;
+	/** The frame pacer used to wait between frames. */
+	private FramePacer framePacer;
+	
+	/** The profiler timing the phases of each frame. */
+	private final FrameProfiler profiler = new FrameProfiler();
+	
+	/** The number of frames rendered. */
+	private long frameCount = 0;
+	
+	/** Reads back frames for captures without stalling the loop. */
+	private final FramebufferReadback					readback			= new FramebufferReadback();
+	/** Writes screenshots on a background thread. */
+	private final ScreenshotWriter						screenshotWriter	= new ScreenshotWriter();
+	/** The handlers of the captures requested for the next frames. */
+	private final Queue< FramebufferReadback.Handler >	captureRequests		= new ConcurrentLinkedQueue<>();
+	/** The continuous capture in progress, or <code>null</code>. */
+	private final AtomicReference< FrameCapture >		frameCapture		= new AtomicReference<>();
+	
+	/** The maximum number of milliseconds between input polls. */
+	private volatile int		inputPollRate	= DEFAULT_INPUT_POLL_RATE;
+	/** The vertical synchronization mode. */
+	private volatile VsyncMode	vsyncMode		= VsyncMode.ON;
+	/** Whether the vsync mode has changed since it was last applied. */
+	private volatile boolean	vsyncChanged	= false;
+	/** The cursor mode. */
+	private volatile CursorMode	cursorMode		= CursorMode.NORMAL;
+	/** Whether the cursor mode has changed since it was last applied. */
+	private volatile boolean	cursorChanged	= false;
+	
 	/**
-	 * Whether the window was resized this render cycle, either by the user or
-	 * programmatically.
+	 * Whether frames are rendered on a separate thread, while the thread running
+	 * the window only handles events.
 	 */
-	private boolean		resized			= false;
+	private boolean threadedRendering = false;
+	
+	/** A method used to programmatically change the window's visibility. */
+	private final AtomicReference< Runnable >	setVisibility	= new AtomicReference<>();
+	/** A method used to programmatically change the window's size. */
+	private final AtomicReference< Runnable >	setSize			= new AtomicReference<>();
 	
 	/** The callback used to log debug information. */
 	private Callback debugProc;
 	
 	/** Represents a window's dimensions. */
-	private class WindowSize {
+	private static final class WindowSize {
 		
 		/** This window's width, in pixels. */
-		private int	width;
+		private final int	width;
 		/** This window's height, in pixels. */
-		private int	height;
+		private final int	height;
+		
+		/**
+		 * Constructs a new window size.
+		 * 
+		 * @param width
+		 *            the window width, in pixels.
+		 * @param height
+		 *            the window height, in pixels.
+		 */
+		private WindowSize(int width, int height) {
+			
+			this.width = width;
+			this.height = height;
+		}
 	}
 	
 	/** Represents an initialization method. */
@@ -127,9 +188,7 @@ public class Window {
 	private Window(int width, int height, String title, Renderer renderer, InitMethod initMethod,
 			UpdateMethod updateMethod, CleanupMethod cleanupMethod) {
 		
-		windowSize = new WindowSize();
-		windowSize.width = width;
-		windowSize.height = height;
+		windowSize = new WindowSize(width, height);
 		this.title = title;
 		
 		this.renderer = renderer;
@@ -138,6 +197,7 @@ public class Window {
 		this.cleanupMethod = cleanupMethod;
 		
 		inputManager = new InputManager();
+		framePacer = new FramePacer(DEFAULT_RENDER_FRAME_RATE);
 	}
 	
 	/**
@@ -199,11 +259,16 @@ public class Window {
 	}
 	
 	/**
-	 * Executes the window.
+	 * Executes the window. With threaded rendering, this must be called from the
+	 * main thread, which GLFW requires for handling events.
 	 */
 	public void run() {
 		
-		windowLifecycle();
+		if (threadedRendering) {
+			eventLifecycle();
+		} else {
+			windowLifecycle();
+		}
 	}
 	
 	/**
@@ -211,7 +276,8 @@ public class Window {
 	 */
 	public void show() {
 		
-		setVisibility = () -> glfwShowWindow(windowHandle);
+		setVisibility.set(() -> glfwShowWindow(windowHandle));
+		wakeEventThread();
 	}
 	
 	/**
@@ -219,7 +285,8 @@ public class Window {
 	 */
 	public void hide() {
 		
-		setVisibility = () -> glfwHideWindow(windowHandle);
+		setVisibility.set(() -> glfwHideWindow(windowHandle));
+		wakeEventThread();
 	}
 	
 	/**
@@ -232,12 +299,11 @@ public class Window {
 	 */
 	public void setSize(int width, int height) {
 		
-		setSize = () -> {
+		setSize.set(() -> {
 			glfwSetWindowSize(windowHandle, width, height);
-			windowSize.width = width;
-			windowSize.height = height;
-			resized = true;
-		};
+			windowSize = new WindowSize(width, height);
+		});
+		wakeEventThread();
 	}
 	
 	/**
@@ -257,6 +323,177 @@ public class Window {
 		return inputManager;
 	}
 	
+	/**
+	 * Saves the next frame as a PNG file. The frame is read back asynchronously
+	 * and encoded on a background thread, so the loop is not held up. Can be
+	 * called from any thread.
+	 * 
+	 * @param filename
+	 *            the file to write.
+	 */
+	public void takeScreenshot(String filename) {
+		
+		if (filename == null) {
+			throw new GreaseInvalidArgumentException("filename", null);
+		}
+		
+		captureRequests.add(screenshotWriter.toFile(filename));
+	}
+	
+	/**
+	 * Starts recording frames to disk. Frames are read back asynchronously and
+	 * written on a background thread; frames which cannot be read or written in
+	 * time are dropped and counted, rather than holding up the loop. Only one
+	 * capture can be in progress at a time. Can be called from any thread.
+	 * 
+	 * @param path
+	 *            the path of the raw file, or the prefix of the PNG files.
+	 * @param format
+	 *            the format to write the frames in.
+	 * @param interval
+	 *            the number of frames between captured frames; 1 captures every
+	 *            frame.
+	 * @param seconds
+	 *            the length of the capture window in seconds of the frame pacer's
+	 *            clock, or 0 to capture until stopped.
+	 * @return the capture, which can be stopped and queried for dropped frames.
+	 * @throws GreaseFileException
+	 *             if the raw file could not be opened.
+	 */
+	public FrameCapture startCapture(String path, CaptureFormat format, int interval, double seconds)
+			throws GreaseFileException {
+		
+		if (frameCapture.get() != null) {
+			throw new GreaseInvalidMethodCallException("A frame capture is already in progress.");
+		}
+		
+		FrameCapture capture = new FrameCapture(path, format, interval, seconds);
+		if (!frameCapture.compareAndSet(null, capture)) {
+			capture.finish();
+			throw new GreaseInvalidMethodCallException("A frame capture is already in progress.");
+		}
+		
+		return capture;
+	}
+	
+	/**
+	 * Sets the vertical synchronization mode. Takes effect from the next frame. Can
+	 * be called from any thread.
+	 * 
+	 * @param vsyncMode
+	 *            the new vsync mode.
+	 */
+	public void setVsyncMode(VsyncMode vsyncMode) {
+		
+		if (vsyncMode == null) {
+			throw new GreaseInvalidArgumentException("vsyncMode", null);
+		}
+		
+		this.vsyncMode = vsyncMode;
+		vsyncChanged = true;
+	}
+	
+	/**
+	 * @return the vertical synchronization mode.
+	 */
+	public VsyncMode getVsyncMode() {
+		
+		return vsyncMode;
+	}
+	
+	/**
+	 * Sets how the window treats the cursor. Takes effect from the next frame. Can
+	 * be called from any thread.
+	 * 
+	 * @param cursorMode
+	 *            the new cursor mode.
+	 */
+	public void setCursorMode(CursorMode cursorMode) {
+		
+		if (cursorMode == null) {
+			throw new GreaseInvalidArgumentException("cursorMode", null);
+		}
+		
+		this.cursorMode = cursorMode;
+		cursorChanged = true;
+		wakeEventThread();
+	}
+	
+	/**
+	 * @return the cursor mode.
+	 */
+	public CursorMode getCursorMode() {
+		
+		return cursorMode;
+	}
+	
+	/**
+	 * Sets the maximum time between input polls while waiting for the next frame.
+	 * Window events are handled as soon as they arrive regardless; this bounds the
+	 * latency of requests made to this window from other threads. Can be called
+	 * from any thread.
+	 * 
+	 * @param milliseconds
+	 *            the maximum time between polls, in milliseconds.
+	 */
+	public void setInputPollRate(int milliseconds) {
+		
+		if (milliseconds <= 0) {
+			throw new GreaseInvalidArgumentException("milliseconds", milliseconds, "Poll rates must be positive.");
+		}
+		
+		inputPollRate = milliseconds;
+	}
+	
+	/**
+	 * Enables or disables threaded rendering. With threaded rendering, the thread
+	 * running the window blocks waiting for events and handles nothing else, so
+	 * input is received as soon as it arrives even while a frame takes long to
+	 * render. The OpenGL context is made current on a separate render thread,
+	 * which calls the initialization, update and cleanup methods, and drains the
+	 * input received just before each update. Gamepads are polled by the event
+	 * thread at least once per input poll interval. Must be set before the window
+	 * runs.
+	 * 
+	 * @param threadedRendering
+	 *            <code>true</code> to render on a separate thread.
+	 * @throws GreaseInvalidMethodCallException
+	 *             if the window is already running.
+	 */
+	public void setThreadedRendering(boolean threadedRendering) {
+		
+		if (windowHandle != NULL) {
+			throw new GreaseInvalidMethodCallException("The rendering mode must be set before the window runs.");
+		}
+		
+		this.threadedRendering = threadedRendering;
+	}
+	
+	/**
+	 * @return <code>true</code> if frames are rendered on a separate thread.
+	 */
+	public boolean isThreadedRendering() {
+		
+		return threadedRendering;
+	}
+	
+	/**
+	 * @return the frame pacer used to wait between frames, which measures the
+	 *         frame time jitter.
+	 */
+	public FramePacer getFramePacer() {
+		
+		return framePacer;
+	}
+	
+	/**
+	 * @return the profiler timing the phases of each frame.
+	 */
+	public FrameProfiler getProfiler() {
+		
+		return profiler;
+	}
+	
 	/**
 	 * Creates, starts, runs and terminates the window. Called by <code>run</code>,
 	 * optionally in a new thread.
@@ -266,8 +503,10 @@ public class Window {
 		try {
 			// Initialize
 			init(); // Initialize the window
+			initContext(); // Initialize OpenGL in this thread
 			
-			renderer.setInitialSize(windowSize.width, windowSize.height);
+			renderedSize = windowSize;
+			renderer.setInitialSize(renderedSize.width, renderedSize.height);
 			if (initMethod != null) {
 				initMethod.init();
 			}
@@ -289,10 +528,116 @@ public class Window {
 			if (cleanupMethod != null) {
 				cleanupMethod.cleanup();
 			}
+			cleanupContext();
+			cleanup();
+		}
+	}
+	
+	/**
+	 * Creates the window, starts the render thread, and handles events until the
+	 * window should close. Then waits for the render thread to finish before
+	 * terminating the window. Called by <code>run</code> with threaded rendering.
+	 */
+	private void eventLifecycle() {
+		
+		Thread renderThread = null;
+		try {
+			init(); // Initialize the window
+			
+			renderThread = new Thread(this::renderLifecycle, "Grease render thread");
+			renderThread.start();
+			
+			// Handle events until the window should close, polling gamepads at the poll
+			// rate however often events wake the thread
+			long lastGamepadPoll = System.nanoTime();
+			inputManager.pollGamepads();
+			while (!glfwWindowShouldClose(windowHandle)) {
+				long pollInterval = inputPollRate * 1_000_000L;
+				long untilPoll = lastGamepadPoll + pollInterval - System.nanoTime();
+				if (untilPoll <= 0) {
+					inputManager.pollGamepads();
+					lastGamepadPoll = System.nanoTime();
+					untilPoll = pollInterval;
+				}
+				waitEvents(untilPoll / 1e9d);
+			}
+			
+		} catch (Exception e) {
+			
+			e.printStackTrace();
+			
+		} finally {
+			
+			// The window must outlive the context used by the render thread
+			if (renderThread != null) {
+				glfwSetWindowShouldClose(windowHandle, true);
+				joinRenderThread(renderThread);
+			}
 			cleanup();
 		}
 	}
 	
+	/**
+	 * Initializes OpenGL, and runs the main loop until the window should close.
+	 * Runs on the render thread.
+	 */
+	private void renderLifecycle() {
+		
+		try {
+			initContext(); // Initialize OpenGL in this thread
+			
+			renderedSize = windowSize;
+			renderer.setInitialSize(renderedSize.width, renderedSize.height);
+			if (initMethod != null) {
+				initMethod.init();
+			}
+			renderer.init(); // Initialize the main renderer
+			
+			show(); // Show the window
+			
+			loop(); // Run the main loop
+			
+		} catch (Exception e) {
+			
+			e.printStackTrace();
+			
+		} finally {
+			
+			renderer.cleanup();
+			if (cleanupMethod != null) {
+				cleanupMethod.cleanup();
+			}
+			cleanupContext();
+			glfwMakeContextCurrent(NULL);
+			
+			// Wake the event thread, in case the loop ended by itself
+			glfwSetWindowShouldClose(windowHandle, true);
+			glfwPostEmptyEvent();
+		}
+	}
+	
+	/**
+	 * Waits for the render thread to finish, even if interrupted.
+	 * 
+	 * @param renderThread
+	 *            the render thread.
+	 */
+	private void joinRenderThread(Thread renderThread) {
+		
+		boolean interrupted = false;
+		while (renderThread.isAlive()) {
+			try {
+				renderThread.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
 	/**
 	 * Creates the window.
 	 * 
@@ -321,7 +666,8 @@ public class Window {
 		glfwWindowHint(GLFW_RESIZABLE, GLFW_TRUE); // Allow resizing
 		
 		// Create the window
-		windowHandle = glfwCreateWindow(windowSize.width, windowSize.height, title, NULL, NULL);
+		WindowSize size = windowSize;
+		windowHandle = glfwCreateWindow(size.width, size.height, title, NULL, NULL);
 		
 		if (windowHandle == NULL) {
 			throw new GreaseWindowException("Failed to create the GLFW window");
@@ -330,17 +676,26 @@ public class Window {
 		// Place the window in the center of the screen
 		centerWindow();
 		
+		// Configure the system callbacks
+		initCallbacks();
+	}
+	
+	/**
+	 * Makes the window's OpenGL context current in the calling thread, and
+	 * configures it.
+	 */
+	private void initContext() {
+		
 		// Activate the OpenGL rendering context in this thread
 		glfwMakeContextCurrent(windowHandle);
 		
 		// Connect OpenGL to the window
 		GL.createCapabilities();
+		profiler.initGpu();
+		debugProc = GLUtil.setupDebugMessageCallback();
 		
-		// Configure the system callbacks
-		initCallbacks();
-		
-		// Enable v-sync
-		glfwSwapInterval(1);
+		// Configure v-sync
+		applyVsyncMode();
 		
 		// Set the clear color
 		GL11.glClearColor(0.020f, 0.094f, 0.271f, 1.0f);
@@ -351,50 +706,135 @@ public class Window {
 	 */
 	private void loop() {
 		
-		Timer inputSyncTimer = new Timer(INPUT_POLL_RATE / 1000.0d).start();
-		Timer renderSyncTimer = new Timer(1.0d / RENDER_FRAME_RATE).start();
+		framePacer.start();
 		
 		// Run the main loop until the app should close
 		while (!glfwWindowShouldClose(windowHandle)) {
 			
-			while (!renderSyncTimer.isTriggered()) {
-				// Poll for window events, and asynchronous calls to this class
+			if (threadedRendering) {
+				// The event thread receives events while this thread waits
+				framePacer.waitForNextFrame();
+			} else {
+				// Wait for events until the next frame is due
+				framePacer.waitForNextFrame(nanos -> waitEvents(Math.min(nanos / 1e9d, inputPollRate / 1000.0d)));
+			}
+			
+			if (vsyncChanged) {
+				applyVsyncMode();
+			}
+			
+			Object frameEvent = EngineEvent.FRAME.begin();
+			profiler.beginFrame();
+			
+			// Poll for window events, and asynchronous calls to this class
+			if (!threadedRendering) {
+				profiler.begin(FrameProfiler.PHASE_POLL);
 				pollEvents();
-				inputSyncTimer.sleepAndRestart();
+				profiler.end();
 			}
-			renderSyncTimer.restart();
 			
 			// Update for input handling
 			if (updateMethod != null) {
+				profiler.begin(FrameProfiler.PHASE_UPDATE);
 				updateMethod.update();
+				profiler.end();
 			}
 			
-			// Update window size
-			if (resized) {
-				renderer.resize(windowSize.width, windowSize.height);
+			// Update window size, reading it once so the frame sees a single size
+			WindowSize size = windowSize;
+			if (size != renderedSize) {
+				renderedSize = size;
+				renderer.resize(size.width, size.height);
 			}
 			
 			// Render the frame
+			profiler.begin(FrameProfiler.PHASE_PRE_RENDER, true);
 			renderer.preRender();
+			profiler.end();
+			profiler.begin(FrameProfiler.PHASE_RENDER, true);
 			renderer.render();
+			profiler.end();
+			profiler.begin(FrameProfiler.PHASE_POST_RENDER, true);
 			renderer.postRender();
+			profiler.end();
 			
 			renderer.finalizeFrame();
 			
+			// Read back the frame for any requested captures
+			profiler.begin(FrameProfiler.PHASE_CAPTURE);
+			captureFrame(size);
+			profiler.end();
+			
 			// Swap the color buffers
+			profiler.begin(FrameProfiler.PHASE_SWAP);
 			glfwSwapBuffers(windowHandle);
+			profiler.end();
+			
+			profiler.endFrame();
+			EngineEvent.FRAME.commit(frameEvent, ++frameCount);
 		}
 	}
 	
 	/**
-	 * Destroys the window and terminates GLFW.
+	 * Passes any completed reads to their handlers, and issues a read of the back
+	 * buffer for each capture requested, as long as a pixel buffer is free.
+	 * Requests which find no free pixel buffer wait for a later frame, except for
+	 * frames of a continuous capture, which are dropped. A capture which has ended
+	 * is closed once its last read has completed.
+	 * 
+	 * @param size
+	 *            the window dimensions the frame was rendered at.
 	 */
-	private void cleanup() {
+	private void captureFrame(WindowSize size) {
+		
+		readback.poll();
+		
+		long frame = frameCount + 1;
+		FrameCapture capture = frameCapture.get();
+		if (capture != null) {
+			if (capture.selectFrame(framePacer.getClock().nanoTime())
+					&& !readback.read(size.width, size.height, frame, capture.getHandler())) {
+				capture.drop(frame);
+			}
+			
+			if (!capture.isActive() && readback.isIdle()) {
+				capture.finish();
+				frameCapture.set(null);
+			}
+		}
+		
+		FramebufferReadback.Handler handler;
+		while ((handler = captureRequests.peek()) != null
+				&& readback.read(size.width, size.height, frame, handler)) {
+			captureRequests.poll();
+		}
+	}
+	
+	/**
+	 * Frees the OpenGL resources owned by the window. Called from the thread the
+	 * context is current in.
+	 */
+	private void cleanupContext() {
 		
 		if (debugProc != null) {
 			debugProc.free();
 		}
 		
+		profiler.cleanupGpu();
+		readback.cleanup();
+	}
+	
+	/**
+	 * Destroys the window and terminates GLFW.
+	 */
+	private void cleanup() {
+		
+		screenshotWriter.shutdown();
+		FrameCapture capture = frameCapture.getAndSet(null);
+		if (capture != null) {
+			capture.close();
+		}
+		
 		// Free the window callbacks
 		glfwFreeCallbacks(windowHandle);
 		// Destroy the window
@@ -408,22 +848,83 @@ public class Window {
 	}
 	
 	/**
-	 * Polls any events passed to the window from the operating system.
+	 * Polls any events passed to the window from the operating system, and the
+	 * state of any gamepads.
 	 */
 	private void pollEvents() {
 		
+		applyRequests();
+		
+		// Poll for window events, calling the relevant callbacks
+		glfwPollEvents();
+		inputManager.pollGamepads();
+	}
+	
+	/**
+	 * Waits for events passed to the window from the operating system, handling
+	 * them as they arrive, until the timeout elapses or an event is handled.
+	 * 
+	 * @param timeout
+	 *            the maximum time to wait, in seconds.
+	 */
+	private void waitEvents(double timeout) {
+		
+		applyRequests();
+		glfwWaitEventsTimeout(timeout);
+	}
+	
+	/**
+	 * Applies the changes to the window requested through this class. Called from
+	 * the thread handling events, as GLFW requires.
+	 */
+	private void applyRequests() {
+		
 		// Show/hide the window if requested
-		if (setVisibility != null) {
-			setVisibility.run();
+		Runnable visibility = setVisibility.getAndSet(null);
+		if (visibility != null) {
+			visibility.run();
 		}
 		
 		// Set the window size if requested
-		if (setSize != null) {
-			setSize.run();
+		Runnable size = setSize.getAndSet(null);
+		if (size != null) {
+			size.run();
 		}
 		
-		// Poll for window events, calling the relevant callbacks
-		glfwPollEvents();
+		// Set the cursor mode if requested
+		if (cursorChanged) {
+			cursorChanged = false;
+			glfwSetInputMode(windowHandle, GLFW_CURSOR, cursorMode.getValue());
+		}
+	}
+	
+	/**
+	 * Wakes the thread handling events, if it is waiting for them, so that a
+	 * request queued from another thread is applied without waiting for the next
+	 * event or poll. Can be called from any thread.
+	 */
+	private void wakeEventThread() {
+		
+		if (windowHandle != NULL) {
+			glfwPostEmptyEvent();
+		}
+	}
+	
+	/**
+	 * Sets the swap interval for the current vsync mode. Adaptive vsync falls back
+	 * to regular vsync if swap tearing is not supported.
+	 */
+	private void applyVsyncMode() {
+		
+		vsyncChanged = false;
+		
+		VsyncMode mode = vsyncMode;
+		if (mode == VsyncMode.ADAPTIVE && !glfwExtensionSupported("WGL_EXT_swap_control_tear")
+				&& !glfwExtensionSupported("GLX_EXT_swap_control_tear")) {
+			mode = VsyncMode.ON;
+		}
+		
+		glfwSwapInterval(mode.getSwapInterval());
 	}
 	
 	/**
@@ -435,8 +936,8 @@ public class Window {
 		GLFWVidMode vidmode = glfwGetVideoMode(glfwGetPrimaryMonitor());
 		
 		// Center the window
-		glfwSetWindowPos(windowHandle, (vidmode.width() - windowSize.width) / 2,
-				(vidmode.height() - windowSize.height) / 2);
+		WindowSize size = windowSize;
+		glfwSetWindowPos(windowHandle, (vidmode.width() - size.width) / 2, (vidmode.height() - size.height) / 2);
 	}
 	
 	/**
@@ -445,15 +946,18 @@ public class Window {
 	private void initCallbacks() {
 		
 		glfwSetKeyCallback(windowHandle, (window, key, scancode, action, modifiers) -> {
-			inputManager.keyCallback(Key.fromId(key), KeyAction.fromCode(action), KeyModifier.fromBitField(modifiers));
+			inputManager.keyCallback(Key.fromId(key), KeyAction.fromCode(action), modifiers);
 		});
 		
-		glfwSetFramebufferSizeCallback(windowHandle, (window, width, height) -> {
-			windowSize.width = width;
-			windowSize.height = height;
-			resized = true;
+		glfwSetMouseButtonCallback(windowHandle, (window, button, action, modifiers) -> {
+			inputManager.mouseButtonCallback(MouseButton.fromId(button), KeyAction.fromCode(action), modifiers);
 		});
 		
-		debugProc = GLUtil.setupDebugMessageCallback();
+		glfwSetCursorPosCallback(windowHandle, (window, x, y) -> inputManager.cursorCallback(x, y));
+		
+		glfwSetScrollCallback(windowHandle, (window, x, y) -> inputManager.scrollCallback(x, y));
+		
+		glfwSetFramebufferSizeCallback(windowHandle,
+				(window, width, height) -> windowSize = new WindowSize(width, height));
 	}
 }
@@ -1,11 +1,19 @@
 package net.mmarss.grease.demo.plane;
 
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+
 import net.mmarss.grease.core.BasicGame;
 import net.mmarss.grease.core.BasicGameEngine;
+import net.mmarss.grease.core.GreaseRandom;
+import net.mmarss.grease.core.ResourceHandle;
 import net.mmarss.grease.exception.GreaseFileException;
 import net.mmarss.grease.graphics.Graphics2d;
 import net.mmarss.grease.graphics.Image;
 import net.mmarss.grease.input.BasicInput;
+import net.mmarss.grease.input.GamepadAxis;
+import net.mmarss.grease.input.InputMap;
 import net.mmarss.grease.input.Key;
 
 /**
@@ -22,6 +30,9 @@ public class PlaneGame extends BasicGame {
 	/* The plane rendered in this demo. */
 	private Image plane;
 	
+	/* The handle holding the plane image loaded, if it could be loaded. */
+	private ResourceHandle< Image > planeHandle;
+	
 	/* The heights of the buildings in this demo. */
 	private float[] buildingHeights;
 	
@@ -40,27 +51,32 @@ public class PlaneGame extends BasicGame {
 	/* The x-coordinate of the left edge of the map. */
 	private float x;
 	
+	/* The controls of the plane. */
+	private final InputMap controls;
+	
+	/* The ID of the axis pitching the plane up or down. */
+	private final int pitch;
+	
 	/*
 	 * Constructs a new plane game instance. Only ever called from the program entry
 	 * point, within this class.
 	 */
 	private PlaneGame() {
 		
-		engine = new BasicGameEngine(this);
-		
 		buildingHeights = new float[NUM_BUILDINGS];
 		buildingWidths = new float[NUM_BUILDINGS];
 		buildingShades = new float[NUM_BUILDINGS];
 		
-		for (int i = 0; i < NUM_BUILDINGS; i++) {
-			buildingWidths[i] = 40f + (float) Math.random() * 60f; // From 40 to 100
-			buildingHeights[i] = 60f + (float) Math.random() * 340f; // From 60 to 400
-			buildingShades[i] = 0.1f + (float) Math.random() * 0.5f; // From 0.1 to 0.6
-		}
+		controls = new InputMap();
+		pitch = controls.axis("pitch");
+		controls.bindAxisKeys("pitch", Key.KEY_DOWN, Key.KEY_UP);
+		controls.bindGamepadAxis("pitch", GamepadAxis.LEFT_Y, -1);
 	}
 	
 	/**
-	 * The program entry point.
+	 * The program entry point. Pass <code>record &lt;file&gt;</code> to record the
+	 * session to an input log, or <code>replay &lt;file&gt; [headless]</code> to
+	 * replay one as fast as possible.
 	 * 
 	 * @param args
 	 *            the command line arguments passed to this application.
@@ -68,37 +84,66 @@ public class PlaneGame extends BasicGame {
 	public static void main(String[] args) {
 		
 		PlaneGame game = new PlaneGame();
+		
+		try {
+			if (args.length >= 2 && args[0].equals("replay")) {
+				boolean render = !(args.length >= 3 && args[2].equals("headless"));
+				game.engine = BasicGameEngine.createReplay(game, new FileInputStream(args[1]), render);
+			} else {
+				game.engine = new BasicGameEngine(game);
+				if (args.length >= 2 && args[0].equals("record")) {
+					game.engine.record(new FileOutputStream(args[1]));
+				}
+			}
+		} catch (FileNotFoundException | GreaseFileException e) {
+			e.printStackTrace();
+			return;
+		}
+		
 		game.engine.run();
 	}
 	
+	/*
+	 * Generates a random building at the specified index.
+	 */
+	private void generateBuilding(int i) {
+		
+		GreaseRandom random = engine.getRandom();
+		buildingWidths[i] = random.nextFloat(40f, 100f);
+		buildingHeights[i] = random.nextFloat(60f, 400f);
+		buildingShades[i] = random.nextFloat(0.1f, 0.6f);
+	}
+	
 	@Override
 	public void init() {
 		
 		try {
-			plane = new Image("../res/plane.png");
+			planeHandle = engine.getResourceManager().acquireImage("../res/plane.png");
+			plane = planeHandle.get();
 		} catch (GreaseFileException e) {
 			e.printStackTrace();
 			plane = new Image();
 		}
 		
 		height = 300;
+		
+		for (int i = 0; i < NUM_BUILDINGS; i++) {
+			generateBuilding(i);
+		}
 	}
 	
 	@Override
 	public void update(double delta, BasicInput input) {
 		
-		if (input.isKeyDown(Key.KEY_UP)) {
-			angle += delta * Math.PI * 2 / 1000 / 4;
-			if (angle > Math.PI / 6) {
-				angle = (float) Math.PI / 6;
-			}
+		controls.update(input);
+		
+		angle += delta * Math.PI * 2 / 1000 / 4 * controls.getAxis(pitch);
+		if (angle > Math.PI / 6) {
+			angle = (float) Math.PI / 6;
 		}
 		
-		if (input.isKeyDown(Key.KEY_DOWN)) {
-			angle -= delta * Math.PI * 2 / 1000 / 4;
-			if (angle < -Math.PI / 6) {
-				angle = (float) -Math.PI / 6;
-			}
+		if (angle < -Math.PI / 6) {
+			angle = (float) -Math.PI / 6;
 		}
 		
 		height += delta * Math.sin(angle) * 300 / 1000;
@@ -120,9 +165,7 @@ public class PlaneGame extends BasicGame {
 				buildingShades[i - 1] = buildingShades[i];
 			}
 			
-			buildingWidths[NUM_BUILDINGS - 1] = 40f + (float) Math.random() * 60f; // From 40 to 100
-			buildingHeights[NUM_BUILDINGS - 1] = 60f + (float) Math.random() * 340f; // From 60 to 400
-			buildingShades[NUM_BUILDINGS - 1] = 0.1f + (float) Math.random() * 0.5f; // From 0.1 to 0.6
+			generateBuilding(NUM_BUILDINGS - 1);
 		}
 	}
 	
@@ -143,5 +186,8 @@ public class PlaneGame extends BasicGame {
 	@Override
 	public void cleanup() {
 		
+		if (planeHandle != null) {
+			planeHandle.release();
+		}
 	}
 }
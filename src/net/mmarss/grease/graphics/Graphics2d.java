@@ -1,16 +1,24 @@
 package net.mmarss.grease.graphics;
 
-import static org.lwjgl.opengl.GL11.*;
-import static org.lwjgl.opengl.GL15.*;
-import static org.lwjgl.opengl.GL20.glEnableVertexAttribArray;
-import static org.lwjgl.opengl.GL20.glVertexAttribPointer;
-import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL11.GL_BLEND;
+import static org.lwjgl.opengl.GL11.GL_COLOR_BUFFER_BIT;
+import static org.lwjgl.opengl.GL11.GL_FLOAT;
+import static org.lwjgl.opengl.GL11.GL_ONE;
+import static org.lwjgl.opengl.GL11.GL_ONE_MINUS_SRC_ALPHA;
+import static org.lwjgl.opengl.GL11.GL_SRC_ALPHA;
+import static org.lwjgl.opengl.GL11.GL_TRIANGLES;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_SHORT;
+import static org.lwjgl.opengl.GL15.GL_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15.GL_ELEMENT_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15.GL_STATIC_DRAW;
+import static net.mmarss.grease.core.Gl.*;
 
 import org.joml.Matrix4f;
 import org.joml.Vector4f;
 
 import net.mmarss.grease.core.Shader;
 import net.mmarss.grease.exception.GreaseFileException;
+import net.mmarss.grease.exception.GreaseInvalidMethodCallException;
 import net.mmarss.grease.exception.GreaseShaderException;
 import net.mmarss.grease.exception.GreaseShaderUniformException;
 
@@ -19,9 +27,46 @@ import net.mmarss.grease.exception.GreaseShaderUniformException;
  */
 public class Graphics2d extends Renderer {
 	
+	/** The resource file containing the vertex shader code. */
+	protected static final String	VERTEX_SHADER_FILE		= "vertex2d.vsh";
+	/** The resource file containing the fragment shader code. */
+	protected static final String	FRAGMENT_SHADER_FILE	= "fragment2d.fsh";
+	
 	/** The shader used to render these graphics. */
 	private Shader shader = null;
 	
+	/** Whether rendering uses premultiplied alpha blending. */
+	private boolean	premultipliedAlpha	= false;
+	/** Whether the current color adds to the framebuffer instead of covering it. */
+	private boolean	additive			= false;
+	
+	/** The number of draw calls made in the current frame. */
+	private int		drawCalls			= 0;
+	/** The number of triangles drawn in the current frame. */
+	private long	triangles			= 0;
+	/** The number of uniform values uploaded in the current frame. */
+	private int		uniformUploads		= 0;
+	/** The number of texture binds in the current frame. */
+	private int		textureBinds		= 0;
+	/** The number of texture uploads in the current frame. */
+	private int		textureUploads		= 0;
+	/** The number of bytes uploaded to textures in the current frame. */
+	private long	textureUploadBytes	= 0;
+	/** The number of shader binds in the current frame. */
+	private int		shaderSwitches		= 0;
+	/** The number of draws culled in the current frame. */
+	private int		culledDraws			= 0;
+	
+	/** The statistics of the last finished frame. */
+	private volatile RenderStats renderStats = RenderStats.EMPTY;
+	
+	/** The product of the shader's projection and view, for culling. */
+	private final Matrix4f	viewProjection		= new Matrix4f();
+	/** Whether the projection or view may have changed since the product. */
+	private boolean			viewProjectionDirty	= true;
+	/** Scratch space for the clip space transform of a draw being culled. */
+	private final Matrix4f	clipMatrix			= new Matrix4f();
+	
 	private int	rectVertVboId;
 	private int	rectTexVboId;
 	private int	rectEboId;
@@ -44,7 +89,7 @@ public class Graphics2d extends Renderer {
 			
 			shader = new Shader();
 			shader.create();
-			shader.loadShaders("vertex2d.vsh", "fragment2d.fsh");
+			shader.loadShaders(VERTEX_SHADER_FILE, FRAGMENT_SHADER_FILE);
 			shader.link();
 			
 			shader.bind();
@@ -117,17 +162,22 @@ public class Graphics2d extends Renderer {
 			return;
 		}
 		
+		// The shader may have been reloaded, or changed by a subclass, since the last
+		// frame
+		viewProjectionDirty = true;
+		
 		// Clear the framebuffer
 		glClear(GL_COLOR_BUFFER_BIT);
 		
 		shader.bind();
+		shaderSwitches++;
 		
 		if (wasResized()) {
 			
 			glViewport(0, 0, getWidth(), getHeight());
 			
 			try {
-				shader.setUniform("projection", new Matrix4f().ortho2D(0, getWidth(), getHeight(), 0));
+				setUniform("projection", new Matrix4f().ortho2D(0, getWidth(), getHeight(), 0));
 			} catch (GreaseShaderUniformException e) {
 				e.printStackTrace();
 				shader.cleanup();
@@ -138,7 +188,12 @@ public class Graphics2d extends Renderer {
 		
 		glEnable(GL_BLEND);
 		
-		glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+		if (premultipliedAlpha) {
+			glBlendFunc(GL_ONE, GL_ONE_MINUS_SRC_ALPHA);
+		} else {
+			glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+		}
+		additive = false;
 		
 		glBindVertexArray(rectVaoId);
 		glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, rectEboId);
@@ -175,6 +230,26 @@ public class Graphics2d extends Renderer {
 		shader.unbind();
 	}
 	
+	/**
+	 * Takes a snapshot of this frame's render statistics, and starts counting
+	 * afresh for the next frame.
+	 */
+	@Override
+	protected void onFrameFinalized() {
+		
+		renderStats = new RenderStats(drawCalls, triangles, uniformUploads, textureBinds, textureUploads,
+				textureUploadBytes, shaderSwitches, culledDraws);
+		
+		drawCalls = 0;
+		triangles = 0;
+		uniformUploads = 0;
+		textureBinds = 0;
+		textureUploads = 0;
+		textureUploadBytes = 0;
+		shaderSwitches = 0;
+		culledDraws = 0;
+	}
+	
 	/**
 	 * Cleans up any resources allocated by this graphics manager.
 	 */
@@ -198,6 +273,77 @@ public class Graphics2d extends Renderer {
 		glDeleteVertexArrays(rectVaoId);
 	}
 	
+	/**
+	 * Sets whether rendering uses premultiplied alpha blending. In this mode,
+	 * images are blended with <code>GL_ONE, GL_ONE_MINUS_SRC_ALPHA</code>, which
+	 * avoids dark fringes around filtered transparent edges, and lets additive
+	 * and alpha-blended drawing share the same blend state through
+	 * {@link #setAdditive(boolean)}. Images are premultiplied when they are first
+	 * drawn, unless they already have been, for example by the resource manager at
+	 * load time. Takes effect from the next render cycle.
+	 * 
+	 * @param premultipliedAlpha
+	 *            <code>true</code> to use premultiplied alpha blending.
+	 */
+	public void setPremultipliedAlpha(boolean premultipliedAlpha) {
+		
+		this.premultipliedAlpha = premultipliedAlpha;
+	}
+	
+	/**
+	 * @return <code>true</code> if rendering uses premultiplied alpha blending.
+	 */
+	public boolean isPremultipliedAlpha() {
+		
+		return premultipliedAlpha;
+	}
+	
+	/**
+	 * Sets whether subsequent drawing adds its color to the framebuffer, instead
+	 * of covering it according to its alpha. Additive drawing only needs a zero
+	 * output alpha under premultiplied blending, so it does not change the blend
+	 * state. The setting applies from the next call to <code>setColor</code>, and
+	 * is reset at the start of each render cycle.
+	 * 
+	 * @param additive
+	 *            <code>true</code> to draw additively.
+	 */
+	public void setAdditive(boolean additive) {
+		
+		if (additive && !premultipliedAlpha) {
+			throw new GreaseInvalidMethodCallException("Additive drawing requires premultiplied alpha blending.");
+		}
+		
+		this.additive = additive;
+	}
+	
+	/**
+	 * Gets the work done by this graphics object in the last finished frame; the
+	 * draw calls, triangles, uniform uploads, texture binds and uploads, shader
+	 * switches and culled draws. The snapshot is taken when the frame is
+	 * finalized. Can be called from any thread.
+	 * 
+	 * @return the render statistics of the last frame.
+	 */
+	public RenderStats getRenderStats() {
+		
+		return renderStats;
+	}
+	
+	/**
+	 * Gets the shader, so that subclasses can set their own uniforms. Culling
+	 * picks up a view or projection set through the shader from the next draw
+	 * after this method is called, or from the next frame.
+	 * 
+	 * @return the shader used to render these graphics, or <code>null</code> if it
+	 *         has not been loaded.
+	 */
+	protected Shader getShader() {
+		
+		viewProjectionDirty = true;
+		return shader;
+	}
+	
 	/**
 	 * Sets the rendering color to the specified value.
 	 * 
@@ -227,8 +373,18 @@ public class Graphics2d extends Renderer {
 	 */
 	public void setColor(float r, float g, float b, float a) {
 		
+		if (premultipliedAlpha) {
+			// Premultiply the color, and clear the alpha to add instead of cover
+			r *= a;
+			g *= a;
+			b *= a;
+			if (additive) {
+				a = 0f;
+			}
+		}
+		
 		try {
-			shader.setUniform("color", new Vector4f(r, g, b, a));
+			setUniform("color", new Vector4f(r, g, b, a));
 		} catch (GreaseShaderUniformException e) { // Will only happen if the shader is changed.
 			e.printStackTrace();
 			return;
@@ -250,16 +406,22 @@ public class Graphics2d extends Renderer {
 	 */
 	public void drawRect(float x0, float y0, float x1, float y1) {
 		
+		Matrix4f modelMatrix = new Matrix4f().scaling(x1 - x0, y1 - y0, 1f).translateLocal(x0, y0, 0f);
+		if (isOutside(modelMatrix)) {
+			culledDraws++;
+			return;
+		}
+		
 		try {
 			
-			shader.setUniform("model", new Matrix4f().scaling(x1 - x0, y1 - y0, 1f).translateLocal(x0, y0, 0f));
+			setUniform("model", modelMatrix);
 			
 		} catch (GreaseShaderUniformException e) { // Will only happen if the shader is changed.
 			e.printStackTrace();
 			return;
 		}
 		
-		glDrawElements(GL_TRIANGLES, 6, GL_UNSIGNED_SHORT, 0);
+		drawElements();
 	}
 	
 	/**
@@ -271,25 +433,39 @@ public class Graphics2d extends Renderer {
 	 */
 	private void drawImage(Image image, Matrix4f modelMatrix) {
 		
+		if (isOutside(modelMatrix)) {
+			culledDraws++;
+			return;
+		}
+		
+		if (premultipliedAlpha) {
+			image.premultiplyAlpha();
+		}
+		
 		image.generateTexture();
-		image.bindTexture();
+		long uploaded = image.bind();
+		textureBinds++;
+		if (uploaded >= 0) {
+			textureUploads++;
+			textureUploadBytes += uploaded;
+		}
 		
 		try {
 			
-			shader.setUniform("useTexture", true);
-			shader.setUniform("texImage", 0);
-			shader.setUniform("model", modelMatrix);
+			setUniform("useTexture", true);
+			setUniform("texImage", 0);
+			setUniform("model", modelMatrix);
 			
 		} catch (GreaseShaderUniformException e) { // Will only happen if the shader is changed.
 			e.printStackTrace();
 			return;
 		}
 		
-		glDrawElements(GL_TRIANGLES, 6, GL_UNSIGNED_SHORT, 0);
+		drawElements();
 		
 		try {
 			
-			shader.setUniform("useTexture", false);
+			setUniform("useTexture", false);
 		} catch (GreaseShaderUniformException e) { // Will only happen if the shader is changed.
 			e.printStackTrace();
 			return;
@@ -298,6 +474,86 @@ public class Graphics2d extends Renderer {
 		image.unbindTexture();
 	}
 	
+	/**
+	 * Sets a uniform of the shader, counting the upload.
+	 * 
+	 * @param uniformName
+	 *            the name of the uniform.
+	 * @param value
+	 *            the new value.
+	 * @throws GreaseShaderUniformException
+	 *             if the uniform does not exist, or the value has the wrong type.
+	 */
+	private void setUniform(String uniformName, Object value) throws GreaseShaderUniformException {
+		
+		shader.setUniform(uniformName, value);
+		uniformUploads++;
+		if ("projection".equals(uniformName) || "view".equals(uniformName)) {
+			viewProjectionDirty = true;
+		}
+	}
+	
+	/**
+	 * Draws the bound rectangle, counting the draw call.
+	 */
+	private void drawElements() {
+		
+		glDrawElements(GL_TRIANGLES, 6, GL_UNSIGNED_SHORT, 0);
+		drawCalls++;
+		triangles += 2;
+	}
+	
+	/**
+	 * Checks whether the unit rectangle, transformed by a model matrix, lies
+	 * entirely outside the view volume. The corners are transformed into clip
+	 * space using the shader's current view and projection, so that a view set by
+	 * a subclass is taken into account. Their product is only rebuilt when either
+	 * may have changed, leaving one matrix multiplication per draw.
+	 * 
+	 * @param modelMatrix
+	 *            the model matrix of the draw.
+	 * @return <code>true</code> if nothing drawn with the model matrix would be
+	 *         visible.
+	 */
+	private boolean isOutside(Matrix4f modelMatrix) {
+		
+		if (viewProjectionDirty) {
+			viewProjection.identity();
+			Object projection = shader.getUniform("projection");
+			if (projection instanceof Matrix4f) {
+				viewProjection.mul((Matrix4f) projection);
+			}
+			Object view = shader.getUniform("view");
+			if (view instanceof Matrix4f) {
+				viewProjection.mul((Matrix4f) view);
+			}
+			viewProjectionDirty = false;
+		}
+		viewProjection.mul(modelMatrix, clipMatrix);
+		
+		// The draw is outside if all four corners are beyond the same clip plane
+		int outside = 0x3f;
+		for (int corner = 0; corner < 4; corner++) {
+			float x = corner & 1;
+			float y = corner >> 1;
+			float clipX = clipMatrix.m00() * x + clipMatrix.m10() * y + clipMatrix.m30();
+			float clipY = clipMatrix.m01() * x + clipMatrix.m11() * y + clipMatrix.m31();
+			float clipZ = clipMatrix.m02() * x + clipMatrix.m12() * y + clipMatrix.m32();
+			float clipW = clipMatrix.m03() * x + clipMatrix.m13() * y + clipMatrix.m33();
+			
+			int planes = 0;
+			planes |= clipX < -clipW ? 0x01 : 0;
+			planes |= clipX > clipW ? 0x02 : 0;
+			planes |= clipY < -clipW ? 0x04 : 0;
+			planes |= clipY > clipW ? 0x08 : 0;
+			planes |= clipZ < -clipW ? 0x10 : 0;
+			planes |= clipZ > clipW ? 0x20 : 0;
+			outside &= planes;
+		}
+		
+		return outside != 0;
+	}
+	
 	/**
 	 * Draws the image to the screen at the specified coordinates.
 	 * 
@@ -344,8 +600,32 @@ public class Graphics2d extends Renderer {
 	 */
 	public void drawImageRotated(Image image, float x, float y, float angle) {
 		
-		drawImage(image, new Matrix4f().translate(x, y, 0f).rotate(angle, 0f, 0f, -1f)
-				.scale(image.getWidth(), image.getHeight(), 1f).translate(-0.5f, -0.5f, 0f));
+		drawImage(image, rotatedModel(new Matrix4f(), x, y, image.getWidth(), image.getHeight(), angle));
+	}
+	
+	/**
+	 * Builds the model matrix of a rotated image, mapping the unit square onto the
+	 * image's rotated bounds.
+	 * 
+	 * @param dest
+	 *            the matrix to store the result in.
+	 * @param x
+	 *            the x-coordinate of the image center.
+	 * @param y
+	 *            the y-coordinate of the image center.
+	 * @param width
+	 *            the width of the image.
+	 * @param height
+	 *            the height of the image.
+	 * @param angle
+	 *            the angle to rotate the image by, in radians.
+	 * @return <code>dest</code>.
+	 */
+	/* package */ static Matrix4f rotatedModel(Matrix4f dest, float x, float y, float width, float height,
+			float angle) {
+		
+		return dest.translation(x, y, 0f).rotate(angle, 0f, 0f, -1f).scale(width, height, 1f).translate(-0.5f,
+				-0.5f, 0f);
 	}
 	
 	/**
@@ -0,0 +1,53 @@
+package net.mmarss.grease.graphics;
+
+/**
+ * A 2d graphics object which draws nothing, used when the engine runs without
+ * a window. It never touches OpenGL, so games can call their usual rendering
+ * code on machines without a display.
+ */
+public class HeadlessGraphics2d extends Graphics2d {
+	
+	/**
+	 * Constructs a new headless graphics object.
+	 */
+	public HeadlessGraphics2d() {}
+	
+	@Override
+	public void init() {}
+	
+	@Override
+	public void preRender() {}
+	
+	@Override
+	public void render() {}
+	
+	@Override
+	public void postRender() {}
+	
+	@Override
+	public void cleanup() {}
+	
+	@Override
+	public void setColor(float r, float g, float b, float a) {}
+	
+	@Override
+	public void drawRect(float x0, float y0, float x1, float y1) {}
+	
+	@Override
+	public void drawImage(Image image, float x, float y) {}
+	
+	@Override
+	public void drawImageCentered(Image image, float x, float y) {}
+	
+	@Override
+	public void drawImageRotated(Image image, float x, float y, float angle) {}
+	
+	@Override
+	public void drawImageScaled(Image image, float x, float y, float scale) {}
+	
+	@Override
+	public void drawImageScaled(Image image, float x, float y, float scalex, float scaley) {}
+	
+	@Override
+	public void drawImageRect(Image image, float x0, float y0, float x1, float y1) {}
+}
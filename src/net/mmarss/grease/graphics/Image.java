@@ -1,18 +1,39 @@
 package net.mmarss.grease.graphics;
 
-import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL11.GL_LINEAR;
+import static org.lwjgl.opengl.GL11.GL_LUMINANCE;
+import static org.lwjgl.opengl.GL11.GL_LUMINANCE_ALPHA;
+import static org.lwjgl.opengl.GL11.GL_NEAREST;
+import static org.lwjgl.opengl.GL11.GL_REPEAT;
+import static org.lwjgl.opengl.GL11.GL_RGB;
+import static org.lwjgl.opengl.GL11.GL_RGBA;
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_2D;
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_MAG_FILTER;
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_MIN_FILTER;
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_WRAP_S;
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_WRAP_T;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_BYTE;
 import static org.lwjgl.stb.STBImage.stbi_failure_reason;
+import static org.lwjgl.stb.STBImage.stbi_image_free;
 import static org.lwjgl.stb.STBImage.stbi_load;
+import static net.mmarss.grease.core.Gl.*;
 
 import java.nio.ByteBuffer;
 
+import org.lwjgl.system.MemoryUtil;
+
+import net.mmarss.grease.core.EngineEvent;
+import net.mmarss.grease.core.Resource;
 import net.mmarss.grease.exception.GreaseFileException;
 import net.mmarss.grease.exception.GreaseInvalidArgumentException;
 
 /**
- * Represents an image; an array of pixel data.
+ * Represents an image; an array of pixel data. The pixel data is held in native
+ * memory taken from the shared {@link PixelBufferPool}, and should be returned
+ * by calling <code>free</code> or <code>cleanup</code> once the image is no
+ * longer needed.
  */
-public class Image {
+public class Image implements Resource {
 	
 	/** The image width, in pixels. */
 	private int	width;
@@ -29,11 +50,18 @@ public class Image {
 	 */
 	private int numChannels;
 	
-	/** The binary image data. */
+	/** The binary image data, allocated from the pixel buffer pool. */
 	private ByteBuffer data;
 	
+	/** Whether the color channels have been multiplied by the alpha channel. */
+	private boolean premultiplied = false;
+	
 	/** The OpenGL texture identifier for this image. */
-	private int textureId = -1;
+	private int		textureId		= -1;
+	/** Whether the pixel data has changed since it was last uploaded. */
+	private boolean	textureDirty	= true;
+	/** Incremented whenever the pixel data changes. */
+	private int		version			= 0;
 	
 	/**
 	 * Constructs a new empty image object.
@@ -105,10 +133,89 @@ public class Image {
 			throw new GreaseFileException("Could not load image " + filename + ". " + stbi_failure_reason());
 		}
 		
-		width = x[0];
-		height = y[0];
-		numChannels = n[0];
-		data = bytes;
+		// Move the pixels into pooled memory, so that stb's buffer can be freed
+		resize(x[0], y[0], n[0]);
+		MemoryUtil.memCopy(bytes, data);
+		stbi_image_free(bytes);
+		premultiplied = false;
+		textureDirty = true;
+		version++;
+	}
+	
+	/**
+	 * Multiplies the color channels of this image by its alpha channel, as
+	 * required for rendering with premultiplied alpha blending. Does nothing if
+	 * the image is already premultiplied.
+	 */
+	public synchronized void premultiplyAlpha() {
+		
+		if (!premultiplied) {
+			ImageOps.multiplyAlpha(this);
+			premultiplied = true;
+		}
+	}
+	
+	/**
+	 * Divides the color channels of this image by its alpha channel, undoing
+	 * <code>premultiplyAlpha</code>. Does nothing if the image is not
+	 * premultiplied.
+	 */
+	public synchronized void unpremultiplyAlpha() {
+		
+		if (premultiplied) {
+			ImageOps.divideAlpha(this);
+			premultiplied = false;
+		}
+	}
+	
+	/**
+	 * @return <code>true</code> if the color channels of this image have been
+	 *         multiplied by its alpha channel.
+	 */
+	public synchronized boolean isPremultiplied() {
+		
+		return premultiplied;
+	}
+	
+	/**
+	 * Replaces this image's pixel data with that of another image, leaving the
+	 * other image empty. This image keeps its texture, which is refreshed the next
+	 * time it is bound. Used to swap in reloaded images without invalidating
+	 * references to this image.
+	 * 
+	 * @param source
+	 *            the image whose pixel data should be taken.
+	 */
+	public void replaceWith(Image source) {
+		
+		int newWidth;
+		int newHeight;
+		int newNumChannels;
+		boolean newPremultiplied;
+		ByteBuffer newData;
+		
+		synchronized (source) {
+			newWidth = source.width;
+			newHeight = source.height;
+			newNumChannels = source.numChannels;
+			newPremultiplied = source.premultiplied;
+			newData = source.data;
+			
+			source.width = 0;
+			source.height = 0;
+			source.data = null;
+		}
+		
+		synchronized (this) {
+			PixelBufferPool.getInstance().free(data);
+			width = newWidth;
+			height = newHeight;
+			numChannels = newNumChannels;
+			premultiplied = newPremultiplied;
+			data = newData;
+			textureDirty = true;
+			version++;
+		}
 	}
 	
 	/**
@@ -116,7 +223,11 @@ public class Image {
 	 */
 	public synchronized void clearImage() {
 		
-		data.clear();
+		if (data != null) {
+			MemoryUtil.memSet(data, 0);
+			textureDirty = true;
+			version++;
+		}
 	}
 	
 	/**
@@ -136,18 +247,30 @@ public class Image {
 			throw new GreaseInvalidArgumentException("width", width, "Image dimensions must be non-negative.");
 		}
 		if (height < 0) {
-			throw new GreaseInvalidArgumentException("width", width, "Image dimensions must be non-negative.");
+			throw new GreaseInvalidArgumentException("height", height, "Image dimensions must be non-negative.");
 		}
 		if (numChannels < 1 || numChannels > 4) {
 			throw new GreaseInvalidArgumentException("numChannels", numChannels,
 					"Image must have from 1 to 4 channels.");
 		}
 		
-		data.clear();
-		this.width = width;
-		this.height = height;
-		this.numChannels = numChannels;
-		data = ByteBuffer.allocate(width * height * numChannels);
+		resize(width, height, numChannels);
+		MemoryUtil.memSet(data, 0);
+		premultiplied = false;
+	}
+	
+	/**
+	 * Returns this image's pixel data to the pixel buffer pool, leaving an empty
+	 * image. The texture, if any, is kept until <code>cleanup</code> is called.
+	 */
+	public synchronized void free() {
+		
+		PixelBufferPool.getInstance().free(data);
+		data = null;
+		width = 0;
+		height = 0;
+		textureDirty = true;
+		version++;
 	}
 	
 	/**
@@ -182,17 +305,41 @@ public class Image {
 		return data.asReadOnlyBuffer();
 	}
 	
-	public void generateTexture() {
+	/**
+	 * Generates this image's texture, if it does not already have one. Must be
+	 * called from the window thread.
+	 */
+	public synchronized void generateTexture() {
 		
 		if (textureId == -1) {
 			textureId = glGenTextures();
+			textureDirty = true;
 		}
 	}
 	
+	/**
+	 * Binds this image's texture, uploading the pixel data first if it has changed
+	 * since it was last uploaded. Must be called from the window thread.
+	 */
 	public void bindTexture() {
 		
+		bind();
+	}
+	
+	/**
+	 * Binds this image's texture, uploading the pixel data if it has changed.
+	 * 
+	 * @return the number of bytes of pixel data uploaded, or -1 if the texture was
+	 *         already up to date.
+	 */
+	/* package */ synchronized long bind() {
+		
 		glBindTexture(GL_TEXTURE_2D, textureId);
 		
+		if (!textureDirty) {
+			return -1;
+		}
+		
 		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_REPEAT);
 		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_REPEAT);
 		
@@ -210,11 +357,139 @@ public class Image {
 			format = GL_RGBA;
 		}
 		
+		Object uploadEvent = EngineEvent.TEXTURE_UPLOAD.begin();
 		glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, width, height, 0, format, GL_UNSIGNED_BYTE, data);
+		long bytes = (long) width * height * numChannels;
+		if (uploadEvent != null) {
+			EngineEvent.TEXTURE_UPLOAD.commit(uploadEvent, width, height, bytes);
+		}
+		
+		textureDirty = false;
+		return bytes;
 	}
 	
 	public void unbindTexture() {
 		
 		glBindTexture(GL_TEXTURE_2D, 0);
 	}
+	
+	/**
+	 * @return the number of bytes of pixel data held in main memory.
+	 */
+	@Override
+	public synchronized long getMemorySize() {
+		
+		return data == null ? 0 : data.capacity();
+	}
+	
+	/**
+	 * @return the estimated number of bytes of texture memory held by this image.
+	 *         Textures are always stored as RGBA.
+	 */
+	@Override
+	public synchronized long getVideoMemorySize() {
+		
+		return textureId == -1 ? 0 : (long) width * height * 4;
+	}
+	
+	/**
+	 * Deletes this image's texture, if one has been generated, and releases its
+	 * pixel data. Must be called from the window thread.
+	 */
+	@Override
+	public synchronized void cleanup() {
+		
+		if (textureId != -1) {
+			glDeleteTextures(textureId);
+			textureId = -1;
+			textureDirty = true;
+		}
+		
+		free();
+	}
+	
+	/**
+	 * Gets the writable pixel buffer, for use by image operations in this package.
+	 * 
+	 * @return the pixel buffer, or <code>null</code> if the image is empty.
+	 */
+	/* package */ synchronized ByteBuffer getData() {
+		
+		return data;
+	}
+	
+	/**
+	 * Marks the pixel data as changed, so that it is uploaded again the next time
+	 * the texture is bound, and updates its version. Called by image operations
+	 * in this package which write to the pixel buffer.
+	 */
+	/* package */ synchronized void markChanged() {
+		
+		textureDirty = true;
+		version++;
+	}
+	
+	/**
+	 * Gets the version of the pixel data, for renderers in this package which keep
+	 * their own copy of it. The version changes whenever the pixel data does.
+	 * 
+	 * @return the version of the pixel data.
+	 */
+	/* package */ synchronized int getVersion() {
+		
+		return version;
+	}
+	
+	/**
+	 * Reallocates the pixel buffer for the specified dimensions without clearing
+	 * it, for use by image operations in this package which overwrite every pixel.
+	 * 
+	 * @param width
+	 *            the width of the image, in pixels.
+	 * @param height
+	 *            the height of the image, in pixels.
+	 * @param numChannels
+	 *            the number of color channels in the image.
+	 */
+	/* package */ synchronized void reallocate(int width, int height, int numChannels) {
+		
+		resize(width, height, numChannels);
+	}
+	
+	/**
+	 * Sets the image dimensions, reusing the current pixel buffer if it is large
+	 * enough, and otherwise exchanging it for a pooled buffer of the new size. The
+	 * contents of the pixel buffer are undefined afterwards.
+	 * 
+	 * @param width
+	 *            the width of the image, in pixels.
+	 * @param height
+	 *            the height of the image, in pixels.
+	 * @param numChannels
+	 *            the number of color channels in the image.
+	 * @throws GreaseInvalidArgumentException
+	 *             if the image would hold more bytes than a buffer can.
+	 */
+	private void resize(int width, int height, int numChannels) {
+		
+		long bytes = (long) width * height * numChannels;
+		if (bytes > Integer.MAX_VALUE) {
+			throw new GreaseInvalidArgumentException("width", width, "A " + width + "x" + height + " image with "
+					+ numChannels + " channels needs " + bytes + " bytes, more than a buffer can hold.");
+		}
+		int size = (int) bytes;
+		
+		if (data != null && data.capacity() == PixelBufferPool.sizeClass(size)) {
+			data.clear().limit(size);
+		} else {
+			PixelBufferPool.getInstance().free(data);
+			data = PixelBufferPool.getInstance().allocate(size);
+		}
+		
+		this.width = width;
+		this.height = height;
+		this.numChannels = numChannels;
+		textureDirty = true;
+		version++;
+	}
 }
@@ -0,0 +1,862 @@
+package net.mmarss.grease.graphics;
+
+import static org.lwjgl.system.MemoryUtil.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import net.mmarss.grease.exception.GreaseInvalidArgumentException;
+
+/**
+ * CPU-side operations on image pixel data. Each operation works on the native
+ * pixel buffers of its images. Large images are split into bands of rows,
+ * which are processed in parallel on the common fork-join pool. Whole rows are
+ * moved with bulk copies; per-pixel work is done on heap scanlines, copied out
+ * of and back into the native buffers, in plain counted loops which the JIT
+ * can unroll and vectorise. Some inner loops address native memory directly,
+ * avoiding buffer bounds checks, so all coordinates are validated before any
+ * pixels are touched. RGBA scanlines are handled as one little-endian
+ * <code>int</code> per pixel, with red in the lowest byte.
+ * 
+ * Images must not be modified by other threads while an operation is running.
+ */
+public class ImageOps {
+	
+	/**
+	 * The number of bytes below which a band of rows is not split further. Bands
+	 * smaller than this cost more to schedule than to process.
+	 */
+	private static final long BAND_BYTES = 64 * 1024;
+	
+	/**
+	 * The reciprocals of the possible alpha values from 1 to 255, scaled by 2^24
+	 * and rounded up. Multiplying by these and shifting is exact for the blend
+	 * sums divided by alpha when compositing, and much cheaper than dividing.
+	 */
+	private static final int[] RECIPROCALS = new int[256];
+	
+	static {
+		for (int a = 1; a < RECIPROCALS.length; a++) {
+			RECIPROCALS[a] = ((1 << 24) + a - 1) / a;
+		}
+	}
+	
+	/** Represents an operation applied to a band of rows. */
+	@FunctionalInterface
+	private interface RowOperation {
+		
+		/**
+		 * Processes the rows from <code>start</code>, inclusive, to
+		 * <code>end</code>, exclusive.
+		 * 
+		 * @param start
+		 *            the first row of the band.
+		 * @param end
+		 *            the row after the last row of the band.
+		 */
+		public void apply(int start, int end);
+	}
+	
+	/** A fork-join task which splits its rows in half until they are small enough. */
+	private static class Band extends RecursiveAction {
+		
+		/** The randomly generated serial version ID. */
+		private static final long serialVersionUID = -4061620727516349530L;
+		
+		/** The operation applied to each band. */
+		private final RowOperation	operation;
+		/** The number of bytes processed per row. */
+		private final long			rowBytes;
+		/** The first row of this band. */
+		private final int			start;
+		/** The row after the last row of this band. */
+		private final int			end;
+		
+		/**
+		 * Constructs a new band task.
+		 * 
+		 * @param operation
+		 *            the operation to apply.
+		 * @param rowBytes
+		 *            the number of bytes processed per row.
+		 * @param start
+		 *            the first row of the band.
+		 * @param end
+		 *            the row after the last row of the band.
+		 */
+		private Band(RowOperation operation, long rowBytes, int start, int end) {
+			
+			this.operation = operation;
+			this.rowBytes = rowBytes;
+			this.start = start;
+			this.end = end;
+		}
+		
+		@Override
+		protected void compute() {
+			
+			if (end - start < 2 || (end - start) * rowBytes <= BAND_BYTES) {
+				operation.apply(start, end);
+				return;
+			}
+			
+			int middle = (start + end) >>> 1;
+			invokeAll(new Band(operation, rowBytes, start, middle), new Band(operation, rowBytes, middle, end));
+		}
+	}
+	
+	/**
+	 * Constructs a new instance. This class only has static methods.
+	 */
+	private ImageOps() {}
+	
+	/**
+	 * Flips an image upside down, in place.
+	 * 
+	 * @param image
+	 *            the image to flip.
+	 */
+	public static void flipVertical(Image image) {
+		
+		if (isEmpty(image)) {
+			return;
+		}
+		
+		image.markChanged();
+		final long address = memAddress(image.getData());
+		final int height = image.getHeight();
+		final int stride = image.getWidth() * image.getNumChannels();
+		
+		forEachBand(height / 2, stride * 2, (start, end) -> {
+			long scratch = nmemAlloc(stride);
+			try {
+				for (int y = start; y < end; y++) {
+					long top = address + (long) y * stride;
+					long bottom = address + (long) (height - 1 - y) * stride;
+					memCopy(top, scratch, stride);
+					memCopy(bottom, top, stride);
+					memCopy(scratch, bottom, stride);
+				}
+			} finally {
+				nmemFree(scratch);
+			}
+		});
+	}
+	
+	/**
+	 * Mirrors an image from left to right, in place.
+	 * 
+	 * @param image
+	 *            the image to mirror.
+	 */
+	public static void flipHorizontal(Image image) {
+		
+		if (isEmpty(image)) {
+			return;
+		}
+		
+		image.markChanged();
+		final int width = image.getWidth();
+		final int channels = image.getNumChannels();
+		final int stride = width * channels;
+		
+		if (channels == 4) {
+			forEachBand(image.getHeight(), stride, (start, end) -> {
+				IntBuffer pixels = pixels(image);
+				int[] row = new int[width];
+				for (int y = start; y < end; y++) {
+					pixels.position(y * width);
+					pixels.get(row);
+					for (int i = 0, j = width - 1; i < j; i++, j--) {
+						int p = row[i];
+						row[i] = row[j];
+						row[j] = p;
+					}
+					pixels.position(y * width);
+					pixels.put(row);
+				}
+			});
+			return;
+		}
+		
+		forEachBand(image.getHeight(), stride, (start, end) -> {
+			ByteBuffer bytes = image.getData().duplicate();
+			byte[] row = new byte[stride];
+			byte[] mirrored = new byte[stride];
+			for (int y = start; y < end; y++) {
+				bytes.position(y * stride);
+				bytes.get(row);
+				for (int i = 0, j = stride - channels; i < stride; i += channels, j -= channels) {
+					for (int c = 0; c < channels; c++) {
+						mirrored[j + c] = row[i + c];
+					}
+				}
+				bytes.position(y * stride);
+				bytes.put(mirrored);
+			}
+		});
+	}
+	
+	/**
+	 * Multiplies the color channels of an image by its alpha channel, in place,
+	 * and marks it as premultiplied. Does nothing if the image is already
+	 * premultiplied; images without an alpha channel are left unchanged.
+	 * 
+	 * @param image
+	 *            the image to premultiply.
+	 */
+	public static void premultiplyAlpha(Image image) {
+		
+		image.premultiplyAlpha();
+	}
+	
+	/**
+	 * Divides the color channels of a premultiplied image by its alpha channel, in
+	 * place, and marks it as no longer premultiplied. Does nothing if the image is
+	 * not premultiplied; images without an alpha channel are left unchanged.
+	 * 
+	 * @param image
+	 *            the image to unpremultiply.
+	 */
+	public static void unpremultiplyAlpha(Image image) {
+		
+		image.unpremultiplyAlpha();
+	}
+	
+	/**
+	 * Multiplies the color channels of an image by its alpha channel, in place.
+	 * Called by the image, which tracks whether it is premultiplied.
+	 * 
+	 * @param image
+	 *            the image to premultiply.
+	 */
+	/* package */ static void multiplyAlpha(Image image) {
+		
+		if (isEmpty(image) || !hasAlpha(image)) {
+			return;
+		}
+		
+		image.markChanged();
+		final long address = memAddress(image.getData());
+		final int channels = image.getNumChannels();
+		final int stride = image.getWidth() * channels;
+		
+		forEachBand(image.getHeight(), stride, (start, end) -> {
+			long p = address + (long) start * stride;
+			long last = address + (long) end * stride;
+			for (; p < last; p += channels) {
+				int a = memGetByte(p + channels - 1) & 0xFF;
+				for (int c = 0; c < channels - 1; c++) {
+					memPutByte(p + c, (byte) mul255(memGetByte(p + c) & 0xFF, a));
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Divides the color channels of a premultiplied image by its alpha channel, in
+	 * place. Called by the image, which tracks whether it is premultiplied.
+	 * 
+	 * @param image
+	 *            the image to unpremultiply.
+	 */
+	/* package */ static void divideAlpha(Image image) {
+		
+		if (isEmpty(image) || !hasAlpha(image)) {
+			return;
+		}
+		
+		image.markChanged();
+		final long address = memAddress(image.getData());
+		final int channels = image.getNumChannels();
+		final int stride = image.getWidth() * channels;
+		
+		forEachBand(image.getHeight(), stride, (start, end) -> {
+			long p = address + (long) start * stride;
+			long last = address + (long) end * stride;
+			for (; p < last; p += channels) {
+				int a = memGetByte(p + channels - 1) & 0xFF;
+				if (a == 0 || a == 255) {
+					continue;
+				}
+				for (int c = 0; c < channels - 1; c++) {
+					int v = ((memGetByte(p + c) & 0xFF) * 255 + a / 2) / a;
+					memPutByte(p + c, (byte) (v > 255 ? 255 : v));
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Creates a copy of an image with a different number of channels. Grey values
+	 * are replicated into each color channel, colors are converted to grey by
+	 * their luminance, and missing alpha channels are made opaque.
+	 * 
+	 * @param source
+	 *            the image to convert.
+	 * @param numChannels
+	 *            the number of channels in the new image, from 1 to 4.
+	 * @return the converted image.
+	 */
+	public static Image convertChannels(Image source, int numChannels) {
+		
+		if (numChannels < 1 || numChannels > 4) {
+			throw new GreaseInvalidArgumentException("numChannels", numChannels,
+					"Image must have from 1 to 4 channels.");
+		}
+		
+		final int width = source.getWidth();
+		final int height = source.getHeight();
+		final int srcChannels = source.getNumChannels();
+		final int dstChannels = numChannels;
+		
+		Image result = new Image();
+		if (isEmpty(source)) {
+			return result;
+		}
+		result.reallocate(width, height, dstChannels);
+		
+		final long src = memAddress(source.getData());
+		final long dst = memAddress(result.getData());
+		final boolean srcColor = srcChannels >= 3;
+		final boolean srcAlpha = srcChannels == 2 || srcChannels == 4;
+		final boolean dstColor = dstChannels >= 3;
+		final boolean dstAlpha = dstChannels == 2 || dstChannels == 4;
+		
+		forEachBand(height, width * (srcChannels + dstChannels), (start, end) -> {
+			long s = src + (long) start * width * srcChannels;
+			long d = dst + (long) start * width * dstChannels;
+			long last = src + (long) end * width * srcChannels;
+			for (; s < last; s += srcChannels, d += dstChannels) {
+				
+				int r = memGetByte(s) & 0xFF;
+				int g = r;
+				int b = r;
+				if (srcColor) {
+					g = memGetByte(s + 1) & 0xFF;
+					b = memGetByte(s + 2) & 0xFF;
+				}
+				int a = srcAlpha ? memGetByte(s + srcChannels - 1) & 0xFF : 255;
+				
+				if (dstColor) {
+					memPutByte(d, (byte) r);
+					memPutByte(d + 1, (byte) g);
+					memPutByte(d + 2, (byte) b);
+				} else {
+					memPutByte(d, (byte) (srcColor ? (r * 77 + g * 150 + b * 29 + 128) >> 8 : r));
+				}
+				if (dstAlpha) {
+					memPutByte(d + dstChannels - 1, (byte) a);
+				}
+			}
+		});
+		
+		return result;
+	}
+	
+	/**
+	 * Creates a copy of an image reduced in size by an integer factor. Each pixel
+	 * in the new image is the average of a square block of pixels in the source
+	 * image. Any leftover rows and columns of the source image are ignored.
+	 * 
+	 * @param source
+	 *            the image to reduce.
+	 * @param factor
+	 *            the factor by which to divide the image dimensions.
+	 * @return the reduced image.
+	 */
+	public static Image downscale(Image source, int factor) {
+		
+		if (factor < 1) {
+			throw new GreaseInvalidArgumentException("factor", factor, "Scaling factors must be positive.");
+		}
+		
+		final int channels = source.getNumChannels();
+		final int srcStride = source.getWidth() * channels;
+		final int width = source.getWidth() / factor;
+		final int height = source.getHeight() / factor;
+		final int dstStride = width * channels;
+		final int area = factor * factor;
+		
+		Image result = new Image();
+		if (isEmpty(source) || width == 0 || height == 0) {
+			return result;
+		}
+		result.reallocate(width, height, channels);
+		
+		final long src = memAddress(source.getData());
+		final long dst = memAddress(result.getData());
+		
+		forEachBand(height, (long) srcStride * factor, (start, end) -> {
+			int[] sums = new int[dstStride];
+			for (int y = start; y < end; y++) {
+				
+				Arrays.fill(sums, 0);
+				for (int j = 0; j < factor; j++) {
+					long p = src + ((long) y * factor + j) * srcStride;
+					for (int i = 0; i < dstStride; i += channels) {
+						for (int k = 0; k < factor; k++, p += channels) {
+							for (int c = 0; c < channels; c++) {
+								sums[i + c] += memGetByte(p + c) & 0xFF;
+							}
+						}
+					}
+				}
+				
+				long out = dst + (long) y * dstStride;
+				for (int i = 0; i < dstStride; i++) {
+					memPutByte(out + i, (byte) ((sums[i] + area / 2) / area));
+				}
+			}
+		});
+		
+		return result;
+	}
+	
+	/**
+	 * Creates a copy of an image scaled to the specified dimensions, using
+	 * bilinear filtering.
+	 * 
+	 * @param source
+	 *            the image to scale.
+	 * @param width
+	 *            the width of the new image, in pixels.
+	 * @param height
+	 *            the height of the new image, in pixels.
+	 * @return the scaled image.
+	 */
+	public static Image scale(Image source, int width, int height) {
+		
+		if (width < 0) {
+			throw new GreaseInvalidArgumentException("width", width, "Image dimensions must be non-negative.");
+		}
+		if (height < 0) {
+			throw new GreaseInvalidArgumentException("height", height, "Image dimensions must be non-negative.");
+		}
+		
+		final int channels = source.getNumChannels();
+		final int srcWidth = source.getWidth();
+		final int srcHeight = source.getHeight();
+		final int srcStride = srcWidth * channels;
+		final int dstStride = width * channels;
+		
+		Image result = new Image();
+		if (isEmpty(source) || width == 0 || height == 0) {
+			return result;
+		}
+		result.reallocate(width, height, channels);
+		
+		// Precompute the horizontal sample pixels and weights, in 1/256ths
+		final int[] x0 = new int[width];
+		final int[] x1 = new int[width];
+		final int[] wx = new int[width];
+		for (int x = 0; x < width; x++) {
+			float fx = Math.max(0f, (x + 0.5f) * srcWidth / width - 0.5f);
+			int ix = Math.min((int) fx, srcWidth - 1);
+			x0[x] = ix;
+			x1[x] = Math.min(ix + 1, srcWidth - 1);
+			wx[x] = (int) ((fx - ix) * 256);
+		}
+		
+		if (channels == 4) {
+			scaleRgba(source, result, x0, x1, wx);
+		} else {
+			scaleChannels(source, result, x0, x1, wx);
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Scales an RGBA image with bilinear filtering. Each band blends pairs of source
+	 * rows vertically, two channels per <code>int</code>, in a plain loop over the
+	 * scanline, and then filters the blended row horizontally into each output row.
+	 * 
+	 * @param source
+	 *            the image to scale.
+	 * @param result
+	 *            the scaled image, already allocated.
+	 * @param x0
+	 *            the left source pixel of each output pixel.
+	 * @param x1
+	 *            the right source pixel of each output pixel.
+	 * @param wx
+	 *            the weight of the right source pixel, in 1/256ths.
+	 */
+	private static void scaleRgba(Image source, Image result, int[] x0, int[] x1, int[] wx) {
+		
+		final int srcWidth = source.getWidth();
+		final int srcHeight = source.getHeight();
+		final int width = result.getWidth();
+		final int height = result.getHeight();
+		
+		forEachBand(height, (width + srcWidth * 2L) * 4, (start, end) -> {
+			IntBuffer in = pixels(source);
+			IntBuffer out = pixels(result);
+			int[] row0 = new int[srcWidth];
+			int[] row1 = new int[srcWidth];
+			int[] redBlue = new int[srcWidth];
+			int[] greenAlpha = new int[srcWidth];
+			int[] scaled = new int[width];
+			
+			for (int y = start; y < end; y++) {
+				
+				float fy = Math.max(0f, (y + 0.5f) * srcHeight / height - 0.5f);
+				int iy = Math.min((int) fy, srcHeight - 1);
+				int wy = (int) ((fy - iy) * 256);
+				int wy0 = 256 - wy;
+				in.position(iy * srcWidth);
+				in.get(row0);
+				in.position(Math.min(iy + 1, srcHeight - 1) * srcWidth);
+				in.get(row1);
+				
+				// Each 16-bit lane holds a channel in 1/256ths, which cannot carry
+				for (int i = 0; i < srcWidth; i++) {
+					int p0 = row0[i];
+					int p1 = row1[i];
+					redBlue[i] = (p0 & 0xFF00FF) * wy0 + (p1 & 0xFF00FF) * wy;
+					greenAlpha[i] = (p0 >>> 8 & 0xFF00FF) * wy0 + (p1 >>> 8 & 0xFF00FF) * wy;
+				}
+				
+				for (int x = 0; x < width; x++) {
+					int w = wx[x];
+					int w0 = 256 - w;
+					int rb0 = redBlue[x0[x]];
+					int rb1 = redBlue[x1[x]];
+					int ga0 = greenAlpha[x0[x]];
+					int ga1 = greenAlpha[x1[x]];
+					int r = ((rb0 & 0xFFFF) * w0 + (rb1 & 0xFFFF) * w + 32768) >>> 16;
+					int g = ((ga0 & 0xFFFF) * w0 + (ga1 & 0xFFFF) * w + 32768) >>> 16;
+					int b = ((rb0 >>> 16) * w0 + (rb1 >>> 16) * w + 32768) >>> 16;
+					int a = ((ga0 >>> 16) * w0 + (ga1 >>> 16) * w + 32768) >>> 16;
+					scaled[x] = r | g << 8 | b << 16 | a << 24;
+				}
+				
+				out.position(y * width);
+				out.put(scaled);
+			}
+		});
+	}
+	
+	/**
+	 * Scales an image with any number of channels with bilinear filtering, on
+	 * heap copies of its rows.
+	 * 
+	 * @param source
+	 *            the image to scale.
+	 * @param result
+	 *            the scaled image, already allocated.
+	 * @param x0
+	 *            the left source pixel of each output pixel.
+	 * @param x1
+	 *            the right source pixel of each output pixel.
+	 * @param wx
+	 *            the weight of the right source pixel, in 1/256ths.
+	 */
+	private static void scaleChannels(Image source, Image result, int[] x0, int[] x1, int[] wx) {
+		
+		final int channels = source.getNumChannels();
+		final int srcHeight = source.getHeight();
+		final int srcStride = source.getWidth() * channels;
+		final int width = result.getWidth();
+		final int height = result.getHeight();
+		final int dstStride = width * channels;
+		
+		forEachBand(height, dstStride + srcStride * 2L, (start, end) -> {
+			ByteBuffer in = source.getData().duplicate();
+			ByteBuffer out = result.getData().duplicate();
+			byte[] row0 = new byte[srcStride];
+			byte[] row1 = new byte[srcStride];
+			byte[] scaled = new byte[dstStride];
+			
+			for (int y = start; y < end; y++) {
+				
+				float fy = Math.max(0f, (y + 0.5f) * srcHeight / height - 0.5f);
+				int iy = Math.min((int) fy, srcHeight - 1);
+				int wy = (int) ((fy - iy) * 256);
+				in.position(iy * srcStride);
+				in.get(row0);
+				in.position(Math.min(iy + 1, srcHeight - 1) * srcStride);
+				in.get(row1);
+				
+				for (int x = 0, o = 0; x < width; x++, o += channels) {
+					int w = wx[x];
+					int a = x0[x] * channels;
+					int b = x1[x] * channels;
+					for (int c = 0; c < channels; c++) {
+						int top = (row0[a + c] & 0xFF) * (256 - w) + (row0[b + c] & 0xFF) * w;
+						int bottom = (row1[a + c] & 0xFF) * (256 - w) + (row1[b + c] & 0xFF) * w;
+						scaled[o + c] = (byte) ((top * (256 - wy) + bottom * wy + 32768) >> 16);
+					}
+				}
+				
+				out.position(y * dstStride);
+				out.put(scaled);
+			}
+		});
+	}
+	
+	/**
+	 * Copies a rectangle of pixels from one image to another, replacing the
+	 * destination pixels. Both images must have the same number of channels. The
+	 * rectangle is clipped to both images.
+	 * 
+	 * @param source
+	 *            the image to copy from.
+	 * @param sx
+	 *            the x-coordinate of the rectangle in the source image.
+	 * @param sy
+	 *            the y-coordinate of the rectangle in the source image.
+	 * @param width
+	 *            the width of the rectangle, in pixels.
+	 * @param height
+	 *            the height of the rectangle, in pixels.
+	 * @param dest
+	 *            the image to copy to.
+	 * @param dx
+	 *            the x-coordinate of the rectangle in the destination image.
+	 * @param dy
+	 *            the y-coordinate of the rectangle in the destination image.
+	 */
+	public static void blit(Image source, int sx, int sy, int width, int height, Image dest, int dx, int dy) {
+		
+		final int channels = source.getNumChannels();
+		if (dest.getNumChannels() != channels) {
+			throw new GreaseInvalidArgumentException("dest", dest.getNumChannels(),
+					"Blitted images must have the same number of channels.");
+		}
+		
+		final Clip clip = new Clip(source, sx, sy, width, height, dest, dx, dy);
+		if (clip.isEmpty() || isEmpty(source) || isEmpty(dest)) {
+			return;
+		}
+		
+		final long src = memAddress(source.getData());
+		dest.markChanged();
+		final long dst = memAddress(dest.getData());
+		final int srcStride = source.getWidth() * channels;
+		final int dstStride = dest.getWidth() * channels;
+		final int rowBytes = clip.width * channels;
+		
+		forEachBand(clip.height, rowBytes, (start, end) -> {
+			for (int y = start; y < end; y++) {
+				memCopy(src + (long) (clip.sy + y) * srcStride + clip.sx * channels,
+						dst + (long) (clip.dy + y) * dstStride + clip.dx * channels, rowBytes);
+			}
+		});
+	}
+	
+	/**
+	 * Draws one RGBA image over another, blending them by the source image's
+	 * alpha channel. Both images must have 4 channels with straight, not
+	 * premultiplied, alpha. The source image is clipped to the destination.
+	 * 
+	 * @param source
+	 *            the image to draw.
+	 * @param dest
+	 *            the image to draw onto.
+	 * @param dx
+	 *            the x-coordinate in the destination image of the source image's
+	 *            top-left corner.
+	 * @param dy
+	 *            the y-coordinate in the destination image of the source image's
+	 *            top-left corner.
+	 */
+	public static void composite(Image source, Image dest, int dx, int dy) {
+		
+		if (source.getNumChannels() != 4) {
+			throw new GreaseInvalidArgumentException("source", source.getNumChannels(),
+					"Composited images must have 4 channels.");
+		}
+		if (dest.getNumChannels() != 4) {
+			throw new GreaseInvalidArgumentException("dest", dest.getNumChannels(),
+					"Composited images must have 4 channels.");
+		}
+		
+		final Clip clip = new Clip(source, 0, 0, source.getWidth(), source.getHeight(), dest, dx, dy);
+		if (clip.isEmpty() || isEmpty(source) || isEmpty(dest)) {
+			return;
+		}
+		
+		dest.markChanged();
+		final int srcWidth = source.getWidth();
+		final int dstWidth = dest.getWidth();
+		
+		forEachBand(clip.height, clip.width * 8L, (start, end) -> {
+			IntBuffer srcPixels = pixels(source);
+			IntBuffer dstPixels = pixels(dest);
+			int[] s = new int[clip.width];
+			int[] d = new int[clip.width];
+			
+			for (int y = start; y < end; y++) {
+				srcPixels.position((clip.sy + y) * srcWidth + clip.sx);
+				srcPixels.get(s);
+				dstPixels.position((clip.dy + y) * dstWidth + clip.dx);
+				dstPixels.get(d);
+				
+				for (int x = 0; x < clip.width; x++) {
+					
+					int sp = s[x];
+					int sa = sp >>> 24;
+					if (sa == 255) {
+						d[x] = sp;
+					} else if (sa != 0) {
+						
+						// Weights scaled by 255: the source alpha, and the destination's remainder
+						int dp = d[x];
+						int da = mul255(dp >>> 24, 255 - sa);
+						int outA = sa + da;
+						int half = outA >> 1;
+						long reciprocal = RECIPROCALS[outA];
+						int r = (int) (((sp & 0xFF) * sa + (dp & 0xFF) * da + half) * reciprocal >>> 24);
+						int g = (int) (((sp >>> 8 & 0xFF) * sa + (dp >>> 8 & 0xFF) * da + half) * reciprocal >>> 24);
+						int b = (int) (((sp >>> 16 & 0xFF) * sa + (dp >>> 16 & 0xFF) * da + half) * reciprocal >>> 24);
+						d[x] = r | g << 8 | b << 16 | outA << 24;
+					}
+				}
+				
+				dstPixels.position((clip.dy + y) * dstWidth + clip.dx);
+				dstPixels.put(d);
+			}
+		});
+	}
+	
+	/** Represents a copied rectangle, clipped to its source and destination. */
+	private static class Clip {
+		
+		/** The clipped x-coordinate in the source image. */
+		private int	sx;
+		/** The clipped y-coordinate in the source image. */
+		private int	sy;
+		/** The clipped x-coordinate in the destination image. */
+		private int	dx;
+		/** The clipped y-coordinate in the destination image. */
+		private int	dy;
+		/** The clipped width. */
+		private int	width;
+		/** The clipped height. */
+		private int	height;
+		
+		/**
+		 * Clips a rectangle to its source and destination images.
+		 * 
+		 * @param source
+		 *            the source image.
+		 * @param sx
+		 *            the x-coordinate of the rectangle in the source image.
+		 * @param sy
+		 *            the y-coordinate of the rectangle in the source image.
+		 * @param width
+		 *            the width of the rectangle.
+		 * @param height
+		 *            the height of the rectangle.
+		 * @param dest
+		 *            the destination image.
+		 * @param dx
+		 *            the x-coordinate of the rectangle in the destination image.
+		 * @param dy
+		 *            the y-coordinate of the rectangle in the destination image.
+		 */
+		private Clip(Image source, int sx, int sy, int width, int height, Image dest, int dx, int dy) {
+			
+			// Clip the top-left corner against both images
+			int shiftX = Math.max(Math.max(-sx, -dx), 0);
+			int shiftY = Math.max(Math.max(-sy, -dy), 0);
+			this.sx = sx + shiftX;
+			this.sy = sy + shiftY;
+			this.dx = dx + shiftX;
+			this.dy = dy + shiftY;
+			
+			// Clip the bottom-right corner against both images
+			this.width = Math.min(width - shiftX,
+					Math.min(source.getWidth() - this.sx, dest.getWidth() - this.dx));
+			this.height = Math.min(height - shiftY,
+					Math.min(source.getHeight() - this.sy, dest.getHeight() - this.dy));
+		}
+		
+		/**
+		 * @return <code>true</code> if nothing remains of the rectangle.
+		 */
+		private boolean isEmpty() {
+			
+			return width <= 0 || height <= 0;
+		}
+	}
+	
+	/**
+	 * Applies an operation to a range of rows, splitting the rows into bands which
+	 * are processed in parallel if there are enough bytes to make it worthwhile.
+	 * 
+	 * @param rows
+	 *            the number of rows.
+	 * @param rowBytes
+	 *            the number of bytes processed per row.
+	 * @param operation
+	 *            the operation to apply.
+	 */
+	private static void forEachBand(int rows, long rowBytes, RowOperation operation) {
+		
+		if (rows <= 0) {
+			return;
+		}
+		
+		if (rows * rowBytes <= BAND_BYTES || ForkJoinPool.getCommonPoolParallelism() < 2) {
+			operation.apply(0, rows);
+			return;
+		}
+		
+		ForkJoinPool.commonPool().invoke(new Band(operation, rowBytes, 0, rows));
+	}
+	
+	/**
+	 * Creates a view of an RGBA image's pixels, one little-endian
+	 * <code>int</code> per pixel, with its own position.
+	 * 
+	 * @param image
+	 *            the image to view.
+	 * @return the pixel view.
+	 */
+	private static IntBuffer pixels(Image image) {
+		
+		return image.getData().duplicate().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+	}
+	
+	/**
+	 * Multiplies two values from 0 to 255, as if they were fractions of 255.
+	 * 
+	 * @param a
+	 *            the first value.
+	 * @param b
+	 *            the second value.
+	 * @return the rounded product, from 0 to 255.
+	 */
+	private static int mul255(int a, int b) {
+		
+		int t = a * b + 128;
+		return (t + (t >> 8)) >> 8;
+	}
+	
+	/**
+	 * @param image
+	 *            the image to check.
+	 * @return <code>true</code> if the image has no pixels.
+	 */
+	private static boolean isEmpty(Image image) {
+		
+		return image.getData() == null || image.getWidth() == 0 || image.getHeight() == 0;
+	}
+	
+	/**
+	 * @param image
+	 *            the image to check.
+	 * @return <code>true</code> if the image has an alpha channel.
+	 */
+	private static boolean hasAlpha(Image image) {
+		
+		return image.getNumChannels() == 2 || image.getNumChannels() == 4;
+	}
+}
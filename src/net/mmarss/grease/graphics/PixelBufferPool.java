@@ -0,0 +1,189 @@
+package net.mmarss.grease.graphics;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.lwjgl.system.MemoryUtil;
+
+import net.mmarss.grease.exception.GreaseInvalidArgumentException;
+
+/**
+ * A pool of native pixel buffers, shared by all images. Buffers are allocated
+ * with <code>MemoryUtil</code> in size classes, so that a freed buffer can be
+ * reused by any later image of a similar size. Each power of two is split into
+ * four size classes, so at most a quarter of each buffer is wasted.
+ * 
+ * The pool keeps count of the native memory it holds, both for buffers in use
+ * by images and for free buffers kept for reuse.
+ */
+public class PixelBufferPool {
+	
+	/** The smallest buffer size allocated by the pool, in bytes. */
+	private static final int	MIN_BUFFER_SIZE		= 4096;
+	/** The default number of bytes of free buffers kept for reuse. */
+	private static final long	DEFAULT_MAX_POOLED	= 64L * 1024 * 1024;
+	
+	/** The pool shared by all images. */
+	private static final PixelBufferPool instance = new PixelBufferPool();
+	
+	/** The free buffers, by capacity. */
+	private final Map< Integer, ArrayDeque< ByteBuffer > > freeBuffers = new HashMap<>();
+	
+	/** The number of bytes held by buffers in use. */
+	private long	usedBytes	= 0;
+	/** The number of bytes held by free buffers. */
+	private long	pooledBytes	= 0;
+	/** The maximum number of bytes of free buffers kept for reuse. */
+	private long	maxPooled	= DEFAULT_MAX_POOLED;
+	
+	/**
+	 * Constructs a new empty pool. Only called to create the shared instance.
+	 */
+	private PixelBufferPool() {}
+	
+	/**
+	 * @return the pool shared by all images.
+	 */
+	public static PixelBufferPool getInstance() {
+		
+		return instance;
+	}
+	
+	/**
+	 * Gets a native buffer with at least the specified number of bytes, reusing a
+	 * free buffer of the same size class if one is available. The contents of the
+	 * buffer are undefined. The limit of the returned buffer is set to the
+	 * requested size.
+	 * 
+	 * @param bytes
+	 *            the number of bytes required.
+	 * @return a direct buffer, which must be returned with <code>free</code>.
+	 */
+	public synchronized ByteBuffer allocate(int bytes) {
+		
+		if (bytes < 0) {
+			throw new GreaseInvalidArgumentException("bytes", bytes, "Buffer sizes must be non-negative.");
+		}
+		
+		int capacity = sizeClass(bytes);
+		
+		ByteBuffer buffer = null;
+		ArrayDeque< ByteBuffer > free = freeBuffers.get(capacity);
+		if (free != null) {
+			buffer = free.poll();
+		}
+		
+		if (buffer != null) {
+			pooledBytes -= capacity;
+		} else {
+			buffer = MemoryUtil.memAlloc(capacity);
+		}
+		
+		usedBytes += capacity;
+		buffer.clear().limit(bytes);
+		return buffer;
+	}
+	
+	/**
+	 * Returns a buffer allocated by this pool, making it available for reuse. If
+	 * the pool already holds its maximum number of free bytes, the buffer is freed
+	 * instead. The buffer must not be used after it is returned.
+	 * 
+	 * @param buffer
+	 *            the buffer to return, or <code>null</code>.
+	 */
+	public synchronized void free(ByteBuffer buffer) {
+		
+		if (buffer == null) {
+			return;
+		}
+		
+		int capacity = buffer.capacity();
+		usedBytes -= capacity;
+		
+		if (pooledBytes + capacity > maxPooled) {
+			MemoryUtil.memFree(buffer);
+			return;
+		}
+		
+		freeBuffers.computeIfAbsent(capacity, c -> new ArrayDeque<>()).push(buffer);
+		pooledBytes += capacity;
+	}
+	
+	/**
+	 * Frees every buffer kept for reuse.
+	 */
+	public synchronized void trim() {
+		
+		for (ArrayDeque< ByteBuffer > free : freeBuffers.values()) {
+			for (ByteBuffer buffer : free) {
+				MemoryUtil.memFree(buffer);
+			}
+		}
+		
+		freeBuffers.clear();
+		pooledBytes = 0;
+	}
+	
+	/**
+	 * Sets the maximum number of bytes of free buffers kept for reuse. Free
+	 * buffers above the new limit are not freed until <code>trim</code> is called.
+	 * 
+	 * @param bytes
+	 *            the new limit, in bytes.
+	 */
+	public synchronized void setMaxPooledBytes(long bytes) {
+		
+		if (bytes < 0) {
+			throw new GreaseInvalidArgumentException("bytes", bytes, "Pool sizes must be non-negative.");
+		}
+		
+		maxPooled = bytes;
+	}
+	
+	/**
+	 * @return the number of native bytes held by buffers in use by images.
+	 */
+	public synchronized long getUsedBytes() {
+		
+		return usedBytes;
+	}
+	
+	/**
+	 * @return the number of native bytes held by free buffers kept for reuse.
+	 */
+	public synchronized long getPooledBytes() {
+		
+		return pooledBytes;
+	}
+	
+	/**
+	 * @return the total number of native bytes held by this pool.
+	 */
+	public synchronized long getAllocatedBytes() {
+		
+		return usedBytes + pooledBytes;
+	}
+	
+	/**
+	 * Gets the capacity of the buffers used to hold the specified number of bytes.
+	 * 
+	 * @param bytes
+	 *            the number of bytes required.
+	 * @return the size class's buffer capacity, in bytes, or the exact size if
+	 *         rounding it up would exceed the largest possible buffer.
+	 */
+	/* package */ static int sizeClass(int bytes) {
+		
+		if (bytes <= MIN_BUFFER_SIZE) {
+			return MIN_BUFFER_SIZE;
+		}
+		
+		// Round up to a quarter of the next lower power of two
+		long step = Integer.highestOneBit(bytes - 1) >> 2;
+		long capacity = (bytes + step - 1) / step * step;
+		return capacity > Integer.MAX_VALUE ? bytes : (int) capacity;
+	}
+}
@@ -0,0 +1,135 @@
+package net.mmarss.grease.graphics;
+
+/**
+ * An immutable snapshot of the work done by a {@link Graphics2d} object in one
+ * frame. Used to check that drawing is batched and that state changes and
+ * uploads are cached as intended.
+ */
+public final class RenderStats {
+	
+	/** A snapshot in which no work was done. */
+	public static final RenderStats EMPTY = new RenderStats(0, 0, 0, 0, 0, 0, 0, 0);
+	
+	/** The number of draw calls. */
+	private final int	drawCalls;
+	/** The number of triangles drawn. */
+	private final long	triangles;
+	/** The number of uniform values uploaded. */
+	private final int	uniformUploads;
+	/** The number of texture binds. */
+	private final int	textureBinds;
+	/** The number of texture uploads. */
+	private final int	textureUploads;
+	/** The number of bytes of pixel data uploaded to textures. */
+	private final long	textureUploadBytes;
+	/** The number of shader program binds. */
+	private final int	shaderSwitches;
+	/** The number of draws skipped for lying outside the window. */
+	private final int	culledDraws;
+	
+	/**
+	 * Constructs a new render statistics snapshot.
+	 * 
+	 * @param drawCalls
+	 *            the number of draw calls.
+	 * @param triangles
+	 *            the number of triangles drawn.
+	 * @param uniformUploads
+	 *            the number of uniform values uploaded.
+	 * @param textureBinds
+	 *            the number of texture binds.
+	 * @param textureUploads
+	 *            the number of texture uploads.
+	 * @param textureUploadBytes
+	 *            the number of bytes of pixel data uploaded to textures.
+	 * @param shaderSwitches
+	 *            the number of shader program binds.
+	 * @param culledDraws
+	 *            the number of draws skipped for lying outside the window.
+	 */
+	public RenderStats(int drawCalls, long triangles, int uniformUploads, int textureBinds, int textureUploads,
+			long textureUploadBytes, int shaderSwitches, int culledDraws) {
+		
+		this.drawCalls = drawCalls;
+		this.triangles = triangles;
+		this.uniformUploads = uniformUploads;
+		this.textureBinds = textureBinds;
+		this.textureUploads = textureUploads;
+		this.textureUploadBytes = textureUploadBytes;
+		this.shaderSwitches = shaderSwitches;
+		this.culledDraws = culledDraws;
+	}
+	
+	/**
+	 * @return the number of draw calls.
+	 */
+	public int getDrawCalls() {
+		
+		return drawCalls;
+	}
+	
+	/**
+	 * @return the number of triangles drawn.
+	 */
+	public long getTriangles() {
+		
+		return triangles;
+	}
+	
+	/**
+	 * @return the number of uniform values uploaded.
+	 */
+	public int getUniformUploads() {
+		
+		return uniformUploads;
+	}
+	
+	/**
+	 * @return the number of texture binds.
+	 */
+	public int getTextureBinds() {
+		
+		return textureBinds;
+	}
+	
+	/**
+	 * @return the number of texture uploads.
+	 */
+	public int getTextureUploads() {
+		
+		return textureUploads;
+	}
+	
+	/**
+	 * @return the number of bytes of pixel data uploaded to textures.
+	 */
+	public long getTextureUploadBytes() {
+		
+		return textureUploadBytes;
+	}
+	
+	/**
+	 * @return the number of shader program binds.
+	 */
+	public int getShaderSwitches() {
+		
+		return shaderSwitches;
+	}
+	
+	/**
+	 * @return the number of draws skipped for lying outside the window.
+	 */
+	public int getCulledDraws() {
+		
+		return culledDraws;
+	}
+	
+	@Override
+	public String toString() {
+		
+		return "RenderStats[drawCalls=" + drawCalls + ", triangles=" + triangles + ", uniformUploads="
+				+ uniformUploads + ", textureBinds=" + textureBinds + ", textureUploads=" + textureUploads
+				+ ", textureUploadBytes=" + textureUploadBytes + ", shaderSwitches=" + shaderSwitches
+				+ ", culledDraws=" + culledDraws + "]";
+	}
+}
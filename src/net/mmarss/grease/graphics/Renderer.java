@@ -65,6 +65,15 @@ public abstract class Renderer {
 	 */
 	public void onResize(int width, int height) {}
 	
+	/**
+	 * Called at the end of each render cycle, after <code>postRender</code>, from
+	 * the render thread.
+	 * 
+	 * This method does nothing by default, and can be overridden by subclasses if
+	 * it is helpful.
+	 */
+	protected void onFrameFinalized() {}
+	
 	/**
 	 * @return the current width of the window client area.
 	 */
@@ -129,5 +138,6 @@ public abstract class Renderer {
 	public final void finalizeFrame() {
 		
 		resized = false;
+		onFrameFinalized();
 	}
 }
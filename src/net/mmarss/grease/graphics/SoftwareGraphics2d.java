@@ -0,0 +1,902 @@
+package net.mmarss.grease.graphics;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.joml.Matrix4f;
+
+import net.mmarss.grease.exception.GreaseInvalidArgumentException;
+
+/**
+ * A 2d graphics object which rasterizes on the processor into an image, for
+ * rendering without a GPU; thumbnails on servers, reference images in tests,
+ * and machines whose drivers cannot be trusted. It never touches OpenGL.
+ * 
+ * Drawing follows the OpenGL renderer: the same colors, the same blending as
+ * <code>fragment2d.fsh</code> under either blend mode, and the same texture
+ * sampling, which is nearest when images are magnified and bilinear when they
+ * are minified, with the texture repeated. Pixels are covered when their
+ * centers lie within the drawn shape. The result may differ from the GPU's by
+ * one level per channel, due to rounding.
+ * 
+ * Draw calls are only recorded while the game renders. When the render cycle
+ * ends, the image is split into tiles which are rasterized in parallel on a
+ * fork-join pool, each tile drawing the calls that overlap it, in order. The
+ * image can then be read until the next render cycle ends.
+ */
+public class SoftwareGraphics2d extends Graphics2d {
+	
+	/** The width and height of a tile, in pixels. */
+	private static final int TILE_SIZE = 64;
+	
+	/** The pool on which tiles are rasterized. */
+	private final ForkJoinPool pool;
+	
+	/** The image rendered into. */
+	private final Image	image;
+	/** The pixels of the frame being rendered, packed as by <code>pack</code>. */
+	private int[]		pixels;
+	/** The width of the frame, in pixels. */
+	private int			frameWidth;
+	/** The height of the frame, in pixels. */
+	private int			frameHeight;
+	/** The number of tile columns. */
+	private int			tilesX;
+	/** The number of tile rows. */
+	private int			tilesY;
+	
+	/** The draw calls of the current frame, reused between frames. */
+	private final List< Command >	commands		= new ArrayList<>();
+	/** The number of draw calls in the current frame. */
+	private int						commandCount	= 0;
+	/** The indices of the draw calls overlapping each tile, in order. */
+	private int[][]					tileCommands;
+	/** The number of draw calls overlapping each tile. */
+	private int[]					tileCounts;
+	
+	/** The color the frame is cleared to, packed. */
+	private int		clearColor	= pack(5, 24, 69, 255);
+	/** The red component of the drawing color, with premultiplication applied. */
+	private float	red;
+	/** The green component of the drawing color, with premultiplication applied. */
+	private float	green;
+	/** The blue component of the drawing color, with premultiplication applied. */
+	private float	blue;
+	/** The alpha component of the drawing color, zero when drawing additively. */
+	private float	alpha;
+	/** Whether drawing is additive. */
+	private boolean	additive;
+	/** Whether the current frame blends with premultiplied alpha. */
+	private boolean	premultipliedFrame;
+	
+	/** The pixel data copied from each drawn image. */
+	private final Map< Image, Texture > textures = new WeakHashMap<>();
+	
+	/** The number of draw calls in the current frame. */
+	private int					drawCalls;
+	/** The number of textured draw calls in the current frame. */
+	private int					textureBinds;
+	/** The number of image copies in the current frame. */
+	private int					textureUploads;
+	/** The number of bytes of images copied in the current frame. */
+	private long				textureUploadBytes;
+	/** The number of draw calls culled in the current frame. */
+	private int					culledDraws;
+	/** The render statistics of the last finished frame. */
+	private volatile RenderStats	renderStats	= RenderStats.EMPTY;
+	
+	/**
+	 * Constructs a new software graphics object rendering into a new RGBA image of
+	 * the specified size, rasterizing on the common fork-join pool.
+	 * 
+	 * @param width
+	 *            the width of the image, in pixels.
+	 * @param height
+	 *            the height of the image, in pixels.
+	 */
+	public SoftwareGraphics2d(int width, int height) {
+		
+		this(width, height, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Constructs a new software graphics object rendering into a new RGBA image of
+	 * the specified size, rasterizing on the specified pool.
+	 * 
+	 * @param width
+	 *            the width of the image, in pixels.
+	 * @param height
+	 *            the height of the image, in pixels.
+	 * @param pool
+	 *            the pool on which to rasterize tiles.
+	 */
+	public SoftwareGraphics2d(int width, int height, ForkJoinPool pool) {
+		
+		if (width <= 0) {
+			throw new GreaseInvalidArgumentException("width", width, "Image dimensions must be positive.");
+		}
+		if (height <= 0) {
+			throw new GreaseInvalidArgumentException("height", height, "Image dimensions must be positive.");
+		}
+		if (pool == null) {
+			throw new GreaseInvalidArgumentException("pool", pool);
+		}
+		
+		this.pool = pool;
+		image = new Image(width, height, 4);
+		setInitialSize(width, height);
+		allocateFrame(width, height);
+	}
+	
+	@Override
+	public void init() {}
+	
+	/**
+	 * Starts a new frame, resizing the image if the renderer has been resized.
+	 */
+	@Override
+	public void preRender() {
+		
+		if (wasResized() && (getWidth() != frameWidth || getHeight() != frameHeight)) {
+			allocateFrame(Math.max(getWidth(), 1), Math.max(getHeight(), 1));
+		}
+		
+		commandCount = 0;
+		Arrays.fill(tileCounts, 0);
+		premultipliedFrame = isPremultipliedAlpha();
+		additive = false;
+		setColor(0.102f, 0.345f, 0.000f, 1.0f);
+	}
+	
+	@Override
+	public void render() {}
+	
+	/**
+	 * Rasterizes the frame's draw calls, and copies the result into the image.
+	 */
+	@Override
+	public void postRender() {
+		
+		pool.invoke(new TileTask(0, tilesX * tilesY));
+		
+		synchronized (image) {
+			ByteBuffer data = image.getData();
+			data.duplicate().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().put(pixels, 0, frameWidth * frameHeight);
+			image.markChanged();
+		}
+	}
+	
+	/**
+	 * Takes a snapshot of this frame's render statistics, and starts counting
+	 * afresh for the next frame.
+	 */
+	@Override
+	protected void onFrameFinalized() {
+		
+		renderStats = new RenderStats(drawCalls, drawCalls * 2L, 0, textureBinds, textureUploads, textureUploadBytes,
+				0, culledDraws);
+		
+		drawCalls = 0;
+		textureBinds = 0;
+		textureUploads = 0;
+		textureUploadBytes = 0;
+		culledDraws = 0;
+	}
+	
+	/**
+	 * Releases the image and the copies of drawn images.
+	 */
+	@Override
+	public void cleanup() {
+		
+		image.free();
+		textures.clear();
+	}
+	
+	/**
+	 * Gets the work done in the last finished frame. Only draw calls, triangles,
+	 * texture binds and uploads, and culled draws are counted; an upload is a
+	 * copy of an image's pixel data, taken when a changed image is drawn.
+	 * 
+	 * @return the render statistics of the last frame.
+	 */
+	@Override
+	public RenderStats getRenderStats() {
+		
+		return renderStats;
+	}
+	
+	/**
+	 * Gets the image rendered into. It holds the last finished frame, as RGBA with
+	 * the top row first, until the next frame's <code>postRender</code>.
+	 * 
+	 * @return the rendered image.
+	 */
+	public Image getImage() {
+		
+		return image;
+	}
+	
+	/**
+	 * Sets the color each frame is cleared to. The default matches the window's.
+	 * 
+	 * @param r
+	 *            the red component of the color.
+	 * @param g
+	 *            the green component of the color.
+	 * @param b
+	 *            the blue component of the color.
+	 * @param a
+	 *            the alpha component of the color.
+	 */
+	public void setClearColor(float r, float g, float b, float a) {
+		
+		clearColor = pack(toByte(r), toByte(g), toByte(b), toByte(a));
+	}
+	
+	@Override
+	public void setAdditive(boolean additive) {
+		
+		super.setAdditive(additive);
+		this.additive = additive;
+	}
+	
+	@Override
+	public void setColor(float r, float g, float b, float a) {
+		
+		if (premultipliedFrame) {
+			r *= a;
+			g *= a;
+			b *= a;
+			if (additive) {
+				a = 0f;
+			}
+		}
+		
+		red = r;
+		green = g;
+		blue = b;
+		alpha = a;
+	}
+	
+	@Override
+	public void drawRect(float x0, float y0, float x1, float y1) {
+		
+		addCommand(null, x1 - x0, 0f, 0f, y1 - y0, x0, y0);
+	}
+	
+	@Override
+	public void drawImage(Image image, float x, float y) {
+		
+		addCommand(image, image.getWidth(), 0f, 0f, image.getHeight(), x, y);
+	}
+	
+	@Override
+	public void drawImageCentered(Image image, float x, float y) {
+		
+		drawImage(image, x - image.getWidth() / 2, y - image.getHeight() / 2);
+	}
+	
+	@Override
+	public void drawImageRotated(Image image, float x, float y, float angle) {
+		
+		Matrix4f model = rotatedModel(new Matrix4f(), x, y, image.getWidth(), image.getHeight(), angle);
+		addCommand(image, model.m00(), model.m01(), model.m10(), model.m11(), model.m30(), model.m31());
+	}
+	
+	@Override
+	public void drawImageScaled(Image image, float x, float y, float scale) {
+		
+		drawImageScaled(image, x, y, scale, scale);
+	}
+	
+	@Override
+	public void drawImageScaled(Image image, float x, float y, float scalex, float scaley) {
+		
+		addCommand(image, image.getWidth() * scalex, 0f, 0f, image.getHeight() * scaley, x, y);
+	}
+	
+	@Override
+	public void drawImageRect(Image image, float x0, float y0, float x1, float y1) {
+		
+		addCommand(image, x1 - x0, 0f, 0f, y1 - y0, x0, y0);
+	}
+	
+	/**
+	 * Allocates the frame's pixels and tiles for the specified size, and resizes
+	 * the image to match.
+	 * 
+	 * @param width
+	 *            the width of the frame, in pixels.
+	 * @param height
+	 *            the height of the frame, in pixels.
+	 */
+	private void allocateFrame(int width, int height) {
+		
+		frameWidth = width;
+		frameHeight = height;
+		pixels = new int[width * height];
+		
+		tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+		tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+		tileCommands = new int[tilesX * tilesY][16];
+		tileCounts = new int[tilesX * tilesY];
+		
+		image.reallocate(width, height, 4);
+	}
+	
+	/**
+	 * Records a draw call of the unit square, transformed by an affine map, and
+	 * adds it to the tiles it overlaps. The unit square's texture coordinates
+	 * follow its position, as in the OpenGL renderer.
+	 * 
+	 * @param source
+	 *            the image to draw, or <code>null</code> to fill with the color.
+	 * @param m00
+	 *            the x-component of the transformed x-axis.
+	 * @param m01
+	 *            the y-component of the transformed x-axis.
+	 * @param m10
+	 *            the x-component of the transformed y-axis.
+	 * @param m11
+	 *            the y-component of the transformed y-axis.
+	 * @param m30
+	 *            the x-coordinate of the transformed origin.
+	 * @param m31
+	 *            the y-coordinate of the transformed origin.
+	 */
+	private void addCommand(Image source, float m00, float m01, float m10, float m11, float m30, float m31) {
+		
+		float det = m00 * m11 - m10 * m01;
+		
+		// The bounds of the pixels whose centers may lie within the shape
+		float minX = Math.min(Math.min(m30, m30 + m00), Math.min(m30 + m10, m30 + m00 + m10));
+		float maxX = Math.max(Math.max(m30, m30 + m00), Math.max(m30 + m10, m30 + m00 + m10));
+		float minY = Math.min(Math.min(m31, m31 + m01), Math.min(m31 + m11, m31 + m01 + m11));
+		float maxY = Math.max(Math.max(m31, m31 + m01), Math.max(m31 + m11, m31 + m01 + m11));
+		int x0 = Math.max((int) Math.ceil(minX - 0.5f), 0);
+		int y0 = Math.max((int) Math.ceil(minY - 0.5f), 0);
+		int x1 = Math.min((int) Math.ceil(maxX - 0.5f), frameWidth) - 1;
+		int y1 = Math.min((int) Math.ceil(maxY - 0.5f), frameHeight) - 1;
+		
+		if (det == 0f || x0 > x1 || y0 > y1) {
+			culledDraws++;
+			return;
+		}
+		
+		Texture texture = null;
+		if (source != null) {
+			if (premultipliedFrame) {
+				source.premultiplyAlpha();
+			}
+			texture = getTexture(source);
+			if (texture == null) {
+				culledDraws++;
+				return;
+			}
+			textureBinds++;
+		}
+		
+		if (commandCount == commands.size()) {
+			commands.add(new Command());
+		}
+		Command command = commands.get(commandCount);
+		
+		command.texture = texture;
+		command.minX = x0;
+		command.minY = y0;
+		command.maxX = x1;
+		command.maxY = y1;
+		command.originX = m30;
+		command.originY = m31;
+		command.dux = m11 / det;
+		command.duy = -m10 / det;
+		command.dvx = -m01 / det;
+		command.dvy = m00 / det;
+		command.premultiplied = premultipliedFrame;
+		
+		if (texture == null) {
+			command.color = pack(toByte(red), toByte(green), toByte(blue), toByte(alpha));
+		} else {
+			command.red = toFixed(red);
+			command.green = toFixed(green);
+			command.blue = toFixed(blue);
+			command.alpha = toFixed(alpha);
+			command.modulated = command.red != 65536 || command.green != 65536 || command.blue != 65536
+					|| command.alpha != 65536;
+			
+			// OpenGL minifies with bilinear filtering, and magnifies with nearest
+			float scaleX = (float) Math.hypot(command.dux * texture.width, command.dvx * texture.height);
+			float scaleY = (float) Math.hypot(command.duy * texture.width, command.dvy * texture.height);
+			command.linear = Math.max(scaleX, scaleY) > 1f;
+		}
+		
+		// Add the command to every tile it overlaps
+		for (int tileY = y0 / TILE_SIZE; tileY <= y1 / TILE_SIZE; tileY++) {
+			for (int tileX = x0 / TILE_SIZE; tileX <= x1 / TILE_SIZE; tileX++) {
+				int tile = tileY * tilesX + tileX;
+				if (tileCounts[tile] == tileCommands[tile].length) {
+					tileCommands[tile] = Arrays.copyOf(tileCommands[tile], tileCounts[tile] * 2);
+				}
+				tileCommands[tile][tileCounts[tile]++] = commandCount;
+			}
+		}
+		
+		commandCount++;
+		drawCalls++;
+	}
+	
+	/**
+	 * Gets the copy of an image's pixel data, copying it again if the image has
+	 * changed since it was last drawn.
+	 * 
+	 * @param source
+	 *            the drawn image.
+	 * @return the copy of the image, or <code>null</code> if the image is empty.
+	 */
+	private Texture getTexture(Image source) {
+		
+		synchronized (source) {
+			int version = source.getVersion();
+			Texture texture = textures.get(source);
+			if (texture != null && texture.version == version) {
+				return texture;
+			}
+			
+			ByteBuffer data = source.getData();
+			int width = source.getWidth();
+			int height = source.getHeight();
+			if (data == null || width == 0 || height == 0) {
+				return null;
+			}
+			
+			texture = new Texture(width, height, version);
+			int numChannels = source.getNumChannels();
+			for (int i = 0; i < width * height; i++) {
+				int offset = i * numChannels;
+				switch (numChannels) {
+				case 1:
+					int grey = data.get(offset) & 0xFF;
+					texture.texels[i] = pack(grey, grey, grey, 255);
+					break;
+				case 2:
+					int luminance = data.get(offset) & 0xFF;
+					texture.texels[i] = pack(luminance, luminance, luminance, data.get(offset + 1) & 0xFF);
+					break;
+				case 3:
+					texture.texels[i] = pack(data.get(offset) & 0xFF, data.get(offset + 1) & 0xFF,
+							data.get(offset + 2) & 0xFF, 255);
+					break;
+				default:
+					texture.texels[i] = pack(data.get(offset) & 0xFF, data.get(offset + 1) & 0xFF,
+							data.get(offset + 2) & 0xFF, data.get(offset + 3) & 0xFF);
+				}
+			}
+			
+			textures.put(source, texture);
+			textureUploads++;
+			textureUploadBytes += (long) width * height * numChannels;
+			return texture;
+		}
+	}
+	
+	/**
+	 * Rasterizes a tile, clearing it and drawing the calls which overlap it.
+	 * 
+	 * @param tile
+	 *            the index of the tile.
+	 */
+	private void rasterizeTile(int tile) {
+		
+		int tileX0 = tile % tilesX * TILE_SIZE;
+		int tileY0 = tile / tilesX * TILE_SIZE;
+		int tileX1 = Math.min(tileX0 + TILE_SIZE, frameWidth) - 1;
+		int tileY1 = Math.min(tileY0 + TILE_SIZE, frameHeight) - 1;
+		
+		for (int y = tileY0; y <= tileY1; y++) {
+			Arrays.fill(pixels, y * frameWidth + tileX0, y * frameWidth + tileX1 + 1, clearColor);
+		}
+		
+		int[] indices = tileCommands[tile];
+		for (int i = 0; i < tileCounts[tile]; i++) {
+			Command command = commands.get(indices[i]);
+			int x0 = Math.max(command.minX, tileX0);
+			int x1 = Math.min(command.maxX, tileX1);
+			int y0 = Math.max(command.minY, tileY0);
+			int y1 = Math.min(command.maxY, tileY1);
+			
+			for (int y = y0; y <= y1; y++) {
+				drawSpan(command, y, x0, x1);
+			}
+		}
+	}
+	
+	/**
+	 * Draws the pixels of a row whose centers lie within a draw call's shape.
+	 * 
+	 * @param command
+	 *            the draw call.
+	 * @param y
+	 *            the row.
+	 * @param x0
+	 *            the first column which may be covered.
+	 * @param x1
+	 *            the last column which may be covered.
+	 */
+	private void drawSpan(Command command, int y, int x0, int x1) {
+		
+		// Texture coordinates of the first pixel center, and their step per pixel
+		float cx = x0 + 0.5f - command.originX;
+		float cy = y + 0.5f - command.originY;
+		float u = command.dux * cx + command.duy * cy;
+		float v = command.dvx * cx + command.dvy * cy;
+		float du = command.dux;
+		float dv = command.dvx;
+		
+		// Keep the pixels whose texture coordinates lie in [0, 1)
+		int count = x1 - x0 + 1;
+		int start = Math.max(spanStart(u, du, count), spanStart(v, dv, count));
+		int end = Math.min(spanEnd(u, du, count), spanEnd(v, dv, count));
+		
+		int row = y * frameWidth + x0;
+		boolean premultiplied = command.premultiplied;
+		Texture texture = command.texture;
+		
+		if (texture == null) {
+			int color = command.color;
+			int srcAlpha = color >>> 24;
+			if (srcAlpha == 255) {
+				Arrays.fill(pixels, row + start, row + end, color);
+				return;
+			}
+			if (srcAlpha == 0 && (!premultiplied || color == 0)) {
+				return; // Leaves the destination unchanged
+			}
+			
+			for (int i = start; i < end; i++) {
+				pixels[row + i] = blend(pixels[row + i], color, premultiplied);
+			}
+			return;
+		}
+		
+		int[] texels = texture.texels;
+		int width = texture.width;
+		int height = texture.height;
+		boolean modulated = command.modulated;
+		
+		for (int i = start; i < end; i++) {
+			float s = (u + i * du) * width;
+			float t = (v + i * dv) * height;
+			
+			int texel;
+			if (command.linear) {
+				texel = sampleLinear(texels, width, height, s - 0.5f, t - 0.5f);
+			} else {
+				int tx = Math.min(Math.max((int) s, 0), width - 1);
+				int ty = Math.min(Math.max((int) t, 0), height - 1);
+				texel = texels[ty * width + tx];
+			}
+			
+			int color = texel;
+			if (modulated) {
+				color = pack(modulate(texel, command.red), modulate(texel >>> 8, command.green),
+						modulate(texel >>> 16, command.blue), modulate(texel >>> 24, command.alpha));
+			}
+			
+			int srcAlpha = color >>> 24;
+			if (srcAlpha == 255) {
+				pixels[row + i] = color;
+			} else if (srcAlpha != 0 || premultiplied && color != 0) {
+				pixels[row + i] = blend(pixels[row + i], color, premultiplied);
+			}
+		}
+	}
+	
+	/**
+	 * Finds the first step at which a linear function lies in [0, 1).
+	 * 
+	 * @param value
+	 *            the value of the function at step zero.
+	 * @param step
+	 *            the change in the function per step.
+	 * @param count
+	 *            the number of steps.
+	 * @return the first step in [0, count] at which the function lies in [0, 1).
+	 */
+	private static int spanStart(float value, float step, int count) {
+		
+		double start;
+		if (step > 0) {
+			start = Math.ceil(-value / (double) step);
+		} else if (step < 0) {
+			start = Math.floor((1 - value) / (double) step) + 1;
+		} else {
+			start = value >= 0 && value < 1 ? 0 : count;
+		}
+		return (int) Math.min(Math.max(start, 0), count);
+	}
+	
+	/**
+	 * Finds the step after the last at which a linear function lies in [0, 1).
+	 * 
+	 * @param value
+	 *            the value of the function at step zero.
+	 * @param step
+	 *            the change in the function per step.
+	 * @param count
+	 *            the number of steps.
+	 * @return the step in [0, count] after the last at which the function lies in
+	 *         [0, 1).
+	 */
+	private static int spanEnd(float value, float step, int count) {
+		
+		double end;
+		if (step > 0) {
+			end = Math.ceil((1 - value) / (double) step);
+		} else if (step < 0) {
+			end = Math.floor(-value / (double) step) + 1;
+		} else {
+			end = value >= 0 && value < 1 ? count : 0;
+		}
+		return (int) Math.min(Math.max(end, 0), count);
+	}
+	
+	/**
+	 * Samples a texture with bilinear filtering, repeating it in both directions.
+	 * 
+	 * @param texels
+	 *            the packed texels.
+	 * @param width
+	 *            the width of the texture.
+	 * @param height
+	 *            the height of the texture.
+	 * @param s
+	 *            the horizontal texel coordinate, relative to texel centers.
+	 * @param t
+	 *            the vertical texel coordinate, relative to texel centers.
+	 * @return the packed filtered color.
+	 */
+	private static int sampleLinear(int[] texels, int width, int height, float s, float t) {
+		
+		int x0 = (int) Math.floor(s);
+		int y0 = (int) Math.floor(t);
+		int fx = (int) ((s - x0) * 256);
+		int fy = (int) ((t - y0) * 256);
+		
+		int x1 = Math.floorMod(x0 + 1, width);
+		int y1 = Math.floorMod(y0 + 1, height) * width;
+		x0 = Math.floorMod(x0, width);
+		y0 = Math.floorMod(y0, height) * width;
+		
+		int c00 = texels[y0 + x0];
+		int c10 = texels[y0 + x1];
+		int c01 = texels[y1 + x0];
+		int c11 = texels[y1 + x1];
+		
+		int result = 0;
+		for (int shift = 0; shift < 32; shift += 8) {
+			int top = ((c00 >>> shift & 0xFF) * (256 - fx) + (c10 >>> shift & 0xFF) * fx);
+			int bottom = ((c01 >>> shift & 0xFF) * (256 - fx) + (c11 >>> shift & 0xFF) * fx);
+			result |= (top * (256 - fy) + bottom * fy + 32768 >>> 16) << shift;
+		}
+		return result;
+	}
+	
+	/**
+	 * Multiplies a texel channel by a color component, clamping the result as the
+	 * framebuffer does.
+	 * 
+	 * @param channel
+	 *            the texel channel, in its lowest eight bits.
+	 * @param component
+	 *            the color component, in 16.16 fixed point.
+	 * @return the product, from 0 to 255.
+	 */
+	private static int modulate(int channel, int component) {
+		
+		return Math.min((int) ((long) (channel & 0xFF) * component + 32768 >> 16), 255);
+	}
+	
+	/**
+	 * Blends a source color onto a destination color, as OpenGL does with the
+	 * factors <code>GL_ONE, GL_ONE_MINUS_SRC_ALPHA</code> for premultiplied alpha,
+	 * and otherwise <code>GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA</code>. Both factors
+	 * apply to the alpha channel too.
+	 * 
+	 * @param dst
+	 *            the packed destination color.
+	 * @param src
+	 *            the packed source color.
+	 * @param premultiplied
+	 *            whether to blend with premultiplied alpha.
+	 * @return the packed blended color.
+	 */
+	private static int blend(int dst, int src, boolean premultiplied) {
+		
+		int srcAlpha = src >>> 24;
+		int dstFactor = 255 - srcAlpha;
+		int srcFactor = premultiplied ? 255 : srcAlpha;
+		
+		int r = div255((src & 0xFF) * srcFactor + (dst & 0xFF) * dstFactor);
+		int g = div255((src >>> 8 & 0xFF) * srcFactor + (dst >>> 8 & 0xFF) * dstFactor);
+		int b = div255((src >>> 16 & 0xFF) * srcFactor + (dst >>> 16 & 0xFF) * dstFactor);
+		int a = div255(srcAlpha * srcFactor + (dst >>> 24) * dstFactor);
+		return pack(Math.min(r, 255), Math.min(g, 255), Math.min(b, 255), Math.min(a, 255));
+	}
+	
+	/**
+	 * Divides by 255, rounding to the nearest integer.
+	 * 
+	 * @param value
+	 *            a non-negative value, less than 2^17.
+	 * @return the rounded quotient.
+	 */
+	private static int div255(int value) {
+		
+		value += 128;
+		return value + (value >>> 8) >>> 8;
+	}
+	
+	/**
+	 * Packs a color into an integer whose little-endian bytes are its red, green,
+	 * blue and alpha components, so that packed pixels can be copied straight into
+	 * an RGBA image.
+	 * 
+	 * @param r
+	 *            the red component, from 0 to 255.
+	 * @param g
+	 *            the green component, from 0 to 255.
+	 * @param b
+	 *            the blue component, from 0 to 255.
+	 * @param a
+	 *            the alpha component, from 0 to 255.
+	 * @return the packed color.
+	 */
+	private static int pack(int r, int g, int b, int a) {
+		
+		return r | g << 8 | b << 16 | a << 24;
+	}
+	
+	/**
+	 * Converts a color component to the framebuffer's precision.
+	 * 
+	 * @param component
+	 *            the color component, clamped to [0, 1].
+	 * @return the component, from 0 to 255.
+	 */
+	private static int toByte(float component) {
+		
+		return Math.round(Math.min(Math.max(component, 0f), 1f) * 255f);
+	}
+	
+	/**
+	 * Converts a color component to 16.16 fixed point, for modulating texels.
+	 * 
+	 * @param component
+	 *            the color component.
+	 * @return the component in 16.16 fixed point, clamped to [0, 256].
+	 */
+	private static int toFixed(float component) {
+		
+		return Math.round(Math.min(Math.max(component, 0f), 256f) * 65536f);
+	}
+	
+	/** A copy of an image's pixel data, packed for sampling. */
+	private static final class Texture {
+		
+		/** The packed texels, top row first. */
+		private final int[]	texels;
+		/** The width of the texture. */
+		private final int	width;
+		/** The height of the texture. */
+		private final int	height;
+		/** The version of the image's pixel data that was copied. */
+		private final int	version;
+		
+		/**
+		 * Constructs an empty texture.
+		 * 
+		 * @param width
+		 *            the width of the texture.
+		 * @param height
+		 *            the height of the texture.
+		 * @param version
+		 *            the version of the image's pixel data to be copied.
+		 */
+		private Texture(int width, int height, int version) {
+			
+			texels = new int[width * height];
+			this.width = width;
+			this.height = height;
+			this.version = version;
+		}
+	}
+	
+	/** A recorded draw call; the unit square under an affine map. */
+	private static final class Command {
+		
+		/** The texture to draw, or <code>null</code> to fill with the color. */
+		private Texture	texture;
+		/** The first column which may be covered. */
+		private int		minX;
+		/** The first row which may be covered. */
+		private int		minY;
+		/** The last column which may be covered. */
+		private int		maxX;
+		/** The last row which may be covered. */
+		private int		maxY;
+		/** The x-coordinate of the transformed origin. */
+		private float	originX;
+		/** The y-coordinate of the transformed origin. */
+		private float	originY;
+		/** The change in the u texture coordinate per pixel across. */
+		private float	dux;
+		/** The change in the u texture coordinate per pixel down. */
+		private float	duy;
+		/** The change in the v texture coordinate per pixel across. */
+		private float	dvx;
+		/** The change in the v texture coordinate per pixel down. */
+		private float	dvy;
+		/** The packed fill color of an untextured draw call. */
+		private int		color;
+		/** The red component of a textured draw call's color, in 16.16 fixed point. */
+		private int		red;
+		/** The green component of a textured draw call's color, in 16.16 fixed point. */
+		private int		green;
+		/** The blue component of a textured draw call's color, in 16.16 fixed point. */
+		private int		blue;
+		/** The alpha component of a textured draw call's color, in 16.16 fixed point. */
+		private int		alpha;
+		/** Whether the texels are multiplied by the color, which is not white. */
+		private boolean	modulated;
+		/** Whether the texture is sampled with bilinear filtering. */
+		private boolean	linear;
+		/** Whether the draw call blends with premultiplied alpha. */
+		private boolean	premultiplied;
+	}
+	
+	/** Rasterizes a range of tiles, splitting it across the pool. */
+	private final class TileTask extends RecursiveAction {
+		
+		/** Serialization version. */
+		private static final long serialVersionUID = 1L;
+		
+		/** The first tile of the range. */
+		private final int	from;
+		/** The tile after the last of the range. */
+		private final int	to;
+		
+		/**
+		 * Constructs a task rasterizing a range of tiles.
+		 * 
+		 * @param from
+		 *            the first tile of the range.
+		 * @param to
+		 *            the tile after the last of the range.
+		 */
+		private TileTask(int from, int to) {
+			
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			
+			if (to - from == 1) {
+				rasterizeTile(from);
+				return;
+			}
+			
+			int middle = (from + to) >>> 1;
+			invokeAll(new TileTask(from, middle), new TileTask(middle, to));
+		}
+	}
+}
@@ -0,0 +1,23 @@
+package net.mmarss.grease.input;
+
+/**
+ * Receives the edges of the actions of an input map, as they are evaluated.
+ */
+public interface ActionListener {
+	
+	/**
+	 * Called when an action becomes active. Does nothing by default.
+	 * 
+	 * @param action
+	 *            the name of the action.
+	 */
+	public default void actionStarted(String action) {}
+	
+	/**
+	 * Called when an action stops being active. Does nothing by default.
+	 * 
+	 * @param action
+	 *            the name of the action.
+	 */
+	public default void actionEnded(String action) {}
+}
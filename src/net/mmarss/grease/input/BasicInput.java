@@ -22,4 +22,103 @@ public interface BasicInput {
 	 * @return a key state corresponding to the specified key's state.
 	 */
 	public KeyState getKeyState(Key key);
+	
+	/**
+	 * Checks whether the specified key was pressed since the last update, even if
+	 * it has been released again since.
+	 * 
+	 * @param key
+	 *            the key to check.
+	 * @return <code>true</code> if the key was pressed since the last update.
+	 */
+	public boolean wasPressed(Key key);
+	
+	/**
+	 * Checks whether the specified key was released since the last update, even if
+	 * it has been pressed again since.
+	 * 
+	 * @param key
+	 *            the key to check.
+	 * @return <code>true</code> if the key was released since the last update.
+	 */
+	public boolean wasReleased(Key key);
+	
+	/**
+	 * Gets the modifier keys held during the last key event, as a GLFW bit field.
+	 * Test it with <code>KeyModifier.isSet</code>.
+	 * 
+	 * @return the bit field of the modifier keys.
+	 */
+	public int getModifiers();
+	
+	/**
+	 * Checks whether the specified mouse button is currently pressed.
+	 * 
+	 * @param button
+	 *            the button to check.
+	 * @return <code>true</code> if the button is down.
+	 */
+	public boolean isButtonDown(MouseButton button);
+	
+	/**
+	 * Checks whether the specified mouse button was pressed since the last
+	 * update, even if it has been released again since.
+	 * 
+	 * @param button
+	 *            the button to check.
+	 * @return <code>true</code> if the button was pressed since the last update.
+	 */
+	public boolean wasButtonPressed(MouseButton button);
+	
+	/**
+	 * Checks whether the specified mouse button was released since the last
+	 * update, even if it has been pressed again since.
+	 * 
+	 * @param button
+	 *            the button to check.
+	 * @return <code>true</code> if the button was released since the last update.
+	 */
+	public boolean wasButtonReleased(MouseButton button);
+	
+	/**
+	 * @return the x-coordinate of the cursor, in screen coordinates relative to
+	 *         the window's left edge.
+	 */
+	public double getCursorX();
+	
+	/**
+	 * @return the y-coordinate of the cursor, in screen coordinates relative to
+	 *         the window's top edge.
+	 */
+	public double getCursorY();
+	
+	/**
+	 * @return the horizontal motion of the cursor since the last update.
+	 */
+	public double getCursorDeltaX();
+	
+	/**
+	 * @return the vertical motion of the cursor since the last update.
+	 */
+	public double getCursorDeltaY();
+	
+	/**
+	 * @return the horizontal scroll offset since the last update.
+	 */
+	public double getScrollX();
+	
+	/**
+	 * @return the vertical scroll offset since the last update.
+	 */
+	public double getScrollY();
+	
+	/**
+	 * Gets a snapshot of a gamepad's state, taken at the start of this update.
+	 * The snapshot is reused, so it must not be kept beyond the update.
+	 * 
+	 * @param gamepad
+	 *            the index of the gamepad, from 0 to 3.
+	 * @return the gamepad's state.
+	 */
+	public GamepadState getGamepad(int gamepad);
 }
@@ -0,0 +1,131 @@
+package net.mmarss.grease.input;
+
+/**
+ * Coalesces cursor motion and scrolling between two updates. A high-rate mouse
+ * can report a thousand positions a second, so instead of queuing every event
+ * the accumulator keeps the latest position, the summed scroll offsets, and a
+ * bounded path of sampled positions. When the path fills up, every other sample
+ * is discarded and the sampling interval doubles, so the path stays evenly
+ * spaced over the whole interval; the last sample is always the latest
+ * position.
+ * 
+ * Motion is added by the thread receiving events and drained by the thread
+ * updating the game. Both sides synchronize on the accumulator.
+ */
+/* package */ final class CursorAccumulator {
+	
+	/** The number of positions the path can hold. Even. */
+	/* package */ static final int PATH_CAPACITY = 64;
+	
+	/** The x-coordinates of the sampled positions. */
+	private final double[]	pathX		= new double[PATH_CAPACITY];
+	/** The y-coordinates of the sampled positions. */
+	private final double[]	pathY		= new double[PATH_CAPACITY];
+	/** The times of the sampled positions, in nanoseconds. */
+	private final long[]	pathTimes	= new long[PATH_CAPACITY];
+	/** The number of sampled positions. */
+	private int				pathLength	= 0;
+	
+	/** The number of moves between samples. */
+	private int	stride	= 1;
+	/** The number of moves since the last sample was appended. */
+	private int	skipped	= 0;
+	
+	/** The summed horizontal scroll offset. */
+	private double	scrollX	= 0;
+	/** The summed vertical scroll offset. */
+	private double	scrollY	= 0;
+	
+	/**
+	 * Adds a cursor position.
+	 * 
+	 * @param x
+	 *            the x-coordinate of the cursor.
+	 * @param y
+	 *            the y-coordinate of the cursor.
+	 * @param time
+	 *            the time of the move, in nanoseconds.
+	 */
+	/* package */ synchronized void move(double x, double y, long time) {
+		
+		if (pathLength == 0 || ++skipped >= stride) {
+			if (pathLength == PATH_CAPACITY) {
+				compact();
+			}
+			pathLength++;
+			skipped = 0;
+		}
+		
+		// The last sample always holds the latest position
+		int last = pathLength - 1;
+		pathX[last] = x;
+		pathY[last] = y;
+		pathTimes[last] = time;
+	}
+	
+	/**
+	 * Adds a scroll offset.
+	 * 
+	 * @param x
+	 *            the horizontal offset.
+	 * @param y
+	 *            the vertical offset.
+	 */
+	/* package */ synchronized void scroll(double x, double y) {
+		
+		scrollX += x;
+		scrollY += y;
+	}
+	
+	/**
+	 * Moves the accumulated motion into the specified arrays, and resets the
+	 * accumulator.
+	 * 
+	 * @param x
+	 *            receives the x-coordinates of the sampled path. Must hold
+	 *            <code>PATH_CAPACITY</code> elements.
+	 * @param y
+	 *            receives the y-coordinates of the sampled path.
+	 * @param times
+	 *            receives the times of the sampled path.
+	 * @param scroll
+	 *            receives the summed horizontal and vertical scroll offsets.
+	 * @return the number of positions in the sampled path.
+	 */
+	/* package */ synchronized int drain(double[] x, double[] y, long[] times, double[] scroll) {
+		
+		int length = pathLength;
+		System.arraycopy(pathX, 0, x, 0, length);
+		System.arraycopy(pathY, 0, y, 0, length);
+		System.arraycopy(pathTimes, 0, times, 0, length);
+		scroll[0] = scrollX;
+		scroll[1] = scrollY;
+		
+		pathLength = 0;
+		stride = 1;
+		skipped = 0;
+		scrollX = 0;
+		scrollY = 0;
+		return length;
+	}
+	
+	/**
+	 * Halves the path by keeping every other sample, always keeping the last, and
+	 * doubles the sampling interval.
+	 */
+	private void compact() {
+		
+		int half = PATH_CAPACITY / 2;
+		for (int i = 1; i < half - 1; i++) {
+			pathX[i] = pathX[i * 2];
+			pathY[i] = pathY[i * 2];
+			pathTimes[i] = pathTimes[i * 2];
+		}
+		
+		pathX[half - 1] = pathX[PATH_CAPACITY - 1];
+		pathY[half - 1] = pathY[PATH_CAPACITY - 1];
+		pathTimes[half - 1] = pathTimes[PATH_CAPACITY - 1];
+		pathLength = half;
+		stride *= 2;
+	}
+}
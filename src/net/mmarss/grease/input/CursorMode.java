@@ -0,0 +1,45 @@
+package net.mmarss.grease.input;
+
+import static org.lwjgl.glfw.GLFW.GLFW_CURSOR_DISABLED;
+import static org.lwjgl.glfw.GLFW.GLFW_CURSOR_HIDDEN;
+import static org.lwjgl.glfw.GLFW.GLFW_CURSOR_NORMAL;
+
+/**
+ * An enumeration of the ways the window can treat the cursor.
+ */
+public enum CursorMode {
+	
+	/** The cursor is visible and moves freely. */
+	NORMAL(GLFW_CURSOR_NORMAL),
+	/** The cursor is hidden while over the window, but moves freely. */
+	HIDDEN(GLFW_CURSOR_HIDDEN),
+	/**
+	 * The cursor is hidden and locked to the window, and positions are unbounded,
+	 * so that only the cursor deltas are meaningful. Use this for mouse look.
+	 * Motion is still subject to the system's pointer acceleration; the GLFW build
+	 * bundled with LWJGL 3.1.3 predates the raw mouse motion hint.
+	 */
+	DISABLED(GLFW_CURSOR_DISABLED);
+	
+	/** The GLFW input mode value for this mode. */
+	private final int value;
+	
+	/**
+	 * Constructs a cursor mode constant.
+	 * 
+	 * @param value
+	 *            the GLFW input mode value for the mode.
+	 */
+	private CursorMode(int value) {
+		
+		this.value = value;
+	}
+	
+	/**
+	 * @return the value to pass to GLFW for this mode.
+	 */
+	public int getValue() {
+		
+		return value;
+	}
+}
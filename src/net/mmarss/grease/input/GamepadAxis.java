@@ -0,0 +1,67 @@
+package net.mmarss.grease.input;
+
+import static org.lwjgl.glfw.GLFW.*;
+
+/**
+ * An enumeration of the axes of a standard gamepad, as laid out by GLFW's
+ * gamepad mappings. Stick axes range from -1 to 1, with positive y pointing
+ * down; trigger axes range from 0 when released to 1 when fully pressed.
+ */
+public enum GamepadAxis {
+	
+	/** The horizontal axis of the left stick. */
+	LEFT_X(GLFW_GAMEPAD_AXIS_LEFT_X, 0.15f),
+	/** The vertical axis of the left stick. */
+	LEFT_Y(GLFW_GAMEPAD_AXIS_LEFT_Y, 0.15f),
+	/** The horizontal axis of the right stick. */
+	RIGHT_X(GLFW_GAMEPAD_AXIS_RIGHT_X, 0.15f),
+	/** The vertical axis of the right stick. */
+	RIGHT_Y(GLFW_GAMEPAD_AXIS_RIGHT_Y, 0.15f),
+	/** The left trigger. */
+	LEFT_TRIGGER(GLFW_GAMEPAD_AXIS_LEFT_TRIGGER, 0.05f),
+	/** The right trigger. */
+	RIGHT_TRIGGER(GLFW_GAMEPAD_AXIS_RIGHT_TRIGGER, 0.05f);
+	
+	/** The GLFW gamepad axis index for this axis. */
+	private final int	ID;
+	/** The default deadzone for this axis. */
+	private final float	defaultDeadzone;
+	
+	/**
+	 * Constructs an axis constant.
+	 * 
+	 * @param id
+	 *            the axis's GLFW gamepad axis index.
+	 * @param defaultDeadzone
+	 *            the default deadzone for the axis.
+	 */
+	private GamepadAxis(int id, float defaultDeadzone) {
+		
+		ID = id;
+		this.defaultDeadzone = defaultDeadzone;
+	}
+	
+	/**
+	 * @return this axis's GLFW gamepad axis index.
+	 */
+	public int getId() {
+		
+		return ID;
+	}
+	
+	/**
+	 * @return the deadzone applied to this axis unless another is set.
+	 */
+	public float getDefaultDeadzone() {
+		
+		return defaultDeadzone;
+	}
+	
+	/**
+	 * @return <code>true</code> if this axis is a trigger, ranging from 0 to 1.
+	 */
+	public boolean isTrigger() {
+		
+		return this == LEFT_TRIGGER || this == RIGHT_TRIGGER;
+	}
+}
@@ -0,0 +1,48 @@
+package net.mmarss.grease.input;
+
+import static org.lwjgl.glfw.GLFW.*;
+
+/**
+ * An enumeration of the buttons of a standard gamepad, as laid out by GLFW's
+ * gamepad mappings. Face buttons are named for the Xbox layout.
+ */
+public enum GamepadButton {
+	
+	BUTTON_A(GLFW_GAMEPAD_BUTTON_A),
+	BUTTON_B(GLFW_GAMEPAD_BUTTON_B),
+	BUTTON_X(GLFW_GAMEPAD_BUTTON_X),
+	BUTTON_Y(GLFW_GAMEPAD_BUTTON_Y),
+	BUTTON_LEFT_BUMPER(GLFW_GAMEPAD_BUTTON_LEFT_BUMPER),
+	BUTTON_RIGHT_BUMPER(GLFW_GAMEPAD_BUTTON_RIGHT_BUMPER),
+	BUTTON_BACK(GLFW_GAMEPAD_BUTTON_BACK),
+	BUTTON_START(GLFW_GAMEPAD_BUTTON_START),
+	BUTTON_GUIDE(GLFW_GAMEPAD_BUTTON_GUIDE),
+	BUTTON_LEFT_THUMB(GLFW_GAMEPAD_BUTTON_LEFT_THUMB),
+	BUTTON_RIGHT_THUMB(GLFW_GAMEPAD_BUTTON_RIGHT_THUMB),
+	BUTTON_DPAD_UP(GLFW_GAMEPAD_BUTTON_DPAD_UP),
+	BUTTON_DPAD_RIGHT(GLFW_GAMEPAD_BUTTON_DPAD_RIGHT),
+	BUTTON_DPAD_DOWN(GLFW_GAMEPAD_BUTTON_DPAD_DOWN),
+	BUTTON_DPAD_LEFT(GLFW_GAMEPAD_BUTTON_DPAD_LEFT);
+	
+	/** The GLFW gamepad button index for this button. */
+	private final int ID;
+	
+	/**
+	 * Constructs a button constant with the specified ID.
+	 * 
+	 * @param id
+	 *            the button's GLFW gamepad button index.
+	 */
+	private GamepadButton(int id) {
+		
+		ID = id;
+	}
+	
+	/**
+	 * @return this button's GLFW gamepad button index.
+	 */
+	public int getId() {
+		
+		return ID;
+	}
+}
@@ -0,0 +1,207 @@
+package net.mmarss.grease.input;
+
+/**
+ * A snapshot of a gamepad's buttons and axes, taken once per update. Snapshots
+ * are preallocated and reused by the input manager, so they must not be kept
+ * beyond the update they were obtained in.
+ */
+public final class GamepadState {
+	
+	/** The number of axes of a gamepad. */
+	/* package */ static final int AXES = GamepadAxis.values().length;
+	
+	/** Whether the gamepad is connected. */
+	private boolean			connected		= false;
+	/** The bitset of buttons pressed, by ordinal. */
+	private int				buttons			= 0;
+	/** The bitset of buttons pressed in the previous snapshot, by ordinal. */
+	private int				previousButtons	= 0;
+	/** The axis values, by ordinal. */
+	private final float[]	axes			= new float[AXES];
+	
+	/**
+	 * Constructs a new snapshot of a disconnected gamepad.
+	 */
+	/* package */ GamepadState() {}
+	
+	/**
+	 * @return <code>true</code> if the gamepad is connected.
+	 */
+	public boolean isConnected() {
+		
+		return connected;
+	}
+	
+	/**
+	 * Checks whether the specified button is currently pressed.
+	 * 
+	 * @param button
+	 *            the button to check.
+	 * @return <code>true</code> if the button is down.
+	 */
+	public boolean isButtonDown(GamepadButton button) {
+		
+		return (buttons & (1 << button.ordinal())) != 0;
+	}
+	
+	/**
+	 * Checks whether the specified button was pressed since the last update.
+	 * 
+	 * @param button
+	 *            the button to check.
+	 * @return <code>true</code> if the button went down since the last update.
+	 */
+	public boolean wasButtonPressed(GamepadButton button) {
+		
+		return (buttons & ~previousButtons & (1 << button.ordinal())) != 0;
+	}
+	
+	/**
+	 * Checks whether the specified button was released since the last update.
+	 * 
+	 * @param button
+	 *            the button to check.
+	 * @return <code>true</code> if the button went up since the last update.
+	 */
+	public boolean wasButtonReleased(GamepadButton button) {
+		
+		return (~buttons & previousButtons & (1 << button.ordinal())) != 0;
+	}
+	
+	/**
+	 * Gets the value of the specified axis, after deadzone filtering.
+	 * 
+	 * @param axis
+	 *            the axis to get.
+	 * @return the axis value; from -1 to 1 for sticks, or from 0 to 1 for
+	 *         triggers.
+	 */
+	public float getAxis(GamepadAxis axis) {
+		
+		return axes[axis.ordinal()];
+	}
+	
+	/**
+	 * @return the bitset of buttons pressed, by ordinal.
+	 */
+	/* package */ int getButtons() {
+		
+		return buttons;
+	}
+	
+	/**
+	 * Sets whether the gamepad is connected. Disconnecting clears the buttons and
+	 * axes.
+	 * 
+	 * @param connected
+	 *            <code>true</code> if the gamepad is connected.
+	 */
+	/* package */ void setConnected(boolean connected) {
+		
+		this.connected = connected;
+		if (!connected) {
+			buttons = 0;
+			for (int i = 0; i < AXES; i++) {
+				axes[i] = 0;
+			}
+		}
+	}
+	
+	/**
+	 * Sets the bitset of buttons pressed.
+	 * 
+	 * @param buttons
+	 *            the bitset of buttons pressed, by ordinal.
+	 */
+	/* package */ void setButtons(int buttons) {
+		
+		this.buttons = buttons;
+	}
+	
+	/**
+	 * Sets the value of an axis.
+	 * 
+	 * @param ordinal
+	 *            the ordinal of the axis.
+	 * @param value
+	 *            the axis value.
+	 */
+	/* package */ void setAxis(int ordinal, float value) {
+		
+		axes[ordinal] = value;
+	}
+	
+	/**
+	 * Takes the next snapshot from a polled state, applying deadzones to its axes.
+	 * The buttons of this snapshot become the previous buttons.
+	 * 
+	 * @param polled
+	 *            the polled state.
+	 * @param deadzones
+	 *            the deadzone of each axis, by ordinal.
+	 */
+	/* package */ void update(GamepadState polled, float[] deadzones) {
+		
+		previousButtons = buttons;
+		connected = polled.connected;
+		buttons = polled.buttons;
+		for (int i = 0; i < AXES; i++) {
+			axes[i] = applyDeadzone(polled.axes[i], deadzones[i]);
+		}
+	}
+	
+	/**
+	 * Checks whether this state matches another.
+	 * 
+	 * @param other
+	 *            the state to compare with.
+	 * @return <code>true</code> if the connection, buttons and axes all match.
+	 */
+	/* package */ boolean matches(GamepadState other) {
+		
+		if (connected != other.connected || buttons != other.buttons) {
+			return false;
+		}
+		
+		for (int i = 0; i < AXES; i++) {
+			if (axes[i] != other.axes[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Copies the connection, buttons and axes of another state.
+	 * 
+	 * @param other
+	 *            the state to copy.
+	 */
+	/* package */ void copy(GamepadState other) {
+		
+		connected = other.connected;
+		buttons = other.buttons;
+		System.arraycopy(other.axes, 0, axes, 0, AXES);
+	}
+	
+	/**
+	 * Zeroes an axis value within the deadzone, and rescales the rest of its range
+	 * so that the output still rises smoothly from 0 at the deadzone's edge.
+	 * 
+	 * @param value
+	 *            the raw axis value.
+	 * @param deadzone
+	 *            the deadzone, from 0 to 1.
+	 * @return the filtered axis value.
+	 */
+	/* package */ static float applyDeadzone(float value, float deadzone) {
+		
+		float magnitude = Math.abs(value);
+		if (magnitude <= deadzone) {
+			return 0;
+		}
+		
+		float scaled = Math.min((magnitude - deadzone) / (1 - deadzone), 1);
+		return value < 0 ? -scaled : scaled;
+	}
+}
@@ -0,0 +1,167 @@
+package net.mmarss.grease.input;
+
+/**
+ * A bounded ring buffer of timestamped key events, stored in parallel primitive
+ * arrays so that queuing and draining events never allocates. Events are
+ * queued by the thread receiving them and drained by the thread updating the
+ * game; one producer and one consumer may run concurrently. When the buffer is
+ * full, new events are dropped and counted.
+ */
+/* package */ final class InputEventQueue {
+	
+	/** The default number of events the queue can hold. A power of two. */
+	/* package */ static final int DEFAULT_CAPACITY = 256;
+	
+	/** The ordinal of each event's key. */
+	private final int[]		keys;
+	/** The ordinal of each event's action. */
+	private final byte[]	actions;
+	/** The GLFW modifier bits of each event. */
+	private final int[]		modifiers;
+	/** The time of each event, in nanoseconds. */
+	private final long[]	times;
+	/** The mask mapping sequence numbers to slots. */
+	private final int		mask;
+	
+	/** The sequence number of the next event to drain. Written by the consumer. */
+	private volatile int	head	= 0;
+	/** The sequence number of the next event to queue. Written by the producer. */
+	private volatile int	tail	= 0;
+	/** The number of events dropped because the queue was full. */
+	private volatile long	dropped	= 0;
+	
+	/**
+	 * Constructs a new empty queue with the default capacity.
+	 */
+	/* package */ InputEventQueue() {
+		
+		this(DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * Constructs a new empty queue.
+	 * 
+	 * @param capacity
+	 *            the number of events the queue can hold. Must be a power of two.
+	 */
+	/* package */ InputEventQueue(int capacity) {
+		
+		keys = new int[capacity];
+		actions = new byte[capacity];
+		modifiers = new int[capacity];
+		times = new long[capacity];
+		mask = capacity - 1;
+	}
+	
+	/**
+	 * Queues an event, unless the queue is full.
+	 * 
+	 * @param key
+	 *            the ordinal of the event's key.
+	 * @param action
+	 *            the ordinal of the event's action.
+	 * @param modifierBits
+	 *            the GLFW modifier bits of the event.
+	 * @param time
+	 *            the time of the event, in nanoseconds.
+	 * @return <code>true</code> if the event was queued, or <code>false</code> if
+	 *         it was dropped.
+	 */
+	/* package */ boolean offer(int key, int action, int modifierBits, long time) {
+		
+		int t = tail;
+		if (t - head > mask) {
+			dropped++;
+			return false;
+		}
+		
+		int slot = t & mask;
+		keys[slot] = key;
+		actions[slot] = (byte) action;
+		modifiers[slot] = modifierBits;
+		times[slot] = time;
+		
+		// Publish the event only once its slot has been written
+		tail = t + 1;
+		return true;
+	}
+	
+	/**
+	 * @return the number of events waiting to be drained.
+	 */
+	/* package */ int size() {
+		
+		return tail - head;
+	}
+	
+	/**
+	 * Gets the key of a waiting event.
+	 * 
+	 * @param index
+	 *            the index of the event among those waiting, less than
+	 *            <code>size()</code>.
+	 * @return the ordinal of the event's key.
+	 */
+	/* package */ int getKey(int index) {
+		
+		return keys[(head + index) & mask];
+	}
+	
+	/**
+	 * Gets the action of a waiting event.
+	 * 
+	 * @param index
+	 *            the index of the event among those waiting, less than
+	 *            <code>size()</code>.
+	 * @return the ordinal of the event's action.
+	 */
+	/* package */ int getAction(int index) {
+		
+		return actions[(head + index) & mask];
+	}
+	
+	/**
+	 * Gets the modifiers of a waiting event.
+	 * 
+	 * @param index
+	 *            the index of the event among those waiting, less than
+	 *            <code>size()</code>.
+	 * @return the GLFW modifier bits of the event.
+	 */
+	/* package */ int getModifiers(int index) {
+		
+		return modifiers[(head + index) & mask];
+	}
+	
+	/**
+	 * Gets the time of a waiting event.
+	 * 
+	 * @param index
+	 *            the index of the event among those waiting, less than
+	 *            <code>size()</code>.
+	 * @return the time of the event, in nanoseconds.
+	 */
+	/* package */ long getTime(int index) {
+		
+		return times[(head + index) & mask];
+	}
+	
+	/**
+	 * Removes waiting events from the front of the queue, freeing their slots.
+	 * 
+	 * @param count
+	 *            the number of events to remove, at most <code>size()</code>.
+	 */
+	/* package */ void remove(int count) {
+		
+		head += count;
+	}
+	
+	/**
+	 * @return the number of events dropped because the queue was full.
+	 */
+	/* package */ long getDropped() {
+		
+		return dropped;
+	}
+}
@@ -0,0 +1,68 @@
+package net.mmarss.grease.input;
+
+/**
+ * Receives every input event registered with an input manager, before it is
+ * applied to the input state.
+ */
+@FunctionalInterface
+public interface InputListener {
+	
+	/**
+	 * Called when an action is triggered on a key.
+	 * 
+	 * @param key
+	 *            the key on which an action has been triggered.
+	 * @param keyAction
+	 *            the action that was triggered for the key.
+	 * @param modifiers
+	 *            the GLFW bit field of the modifier keys that are currently
+	 *            pressed.
+	 */
+	public void keyEvent(Key key, KeyAction keyAction, int modifiers);
+	
+	/**
+	 * Called when an action is triggered on a mouse button. Does nothing by
+	 * default.
+	 * 
+	 * @param button
+	 *            the button on which an action has been triggered.
+	 * @param action
+	 *            the action that was triggered for the button.
+	 * @param modifiers
+	 *            the GLFW bit field of the modifier keys that are currently
+	 *            pressed.
+	 */
+	public default void mouseButtonEvent(MouseButton button, KeyAction action, int modifiers) {}
+	
+	/**
+	 * Called for each sampled cursor position processed. Does nothing by default.
+	 * 
+	 * @param x
+	 *            the x-coordinate of the cursor.
+	 * @param y
+	 *            the y-coordinate of the cursor.
+	 */
+	public default void cursorEvent(double x, double y) {}
+	
+	/**
+	 * Called with the scrolling coalesced since the last update, if any. Does
+	 * nothing by default.
+	 * 
+	 * @param x
+	 *            the horizontal offset.
+	 * @param y
+	 *            the vertical offset.
+	 */
+	public default void scrollEvent(double x, double y) {}
+	
+	/**
+	 * Called when the polled state of a gamepad changes, before deadzones are
+	 * applied. Does nothing by default.
+	 * 
+	 * @param gamepad
+	 *            the index of the gamepad.
+	 * @param state
+	 *            the polled state. Only valid during the call.
+	 */
+	public default void gamepadEvent(int gamepad, GamepadState state) {}
+}
@@ -1,27 +1,177 @@
 package net.mmarss.grease.input;
 
-import java.util.EnumSet;
+import static org.lwjgl.glfw.GLFW.GLFW_JOYSTICK_1;
+import static org.lwjgl.glfw.GLFW.GLFW_PRESS;
+import static org.lwjgl.glfw.GLFW.glfwGetGamepadState;
+
+import java.util.Arrays;
 import java.util.Set;
 
+import org.lwjgl.glfw.GLFWGamepadState;
+
+import net.mmarss.grease.core.Clock;
+import net.mmarss.grease.core.SystemClock;
+import net.mmarss.grease.exception.GreaseInvalidArgumentException;
+
 /**
- * Manages the input state.
+ * Manages the input state. Input events are queued with a timestamp as they
+ * arrive, and only applied to the input state when <code>processEvents</code>
+ * is called at the start of each update. Every event reaches the game, so a key
+ * pressed and released between two updates is still seen as pressed and
+ * released by <code>wasPressed</code> and <code>wasReleased</code>.
+ * 
+ * Key states are kept as bitsets indexed by key ordinal, so neither queuing nor
+ * processing events allocates.
+ * 
+ * Mouse buttons are queued like keys. Cursor motion and scrolling are coalesced
+ * instead, so that a high-rate mouse cannot flood the queue; each update sees
+ * the cursor's latest position, its motion since the previous update, and a
+ * bounded, evenly sampled path of the positions in between.
+ * 
+ * Gamepads are polled once per frame by the window into preallocated states,
+ * and each update takes a snapshot of them with deadzones applied, so that
+ * button edges can be detected by comparing consecutive snapshots.
  */
 public class InputManager implements BasicInput {
 	
+	/** The cached array of every key. */
+	private static final Key[]			KEYS	= Key.values();
+	/** The cached array of every key action. */
+	private static final KeyAction[]	ACTIONS	= KeyAction.values();
+	/** The cached array of every mouse button. */
+	private static final MouseButton[]	BUTTONS	= MouseButton.values();
+	/** The cached array of every gamepad axis. */
+	private static final GamepadAxis[]	AXES	= GamepadAxis.values();
+	/** The number of gamepad buttons. */
+	private static final int			GAMEPAD_BUTTONS	= GamepadButton.values().length;
+	
+	/** The number of gamepads polled. */
+	public static final int MAX_GAMEPADS = 4;
+	
+	/** The number of words in each key bitset. */
+	/* package */ static final int WORDS = (KEYS.length + 63) >>> 6;
+	
+	/** The input events waiting to be processed. */
+	private final InputEventQueue	events		= new InputEventQueue();
+	/** The bitset of keys currently pressed, by ordinal. */
+	private final long[]			keysDown	= new long[WORDS];
+	/** The bitset of keys pressed since the last events were processed, by ordinal. */
+	private final long[]			pressed		= new long[WORDS];
+	/** The bitset of keys released since the last events were processed, by ordinal. */
+	private final long[]			released	= new long[WORDS];
+	/** The time of the last event processed for each key in nanoseconds, by ordinal. */
+	private final long[]			keyTimes	= new long[KEYS.length];
+	
+	/** The GLFW modifier bits of the last key event processed. */
+	private int modifiers = 0;
+	
+	/** The mouse button events waiting to be processed. */
+	private final InputEventQueue	buttonEvents	= new InputEventQueue();
+	/** The bitset of mouse buttons currently pressed, by ordinal. */
+	private int						buttonsDown		= 0;
+	/** The bitset of mouse buttons pressed since the last events were processed. */
+	private int						buttonsPressed	= 0;
+	/** The bitset of mouse buttons released since the last events were processed. */
+	private int						buttonsReleased	= 0;
+	
+	/** The cursor motion and scrolling waiting to be processed. */
+	private final CursorAccumulator	cursor		= new CursorAccumulator();
+	/** The x-coordinates of the cursor path since the last update. */
+	private final double[]			pathX		= new double[CursorAccumulator.PATH_CAPACITY];
+	/** The y-coordinates of the cursor path since the last update. */
+	private final double[]			pathY		= new double[CursorAccumulator.PATH_CAPACITY];
+	/** The times of the cursor path since the last update, in nanoseconds. */
+	private final long[]			pathTimes	= new long[CursorAccumulator.PATH_CAPACITY];
+	/** The scroll offsets since the last update, horizontal then vertical. */
+	private final double[]			scroll		= new double[2];
+	/** The number of positions in the cursor path since the last update. */
+	private int						pathLength	= 0;
+	
+	/** The gamepad states written by polling, guarded by the array's lock. */
+	private final GamepadState[]	polledGamepads		= new GamepadState[MAX_GAMEPADS];
+	/** The polled gamepad states last reported to the listener. */
+	private final GamepadState[]	reportedGamepads	= new GamepadState[MAX_GAMEPADS];
+	/** The gamepad snapshots seen by the game. */
+	private final GamepadState[]	gamepads			= new GamepadState[MAX_GAMEPADS];
+	/** The deadzone of each gamepad axis, by ordinal. */
+	private final float[]			deadzones			= new float[GamepadState.AXES];
+	/** The GLFW structure gamepads are polled into, or <code>null</code> until first polled. */
+	private GLFWGamepadState		glfwGamepadState	= null;
+	
+	/** Whether the cursor position is known. */
+	private boolean	hasCursor	= false;
+	/** The x-coordinate of the cursor. */
+	private double	cursorX		= 0;
+	/** The y-coordinate of the cursor. */
+	private double	cursorY		= 0;
+	/** The horizontal motion of the cursor since the last update. */
+	private double	cursorDeltaX	= 0;
+	/** The vertical motion of the cursor since the last update. */
+	private double	cursorDeltaY	= 0;
+	
+	/** The listener notified of every input event, or <code>null</code>. */
+	private InputListener listener = null;
+	
+	/** The clock stamping input events as they arrive. */
+	private volatile Clock clock = SystemClock.getInstance();
+	
 	/**
-	 * A collection of currently pressed keys.
+	 * Constructs a new input manager with no keys pressed.
 	 */
-	private Set< Key > keysDown;
-	
 	public InputManager() {
 		
-		keysDown = EnumSet.noneOf(Key.class);
+		for (int i = 0; i < MAX_GAMEPADS; i++) {
+			polledGamepads[i] = new GamepadState();
+			reportedGamepads[i] = new GamepadState();
+			gamepads[i] = new GamepadState();
+		}
+		
+		for (GamepadAxis axis : AXES) {
+			deadzones[axis.ordinal()] = axis.getDefaultDeadzone();
+		}
+	}
+	
+	/**
+	 * Sets the listener notified of every input event as it is processed, before
+	 * it is applied to the input state. Used to record input.
+	 * 
+	 * @param listener
+	 *            the new listener, or <code>null</code> to remove the listener.
+	 */
+	public void setInputListener(InputListener listener) {
+		
+		this.listener = listener;
+	}
+	
+	/**
+	 * Sets the clock stamping input events as they arrive, which by default follows
+	 * the system time. Set to the clock driving the game, so event times compare
+	 * with frame times. Can be called from any thread.
+	 * 
+	 * @param clock
+	 *            the clock to use.
+	 */
+	public void setClock(Clock clock) {
+		
+		if (clock == null) {
+			throw new GreaseInvalidArgumentException("clock", clock, "Clocks must be non-null.");
+		}
+		
+		this.clock = clock;
+	}
+	
+	/**
+	 * @return the clock stamping input events as they arrive.
+	 */
+	public Clock getClock() {
+		
+		return clock;
 	}
 	
 	@Override
 	public boolean isKeyDown(Key key) {
 		
-		return keysDown.contains(key);
+		return isSet(keysDown, key.ordinal());
 	}
 	
 	@Override
@@ -30,8 +180,184 @@ public class InputManager implements BasicInput {
 		return isKeyDown(key) ? KeyState.KEY_DOWN : KeyState.KEY_UP;
 	}
 	
+	@Override
+	public boolean wasPressed(Key key) {
+		
+		return isSet(pressed, key.ordinal());
+	}
+	
+	@Override
+	public boolean wasReleased(Key key) {
+		
+		return isSet(released, key.ordinal());
+	}
+	
+	@Override
+	public int getModifiers() {
+		
+		return modifiers;
+	}
+	
+	@Override
+	public boolean isButtonDown(MouseButton button) {
+		
+		return (buttonsDown & (1 << button.ordinal())) != 0;
+	}
+	
+	@Override
+	public boolean wasButtonPressed(MouseButton button) {
+		
+		return (buttonsPressed & (1 << button.ordinal())) != 0;
+	}
+	
+	@Override
+	public boolean wasButtonReleased(MouseButton button) {
+		
+		return (buttonsReleased & (1 << button.ordinal())) != 0;
+	}
+	
+	@Override
+	public double getCursorX() {
+		
+		return cursorX;
+	}
+	
+	@Override
+	public double getCursorY() {
+		
+		return cursorY;
+	}
+	
+	@Override
+	public double getCursorDeltaX() {
+		
+		return cursorDeltaX;
+	}
+	
+	@Override
+	public double getCursorDeltaY() {
+		
+		return cursorDeltaY;
+	}
+	
+	@Override
+	public double getScrollX() {
+		
+		return scroll[0];
+	}
+	
+	@Override
+	public double getScrollY() {
+		
+		return scroll[1];
+	}
+	
+	@Override
+	public GamepadState getGamepad(int gamepad) {
+		
+		if (gamepad < 0 || gamepad >= MAX_GAMEPADS) {
+			throw new GreaseInvalidArgumentException("gamepad", gamepad, "Gamepads are numbered from 0 to "
+					+ (MAX_GAMEPADS - 1) + ".");
+		}
+		
+		return gamepads[gamepad];
+	}
+	
+	/**
+	 * Sets the deadzone of a gamepad axis, for every gamepad. Values within the
+	 * deadzone read as 0, and the rest of the range is rescaled to start from 0.
+	 * Takes effect from the next update.
+	 * 
+	 * @param axis
+	 *            the axis to set the deadzone of.
+	 * @param deadzone
+	 *            the deadzone, at least 0 and less than 1.
+	 */
+	public void setGamepadDeadzone(GamepadAxis axis, float deadzone) {
+		
+		if (!(deadzone >= 0 && deadzone < 1)) {
+			throw new GreaseInvalidArgumentException("deadzone", deadzone, "Deadzones must be in [0, 1).");
+		}
+		
+		deadzones[axis.ordinal()] = deadzone;
+	}
+	
+	/**
+	 * @return the number of sampled cursor positions since the last update, the
+	 *         last of which is the current position.
+	 */
+	public int getCursorPathLength() {
+		
+		return pathLength;
+	}
+	
+	/**
+	 * Gets the x-coordinate of a sampled cursor position since the last update.
+	 * 
+	 * @param index
+	 *            the index of the sample, less than
+	 *            <code>getCursorPathLength()</code>.
+	 * @return the x-coordinate of the cursor.
+	 */
+	public double getCursorPathX(int index) {
+		
+		return pathX[index];
+	}
+	
+	/**
+	 * Gets the y-coordinate of a sampled cursor position since the last update.
+	 * 
+	 * @param index
+	 *            the index of the sample, less than
+	 *            <code>getCursorPathLength()</code>.
+	 * @return the y-coordinate of the cursor.
+	 */
+	public double getCursorPathY(int index) {
+		
+		return pathY[index];
+	}
+	
+	/**
+	 * Gets the time of a sampled cursor position since the last update.
+	 * 
+	 * @param index
+	 *            the index of the sample, less than
+	 *            <code>getCursorPathLength()</code>.
+	 * @return the time the cursor reached the position, as reported by the input
+	 *         clock, in nanoseconds.
+	 */
+	public long getCursorPathTime(int index) {
+		
+		return pathTimes[index];
+	}
+	
+	/**
+	 * Gets the time of the last event processed for the specified key, as reported
+	 * by the input clock when the event arrived.
+	 * 
+	 * @param key
+	 *            the key to check.
+	 * @return the time of the key's last event in nanoseconds, or 0 if it has had
+	 *         none.
+	 */
+	public long getKeyTime(Key key) {
+		
+		return keyTimes[key.ordinal()];
+	}
+	
+	/**
+	 * @return the number of key and button events dropped because too many arrived
+	 *         between two updates.
+	 */
+	public long getDroppedEvents() {
+		
+		return events.getDropped() + buttonEvents.getDropped();
+	}
+	
 	/**
-	 * Registers a change to the input state with this input manager.
+	 * Queues a change to the input state, to be applied when events are next
+	 * processed. Kept for convenience; prefer the bit field overload, which never
+	 * allocates.
 	 * 
 	 * @param key
 	 *            the key on which an action has been triggered.
@@ -42,16 +368,367 @@ public class InputManager implements BasicInput {
 	 */
 	public void keyCallback(Key key, KeyAction keyAction, Set< KeyModifier > modifiers) {
 		
-		switch (keyAction) {
-		case KEY_PRESSED:
-			keysDown.add(key);
-			break;
-		case KEY_RELEASED:
-			keysDown.remove(key);
-			break;
-		case KEY_REPEATED:
-			keysDown.add(key); // In case the KEY_PRESSED action was sent to a different window
-			break;
+		keyCallback(key, keyAction, KeyModifier.toBitField(modifiers));
+	}
+	
+	/**
+	 * Queues a change to the input state, to be applied when events are next
+	 * processed. Stamps the event with the current time, and never allocates.
+	 * 
+	 * @param key
+	 *            the key on which an action has been triggered.
+	 * @param keyAction
+	 *            the action that was triggered for a particular key, or
+	 *            <code>null</code> to ignore the event.
+	 * @param modifiers
+	 *            the GLFW bit field of the modifier keys that are currently
+	 *            pressed.
+	 */
+	public void keyCallback(Key key, KeyAction keyAction, int modifiers) {
+		
+		if (keyAction != null) {
+			events.offer(key.ordinal(), keyAction.ordinal(), modifiers, clock.nanoTime());
+		}
+	}
+	
+	/**
+	 * Queues a mouse button change, to be applied when events are next processed.
+	 * Stamps the event with the current time, and never allocates.
+	 * 
+	 * @param button
+	 *            the button on which an action has been triggered.
+	 * @param action
+	 *            the action that was triggered, or <code>null</code> to ignore the
+	 *            event.
+	 * @param modifiers
+	 *            the GLFW bit field of the modifier keys that are currently
+	 *            pressed.
+	 */
+	public void mouseButtonCallback(MouseButton button, KeyAction action, int modifiers) {
+		
+		if (action != null) {
+			buttonEvents.offer(button.ordinal(), action.ordinal(), modifiers, clock.nanoTime());
+		}
+	}
+	
+	/**
+	 * Registers a cursor position, to be coalesced with any other motion before
+	 * the next update.
+	 * 
+	 * @param x
+	 *            the x-coordinate of the cursor, in screen coordinates relative
+	 *            to the window's left edge.
+	 * @param y
+	 *            the y-coordinate of the cursor, in screen coordinates relative
+	 *            to the window's top edge.
+	 */
+	public void cursorCallback(double x, double y) {
+		
+		cursor.move(x, y, clock.nanoTime());
+	}
+	
+	/**
+	 * Registers a scroll offset, to be summed with any other scrolling before the
+	 * next update.
+	 * 
+	 * @param x
+	 *            the horizontal offset.
+	 * @param y
+	 *            the vertical offset.
+	 */
+	public void scrollCallback(double x, double y) {
+		
+		cursor.scroll(x, y);
+	}
+	
+	/**
+	 * Polls the state of every gamepad from GLFW, for the next update to take.
+	 * Called by the window once per frame; must be called from the main thread.
+	 * Never allocates after the first call.
+	 */
+	public void pollGamepads() {
+		
+		if (glfwGamepadState == null) {
+			glfwGamepadState = GLFWGamepadState.create();
+		}
+		
+		synchronized (polledGamepads) {
+			for (int i = 0; i < MAX_GAMEPADS; i++) {
+				GamepadState state = polledGamepads[i];
+				
+				if (!glfwGetGamepadState(GLFW_JOYSTICK_1 + i, glfwGamepadState)) {
+					state.setConnected(false);
+					continue;
+				}
+				
+				int buttons = 0;
+				for (int b = 0; b < GAMEPAD_BUTTONS; b++) {
+					if (glfwGamepadState.buttons(b) == GLFW_PRESS) {
+						buttons |= 1 << b;
+					}
+				}
+				
+				state.setConnected(true);
+				state.setButtons(buttons);
+				for (GamepadAxis axis : AXES) {
+					float value = glfwGamepadState.axes(axis.getId());
+					// GLFW reports triggers from -1 to 1
+					state.setAxis(axis.ordinal(), axis.isTrigger() ? (value + 1) / 2 : value);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Connects or disconnects a gamepad, for the next update to see. Used to feed
+	 * gamepads from code instead of GLFW.
+	 * 
+	 * @param gamepad
+	 *            the index of the gamepad.
+	 * @param connected
+	 *            <code>true</code> if the gamepad is connected.
+	 */
+	/* package */ void setPolledGamepadConnected(int gamepad, boolean connected) {
+		
+		synchronized (polledGamepads) {
+			getGamepad(gamepad); // Validates the index
+			polledGamepads[gamepad].setConnected(connected);
+		}
+	}
+	
+	/**
+	 * Presses or releases a gamepad button, for the next update to see.
+	 * 
+	 * @param gamepad
+	 *            the index of the gamepad.
+	 * @param button
+	 *            the button to change.
+	 * @param down
+	 *            <code>true</code> to press the button.
+	 */
+	/* package */ void setPolledGamepadButton(int gamepad, GamepadButton button, boolean down) {
+		
+		synchronized (polledGamepads) {
+			getGamepad(gamepad);
+			GamepadState state = polledGamepads[gamepad];
+			int bit = 1 << button.ordinal();
+			state.setButtons(down ? state.getButtons() | bit : state.getButtons() & ~bit);
+		}
+	}
+	
+	/**
+	 * Sets a gamepad axis before deadzone filtering, for the next update to see.
+	 * 
+	 * @param gamepad
+	 *            the index of the gamepad.
+	 * @param axis
+	 *            the axis to set.
+	 * @param value
+	 *            the axis value.
+	 */
+	/* package */ void setPolledGamepadAxis(int gamepad, GamepadAxis axis, float value) {
+		
+		synchronized (polledGamepads) {
+			getGamepad(gamepad);
+			polledGamepads[gamepad].setAxis(axis.ordinal(), value);
+		}
+	}
+	
+	/**
+	 * @return the bitset of keys currently pressed, by ordinal. Must not be
+	 *         modified.
+	 */
+	/* package */ long[] getKeysDown() {
+		
+		return keysDown;
+	}
+	
+	/**
+	 * @return the bitset of mouse buttons currently pressed, by ordinal.
+	 */
+	/* package */ int getButtonsDown() {
+		
+		return buttonsDown;
+	}
+	
+	/**
+	 * @return the bitset of keys pressed since the last events were processed, by
+	 *         ordinal. Must not be modified.
+	 */
+	/* package */ long[] getKeysPressed() {
+		
+		return pressed;
+	}
+	
+	/**
+	 * @return the bitset of mouse buttons pressed since the last events were
+	 *         processed, by ordinal.
+	 */
+	/* package */ int getButtonsPressed() {
+		
+		return buttonsPressed;
+	}
+	
+	/**
+	 * Applies every queued input event to the input state, in the order the events
+	 * arrived, and notifies the listener of each. Clears the pressed and released
+	 * flags of the previous call first, so that each edge is seen by exactly one
+	 * update, and takes the cursor motion and scrolling coalesced since the
+	 * previous call. Called by the engine before each update of the game.
+	 */
+	public void processEvents() {
+		
+		Arrays.fill(pressed, 0);
+		Arrays.fill(released, 0);
+		
+		int count = events.size();
+		for (int i = 0; i < count; i++) {
+			int ordinal = events.getKey(i);
+			KeyAction keyAction = ACTIONS[events.getAction(i)];
+			modifiers = events.getModifiers(i);
+			
+			if (listener != null) {
+				listener.keyEvent(KEYS[ordinal], keyAction, modifiers);
+			}
+			
+			switch (keyAction) {
+			case KEY_PRESSED:
+				set(keysDown, ordinal, true);
+				set(pressed, ordinal, true);
+				break;
+			case KEY_RELEASED:
+				set(keysDown, ordinal, false);
+				set(released, ordinal, true);
+				break;
+			case KEY_REPEATED:
+				set(keysDown, ordinal, true); // In case the KEY_PRESSED action was sent to a different window
+				break;
+			}
+			keyTimes[ordinal] = events.getTime(i);
+		}
+		events.remove(count);
+		
+		processButtonEvents();
+		processCursor();
+		processGamepads();
+	}
+	
+	/**
+	 * Takes a snapshot of each polled gamepad state, and notifies the listener of
+	 * any that changed.
+	 */
+	private void processGamepads() {
+		
+		synchronized (polledGamepads) {
+			for (int i = 0; i < MAX_GAMEPADS; i++) {
+				GamepadState polled = polledGamepads[i];
+				gamepads[i].update(polled, deadzones);
+				
+				if (listener != null && !polled.matches(reportedGamepads[i])) {
+					reportedGamepads[i].copy(polled);
+					listener.gamepadEvent(i, polled);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Applies every queued mouse button event to the input state.
+	 */
+	private void processButtonEvents() {
+		
+		buttonsPressed = 0;
+		buttonsReleased = 0;
+		
+		int count = buttonEvents.size();
+		for (int i = 0; i < count; i++) {
+			int ordinal = buttonEvents.getKey(i);
+			KeyAction action = ACTIONS[buttonEvents.getAction(i)];
+			
+			if (listener != null) {
+				listener.mouseButtonEvent(BUTTONS[ordinal], action, buttonEvents.getModifiers(i));
+			}
+			
+			int bit = 1 << ordinal;
+			switch (action) {
+			case KEY_PRESSED:
+				buttonsDown |= bit;
+				buttonsPressed |= bit;
+				break;
+			case KEY_RELEASED:
+				buttonsDown &= ~bit;
+				buttonsReleased |= bit;
+				break;
+			case KEY_REPEATED:
+				buttonsDown |= bit;
+				break;
+			}
+		}
+		buttonEvents.remove(count);
+	}
+	
+	/**
+	 * Takes the cursor motion and scrolling coalesced since the last update.
+	 */
+	private void processCursor() {
+		
+		pathLength = cursor.drain(pathX, pathY, pathTimes, scroll);
+		cursorDeltaX = 0;
+		cursorDeltaY = 0;
+		
+		if (pathLength > 0) {
+			if (listener != null) {
+				for (int i = 0; i < pathLength; i++) {
+					listener.cursorEvent(pathX[i], pathY[i]);
+				}
+			}
+			
+			double x = pathX[pathLength - 1];
+			double y = pathY[pathLength - 1];
+			if (hasCursor) {
+				cursorDeltaX = x - cursorX;
+				cursorDeltaY = y - cursorY;
+			}
+			cursorX = x;
+			cursorY = y;
+			hasCursor = true;
+		}
+		
+		if (listener != null && (scroll[0] != 0 || scroll[1] != 0)) {
+			listener.scrollEvent(scroll[0], scroll[1]);
+		}
+	}
+	
+	/**
+	 * Checks a bit of a bitset.
+	 * 
+	 * @param bits
+	 *            the words of the bitset.
+	 * @param index
+	 *            the index of the bit.
+	 * @return <code>true</code> if the bit is set.
+	 */
+	private static boolean isSet(long[] bits, int index) {
+		
+		return (bits[index >>> 6] & (1L << index)) != 0;
+	}
+	
+	/**
+	 * Sets or clears a bit of a bitset.
+	 * 
+	 * @param bits
+	 *            the words of the bitset.
+	 * @param index
+	 *            the index of the bit.
+	 * @param value
+	 *            <code>true</code> to set the bit, <code>false</code> to clear it.
+	 */
+	private static void set(long[] bits, int index, boolean value) {
+		
+		if (value) {
+			bits[index >>> 6] |= 1L << index;
+		} else {
+			bits[index >>> 6] &= ~(1L << index);
 		}
 	}
 }
@@ -0,0 +1,828 @@
+package net.mmarss.grease.input;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.mmarss.grease.exception.GreaseInvalidArgumentException;
+import net.mmarss.grease.exception.GreaseInvalidMethodCallException;
+
+/**
+ * Maps named actions and axes to keys, mouse buttons and gamepad inputs, so that
+ * games check what the player wants to do rather than which key was pressed,
+ * and players can rebind controls while the game runs.
+ * 
+ * An action is active while any of its bindings is held; a binding is a key or
+ * mouse button, optionally chorded with modifier keys, or a gamepad button.
+ * When several bindings share a key or mouse button, only the most specific of
+ * those whose modifiers are all held counts, so that binding Ctrl+S to one
+ * action keeps a plain S binding of another from firing with it. Whenever the
+ * bindings change, they are compiled into bitmasks over the input manager's key
+ * and button bitsets, so evaluating every action once per update takes a few
+ * word operations per binding, and the action states are kept as a single
+ * bitset from which the started and ended edges are derived. A key or button
+ * pressed and released between two updates starts and ends its actions in the
+ * same update.
+ * 
+ * An axis sums the values of its bindings, clamped to [-1, 1]; a binding is a
+ * pair of keys for the negative and positive directions, or a scaled gamepad
+ * axis.
+ * 
+ * Call <code>update</code> once at the start of each update of the game. The
+ * bindings can be changed from any thread, and take effect from the next
+ * update.
+ */
+public class InputMap {
+	
+	/** The maximum number of actions in a map. */
+	public static final int MAX_ACTIONS = Long.SIZE;
+	
+	/** The cached array of every key. */
+	private static final Key[]			KEYS		= Key.values();
+	/** The cached array of every mouse button. */
+	private static final MouseButton[]	BUTTONS		= MouseButton.values();
+	/** The cached array of every gamepad axis. */
+	private static final GamepadAxis[]	AXES		= GamepadAxis.values();
+	/** The cached array of every modifier. */
+	private static final KeyModifier[]	MODIFIERS	= KeyModifier.values();
+	
+	/** The number of combinations of modifier bits. */
+	private static final int MODIFIER_COMBINATIONS = 16;
+	
+	/** The kind of key pair axis bindings. */
+	private static final int	AXIS_KEYS		= 0;
+	/** The kind of gamepad axis bindings. */
+	private static final int	AXIS_GAMEPAD	= 1;
+	
+	/** The left and right keys of each modifier, by modifier ordinal. */
+	private static final Key[][] MODIFIER_KEYS = {
+			{ Key.KEY_LEFT_SHIFT, Key.KEY_RIGHT_SHIFT },
+			{ Key.KEY_LEFT_CONTROL, Key.KEY_RIGHT_CONTROL },
+			{ Key.KEY_LEFT_ALT, Key.KEY_RIGHT_ALT },
+			{ Key.KEY_LEFT_SUPER, Key.KEY_RIGHT_SUPER } };
+	
+	/** A binding of an action, as specified. */
+	private static final class ActionBinding {
+		
+		/** The ID of the action. */
+		private final int	action;
+		/** The bound key, or <code>null</code>. */
+		private final Key	key;
+		/** The bitset of bound mouse buttons, by ordinal. */
+		private final int	buttons;
+		/** The bitset of bound gamepad buttons, by ordinal. */
+		private final int	gamepadButtons;
+		/** The GLFW bit field of the modifiers which must be held. */
+		private final int	modifiers;
+		
+		/**
+		 * Constructs a new action binding.
+		 * 
+		 * @param action
+		 *            the ID of the action.
+		 * @param key
+		 *            the bound key, or <code>null</code>.
+		 * @param buttons
+		 *            the bitset of bound mouse buttons, by ordinal.
+		 * @param gamepadButtons
+		 *            the bitset of bound gamepad buttons, by ordinal.
+		 * @param modifiers
+		 *            the GLFW bit field of the modifiers which must be held.
+		 */
+		private ActionBinding(int action, Key key, int buttons, int gamepadButtons, int modifiers) {
+			
+			this.action = action;
+			this.key = key;
+			this.buttons = buttons;
+			this.gamepadButtons = gamepadButtons;
+			this.modifiers = modifiers;
+		}
+	}
+	
+	/** A binding of an axis, as specified. */
+	private static final class AxisBinding {
+		
+		/** The ID of the axis. */
+		private final int	axis;
+		/** The kind of binding. */
+		private final int	kind;
+		/** The ordinal of the negative key, or of the gamepad axis. */
+		private final int	first;
+		/** The ordinal of the positive key. */
+		private final int	second;
+		/** The factor applied to the gamepad axis. */
+		private final float	scale;
+		
+		/**
+		 * Constructs a new axis binding.
+		 * 
+		 * @param axis
+		 *            the ID of the axis.
+		 * @param kind
+		 *            the kind of binding.
+		 * @param first
+		 *            the ordinal of the negative key, or of the gamepad axis.
+		 * @param second
+		 *            the ordinal of the positive key.
+		 * @param scale
+		 *            the factor applied to the gamepad axis.
+		 */
+		private AxisBinding(int axis, int kind, int first, int second, float scale) {
+			
+			this.axis = axis;
+			this.kind = kind;
+			this.first = first;
+			this.second = second;
+			this.scale = scale;
+		}
+	}
+	
+	/** The names of the actions, by ID. */
+	private final List< String >			actionNames	= new ArrayList<>();
+	/** The IDs of the actions, by name. */
+	private final Map< String, Integer >	actionIds	= new HashMap<>();
+	/** The names of the axes, by ID. */
+	private final List< String >			axisNames	= new ArrayList<>();
+	/** The IDs of the axes, by name. */
+	private final Map< String, Integer >	axisIds		= new HashMap<>();
+	
+	/** The action bindings, as specified. */
+	private final List< ActionBinding >	actionBindings	= new ArrayList<>();
+	/** The axis bindings, as specified. */
+	private final List< AxisBinding >	axisBindings	= new ArrayList<>();
+	/** Whether the bindings have changed since they were last compiled. */
+	private boolean						dirty			= false;
+	
+	/** The number of compiled action bindings. */
+	private int				bindingCount	= 0;
+	/** The key masks of the compiled bindings, <code>WORDS</code> per binding. */
+	private long[]			keyMasks		= new long[0];
+	/** The modifier masks of the compiled bindings. */
+	private int[]			modifierMasks	= new int[0];
+	/** The mouse button masks of the compiled bindings. */
+	private int[]			buttonMasks		= new int[0];
+	/** The gamepad button masks of the compiled bindings. */
+	private int[]			gamepadMasks	= new int[0];
+	/** The action bits of the compiled bindings. */
+	private long[]			actionBits		= new long[0];
+	/**
+	 * The combinations of held modifiers in which each compiled binding gives way
+	 * to a more specific binding of the same key or button, one bit per
+	 * combination.
+	 */
+	private int[]			shadowMasks		= new int[0];
+	/** The compiled axis bindings. */
+	private AxisBinding[]	compiledAxes	= new AxisBinding[0];
+	
+	/** The bitset of active actions, by ID. */
+	private long	active		= 0;
+	/** The bitset of actions which became active in the last update. */
+	private long	started		= 0;
+	/** The bitset of actions which stopped being active in the last update. */
+	private long	ended		= 0;
+	/** The axis values, by ID. */
+	private float[]	axisValues	= new float[0];
+	
+	/** The keys held, gathered from inputs which are not input managers. */
+	private final long[]	scratchKeys		= new long[InputManager.WORDS];
+	/** The keys pressed since the last update, gathered likewise. */
+	private final long[]	scratchPressed	= new long[InputManager.WORDS];
+	/** The keys held or pressed since the last update. */
+	private final long[]	touchedKeys		= new long[InputManager.WORDS];
+	
+	/** The index of the gamepad whose inputs are bound. */
+	private int gamepad = 0;
+	
+	/** The listener notified of action edges, or <code>null</code>. */
+	private ActionListener listener = null;
+	
+	/**
+	 * Constructs a new input map with no actions, reading the first gamepad.
+	 */
+	public InputMap() {}
+	
+	/**
+	 * Sets the gamepad whose inputs are bound.
+	 * 
+	 * @param gamepad
+	 *            the index of the gamepad.
+	 */
+	public synchronized void setGamepad(int gamepad) {
+		
+		if (gamepad < 0 || gamepad >= InputManager.MAX_GAMEPADS) {
+			throw new GreaseInvalidArgumentException("gamepad", gamepad, "Gamepads are numbered from 0 to "
+					+ (InputManager.MAX_GAMEPADS - 1) + ".");
+		}
+		
+		this.gamepad = gamepad;
+	}
+	
+	/**
+	 * Sets the listener notified of the started and ended edges of each action, as
+	 * the actions are evaluated.
+	 * 
+	 * @param listener
+	 *            the new listener, or <code>null</code> to remove the listener.
+	 */
+	public synchronized void setActionListener(ActionListener listener) {
+		
+		this.listener = listener;
+	}
+	
+	/**
+	 * Gets the ID of an action, defining the action if needed. Checking actions by
+	 * ID avoids looking up their names each update.
+	 * 
+	 * @param name
+	 *            the name of the action.
+	 * @return the ID of the action.
+	 * @throws GreaseInvalidMethodCallException
+	 *             if the map already holds <code>MAX_ACTIONS</code> other
+	 *             actions.
+	 */
+	public synchronized int action(String name) {
+		
+		if (name == null) {
+			throw new GreaseInvalidArgumentException("name", null);
+		}
+		
+		Integer id = actionIds.get(name);
+		if (id != null) {
+			return id;
+		}
+		
+		if (actionNames.size() == MAX_ACTIONS) {
+			throw new GreaseInvalidMethodCallException("An input map holds at most " + MAX_ACTIONS + " actions.");
+		}
+		
+		actionIds.put(name, actionNames.size());
+		actionNames.add(name);
+		return actionNames.size() - 1;
+	}
+	
+	/**
+	 * Gets the ID of an axis, defining the axis if needed. Reading axes by ID
+	 * avoids looking up their names each update.
+	 * 
+	 * @param name
+	 *            the name of the axis.
+	 * @return the ID of the axis.
+	 */
+	public synchronized int axis(String name) {
+		
+		if (name == null) {
+			throw new GreaseInvalidArgumentException("name", null);
+		}
+		
+		Integer id = axisIds.get(name);
+		if (id != null) {
+			return id;
+		}
+		
+		axisIds.put(name, axisNames.size());
+		axisNames.add(name);
+		axisValues = Arrays.copyOf(axisValues, axisNames.size());
+		return axisNames.size() - 1;
+	}
+	
+	/**
+	 * Binds a key to an action, optionally chorded with modifier keys. The action
+	 * is active while the key and every modifier are held; other modifiers may be
+	 * held too, unless another binding of the key chords them, in which case that
+	 * binding counts instead.
+	 * 
+	 * @param action
+	 *            the name of the action.
+	 * @param key
+	 *            the key to bind.
+	 * @param modifiers
+	 *            the modifier keys which must be held with the key.
+	 */
+	public synchronized void bindKey(String action, Key key, KeyModifier... modifiers) {
+		
+		if (key == null || key == Key.KEY_UNKNOWN) {
+			throw new GreaseInvalidArgumentException("key", key);
+		}
+		
+		addActionBinding(new ActionBinding(action(action), key, 0, 0, KeyModifier.toBitField(modifiers)));
+	}
+	
+	/**
+	 * Binds a mouse button to an action, optionally chorded with modifier keys.
+	 * 
+	 * @param action
+	 *            the name of the action.
+	 * @param button
+	 *            the mouse button to bind.
+	 * @param modifiers
+	 *            the modifier keys which must be held with the button.
+	 */
+	public synchronized void bindButton(String action, MouseButton button, KeyModifier... modifiers) {
+		
+		if (button == null || button == MouseButton.BUTTON_UNKNOWN) {
+			throw new GreaseInvalidArgumentException("button", button);
+		}
+		
+		addActionBinding(new ActionBinding(action(action), null, 1 << button.ordinal(), 0,
+				KeyModifier.toBitField(modifiers)));
+	}
+	
+	/**
+	 * Binds a gamepad button to an action.
+	 * 
+	 * @param action
+	 *            the name of the action.
+	 * @param button
+	 *            the gamepad button to bind.
+	 */
+	public synchronized void bindGamepadButton(String action, GamepadButton button) {
+		
+		if (button == null) {
+			throw new GreaseInvalidArgumentException("button", null);
+		}
+		
+		addActionBinding(new ActionBinding(action(action), null, 0, 1 << button.ordinal(), 0));
+	}
+	
+	/**
+	 * Binds a pair of keys to an axis. The negative key contributes -1 while held,
+	 * and the positive key 1.
+	 * 
+	 * @param axis
+	 *            the name of the axis.
+	 * @param negative
+	 *            the key for the negative direction.
+	 * @param positive
+	 *            the key for the positive direction.
+	 */
+	public synchronized void bindAxisKeys(String axis, Key negative, Key positive) {
+		
+		if (negative == null) {
+			throw new GreaseInvalidArgumentException("negative", null);
+		}
+		
+		if (positive == null) {
+			throw new GreaseInvalidArgumentException("positive", null);
+		}
+		
+		axisBindings.add(new AxisBinding(axis(axis), AXIS_KEYS, negative.ordinal(), positive.ordinal(), 1));
+		dirty = true;
+	}
+	
+	/**
+	 * Binds a gamepad axis to an axis. The gamepad axis is read after deadzone
+	 * filtering, and multiplied by the scale; a negative scale inverts it.
+	 * 
+	 * @param axis
+	 *            the name of the axis.
+	 * @param gamepadAxis
+	 *            the gamepad axis to bind.
+	 * @param scale
+	 *            the factor to multiply the gamepad axis by.
+	 */
+	public synchronized void bindGamepadAxis(String axis, GamepadAxis gamepadAxis, float scale) {
+		
+		if (gamepadAxis == null) {
+			throw new GreaseInvalidArgumentException("gamepadAxis", null);
+		}
+		
+		axisBindings.add(new AxisBinding(axis(axis), AXIS_GAMEPAD, gamepadAxis.ordinal(), 0, scale));
+		dirty = true;
+	}
+	
+	/**
+	 * Removes every binding of an action or axis, so that it can be rebound. An
+	 * action which was active ends at the next update.
+	 * 
+	 * @param name
+	 *            the name of the action or axis.
+	 */
+	public synchronized void unbind(String name) {
+		
+		Integer action = actionIds.get(name);
+		if (action != null) {
+			actionBindings.removeIf(binding -> binding.action == action);
+		}
+		
+		Integer axis = axisIds.get(name);
+		if (axis != null) {
+			axisBindings.removeIf(binding -> binding.axis == axis);
+		}
+		dirty = true;
+	}
+	
+	/**
+	 * Removes every binding. The actions and axes keep their IDs.
+	 */
+	public synchronized void unbindAll() {
+		
+		actionBindings.clear();
+		axisBindings.clear();
+		dirty = true;
+	}
+	
+	/**
+	 * Evaluates every action and axis from the input state, and notifies the
+	 * listener of the actions which started or ended. Called once at the start of
+	 * each update of the game.
+	 * 
+	 * @param input
+	 *            the input passed to the update.
+	 */
+	public synchronized void update(BasicInput input) {
+		
+		if (dirty) {
+			compile();
+		}
+		
+		long[] keys;
+		long[] pressed;
+		int buttons;
+		int buttonsPressed;
+		if (input instanceof InputManager) {
+			keys = ((InputManager) input).getKeysDown();
+			pressed = ((InputManager) input).getKeysPressed();
+			buttons = ((InputManager) input).getButtonsDown();
+			buttonsPressed = ((InputManager) input).getButtonsPressed();
+		} else {
+			keys = gatherKeys(input);
+			pressed = scratchPressed;
+			buttons = gatherButtons(input, false);
+			buttonsPressed = gatherButtons(input, true);
+		}
+		
+		GamepadState pad = input.getGamepad(gamepad);
+		int gamepadButtons = pad.getButtons();
+		
+		// Actions touched by inputs pressed since the last update, even if already
+		// released, start and end in this update
+		for (int w = 0; w < touchedKeys.length; w++) {
+			touchedKeys[w] = keys[w] | pressed[w];
+		}
+		long now = evaluate(keys, buttons, gamepadButtons);
+		long touched = evaluate(touchedKeys, buttons | buttonsPressed, gamepadButtons) | now;
+		
+		started = touched & ~active;
+		ended = (active | touched) & ~now;
+		active = now;
+		
+		Arrays.fill(axisValues, 0);
+		for (AxisBinding binding : compiledAxes) {
+			float value;
+			if (binding.kind == AXIS_KEYS) {
+				value = (isSet(keys, binding.second) ? 1 : 0) - (isSet(keys, binding.first) ? 1 : 0);
+			} else {
+				value = pad.getAxis(AXES[binding.first]) * binding.scale;
+			}
+			axisValues[binding.axis] += value;
+		}
+		
+		for (int i = 0; i < axisValues.length; i++) {
+			axisValues[i] = Math.max(-1, Math.min(axisValues[i], 1));
+		}
+		
+		if (listener != null) {
+			notifyEdges(started, true);
+			notifyEdges(ended, false);
+		}
+	}
+	
+	/**
+	 * Evaluates the compiled action bindings against a set of held inputs.
+	 * 
+	 * @param keys
+	 *            the bitset of keys held, by ordinal.
+	 * @param buttons
+	 *            the bitset of mouse buttons held, by ordinal.
+	 * @param gamepadButtons
+	 *            the bitset of gamepad buttons held, by ordinal.
+	 * @return the bitset of actions with a binding held.
+	 */
+	private long evaluate(long[] keys, int buttons, int gamepadButtons) {
+		
+		int modifiers = getModifiers(keys);
+		
+		// Each binding is held if its inputs are a subset of those held, and no more
+		// specific binding of the same key or button is held
+		long actions = 0;
+		int words = InputManager.WORDS;
+		for (int i = 0; i < bindingCount; i++) {
+			if ((actions & actionBits[i]) != 0 || (modifiers & modifierMasks[i]) != modifierMasks[i]
+					|| (shadowMasks[i] & (1 << modifiers)) != 0 || (buttons & buttonMasks[i]) != buttonMasks[i]
+					|| (gamepadButtons & gamepadMasks[i]) != gamepadMasks[i]) {
+				continue;
+			}
+			
+			boolean held = true;
+			for (int w = 0, offset = i * words; w < words; w++) {
+				if ((keys[w] & keyMasks[offset + w]) != keyMasks[offset + w]) {
+					held = false;
+					break;
+				}
+			}
+			
+			if (held) {
+				actions |= actionBits[i];
+			}
+		}
+		
+		return actions;
+	}
+	
+	/**
+	 * Checks whether an action is active.
+	 * 
+	 * @param action
+	 *            the ID of the action.
+	 * @return <code>true</code> if any of the action's bindings is held.
+	 */
+	public synchronized boolean isActive(int action) {
+		
+		return (active & bit(action)) != 0;
+	}
+	
+	/**
+	 * Checks whether an action is active.
+	 * 
+	 * @param action
+	 *            the name of the action.
+	 * @return <code>true</code> if any of the action's bindings is held.
+	 */
+	public boolean isActive(String action) {
+		
+		return isActive(getActionId(action));
+	}
+	
+	/**
+	 * Checks whether an action became active in the last update.
+	 * 
+	 * @param action
+	 *            the ID of the action.
+	 * @return <code>true</code> if the action started in the last update.
+	 */
+	public synchronized boolean actionStarted(int action) {
+		
+		return (started & bit(action)) != 0;
+	}
+	
+	/**
+	 * Checks whether an action became active in the last update.
+	 * 
+	 * @param action
+	 *            the name of the action.
+	 * @return <code>true</code> if the action started in the last update.
+	 */
+	public boolean actionStarted(String action) {
+		
+		return actionStarted(getActionId(action));
+	}
+	
+	/**
+	 * Checks whether an action stopped being active in the last update.
+	 * 
+	 * @param action
+	 *            the ID of the action.
+	 * @return <code>true</code> if the action ended in the last update.
+	 */
+	public synchronized boolean actionEnded(int action) {
+		
+		return (ended & bit(action)) != 0;
+	}
+	
+	/**
+	 * Checks whether an action stopped being active in the last update.
+	 * 
+	 * @param action
+	 *            the name of the action.
+	 * @return <code>true</code> if the action ended in the last update.
+	 */
+	public boolean actionEnded(String action) {
+		
+		return actionEnded(getActionId(action));
+	}
+	
+	/**
+	 * Gets the value of an axis.
+	 * 
+	 * @param axis
+	 *            the ID of the axis.
+	 * @return the summed value of the axis's bindings, from -1 to 1.
+	 */
+	public synchronized float getAxis(int axis) {
+		
+		if (axis < 0 || axis >= axisValues.length) {
+			throw new GreaseInvalidArgumentException("axis", axis, "No axis has this ID.");
+		}
+		
+		return axisValues[axis];
+	}
+	
+	/**
+	 * Gets the value of an axis.
+	 * 
+	 * @param axis
+	 *            the name of the axis.
+	 * @return the summed value of the axis's bindings, from -1 to 1.
+	 */
+	public synchronized float getAxis(String axis) {
+		
+		Integer id = axisIds.get(axis);
+		if (id == null) {
+			throw new GreaseInvalidArgumentException("axis", axis, "No axis has this name.");
+		}
+		
+		return axisValues[id];
+	}
+	
+	/**
+	 * Adds an action binding, to be compiled at the next update.
+	 * 
+	 * @param binding
+	 *            the binding to add.
+	 */
+	private void addActionBinding(ActionBinding binding) {
+		
+		actionBindings.add(binding);
+		dirty = true;
+	}
+	
+	/**
+	 * Compiles the bindings into masks over the input bitsets.
+	 */
+	private void compile() {
+		
+		int words = InputManager.WORDS;
+		bindingCount = actionBindings.size();
+		keyMasks = new long[bindingCount * words];
+		modifierMasks = new int[bindingCount];
+		buttonMasks = new int[bindingCount];
+		gamepadMasks = new int[bindingCount];
+		actionBits = new long[bindingCount];
+		shadowMasks = new int[bindingCount];
+		
+		for (int i = 0; i < bindingCount; i++) {
+			ActionBinding binding = actionBindings.get(i);
+			if (binding.key != null) {
+				int ordinal = binding.key.ordinal();
+				keyMasks[i * words + (ordinal >>> 6)] = 1L << ordinal;
+			}
+			modifierMasks[i] = binding.modifiers;
+			buttonMasks[i] = binding.buttons;
+			gamepadMasks[i] = binding.gamepadButtons;
+			actionBits[i] = 1L << binding.action;
+			
+			// Give way to bindings of the same key or button chording more modifiers,
+			// in every combination of held modifiers that includes theirs
+			for (ActionBinding other : actionBindings) {
+				if (other.key != binding.key || other.buttons != binding.buttons
+						|| other.gamepadButtons != binding.gamepadButtons || other.modifiers == binding.modifiers
+						|| (other.modifiers & binding.modifiers) != binding.modifiers) {
+					continue;
+				}
+				
+				for (int held = 0; held < MODIFIER_COMBINATIONS; held++) {
+					if ((held & other.modifiers) == other.modifiers) {
+						shadowMasks[i] |= 1 << held;
+					}
+				}
+			}
+		}
+		
+		compiledAxes = axisBindings.toArray(new AxisBinding[axisBindings.size()]);
+		dirty = false;
+	}
+	
+	/**
+	 * Gets the ID of a defined action.
+	 * 
+	 * @param name
+	 *            the name of the action.
+	 * @return the ID of the action.
+	 */
+	private synchronized int getActionId(String name) {
+		
+		Integer id = actionIds.get(name);
+		if (id == null) {
+			throw new GreaseInvalidArgumentException("action", name, "No action has this name.");
+		}
+		
+		return id;
+	}
+	
+	/**
+	 * Gets the bit of an action in the action bitsets.
+	 * 
+	 * @param action
+	 *            the ID of the action.
+	 * @return the bit of the action.
+	 */
+	private long bit(int action) {
+		
+		if (action < 0 || action >= actionNames.size()) {
+			throw new GreaseInvalidArgumentException("action", action, "No action has this ID.");
+		}
+		
+		return 1L << action;
+	}
+	
+	/**
+	 * Notifies the listener of the actions in a bitset.
+	 * 
+	 * @param actions
+	 *            the bitset of actions.
+	 * @param start
+	 *            <code>true</code> if the actions started, <code>false</code> if
+	 *            they ended.
+	 */
+	private void notifyEdges(long actions, boolean start) {
+		
+		while (actions != 0) {
+			String name = actionNames.get(Long.numberOfTrailingZeros(actions));
+			if (start) {
+				listener.actionStarted(name);
+			} else {
+				listener.actionEnded(name);
+			}
+			actions &= actions - 1;
+		}
+	}
+	
+	/**
+	 * Gathers the modifier keys held from the keys pressed.
+	 * 
+	 * @param keys
+	 *            the bitset of keys pressed, by ordinal.
+	 * @return the GLFW bit field of the modifier keys held.
+	 */
+	private static int getModifiers(long[] keys) {
+		
+		int modifiers = 0;
+		for (KeyModifier modifier : MODIFIERS) {
+			Key[] pair = MODIFIER_KEYS[modifier.ordinal()];
+			if (isSet(keys, pair[0].ordinal()) || isSet(keys, pair[1].ordinal())) {
+				modifiers |= modifier.getBit();
+			}
+		}
+		return modifiers;
+	}
+	
+	/**
+	 * Gathers the keys pressed from an input which is not an input manager.
+	 * 
+	 * @param input
+	 *            the input to read.
+	 * @return the bitset of keys pressed, by ordinal.
+	 */
+	private long[] gatherKeys(BasicInput input) {
+		
+		Arrays.fill(scratchKeys, 0);
+		Arrays.fill(scratchPressed, 0);
+		for (Key key : KEYS) {
+			if (input.isKeyDown(key)) {
+				scratchKeys[key.ordinal() >>> 6] |= 1L << key.ordinal();
+			}
+			if (input.wasPressed(key)) {
+				scratchPressed[key.ordinal() >>> 6] |= 1L << key.ordinal();
+			}
+		}
+		return scratchKeys;
+	}
+	
+	/**
+	 * Gathers the mouse buttons held or pressed from an input which is not an
+	 * input manager.
+	 * 
+	 * @param input
+	 *            the input to read.
+	 * @param pressed
+	 *            <code>true</code> to gather the buttons pressed since the last
+	 *            update, <code>false</code> to gather those held.
+	 * @return the bitset of mouse buttons, by ordinal.
+	 */
+	private static int gatherButtons(BasicInput input, boolean pressed) {
+		
+		int buttons = 0;
+		for (MouseButton button : BUTTONS) {
+			if (pressed ? input.wasButtonPressed(button) : input.isButtonDown(button)) {
+				buttons |= 1 << button.ordinal();
+			}
+		}
+		return buttons;
+	}
+	
+	/**
+	 * Checks a bit of a key bitset.
+	 * 
+	 * @param keys
+	 *            the words of the bitset.
+	 * @param index
+	 *            the index of the bit.
+	 * @return <code>true</code> if the bit is set.
+	 */
+	private static boolean isSet(long[] keys, int index) {
+		
+		return (keys[index >>> 6] & (1L << index)) != 0;
+	}
+}
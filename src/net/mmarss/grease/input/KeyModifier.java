@@ -9,21 +9,61 @@ import java.util.EnumSet;
 import java.util.Set;
 
 /**
- * An enumeration of keyboard modifier keys.
+ * An enumeration of keyboard modifier keys. Modifiers are delivered with input
+ * events as a GLFW bit field, which can be tested with <code>isSet</code>
+ * without allocating; the set conversions are kept for convenience.
  */
 public enum KeyModifier {
 	
 	/** The shift key. */
-	SHIFT,
+	SHIFT(GLFW_MOD_SHIFT),
 	/** The ctrl key. */
-	CONTROL,
+	CONTROL(GLFW_MOD_CONTROL),
 	/** The alt/command key. */
-	ALT,
+	ALT(GLFW_MOD_ALT),
 	/** The super/windows key. */
-	SUPER;
+	SUPER(GLFW_MOD_SUPER);
+	
+	/** The cached array of every modifier. */
+	private static final KeyModifier[] MODIFIERS = values();
+	
+	/** The GLFW bit for this modifier. */
+	private final int bit;
+	
+	/**
+	 * Constructs a modifier constant.
+	 * 
+	 * @param bit
+	 *            the GLFW bit for the modifier.
+	 */
+	private KeyModifier(int bit) {
+		
+		this.bit = bit;
+	}
+	
+	/**
+	 * @return the GLFW bit for this modifier.
+	 */
+	public int getBit() {
+		
+		return bit;
+	}
+	
+	/**
+	 * Checks whether this modifier is set in a GLFW bit field.
+	 * 
+	 * @param modifierBitField
+	 *            the bit field of currently pressed modifier keys.
+	 * @return <code>true</code> if this modifier is pressed.
+	 */
+	public boolean isSet(int modifierBitField) {
+		
+		return (modifierBitField & bit) != 0;
+	}
 	
 	/**
 	 * Creates a set of modifier keys registered in the given GLFW bit field.
+	 * Allocates a new set; prefer <code>isSet</code> where events arrive often.
 	 * 
 	 * @param modifierBitField
 	 *            the bit field of currently pressed modifier keys.
@@ -33,19 +73,49 @@ public enum KeyModifier {
 		
 		EnumSet< KeyModifier > mods = EnumSet.noneOf(KeyModifier.class);
 		
-		if ((modifierBitField & GLFW_MOD_SHIFT) != 0) {
-			mods.add(SHIFT);
-		}
-		if ((modifierBitField & GLFW_MOD_CONTROL) != 0) {
-			mods.add(CONTROL);
+		for (KeyModifier modifier : MODIFIERS) {
+			if (modifier.isSet(modifierBitField)) {
+				mods.add(modifier);
+			}
 		}
-		if ((modifierBitField & GLFW_MOD_ALT) != 0) {
-			mods.add(ALT);
+		
+		return mods;
+	}
+	
+	/**
+	 * Creates a GLFW bit field from a set of modifier keys. The inverse of
+	 * <code>fromBitField</code>.
+	 * 
+	 * @param modifiers
+	 *            the set of modifier keys.
+	 * @return the bit field of the modifier keys.
+	 */
+	public static int toBitField(Set< KeyModifier > modifiers) {
+		
+		int modifierBitField = 0;
+		
+		for (KeyModifier modifier : modifiers) {
+			modifierBitField |= modifier.bit;
 		}
-		if ((modifierBitField & GLFW_MOD_SUPER) != 0) {
-			mods.add(SUPER);
+		
+		return modifierBitField;
+	}
+	
+	/**
+	 * Creates a GLFW bit field from modifier keys.
+	 * 
+	 * @param modifiers
+	 *            the modifier keys.
+	 * @return the bit field of the modifier keys.
+	 */
+	public static int toBitField(KeyModifier... modifiers) {
+		
+		int modifierBitField = 0;
+		
+		for (KeyModifier modifier : modifiers) {
+			modifierBitField |= modifier.bit;
 		}
 		
-		return mods;
+		return modifierBitField;
 	}
 }
@@ -0,0 +1,67 @@
+package net.mmarss.grease.input;
+
+import static org.lwjgl.glfw.GLFW.*;
+
+/**
+ * An enumeration of mouse buttons.
+ */
+public enum MouseButton {
+	
+	BUTTON_UNKNOWN(-1),
+	BUTTON_LEFT(GLFW_MOUSE_BUTTON_LEFT),
+	BUTTON_RIGHT(GLFW_MOUSE_BUTTON_RIGHT),
+	BUTTON_MIDDLE(GLFW_MOUSE_BUTTON_MIDDLE),
+	BUTTON_4(GLFW_MOUSE_BUTTON_4),
+	BUTTON_5(GLFW_MOUSE_BUTTON_5),
+	BUTTON_6(GLFW_MOUSE_BUTTON_6),
+	BUTTON_7(GLFW_MOUSE_BUTTON_7),
+	BUTTON_8(GLFW_MOUSE_BUTTON_8);
+	
+	/** The buttons indexed by GLFW button code. */
+	private static final MouseButton[] buttonsById = new MouseButton[GLFW_MOUSE_BUTTON_LAST + 1];
+	static {
+		for (MouseButton button : MouseButton.values()) {
+			if (button != BUTTON_UNKNOWN) {
+				buttonsById[button.ID] = button;
+			}
+		}
+	}
+	
+	/** The GLFW button code for this button. */
+	private final int ID;
+	
+	/**
+	 * Constructs a button constant with the specified ID.
+	 * 
+	 * @param id
+	 *            the button's GLFW code.
+	 */
+	private MouseButton(int id) {
+		
+		ID = id;
+	}
+	
+	/**
+	 * @return this button's GLFW code, or -1 for unknown buttons.
+	 */
+	public int getId() {
+		
+		return ID;
+	}
+	
+	/**
+	 * Gets the button corresponding to the specified GLFW button code.
+	 * 
+	 * @param buttonId
+	 *            the ID of the button to get.
+	 * @return the button corresponding to the given button ID.
+	 */
+	public static MouseButton fromId(int buttonId) {
+		
+		if (buttonId < 0 || buttonId >= buttonsById.length) {
+			return BUTTON_UNKNOWN;
+		}
+		
+		return buttonsById[buttonId];
+	}
+}
@@ -0,0 +1,170 @@
+package net.mmarss.grease.input;
+
+/**
+ * An input manager driven by code rather than by a window, for headless runs,
+ * bots and automated tests. Key presses and releases are fed through the same
+ * path as window events, so games see them exactly as they would see real
+ * input; like window events, they take effect at the next update.
+ */
+public class ProgrammableInput extends InputManager {
+	
+	/**
+	 * Constructs a new programmable input manager with no keys pressed.
+	 */
+	public ProgrammableInput() {}
+	
+	/**
+	 * Presses the specified key.
+	 * 
+	 * @param key
+	 *            the key to press.
+	 * @param modifiers
+	 *            the modifier keys held during the press.
+	 */
+	public void press(Key key, KeyModifier... modifiers) {
+		
+		keyCallback(key, KeyAction.KEY_PRESSED, KeyModifier.toBitField(modifiers));
+	}
+	
+	/**
+	 * Releases the specified key.
+	 * 
+	 * @param key
+	 *            the key to release.
+	 * @param modifiers
+	 *            the modifier keys held during the release.
+	 */
+	public void release(Key key, KeyModifier... modifiers) {
+		
+		keyCallback(key, KeyAction.KEY_RELEASED, KeyModifier.toBitField(modifiers));
+	}
+	
+	/**
+	 * Presses or releases the specified key.
+	 * 
+	 * @param key
+	 *            the key to change.
+	 * @param down
+	 *            <code>true</code> to press the key, <code>false</code> to release
+	 *            it.
+	 */
+	public void setKeyDown(Key key, boolean down) {
+		
+		if (down) {
+			press(key);
+		} else {
+			release(key);
+		}
+	}
+	
+	/**
+	 * Presses the specified mouse button.
+	 * 
+	 * @param button
+	 *            the button to press.
+	 * @param modifiers
+	 *            the modifier keys held during the press.
+	 */
+	public void pressButton(MouseButton button, KeyModifier... modifiers) {
+		
+		mouseButtonCallback(button, KeyAction.KEY_PRESSED, KeyModifier.toBitField(modifiers));
+	}
+	
+	/**
+	 * Releases the specified mouse button.
+	 * 
+	 * @param button
+	 *            the button to release.
+	 * @param modifiers
+	 *            the modifier keys held during the release.
+	 */
+	public void releaseButton(MouseButton button, KeyModifier... modifiers) {
+		
+		mouseButtonCallback(button, KeyAction.KEY_RELEASED, KeyModifier.toBitField(modifiers));
+	}
+	
+	/**
+	 * Moves the cursor to the specified position.
+	 * 
+	 * @param x
+	 *            the new x-coordinate of the cursor.
+	 * @param y
+	 *            the new y-coordinate of the cursor.
+	 */
+	public void moveCursor(double x, double y) {
+		
+		cursorCallback(x, y);
+	}
+	
+	/**
+	 * Scrolls by the specified offsets.
+	 * 
+	 * @param x
+	 *            the horizontal offset.
+	 * @param y
+	 *            the vertical offset.
+	 */
+	public void scroll(double x, double y) {
+		
+		scrollCallback(x, y);
+	}
+	
+	/**
+	 * Connects or disconnects a gamepad. Disconnecting releases its buttons and
+	 * centers its axes.
+	 * 
+	 * @param gamepad
+	 *            the index of the gamepad.
+	 * @param connected
+	 *            <code>true</code> to connect the gamepad.
+	 */
+	public void setGamepadConnected(int gamepad, boolean connected) {
+		
+		setPolledGamepadConnected(gamepad, connected);
+	}
+	
+	/**
+	 * Presses or releases a gamepad button.
+	 * 
+	 * @param gamepad
+	 *            the index of the gamepad.
+	 * @param button
+	 *            the button to change.
+	 * @param down
+	 *            <code>true</code> to press the button, <code>false</code> to
+	 *            release it.
+	 */
+	public void setGamepadButton(int gamepad, GamepadButton button, boolean down) {
+		
+		setPolledGamepadButton(gamepad, button, down);
+	}
+	
+	/**
+	 * Sets a gamepad axis. The game sees the value after deadzone filtering.
+	 * 
+	 * @param gamepad
+	 *            the index of the gamepad.
+	 * @param axis
+	 *            the axis to set.
+	 * @param value
+	 *            the axis value; from -1 to 1 for sticks, or from 0 to 1 for
+	 *            triggers.
+	 */
+	public void setGamepadAxis(int gamepad, GamepadAxis axis, float value) {
+		
+		setPolledGamepadAxis(gamepad, axis, value);
+	}
+	
+	/**
+	 * Releases every key which is currently pressed.
+	 */
+	public void releaseAll() {
+		
+		for (Key key : Key.values()) {
+			if (isKeyDown(key)) {
+				release(key);
+			}
+		}
+	}
+	
+}
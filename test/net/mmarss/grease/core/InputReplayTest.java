@@ -0,0 +1,121 @@
+package net.mmarss.grease.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Test;
+
+import net.mmarss.grease.exception.GreaseFileException;
+import net.mmarss.grease.graphics.Graphics2d;
+import net.mmarss.grease.input.BasicInput;
+import net.mmarss.grease.input.Key;
+import net.mmarss.grease.input.ProgrammableInput;
+
+/**
+ * Checks that recorded sessions replay with the same input reaching each
+ * update.
+ */
+public class InputReplayTest {
+	
+	/** The fixed timestep updates per second of the recorded session. */
+	private static final double	UPDATE_RATE			= 60;
+	/** The number of fixed timestep updates run in each frame. */
+	private static final int	UPDATES_PER_FRAME	= 3;
+	/** The number of frames in the recorded session. */
+	private static final int	FRAMES				= 10;
+	
+	/**
+	 * A game logging the input state seen by each update. When recording, it
+	 * presses and releases a key from within its updates, so that the events
+	 * arrive between the updates of a frame.
+	 */
+	private static class LoggingGame extends BasicGame {
+		
+		/** The engine running the game. */
+		private BasicGameEngine		engine;
+		/** The input to feed, or <code>null</code> when replaying. */
+		private ProgrammableInput	feed;
+		/** The clock advanced by each frame when recording, or <code>null</code>. */
+		private VirtualClock		clock;
+		
+		/** The number of updates so far. */
+		private int					updates	= 0;
+		/** The number of frames so far. */
+		private int					frames	= 0;
+		/** The input state seen by each update. */
+		private final StringBuilder	log		= new StringBuilder();
+		
+		@Override
+		public void init() {}
+		
+		@Override
+		public void update(double delta, BasicInput input) {
+			
+			updates++;
+			log.append(updates).append(input.isKeyDown(Key.KEY_A) ? " down" : " up");
+			if (input.wasPressed(Key.KEY_A)) {
+				log.append(" pressed");
+			}
+			if (input.wasReleased(Key.KEY_A)) {
+				log.append(" released");
+			}
+			log.append('\n');
+			
+			if (feed != null) {
+				if (updates % 4 == 1) {
+					feed.press(Key.KEY_A);
+				} else if (updates % 4 == 2) {
+					feed.release(Key.KEY_A);
+				}
+			}
+		}
+		
+		@Override
+		public void render(Graphics2d g) {
+			
+			if (clock != null) {
+				clock.advanceSeconds(UPDATES_PER_FRAME / UPDATE_RATE);
+			}
+			
+			if (++frames == FRAMES) {
+				engine.stop();
+			}
+		}
+		
+		@Override
+		public void cleanup() {}
+	}
+	
+	/**
+	 * Records frames of several fixed timestep updates, with input arriving
+	 * between the updates of each frame, and checks that the replay gives every
+	 * update the same input state.
+	 * 
+	 * @throws GreaseFileException
+	 *             if the input log could not be read.
+	 */
+	@Test
+	public void testMultipleUpdatesPerFrame() throws GreaseFileException {
+		
+		LoggingGame recorded = new LoggingGame();
+		recorded.feed = new ProgrammableInput();
+		recorded.clock = new VirtualClock();
+		recorded.engine = BasicGameEngine.createHeadless(recorded, recorded.feed);
+		recorded.engine.setClock(recorded.clock);
+		recorded.engine.setTargetFrameRate(0);
+		recorded.engine.setFixedTimestep(UPDATE_RATE);
+		
+		ByteArrayOutputStream log = new ByteArrayOutputStream();
+		recorded.engine.record(log);
+		recorded.engine.run();
+		
+		LoggingGame replayed = new LoggingGame();
+		replayed.engine = BasicGameEngine.createReplay(replayed, new ByteArrayInputStream(log.toByteArray()), false);
+		replayed.engine.run();
+		
+		assertEquals(recorded.updates, replayed.updates);
+		assertEquals(recorded.log.toString(), replayed.log.toString());
+	}
+}
@@ -0,0 +1,114 @@
+package net.mmarss.grease.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+/**
+ * Checks the reference counting and loading of cached resources.
+ */
+public class ResourceManagerTest {
+	
+	/** A resource using a fixed amount of memory, which records its cleanup. */
+	private static class TestResource implements Resource {
+		
+		/** Whether the resource has been cleaned up. */
+		private boolean cleanedUp = false;
+		
+		@Override
+		public long getMemorySize() {
+			
+			return 1024;
+		}
+		
+		@Override
+		public long getVideoMemorySize() {
+			
+			return 0;
+		}
+		
+		@Override
+		public void cleanup() {
+			
+			cleanedUp = true;
+		}
+	}
+	
+	/**
+	 * Checks that a handle outliving a cleanup does not release the reference of a
+	 * handle acquired after the resource was loaded again.
+	 */
+	@Test
+	public void testStaleHandleReleaseIgnored() throws Exception {
+		
+		ResourceManager manager = new ResourceManager(0, 0);
+		ResourceHandle< TestResource > stale = manager.acquire("a", TestResource.class, TestResource::new);
+		manager.cleanup();
+		
+		ResourceHandle< TestResource > live = manager.acquire("a", TestResource.class, TestResource::new);
+		stale.release();
+		
+		assertEquals(1, manager.getResourceCount());
+		assertFalse(live.get().cleanedUp);
+		
+		live.release();
+		assertEquals(0, manager.getResourceCount());
+	}
+	
+	/**
+	 * Checks that other resources can be acquired while one is loading, and that
+	 * threads acquiring the loading resource wait for it rather than loading it
+	 * again.
+	 */
+	@Test
+	public void testLoadOutsideLock() throws Exception {
+		
+		ResourceManager manager = new ResourceManager();
+		CountDownLatch loading = new CountDownLatch(1);
+		CountDownLatch finish = new CountDownLatch(1);
+		TestResource slow = new TestResource();
+		
+		Thread loader = new Thread(() -> {
+			try {
+				manager.acquire("slow", TestResource.class, () -> {
+					loading.countDown();
+					try {
+						finish.await();
+					} catch (InterruptedException e) {
+						throw new IllegalStateException(e);
+					}
+					return slow;
+				});
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		});
+		loader.start();
+		loading.await();
+		
+		// Must not block on the slow load
+		manager.acquire("fast", TestResource.class, TestResource::new).release();
+		
+		ResourceHandle< ? >[] waited = new ResourceHandle< ? >[1];
+		Thread waiter = new Thread(() -> {
+			try {
+				waited[0] = manager.acquire("slow", TestResource.class, () -> {
+					throw new AssertionError("Loaded twice");
+				});
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		});
+		waiter.start();
+		
+		finish.countDown();
+		loader.join();
+		waiter.join();
+		
+		assertSame(slow, waited[0].get());
+	}
+}
@@ -0,0 +1,178 @@
+package net.mmarss.grease.graphics;
+
+import static org.junit.Assert.assertEquals;
+
+import org.joml.Matrix4f;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.mmarss.grease.core.Gl;
+import net.mmarss.grease.core.GlBackend;
+import net.mmarss.grease.core.RecordingBackend;
+import net.mmarss.grease.core.RecordingBackend.Call;
+import net.mmarss.grease.exception.GreaseShaderUniformException;
+
+/**
+ * Checks the OpenGL calls made by the 2D renderer, by recording them instead of
+ * sending them to a GPU.
+ */
+public class Graphics2dTest {
+	
+	/** The backend installed before the test. */
+	private GlBackend			previous;
+	/** The backend recording the renderer's calls. */
+	private RecordingBackend	recording;
+	/** The renderer under test. */
+	private Graphics2d			graphics;
+	
+	/**
+	 * Installs the recording backend and initializes the renderer.
+	 */
+	@Before
+	public void setUp() {
+		
+		previous = Gl.getBackend();
+		recording = new RecordingBackend();
+		Gl.setBackend(recording);
+		
+		graphics = new Graphics2d();
+		graphics.setInitialSize(640, 480);
+		graphics.init();
+		recording.clear();
+	}
+	
+	/**
+	 * Cleans up the renderer and restores the previous backend.
+	 */
+	@After
+	public void tearDown() {
+		
+		graphics.cleanup();
+		Gl.setBackend(previous);
+	}
+	
+	/**
+	 * Checks that an image is uploaded once, however often it is drawn, until its
+	 * pixels change.
+	 */
+	@Test
+	public void testUnchangedImageUploadedOnce() {
+		
+		Image image = new Image(16, 16);
+		
+		frame(() -> graphics.drawImage(image, 10, 10));
+		frame(() -> graphics.drawImage(image, 20, 20));
+		
+		assertEquals(1, recording.count(Call.TEX_IMAGE_2D));
+		assertEquals(2, recording.count(Call.BIND_TEXTURE) - unbinds());
+		assertEquals(0, graphics.getRenderStats().getTextureUploads());
+		
+		image.clearImage();
+		frame(() -> graphics.drawImage(image, 20, 20));
+		
+		assertEquals(2, recording.count(Call.TEX_IMAGE_2D));
+		assertEquals(1, graphics.getRenderStats().getTextureUploads());
+		
+		image.cleanup();
+	}
+	
+	/**
+	 * Checks that the shader and blend function are set once per frame, however
+	 * many shapes are drawn.
+	 */
+	@Test
+	public void testStateChangesPerFrame() {
+		
+		Image image = new Image(16, 16);
+		
+		for (int i = 0; i < 3; i++) {
+			recording.clear();
+			
+			frame(() -> {
+				for (int j = 0; j < 10; j++) {
+					graphics.setColor(1f, 0f, 0f);
+					graphics.drawRect(j * 10, 0, j * 10 + 5, 5);
+					graphics.drawImage(image, j * 10, 10);
+				}
+			});
+			
+			// The shader is bound in preRender and unbound in postRender
+			assertEquals(2, recording.count(Call.USE_PROGRAM));
+			assertEquals(1, recording.count(Call.BLEND_FUNC));
+			assertEquals(20, recording.count(Call.DRAW_ELEMENTS));
+			assertEquals(20, graphics.getRenderStats().getDrawCalls());
+			assertEquals(1, graphics.getRenderStats().getShaderSwitches());
+		}
+		
+		image.cleanup();
+	}
+	
+	/**
+	 * Checks that shapes entirely outside the window are culled, and that those
+	 * partly inside are not.
+	 */
+	@Test
+	public void testOffscreenDrawsCulled() {
+		
+		frame(() -> {
+			graphics.drawRect(-20, -20, -10, -10);
+			graphics.drawRect(700, 10, 720, 20);
+			graphics.drawRect(-5, -5, 5, 5);
+		});
+		
+		assertEquals(1, recording.count(Call.DRAW_ELEMENTS));
+		assertEquals(2, graphics.getRenderStats().getCulledDraws());
+	}
+	
+	/**
+	 * Checks that culling follows a view set through the shader in the middle of a
+	 * frame, rather than a cached earlier one.
+	 */
+	@Test
+	public void testCullingFollowsView() throws Exception {
+		
+		frame(() -> {
+			graphics.drawRect(700, 10, 720, 20);
+			try {
+				graphics.getShader().setUniform("view", new Matrix4f().translation(-500, 0, 0));
+			} catch (GreaseShaderUniformException e) {
+				throw new AssertionError(e);
+			}
+			graphics.drawRect(700, 10, 720, 20);
+		});
+		
+		assertEquals(1, recording.count(Call.DRAW_ELEMENTS));
+		assertEquals(1, graphics.getRenderStats().getCulledDraws());
+	}
+	
+	/**
+	 * Renders one frame.
+	 * 
+	 * @param draws
+	 *            the draw calls of the frame.
+	 */
+	private void frame(Runnable draws) {
+		
+		graphics.preRender();
+		draws.run();
+		graphics.render();
+		graphics.postRender();
+		graphics.finalizeFrame();
+	}
+	
+	/**
+	 * @return the number of recorded calls unbinding a texture.
+	 */
+	private int unbinds() {
+		
+		int unbinds = 0;
+		for (int i = 0; i < recording.getCallCount(); i++) {
+			if (recording.getCall(i) == Call.BIND_TEXTURE && recording.getArgument(i, 1) == 0) {
+				unbinds++;
+			}
+		}
+		
+		return unbinds;
+	}
+}
@@ -0,0 +1,245 @@
+package net.mmarss.grease.graphics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Checks the pixels rasterized by the software renderer against the values the
+ * OpenGL renderer's blending and coverage rules give, to within one level per
+ * channel.
+ */
+public class SoftwareGraphics2dTest {
+	
+	/** The width and height of the tiles the renderer rasterizes, in pixels. */
+	private static final int TILE_SIZE = 64;
+	
+	/** The renderer under test. */
+	private SoftwareGraphics2d graphics;
+	
+	/**
+	 * Releases the renderer's image.
+	 */
+	@After
+	public void tearDown() {
+		
+		if (graphics != null) {
+			graphics.cleanup();
+		}
+	}
+	
+	/**
+	 * Checks that an opaque rectangle covers exactly the pixels whose centers lie
+	 * within it, with the color rounded to the framebuffer's precision.
+	 */
+	@Test
+	public void testOpaqueFill() {
+		
+		graphics = create(16, 16, false);
+		frame(() -> {
+			graphics.setColor(1f, 0.5f, 0f, 1f);
+			graphics.drawRect(2, 3, 6, 8);
+		});
+		
+		for (int y = 0; y < 16; y++) {
+			for (int x = 0; x < 16; x++) {
+				if (x >= 2 && x < 6 && y >= 3 && y < 8) {
+					assertPixel(x, y, 255, 128, 0, 255);
+				} else {
+					assertPixel(x, y, 0, 0, 255, 255);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Checks blending with <code>GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA</code>,
+	 * which applies to the alpha channel too.
+	 */
+	@Test
+	public void testAlphaBlend() {
+		
+		graphics = create(8, 8, false);
+		frame(() -> {
+			graphics.setColor(1f, 0f, 0f, 0.5f);
+			graphics.drawRect(0, 0, 8, 8);
+		});
+		
+		// The source alpha is 128/255; the destination is opaque blue
+		float a = 128 / 255f;
+		assertPixel(4, 4, level(a), 0, level(1 - a), level(a * a + (1 - a)));
+	}
+	
+	/**
+	 * Checks blending with <code>GL_ONE, GL_ONE_MINUS_SRC_ALPHA</code>, both
+	 * covering and adding, as premultiplied colors do.
+	 */
+	@Test
+	public void testPremultipliedBlend() {
+		
+		graphics = create(8, 8, true);
+		frame(() -> {
+			graphics.setColor(1f, 0f, 0f, 0.5f);
+			graphics.drawRect(0, 0, 4, 8);
+			graphics.setAdditive(true);
+			graphics.setColor(0f, 0.5f, 0f, 1f);
+			graphics.drawRect(4, 0, 8, 8);
+		});
+		
+		// Covering: the color is premultiplied, and the alpha covers the destination
+		float a = 128 / 255f;
+		assertPixel(1, 1, level(a), 0, level(1 - a), 255);
+		
+		// Adding: the alpha is cleared, so the destination is kept whole
+		assertPixel(6, 1, 0, 128, 255, 255);
+	}
+	
+	/**
+	 * Checks that a rotated image covers the pixels whose centers lie within its
+	 * rotated bounds. A square rotated by 45 degrees is a diamond, whatever the
+	 * direction of rotation.
+	 */
+	@Test
+	public void testRotatedQuadCoverage() {
+		
+		Image white = new Image(20, 20, 4);
+		ByteBuffer data = white.getData();
+		for (int i = 0; i < data.limit(); i++) {
+			data.put(i, (byte) 255);
+		}
+		
+		graphics = create(64, 64, false);
+		frame(() -> {
+			graphics.setColor(1f, 1f, 1f, 1f); // Draws the image untinted
+			graphics.drawImageRotated(white, 32, 32, (float) Math.PI / 4);
+		});
+		
+		float halfDiagonal = 10f * (float) Math.sqrt(2);
+		int covered = 0;
+		for (int y = 0; y < 64; y++) {
+			for (int x = 0; x < 64; x++) {
+				float distance = Math.abs(x + 0.5f - 32) + Math.abs(y + 0.5f - 32);
+				if (Math.abs(distance - halfDiagonal) < 0.01f) {
+					continue; // On the edge, where rounding decides
+				}
+				if (distance < halfDiagonal) {
+					assertPixel(x, y, 255, 255, 255, 255);
+					covered++;
+				} else {
+					assertPixel(x, y, 0, 0, 255, 255);
+				}
+			}
+		}
+		assertTrue(covered > 0);
+		
+		white.cleanup();
+	}
+	
+	/**
+	 * Checks that a rectangle spanning several tiles is drawn seamlessly across
+	 * the tile boundaries, and that partial tiles at the frame's edges are
+	 * cleared.
+	 */
+	@Test
+	public void testMultipleTiles() {
+		
+		int width = TILE_SIZE * 3 + 10;
+		int height = TILE_SIZE * 2 + 20;
+		graphics = create(width, height, false);
+		frame(() -> {
+			graphics.setColor(0f, 1f, 0f, 1f);
+			graphics.drawRect(30, 40, 170, 130);
+		});
+		
+		int covered = 0;
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				if (x >= 30 && x < 170 && y >= 40 && y < 130) {
+					assertPixel(x, y, 0, 255, 0, 255);
+					covered++;
+				} else {
+					assertPixel(x, y, 0, 0, 255, 255);
+				}
+			}
+		}
+		assertEquals(140 * 90, covered);
+	}
+	
+	/**
+	 * Creates a renderer cleared to opaque blue.
+	 * 
+	 * @param width
+	 *            the width of the frame.
+	 * @param height
+	 *            the height of the frame.
+	 * @param premultiplied
+	 *            whether to blend with premultiplied alpha.
+	 * @return the renderer.
+	 */
+	private static SoftwareGraphics2d create(int width, int height, boolean premultiplied) {
+		
+		SoftwareGraphics2d graphics = new SoftwareGraphics2d(width, height);
+		graphics.setClearColor(0f, 0f, 1f, 1f);
+		graphics.setPremultipliedAlpha(premultiplied);
+		graphics.init();
+		return graphics;
+	}
+	
+	/**
+	 * Renders one frame.
+	 * 
+	 * @param draws
+	 *            the draw calls of the frame.
+	 */
+	private void frame(Runnable draws) {
+		
+		graphics.preRender();
+		draws.run();
+		graphics.render();
+		graphics.postRender();
+		graphics.finalizeFrame();
+	}
+	
+	/**
+	 * Checks a pixel of the rendered image, to within one level per channel.
+	 * 
+	 * @param x
+	 *            the column of the pixel.
+	 * @param y
+	 *            the row of the pixel, from the top.
+	 * @param r
+	 *            the expected red component, from 0 to 255.
+	 * @param g
+	 *            the expected green component, from 0 to 255.
+	 * @param b
+	 *            the expected blue component, from 0 to 255.
+	 * @param a
+	 *            the expected alpha component, from 0 to 255.
+	 */
+	private void assertPixel(int x, int y, int r, int g, int b, int a) {
+		
+		ByteBuffer data = graphics.getImage().getPixelData();
+		int offset = (y * graphics.getImage().getWidth() + x) * 4;
+		int[] expected = { r, g, b, a };
+		for (int c = 0; c < 4; c++) {
+			int actual = data.get(offset + c) & 0xFF;
+			if (Math.abs(actual - expected[c]) > 1) {
+				assertEquals("Channel " + c + " of pixel (" + x + ", " + y + ")", expected[c], actual);
+			}
+		}
+	}
+	
+	/**
+	 * @param component
+	 *            a color component, from 0 to 1.
+	 * @return the nearest framebuffer level.
+	 */
+	private static int level(float component) {
+		
+		return Math.round(component * 255);
+	}
+}
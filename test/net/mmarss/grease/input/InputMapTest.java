@@ -0,0 +1,91 @@
+package net.mmarss.grease.input;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the evaluation of action bindings against the input of each update.
+ */
+public class InputMapTest {
+	
+	/** The input driving the map. */
+	private ProgrammableInput	input;
+	/** The map under test. */
+	private InputMap			map;
+	
+	/**
+	 * Creates the input and binds a plain key and its chord to separate actions.
+	 */
+	@Before
+	public void setUp() {
+		
+		input = new ProgrammableInput();
+		map = new InputMap();
+		map.bindKey("jump", Key.KEY_SPACE);
+		map.bindKey("step", Key.KEY_S);
+		map.bindKey("save", Key.KEY_S, KeyModifier.CONTROL);
+		map.bindKey("fire", Key.KEY_F, KeyModifier.CONTROL);
+	}
+	
+	/**
+	 * Checks that a key pressed and released between two updates starts and ends
+	 * its action in the same update.
+	 */
+	@Test
+	public void testTapBetweenUpdates() {
+		
+		input.press(Key.KEY_SPACE);
+		input.release(Key.KEY_SPACE);
+		update();
+		
+		assertFalse(map.isActive("jump"));
+		assertTrue(map.actionStarted("jump"));
+		assertTrue(map.actionEnded("jump"));
+		
+		update();
+		
+		assertFalse(map.actionStarted("jump"));
+		assertFalse(map.actionEnded("jump"));
+	}
+	
+	/**
+	 * Checks that a chorded binding keeps a plain binding of the same key from
+	 * firing with it, and that chords without a more specific binding still fire
+	 * with extra modifiers held.
+	 */
+	@Test
+	public void testMostSpecificChordWins() {
+		
+		input.press(Key.KEY_S);
+		update();
+		
+		assertTrue(map.isActive("step"));
+		assertFalse(map.isActive("save"));
+		
+		input.press(Key.KEY_LEFT_CONTROL);
+		update();
+		
+		assertTrue(map.isActive("save"));
+		assertFalse(map.isActive("step"));
+		assertTrue(map.actionEnded("step"));
+		
+		input.press(Key.KEY_LEFT_SHIFT);
+		input.press(Key.KEY_F);
+		update();
+		
+		assertTrue(map.isActive("save"));
+		assertTrue(map.isActive("fire"));
+	}
+	
+	/**
+	 * Processes the pending input and updates the map.
+	 */
+	private void update() {
+		
+		input.processEvents();
+		map.update(input);
+	}
+}